@@ -22,12 +22,11 @@ import net.elasticgrid.rackspace.cloudservers.internal.Public;
 import net.elasticgrid.rackspace.cloudservers.internal.Private;
 import java.io.Serializable;
 import java.net.InetAddress;
-import java.net.UnknownHostException;
 import java.util.List;
-import java.util.ArrayList;
 
 /**
  * Addresses are either public or private.
+ * Addresses read from the API are kept packed, see {@link PackedAddressList}.
  * @author Jerome Bernard
  */
 public class Addresses implements Serializable {
@@ -39,19 +38,11 @@ public class Addresses implements Serializable {
         this.privateAddresses = privateAddresses;
     }
 
-    public Addresses(net.elasticgrid.rackspace.cloudservers.internal.Addresses addresses) throws UnknownHostException {
-        // populate public addresses list
-        Public publicAddresses = addresses.getPublic();
-        this.publicAddresses = new ArrayList<InetAddress>(publicAddresses.getAddressLists().size());
-        for (net.elasticgrid.rackspace.cloudservers.internal.Address address : publicAddresses.getAddressLists()) {
-            this.publicAddresses.add(InetAddress.getByName(address.getAddr()));
-        }
-        // populate private addresses list
-        Private privateAddresses = addresses.getPrivate();
-        this.privateAddresses = new ArrayList<InetAddress>(privateAddresses.getAddressLists().size());
-        for (net.elasticgrid.rackspace.cloudservers.internal.Address address : privateAddresses.getAddressLists()) {
-            this.privateAddresses.add(InetAddress.getByName(address.getAddr()));
-        }
+    public Addresses(net.elasticgrid.rackspace.cloudservers.internal.Addresses addresses) {
+        Public publicAddresses = addresses == null ? null : addresses.getPublic();
+        this.publicAddresses = PackedAddressList.fromAddresses(publicAddresses == null ? null : publicAddresses.getAddressLists());
+        Private privateAddresses = addresses == null ? null : addresses.getPrivate();
+        this.privateAddresses = PackedAddressList.fromAddresses(privateAddresses == null ? null : privateAddresses.getAddressLists());
     }
 
     public List<InetAddress> getPublicAddresses() {
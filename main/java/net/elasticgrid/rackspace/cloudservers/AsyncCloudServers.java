@@ -0,0 +1,475 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.elasticgrid.rackspace.cloudservers;
+
+import net.elasticgrid.rackspace.common.RequestFuture;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Asynchronous Rackspace Cloud Servers API. Each operation sends its request and returns right away; the returned
+ * future completes with the result, or fails with a {@link CloudServersException}; invalid arguments fail it with
+ * an {@link IllegalArgumentException}, nothing is thrown by the operations themselves. Futures can be chained, for
+ * example to create a server, wait until it is active and then share an IP address with it:
+ * <pre>
+ * servers.createServer("web", imageID, flavorID)
+ *     .then(new AsyncTransformer&lt;Server, Server&gt;() {
+ *         public RequestFuture&lt;Server&gt; apply(Server server) {
+ *             return servers.waitForStatus(server.getId(), Server.Status.ACTIVE, 10, TimeUnit.SECONDS);
+ *         }
+ *     })
+ *     .then(new AsyncTransformer&lt;Server, Void&gt;() {
+ *         public RequestFuture&lt;Void&gt; apply(Server server) {
+ *             return servers.shareAddress(groupID, server.getId(), address);
+ *         }
+ *     });
+ * </pre>
+ *
+ * @see CloudServers
+ */
+public interface AsyncCloudServers {
+
+    /**
+     * Retrieve the list of servers (only IDs and names) associated with the Rackspace account.
+     *
+     * @return the future list of servers
+     */
+    RequestFuture<List<Server>> getServers();
+
+    /**
+     * Retrieve the list of servers (with details) associated with the Rackspace account.
+     *
+     * @return the future list of servers
+     */
+    RequestFuture<List<Server>> getServersWithDetails();
+
+    /**
+     * Retrieve the servers (with details) associated with the Rackspace account one at a time, as the response is
+     * read, rather than as a list. The handler is called on the thread reading the response.
+     *
+     * @param handler called with each server; returning false stops the listing
+     * @return the future completed once the listing ends
+     */
+    RequestFuture<Void> forEachServerWithDetails(ResourceHandler<? super Server> handler);
+
+    /**
+     * Load the servers, images, flavors and shared IP groups of the account, with their details, and its limits.
+     *
+     * @return the future inventory of the account
+     * @see XMLCloudServers#getInventory()
+     */
+    RequestFuture<Inventory> getInventory();
+
+    /**
+     * Run a query for each server of a set, a bounded number of them at once.
+     *
+     * @param serverIDs the IDs of the servers to query
+     * @param query     the query to run for each server
+     * @param listener  called with the result or the failure of each query
+     * @return the future number of servers whose query failed
+     */
+    <T> RequestFuture<Integer> queryServers(Collection<Integer> serverIDs, ServerQuery<T> query,
+                                            ServerQuery.Listener<? super T> listener);
+
+    /**
+     * Retrieve the server details.
+     *
+     * @param serverID the ID of the server for which details should be retrieved
+     * @return the future server details
+     */
+    RequestFuture<Server> getServerDetails(int serverID);
+
+    /**
+     * Wait until a server reaches the specified status.
+     *
+     * @param serverID     the ID of the server to watch
+     * @param status       the status to wait for
+     * @param pollInterval the longest delay between two polls
+     * @param unit         the unit of the delay
+     * @return the future server details, once the server has reached the status; it fails if the server is or goes
+     *         in error, or is deleted, instead
+     */
+    RequestFuture<Server> waitForStatus(int serverID, Server.Status status, long pollInterval, TimeUnit unit);
+
+    /**
+     * Retrieve server addresses.
+     *
+     * @param serverID the ID of the server for which addresses should be retrieved
+     * @return the future server addresses
+     */
+    RequestFuture<Addresses> getServerAddresses(int serverID);
+
+    /**
+     * Retrieve public server addresses.
+     *
+     * @param serverID the ID of the server for which addresses should be retrieved
+     * @return the future server addresses
+     */
+    RequestFuture<List<InetAddress>> getServerPublicAddresses(int serverID);
+
+    /**
+     * Retrieve private server addresses.
+     *
+     * @param serverID the ID of the server for which addresses should be retrieved
+     * @return the future server addresses
+     */
+    RequestFuture<List<InetAddress>> getServerPrivateAddresses(int serverID);
+
+    /**
+     * Share an IP address to the specified server.
+     * 
+     * @param groupID         the ID of the shared IP group
+     * @param serverID        the ID of the server for which the IP should be shared
+     * @param address         the IP address to share with the server
+     * @return the future completed once the API accepted the request
+     */
+    RequestFuture<Void> shareAddress(int groupID, int serverID, InetAddress address);
+
+    /**
+     * Share an IP address to the specified server.
+     *
+     * @param groupID         the ID of the shared IP group
+     * @param serverID        the ID of the server for which the IP should be shared
+     * @param address         the IP address to share with the server
+     * @param configureServer if true the server is configured with the new address, though the new address is not
+     *                        enabled; configuring the server does require a reboot
+     * @return the future completed once the API accepted the request
+     */
+    RequestFuture<Void> shareAddress(int groupID, int serverID, InetAddress address, boolean configureServer);
+
+    /**
+     * Remove a shared IP address from the specified server.
+     *
+     * @param serverID the ID of the server for which the IP should be not be shared anymore
+     * @param address  the IP address to stop sharing with the server
+     * @return the future completed once the API accepted the request
+     */
+    RequestFuture<Void> unshareAddress(int serverID, InetAddress address);
+
+    /**
+     * Provision a new server.
+     *
+     * @param name     the name of the server to create
+     * @param imageID  the image from which the server should be created
+     * @param flavorID the kind of hardware to use
+     * @return the future created server with precious information such as admin password for that server
+     */
+    RequestFuture<Server> createServer(String name, int imageID, int flavorID);
+
+    /**
+     * Provision a new server.
+     *
+     * @param name     the name of the server to create
+     * @param imageID  the image from which the server should be created
+     * @param flavorID the kind of hardware to use
+     * @param metadata the launch metadata
+     * @return the future created server with precious information such as admin password for that server
+     */
+    RequestFuture<Server> createServer(String name, int imageID, int flavorID, Map<String, String> metadata);
+
+    /**
+     * Provision a new server with files injected in its file system.
+     *
+     * @param name        the name of the server to create
+     * @param imageID     the image from which the server should be created
+     * @param flavorID    the kind of hardware to use
+     * @param metadata    the launch metadata
+     * @param personality the files to inject, at most 5
+     * @return the future created server, with its admin password
+     */
+    RequestFuture<Server> createServer(String name, int imageID, int flavorID, Map<String, String> metadata,
+                                       Personality personality);
+
+    /**
+     * Provision several servers at once. The servers are created concurrently, within the limits of the account,
+     * and their statuses are tracked by a single poll of the changes of the account. Servers not active after the
+     * provisioning timeout are reported as failed; cancelling the returned future stops the provisioning.
+     *
+     * @param count        the number of servers to create
+     * @param nameTemplate the {@link String#format(String, Object...) format} of the names of the servers, given the
+     *                     index of each server starting at 1, for example <tt>web-%02d</tt>
+     * @param imageID      the image from which the servers should be created
+     * @param flavorID     the kind of hardware to use
+     * @param metadata     the launch metadata of every server
+     * @return the future outcome of each server, in index order, once they are all active or have failed
+     */
+    RequestFuture<List<ProvisionedServer>> createServers(int count, String nameTemplate, int imageID, int flavorID,
+                                                         Map<String, String> metadata);
+
+    /**
+     * Reboot the specified server.
+     *
+     * @param serverID the ID of the server to reboot
+     * @return the future completed once the API accepted the request
+     * @see #rebootServer(int, RebootType)
+     */
+    RequestFuture<Void> rebootServer(int serverID);
+
+    /**
+     * Reboot the specified server.
+     *
+     * @param serverID the ID of the server to reboot
+     * @param type     the type of reboot to perform
+     * @return the future completed once the API accepted the request
+     * @see #rebootServer(int, RebootType)
+     */
+    RequestFuture<Void> rebootServer(int serverID, RebootType type);
+
+    /**
+     * Rebuild the specified server.
+     *
+     * @param serverID the ID of the server to rebuild
+     * @return the future completed once the API accepted the request
+     * @see #rebuildServer(int, int)
+     */
+    RequestFuture<Void> rebuildServer(int serverID);
+
+    /**
+     * Rebuild the specified server from an different image than the one initially used.
+     *
+     * @param serverID the ID of the server to rebuild
+     * @param imageID  the new image to use
+     * @return the future completed once the API accepted the request
+     * @see #rebuildServer(int)
+     */
+    RequestFuture<Void> rebuildServer(int serverID, int imageID);
+
+    /**
+     * Resize the specified server.
+     *
+     * @param serverID the ID of the server to resize
+     * @param flavorID the new flavor of hardware which should be used
+     * @return the future completed once the API accepted the request
+     */
+    RequestFuture<Void> resizeServer(int serverID, int flavorID);
+
+    /**
+     * Confirm a pending resize action.
+     *
+     * @param serverID the ID of the server for which the resize should be confirmed
+     * @return the future completed once the API accepted the request
+     */
+    RequestFuture<Void> confirmResize(int serverID);
+
+    /**
+     * Cancel and revert a pending resize action.
+     *
+     * @param serverID the ID of the server for which the resize should be cancelled
+     * @return the future completed once the API accepted the request
+     */
+    RequestFuture<Void> revertResize(int serverID);
+
+    /**
+     * Update the specified server's name and/or administrative password. This operation allows you to update the name
+     * of the server and change the administrative password. This operation changes the name of the server in the Cloud
+     * Servers system and does not change the server host name itself.
+     *
+     * @param serverID the ID of the server to update
+     * @param name     the new name for the server
+     * @return the future completed once the API accepted the request
+     */
+    RequestFuture<Void> updateServerName(int serverID, String name);
+
+    /**
+     * Update the specified server's name and/or administrative password. This operation allows you to update the name
+     * of the server and change the administrative password. This operation changes the name of the server in the Cloud
+     * Servers system and does not change the server host name itself.
+     *
+     * @param serverID the ID of the server to update
+     * @param password the new password
+     * @return the future completed once the API accepted the request
+     */
+    RequestFuture<Void> updateServerPassword(int serverID, String password);
+
+    /**
+     * Update the specified server's name and/or administrative password. This operation allows you to update the name
+     * of the server and change the administrative password. This operation changes the name of the server in the Cloud
+     * Servers system and does not change the server host name itself.
+     *
+     * @param serverID the ID of the server to update
+     * @param name     the new name for the server
+     * @param password the new password
+     * @return the future completed once the API accepted the request
+     */
+    RequestFuture<Void> updateServerNameAndPassword(int serverID, String name, String password);
+
+    /**
+     * Deletes a cloud server instance from the system
+     *
+     * @param serverID the ID of the server to delete
+     * @return the future completed once the API accepted the request
+     */
+    RequestFuture<Void> deleteServer(int serverID);
+
+    /**
+     * Return the limits for the Rackspace API account.
+     *
+     * @return the future limits
+     */
+    RequestFuture<Limits> getLimits();
+
+    /**
+     * Retrieve the list of flavors (only IDs and names) associated with the Rackspace account.
+     *
+     * @return the future flavors
+     */
+    RequestFuture<List<Flavor>> getFlavors();
+
+    /**
+     * Retrieve the list of flavors (with details) associated with the Rackspace account.
+     *
+     * @return the future flavors
+     */
+    RequestFuture<List<Flavor>> getFlavorsWithDetails();
+
+    /**
+     * Retrieve the flavors (with details) associated with the Rackspace account one at a time, as the response is
+     * read.
+     *
+     * @param handler called with each flavor; returning false stops the listing
+     * @return the future completed once the listing ends
+     */
+    RequestFuture<Void> forEachFlavorWithDetails(ResourceHandler<? super Flavor> handler);
+
+    /**
+     * Retrieve the flavor details.
+     *
+     * @param flavorID the ID of the flavor for which details should be retrieved
+     * @return the future flavor details
+     */
+    RequestFuture<Flavor> getFlavorDetails(int flavorID);
+
+    /**
+     * Retrieve the list of images (only IDs and names) associated with the Rackspace account.
+     *
+     * @return the future images
+     */
+    RequestFuture<List<Image>> getImages();
+
+    /**
+     * Retrieve the list of images (with details) associated with the Rackspace account.
+     *
+     * @return the future images
+     */
+    RequestFuture<List<Image>> getImagesWithDetails();
+
+    /**
+     * Retrieve the images (with details) associated with the Rackspace account one at a time, as the response is
+     * read.
+     *
+     * @param handler called with each image; returning false stops the listing
+     * @return the future completed once the listing ends
+     */
+    RequestFuture<Void> forEachImageWithDetails(ResourceHandler<? super Image> handler);
+
+    /**
+     * Retrieve the image details.
+     *
+     * @param imageID the ID of the image for which details should be retrieved
+     * @return the future image details
+     */
+    RequestFuture<Image> getImageDetails(int imageID);
+
+    /**
+     * Create a new image from a server.
+     *
+     * @param name     the name of the image to create
+     * @param serverID the ID of the server whose content will be used for creating the image
+     * @return the future created image details
+     */
+    RequestFuture<Image> createImage(String name, int serverID);
+
+    /**
+     * Retrieve the backup schedule for a server.
+     *
+     * @param serverID the ID of the server for which the backup schedule should be retrieved
+     * @return the future backup schedule
+     */
+    RequestFuture<BackupSchedule> getBackupSchedule(int serverID);
+
+    /**
+     * Create or update backup schedule for a server.
+     *
+     * @param serverID the ID of the server for which the backup schedule should be created/updated
+     * @param schedule the backup schedule
+     * @return the future completed once the API accepted the request
+     */
+    RequestFuture<Void> scheduleBackup(int serverID, BackupSchedule schedule);
+
+    /**
+     * Delete backup schedule for a server.
+     *
+     * @param serverID the ID of the server for which the backup schedule should be deleted
+     * @return the future completed once the API accepted the request
+     */
+    RequestFuture<Void> deleteBackupSchedule(int serverID);
+
+    /**
+     * Retrieve the list of shared IP groups (only IDs and names) associated with the Rackspace account.
+     *
+     * @return the future list of shared IP groups
+     */
+    RequestFuture<List<SharedIPGroup>> getSharedIPGroups();
+
+    /**
+     * Retrieve the list of shared IP groups (with details) associated with the Rackspace account.
+     *
+     * @return the future list of shared IP groups
+     */
+    RequestFuture<List<SharedIPGroup>> getSharedIPGroupsWithDetails();
+
+    /**
+     * Retrieve the shared IP group details.
+     *
+     * @param groupID the ID of the shared IP group
+     * @return the future shared IP group
+     */
+    RequestFuture<SharedIPGroup> getSharedIPGroup(int groupID);
+
+    /**
+     * Create a new shared IP group.
+     *
+     * @param name the name of the shared IP group to create
+     * @return the future created shared IP group
+     * @see #createSharedIPGroup(String, int)
+     */
+    RequestFuture<SharedIPGroup> createSharedIPGroup(String name);
+
+    /**
+     * Create a new shared IP group.
+     *
+     * @param name     the name of the shared IP group to create
+     * @param serverID the first server which is going to be part of the group
+     * @return the future created shared IP group
+     * @see #createSharedIPGroup(String)
+     */
+    RequestFuture<SharedIPGroup> createSharedIPGroup(String name, int serverID);
+
+    /**
+     * Delete shared IP group.
+     *
+     * @param groupID the ID of the shared IP group
+     * @return the future completed once the API accepted the request
+     */
+    RequestFuture<Void> deleteSharedIPGroup(int groupID);
+
+}
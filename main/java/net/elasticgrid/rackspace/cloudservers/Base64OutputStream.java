@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.elasticgrid.rackspace.cloudservers;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encodes in base64 what is written to it, without line breaks. {@link #finish()} writes the padding once everything
+ * has been written, and leaves the underlying stream open.
+ */
+class Base64OutputStream extends FilterOutputStream {
+    private static final byte[] ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes();
+
+    private final byte[] encoded = new byte[4 * 1024];
+    private int length = 0;
+    private int group = 0;
+    private int groupSize = 0;
+
+    Base64OutputStream(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        group = (group << 8) | (b & 0xFF);
+        if (++groupSize == 3) {
+            if (length + 4 > encoded.length)
+                flushEncoded();
+            encoded[length++] = ALPHABET[(group >>> 18) & 0x3F];
+            encoded[length++] = ALPHABET[(group >>> 12) & 0x3F];
+            encoded[length++] = ALPHABET[(group >>> 6) & 0x3F];
+            encoded[length++] = ALPHABET[group & 0x3F];
+            group = 0;
+            groupSize = 0;
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        for (int i = off; i < off + len; i++)
+            write(b[i]);
+    }
+
+    /**
+     * Writes the last bytes and the padding.
+     */
+    public void finish() throws IOException {
+        if (length + 4 > encoded.length)
+            flushEncoded();
+        if (groupSize == 1) {
+            encoded[length++] = ALPHABET[(group >>> 2) & 0x3F];
+            encoded[length++] = ALPHABET[(group << 4) & 0x3F];
+            encoded[length++] = '=';
+            encoded[length++] = '=';
+        } else if (groupSize == 2) {
+            encoded[length++] = ALPHABET[(group >>> 10) & 0x3F];
+            encoded[length++] = ALPHABET[(group >>> 4) & 0x3F];
+            encoded[length++] = ALPHABET[(group << 2) & 0x3F];
+            encoded[length++] = '=';
+        }
+        group = 0;
+        groupSize = 0;
+        flushEncoded();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushEncoded();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+        out.flush();
+    }
+
+    private void flushEncoded() throws IOException {
+        out.write(encoded, 0, length);
+        length = 0;
+    }
+}
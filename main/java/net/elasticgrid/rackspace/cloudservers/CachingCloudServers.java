@@ -0,0 +1,526 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.elasticgrid.rackspace.cloudservers;
+
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Caching decorator of a {@link CloudServers} API. The detailed lists of servers, flavors and images are kept for a
+ * configurable time to live, and detail lookups by ID are answered from them. Any operation which changes servers
+ * drops the cached servers, and creating an image drops the cached images, so that the next read goes to the API.
+ * <p/>
+ * Server statuses read from the cache can be up to the servers time to live old; code waiting for a status change
+ * should use a short time to live or the underlying API.
+ */
+public class CachingCloudServers implements CloudServers {
+    private final CloudServers delegate;
+    private final Cache<Server> servers;
+    private final Cache<Flavor> flavors;
+    private final Cache<Image> images;
+
+    private static final Logger logger = Logger.getLogger(CachingCloudServers.class.getName());
+
+    /**
+     * Caches servers for 30 seconds, flavors for an hour and images for 5 minutes.
+     *
+     * @param delegate the API to cache
+     */
+    public CachingCloudServers(final CloudServers delegate) {
+        this.delegate = delegate;
+        this.servers = new Cache<Server>("servers", TimeUnit.SECONDS.toMillis(30)) {
+            List<Server> load() throws CloudServersException {
+                return delegate.getServersWithDetails();
+            }
+
+            Integer idOf(Server server) {
+                return server.getId();
+            }
+        };
+        this.flavors = new Cache<Flavor>("flavors", TimeUnit.HOURS.toMillis(1)) {
+            List<Flavor> load() throws CloudServersException {
+                return delegate.getFlavorsWithDetails();
+            }
+
+            Integer idOf(Flavor flavor) {
+                return flavor.getId();
+            }
+        };
+        this.images = new Cache<Image>("images", TimeUnit.MINUTES.toMillis(5)) {
+            List<Image> load() throws CloudServersException {
+                return delegate.getImagesWithDetails();
+            }
+
+            Integer idOf(Image image) {
+                return image.getId();
+            }
+        };
+    }
+
+    public void setServersTTL(long ttl, TimeUnit unit) {
+        servers.setTTL(unit.toMillis(ttl));
+    }
+
+    public void setFlavorsTTL(long ttl, TimeUnit unit) {
+        flavors.setTTL(unit.toMillis(ttl));
+    }
+
+    public void setImagesTTL(long ttl, TimeUnit unit) {
+        images.setTTL(unit.toMillis(ttl));
+    }
+
+    /**
+     * Drops every cached resource.
+     */
+    public void invalidateAll() {
+        servers.invalidate();
+        flavors.invalidate();
+        images.invalidate();
+    }
+
+    /**
+     * @return the share of server reads answered from the cache
+     */
+    public double getServersHitRate() {
+        return servers.getHitRate();
+    }
+
+    /**
+     * @return the share of flavor reads answered from the cache
+     */
+    public double getFlavorsHitRate() {
+        return flavors.getHitRate();
+    }
+
+    /**
+     * @return the share of image reads answered from the cache
+     */
+    public double getImagesHitRate() {
+        return images.getHitRate();
+    }
+
+    /**
+     * @return the number of reads answered from the cache, per resource
+     */
+    public Map<String, Long> getHits() {
+        Map<String, Long> hits = new HashMap<String, Long>();
+        for (Cache<?> cache : new Cache<?>[]{servers, flavors, images})
+            hits.put(cache.name, cache.hits.get());
+        return hits;
+    }
+
+    /**
+     * @return the number of reads which went to the API, per resource
+     */
+    public Map<String, Long> getMisses() {
+        Map<String, Long> misses = new HashMap<String, Long>();
+        for (Cache<?> cache : new Cache<?>[]{servers, flavors, images})
+            misses.put(cache.name, cache.misses.get());
+        return misses;
+    }
+
+    public List<Server> getServers() throws CloudServersException {
+        return delegate.getServers();
+    }
+
+    public List<Server> getServersWithDetails() throws CloudServersException {
+        return servers.list();
+    }
+
+    public void forEachServerWithDetails(ResourceHandler<? super Server> handler) throws CloudServersException {
+        if (!servers.forEach(handler))
+            delegate.forEachServerWithDetails(handler);
+    }
+
+    public Server getServerDetails(int serverID) throws CloudServersException {
+        Server server = servers.get(serverID);
+        return server != null ? server : delegate.getServerDetails(serverID);
+    }
+
+    public Addresses getServerAddresses(int serverID) throws CloudServersException {
+        return delegate.getServerAddresses(serverID);
+    }
+
+    public List<InetAddress> getServerPublicAddresses(int serverID) throws CloudServersException {
+        return delegate.getServerPublicAddresses(serverID);
+    }
+
+    public List<InetAddress> getServerPrivateAddresses(int serverID) throws CloudServersException {
+        return delegate.getServerPrivateAddresses(serverID);
+    }
+
+    public void shareAddress(int groupID, int serverID, InetAddress address) throws CloudServersException {
+        try {
+            delegate.shareAddress(groupID, serverID, address);
+        } finally {
+            servers.invalidate();
+        }
+    }
+
+    public void shareAddress(int groupID, int serverID, InetAddress address, boolean configureServer) throws CloudServersException {
+        try {
+            delegate.shareAddress(groupID, serverID, address, configureServer);
+        } finally {
+            servers.invalidate();
+        }
+    }
+
+    public void unshareAddress(int serverID, InetAddress address) throws CloudServersException {
+        try {
+            delegate.unshareAddress(serverID, address);
+        } finally {
+            servers.invalidate();
+        }
+    }
+
+    public Server createServer(String name, int imageID, int flavorID) throws CloudServersException {
+        try {
+            return delegate.createServer(name, imageID, flavorID);
+        } finally {
+            servers.invalidate();
+        }
+    }
+
+    public Server createServer(String name, int imageID, int flavorID, Map<String, String> metadata) throws CloudServersException {
+        try {
+            return delegate.createServer(name, imageID, flavorID, metadata);
+        } finally {
+            servers.invalidate();
+        }
+    }
+
+    public Server createServer(String name, int imageID, int flavorID, Map<String, String> metadata,
+                               Personality personality) throws CloudServersException {
+        try {
+            return delegate.createServer(name, imageID, flavorID, metadata, personality);
+        } finally {
+            servers.invalidate();
+        }
+    }
+
+    public List<ProvisionedServer> createServers(int count, String nameTemplate, int imageID, int flavorID,
+                                                 Map<String, String> metadata) throws CloudServersException {
+        try {
+            return delegate.createServers(count, nameTemplate, imageID, flavorID, metadata);
+        } finally {
+            servers.invalidate();
+        }
+    }
+
+    public void rebootServer(int serverID) throws CloudServersException {
+        try {
+            delegate.rebootServer(serverID);
+        } finally {
+            servers.invalidate();
+        }
+    }
+
+    public void rebootServer(int serverID, RebootType type) throws CloudServersException {
+        try {
+            delegate.rebootServer(serverID, type);
+        } finally {
+            servers.invalidate();
+        }
+    }
+
+    public void rebuildServer(int serverID) throws CloudServersException {
+        try {
+            delegate.rebuildServer(serverID);
+        } finally {
+            servers.invalidate();
+        }
+    }
+
+    public void rebuildServer(int serverID, int imageID) throws CloudServersException {
+        try {
+            delegate.rebuildServer(serverID, imageID);
+        } finally {
+            servers.invalidate();
+        }
+    }
+
+    public void resizeServer(int serverID, int flavorID) throws CloudServersException {
+        try {
+            delegate.resizeServer(serverID, flavorID);
+        } finally {
+            servers.invalidate();
+        }
+    }
+
+    public void confirmResize(int serverID) throws CloudServersException {
+        try {
+            delegate.confirmResize(serverID);
+        } finally {
+            servers.invalidate();
+        }
+    }
+
+    public void revertResize(int serverID) throws CloudServersException {
+        try {
+            delegate.revertResize(serverID);
+        } finally {
+            servers.invalidate();
+        }
+    }
+
+    public void updateServerName(int serverID, String name) throws CloudServersException {
+        try {
+            delegate.updateServerName(serverID, name);
+        } finally {
+            servers.invalidate();
+        }
+    }
+
+    public void updateServerPassword(int serverID, String password) throws CloudServersException {
+        try {
+            delegate.updateServerPassword(serverID, password);
+        } finally {
+            servers.invalidate();
+        }
+    }
+
+    public void updateServerNameAndPassword(int serverID, String name, String password) throws CloudServersException {
+        try {
+            delegate.updateServerNameAndPassword(serverID, name, password);
+        } finally {
+            servers.invalidate();
+        }
+    }
+
+    public void deleteServer(int serverID) throws CloudServersException {
+        try {
+            delegate.deleteServer(serverID);
+        } finally {
+            servers.invalidate();
+        }
+    }
+
+    public Limits getLimits() throws CloudServersException {
+        return delegate.getLimits();
+    }
+
+    public List<Flavor> getFlavors() throws CloudServersException {
+        return delegate.getFlavors();
+    }
+
+    public List<Flavor> getFlavorsWithDetails() throws CloudServersException {
+        return flavors.list();
+    }
+
+    public void forEachFlavorWithDetails(ResourceHandler<? super Flavor> handler) throws CloudServersException {
+        if (!flavors.forEach(handler))
+            delegate.forEachFlavorWithDetails(handler);
+    }
+
+    public Flavor getFlavorDetails(int flavorID) throws CloudServersException {
+        Flavor flavor = flavors.get(flavorID);
+        return flavor != null ? flavor : delegate.getFlavorDetails(flavorID);
+    }
+
+    public List<Image> getImages() throws CloudServersException {
+        return delegate.getImages();
+    }
+
+    public List<Image> getImagesWithDetails() throws CloudServersException {
+        return images.list();
+    }
+
+    public void forEachImageWithDetails(ResourceHandler<? super Image> handler) throws CloudServersException {
+        if (!images.forEach(handler))
+            delegate.forEachImageWithDetails(handler);
+    }
+
+    public Image getImageDetails(int imageID) throws CloudServersException {
+        Image image = images.get(imageID);
+        return image != null ? image : delegate.getImageDetails(imageID);
+    }
+
+    public Image createImage(String name, int serverID) throws CloudServersException {
+        try {
+            return delegate.createImage(name, serverID);
+        } finally {
+            images.invalidate();
+            // the server is busy while its image is taken
+            servers.invalidate();
+        }
+    }
+
+    public BackupSchedule getBackupSchedule(int serverID) throws CloudServersException {
+        return delegate.getBackupSchedule(serverID);
+    }
+
+    public void scheduleBackup(int serverID, BackupSchedule schedule) throws CloudServersException {
+        delegate.scheduleBackup(serverID, schedule);
+    }
+
+    public void deleteBackupSchedule(int serverID) throws CloudServersException {
+        delegate.deleteBackupSchedule(serverID);
+    }
+
+    public List<SharedIPGroup> getSharedIPGroups() throws CloudServersException {
+        return delegate.getSharedIPGroups();
+    }
+
+    public List<SharedIPGroup> getSharedIPGroupsWithDetails() throws CloudServersException {
+        return delegate.getSharedIPGroupsWithDetails();
+    }
+
+    public SharedIPGroup getSharedIPGroup(int groupID) throws CloudServersException {
+        return delegate.getSharedIPGroup(groupID);
+    }
+
+    public SharedIPGroup createSharedIPGroup(String name) throws CloudServersException {
+        try {
+            return delegate.createSharedIPGroup(name);
+        } finally {
+            servers.invalidate();
+        }
+    }
+
+    public SharedIPGroup createSharedIPGroup(String name, int serverID) throws CloudServersException {
+        try {
+            return delegate.createSharedIPGroup(name, serverID);
+        } finally {
+            servers.invalidate();
+        }
+    }
+
+    public void deleteSharedIPGroup(int groupID) throws CloudServersException {
+        delegate.deleteSharedIPGroup(groupID);
+    }
+
+    /**
+     * A detailed list of resources and its index by ID. Loads are done by one caller at a time, the others waiting
+     * for its result, and a load overlapping an invalidation is not cached.
+     */
+    private static abstract class Cache<T> {
+        private final String name;
+        private volatile long ttl;
+        private volatile Snapshot<T> snapshot;
+        // bumped on each invalidation, guarded by its own lock so invalidations don't wait for a load in progress
+        private long generation = 0;
+        private final Object generationLock = new Object();
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+
+        Cache(String name, long ttl) {
+            this.name = name;
+            this.ttl = ttl;
+        }
+
+        abstract List<T> load() throws CloudServersException;
+
+        abstract Integer idOf(T resource);
+
+        void setTTL(long ttl) {
+            this.ttl = ttl;
+        }
+
+        List<T> list() throws CloudServersException {
+            return fresh().list;
+        }
+
+        /**
+         * @return the resource with the given ID, or null if it is not in the list
+         */
+        T get(int id) throws CloudServersException {
+            return fresh().byID.get(id);
+        }
+
+        /**
+         * Hands the cached resources over to a handler. Nothing is loaded when they are not cached, as streamed
+         * listings are meant for lists too large to be held in memory.
+         *
+         * @return false if the resources are not cached
+         */
+        boolean forEach(ResourceHandler<? super T> handler) {
+            Snapshot<T> current = snapshot;
+            if (current == null || current.expires <= System.currentTimeMillis())
+                return false;
+            hits.incrementAndGet();
+            for (T resource : current.list) {
+                if (!handler.handle(resource))
+                    break;
+            }
+            return true;
+        }
+
+        private Snapshot<T> fresh() throws CloudServersException {
+            Snapshot<T> current = snapshot;
+            if (current != null && current.expires > System.currentTimeMillis()) {
+                hits.incrementAndGet();
+                return current;
+            }
+            synchronized (this) {
+                // loaded by another caller while this one was waiting
+                current = snapshot;
+                if (current != null && current.expires > System.currentTimeMillis()) {
+                    hits.incrementAndGet();
+                    return current;
+                }
+                misses.incrementAndGet();
+                long loadGeneration;
+                synchronized (generationLock) {
+                    loadGeneration = generation;
+                }
+                logger.log(Level.FINE, "Loading {0} into the cache", name);
+                Snapshot<T> loaded = new Snapshot<T>(load(), System.currentTimeMillis() + ttl, this);
+                synchronized (generationLock) {
+                    if (generation == loadGeneration)
+                        snapshot = loaded;
+                }
+                return loaded;
+            }
+        }
+
+        void invalidate() {
+            synchronized (generationLock) {
+                generation++;
+                snapshot = null;
+            }
+        }
+
+        double getHitRate() {
+            long h = hits.get(), m = misses.get();
+            return h + m == 0 ? 0 : (double) h / (h + m);
+        }
+    }
+
+    private static class Snapshot<T> {
+        final List<T> list;
+        final Map<Integer, T> byID;
+        final long expires;
+
+        Snapshot(List<T> resources, long expires, Cache<T> cache) {
+            this.list = Collections.unmodifiableList(resources);
+            Map<Integer, T> index = new HashMap<Integer, T>(resources.size() * 2);
+            for (T resource : resources)
+                index.put(cache.idOf(resource), resource);
+            this.byID = index;
+            this.expires = expires;
+        }
+    }
+}
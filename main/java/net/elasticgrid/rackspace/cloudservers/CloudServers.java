@@ -45,6 +45,15 @@ public interface CloudServers {
      */
     List<Server> getServersWithDetails() throws CloudServersException;
 
+    /**
+     * Retrieve the servers (with details) associated with the Rackspace account one at a time, as the response is
+     * read, rather than as a list. Only one server is held in memory at once, which suits accounts with many servers.
+     *
+     * @param handler called with each server; returning false stops the listing
+     * @throws CloudServersException if there is an exception when calling the Cloud Servers API
+     */
+    void forEachServerWithDetails(ResourceHandler<? super Server> handler) throws CloudServersException;
+
     /**
      * Retrieve the server details.
      *
@@ -135,6 +144,39 @@ public interface CloudServers {
      */
     Server createServer(String name, int imageID, int flavorID, Map<String, String> metadata) throws CloudServersException;
 
+    /**
+     * Provision a new server with files injected in its file system.
+     *
+     * @param name        the name of the server to create
+     * @param imageID     the image from which the server should be created
+     * @param flavorID    the kind of hardware to use
+     * @param metadata    the launch metadata
+     * @param personality the files to inject, at most 5
+     * @return the created server with precious information such as admin password for that server
+     * @throws CloudServersException if there is an exception when calling the Cloud Servers API
+     */
+    Server createServer(String name, int imageID, int flavorID, Map<String, String> metadata, Personality personality)
+            throws CloudServersException;
+
+    /**
+     * Provision several servers at once and wait until they are all active or have failed. The servers are created
+     * concurrently, within the limits of the account, and their statuses are tracked by a single poll of the changes
+     * of the account. Servers not active after the provisioning timeout are reported as failed, and interrupting the
+     * calling thread stops the provisioning.
+     *
+     * @param count        the number of servers to create
+     * @param nameTemplate the {@link String#format(String, Object...) format} of the names of the servers, given the
+     *                     index of each server starting at 1, for example <tt>web-%02d</tt>
+     * @param imageID      the image from which the servers should be created
+     * @param flavorID     the kind of hardware to use
+     * @param metadata     the launch metadata of every server
+     * @return the outcome of each server, in index order
+     * @throws CloudServersException if the servers would exceed the limits of the account, or if the limits can't
+     *                               be retrieved
+     */
+    List<ProvisionedServer> createServers(int count, String nameTemplate, int imageID, int flavorID,
+                                          Map<String, String> metadata) throws CloudServersException;
+
     /**
      * Reboot the specified server.
      *
@@ -264,6 +306,16 @@ public interface CloudServers {
      */
     List<Flavor> getFlavorsWithDetails() throws CloudServersException;
 
+    /**
+     * Retrieve the flavors (with details) associated with the Rackspace account one at a time, as the response is
+     * read.
+     *
+     * @param handler called with each flavor; returning false stops the listing
+     * @throws CloudServersException if there is an exception when calling the Cloud Servers API
+     * @see #forEachServerWithDetails(ResourceHandler)
+     */
+    void forEachFlavorWithDetails(ResourceHandler<? super Flavor> handler) throws CloudServersException;
+
     /**
      * Retrieve the flavor details.
      *
@@ -289,6 +341,16 @@ public interface CloudServers {
      */
     List<Image> getImagesWithDetails() throws CloudServersException;
 
+    /**
+     * Retrieve the images (with details) associated with the Rackspace account one at a time, as the response is
+     * read.
+     *
+     * @param handler called with each image; returning false stops the listing
+     * @throws CloudServersException if there is an exception when calling the Cloud Servers API
+     * @see #forEachServerWithDetails(ResourceHandler)
+     */
+    void forEachImageWithDetails(ResourceHandler<? super Image> handler) throws CloudServersException;
+
     /**
      * Retrieve the image details.
      *
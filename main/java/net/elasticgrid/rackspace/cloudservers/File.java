@@ -18,26 +18,103 @@
  */
 package net.elasticgrid.rackspace.cloudservers;
 
+import org.apache.commons.io.IOUtils;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
 
 /**
  * File description.
+ * <p/>
+ * The content of a file is either held in memory, or read from a {@link Source} each time a request carrying it is
+ * sent, and encoded in base64 as it is written to the request. The source of a file is not serialized.
+ *
  * @author Jerome Bernard
  */
 public class File implements Serializable {
     private final String path;
     private final byte[] base64Binary;
+    private final transient Source source;
+
+    /**
+     * Where the content of a file is read from. Sources may be opened several times, as requests are sent again
+     * when the API is busy.
+     */
+    public interface Source {
+        InputStream open() throws IOException;
+    }
 
     public File(String path, byte[] base64Binary) {
         this.path = path;
         this.base64Binary = base64Binary;
+        this.source = null;
+    }
+
+    /**
+     * @param path   the path of the file on the server
+     * @param source where the content of the file is read from
+     */
+    public File(String path, Source source) {
+        this.path = path;
+        this.base64Binary = null;
+        this.source = source;
+    }
+
+    /**
+     * @param path  the path of the file on the server
+     * @param local the local file to read the content from
+     */
+    public File(String path, final java.io.File local) {
+        this(path, new Source() {
+            public InputStream open() throws IOException {
+                return new FileInputStream(local);
+            }
+        });
     }
 
     public String getPath() {
         return path;
     }
 
+    /**
+     * @return the content of the file; a file read from a source is read in memory first
+     */
     public byte[] getBase64Binary() {
-        return base64Binary;
+        if (source == null)
+            return base64Binary;
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        try {
+            writeContent(content);
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't read the content of " + path, e);
+        }
+        return content.toByteArray();
+    }
+
+    /**
+     * @return true if the content of the file is read from a source rather than held in memory
+     */
+    public boolean isStreamed() {
+        return source != null;
+    }
+
+    /**
+     * Writes the content of the file, reading it from its source if it has one.
+     */
+    void writeContent(OutputStream out) throws IOException {
+        if (source == null) {
+            if (base64Binary != null)
+                out.write(base64Binary);
+            return;
+        }
+        InputStream in = source.open();
+        try {
+            IOUtils.copy(in, out);
+        } finally {
+            IOUtils.closeQuietly(in);
+        }
     }
 }
@@ -0,0 +1,221 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.elasticgrid.rackspace.cloudservers;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Snapshot of the resources of an account: servers, images, flavors, shared IP groups and limits, loaded together
+ * and indexed so that the usual joins are lookups. The snapshot never changes once built; compare two of them with
+ * {@link InventoryDiff#between(Inventory, Inventory)} to find what changed in between.
+ *
+ * @see XMLCloudServers#getInventory()
+ */
+public class Inventory {
+    private final long timestamp;
+    private final List<Server> servers;
+    private final List<Image> images;
+    private final List<Flavor> flavors;
+    private final List<SharedIPGroup> groups;
+    private final Limits limits;
+    private final Map<Integer, Server> serversByID;
+    private final Map<Integer, Image> imagesByID;
+    private final Map<Integer, Flavor> flavorsByID;
+    private final Map<Integer, SharedIPGroup> groupsByID;
+    private final Map<Integer, List<SharedIPGroup>> groupsByServer;
+    private final ServerAddressIndex addresses;
+
+    /**
+     * @param servers   the servers, with their details
+     * @param images    the images, with their details
+     * @param flavors   the flavors, with their details
+     * @param groups    the shared IP groups, with their details
+     * @param limits    the limits of the account
+     * @param timestamp when the resources were requested, in milliseconds since the epoch
+     */
+    public Inventory(List<Server> servers, List<Image> images, List<Flavor> flavors, List<SharedIPGroup> groups,
+                     Limits limits, long timestamp) {
+        this.timestamp = timestamp;
+        this.servers = Collections.unmodifiableList(new ArrayList<Server>(servers));
+        this.images = Collections.unmodifiableList(new ArrayList<Image>(images));
+        this.flavors = Collections.unmodifiableList(new ArrayList<Flavor>(flavors));
+        this.groups = Collections.unmodifiableList(new ArrayList<SharedIPGroup>(groups));
+        this.limits = limits;
+
+        serversByID = new LinkedHashMap<Integer, Server>(servers.size() * 2);
+        for (Server server : servers)
+            serversByID.put(server.getId(), server);
+        imagesByID = new LinkedHashMap<Integer, Image>(images.size() * 2);
+        for (Image image : images)
+            imagesByID.put(image.getId(), image);
+        flavorsByID = new LinkedHashMap<Integer, Flavor>(flavors.size() * 2);
+        for (Flavor flavor : flavors)
+            flavorsByID.put(flavor.getId(), flavor);
+        groupsByID = new LinkedHashMap<Integer, SharedIPGroup>(groups.size() * 2);
+        groupsByServer = new HashMap<Integer, List<SharedIPGroup>>();
+        for (SharedIPGroup group : groups) {
+            groupsByID.put(group.getId(), group);
+            if (group.getServerIDs() == null)
+                continue;
+            for (Integer serverID : group.getServerIDs()) {
+                List<SharedIPGroup> memberOf = groupsByServer.get(serverID);
+                if (memberOf == null) {
+                    memberOf = new ArrayList<SharedIPGroup>(1);
+                    groupsByServer.put(serverID, memberOf);
+                }
+                memberOf.add(group);
+            }
+        }
+        addresses = new ServerAddressIndex(servers);
+    }
+
+    /**
+     * @return when the resources were requested, in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public List<Server> getServers() {
+        return servers;
+    }
+
+    public List<Image> getImages() {
+        return images;
+    }
+
+    public List<Flavor> getFlavors() {
+        return flavors;
+    }
+
+    public List<SharedIPGroup> getSharedIPGroups() {
+        return groups;
+    }
+
+    public Limits getLimits() {
+        return limits;
+    }
+
+    /**
+     * @return the server with the given ID, or null if there is none
+     */
+    public Server getServer(int serverID) {
+        return serversByID.get(serverID);
+    }
+
+    /**
+     * @return the image with the given ID, or null if there is none
+     */
+    public Image getImage(int imageID) {
+        return imagesByID.get(imageID);
+    }
+
+    /**
+     * @return the flavor with the given ID, or null if there is none
+     */
+    public Flavor getFlavor(int flavorID) {
+        return flavorsByID.get(flavorID);
+    }
+
+    /**
+     * @return the shared IP group with the given ID, or null if there is none
+     */
+    public SharedIPGroup getSharedIPGroup(int groupID) {
+        return groupsByID.get(groupID);
+    }
+
+    /**
+     * @return the flavor of a server, or null if it is not listed
+     */
+    public Flavor getFlavorOf(Server server) {
+        return server.getFlavorID() == null ? null : flavorsByID.get(server.getFlavorID());
+    }
+
+    /**
+     * @return the image a server was built from, or null if it is not listed anymore
+     */
+    public Image getImageOf(Server server) {
+        return server.getImageID() == null ? null : imagesByID.get(server.getImageID());
+    }
+
+    /**
+     * @return the images taken from a server
+     */
+    public List<Image> getImagesOf(Server server) {
+        List<Image> backups = new ArrayList<Image>();
+        for (Image image : images) {
+            if (server.getId().equals(image.getServerId()))
+                backups.add(image);
+        }
+        return backups;
+    }
+
+    /**
+     * @return the servers having the address, several of them if it is shared
+     */
+    public List<Server> getServersByAddress(InetAddress address) {
+        return lookup(addresses.getServerIDs(address));
+    }
+
+    /**
+     * @param address an IPv4 or IPv6 literal
+     * @return the servers having the address, several of them if it is shared
+     * @throws IllegalArgumentException if the value is not an IP literal
+     */
+    public List<Server> getServersByAddress(String address) {
+        return lookup(addresses.getServerIDs(address));
+    }
+
+    /**
+     * @return the members of a shared IP group; servers not listed in this inventory are left out
+     */
+    public List<Server> getServersOf(SharedIPGroup group) {
+        return group.getServerIDs() == null ? Collections.<Server>emptyList() : lookup(group.getServerIDs());
+    }
+
+    /**
+     * @return the shared IP groups a server is a member of
+     */
+    public List<SharedIPGroup> getSharedIPGroupsOf(Server server) {
+        List<SharedIPGroup> memberOf = groupsByServer.get(server.getId());
+        return memberOf == null ? Collections.<SharedIPGroup>emptyList() : Collections.unmodifiableList(memberOf);
+    }
+
+    private List<Server> lookup(List<Integer> serverIDs) {
+        List<Server> found = new ArrayList<Server>(serverIDs.size());
+        for (Integer serverID : serverIDs) {
+            Server server = serversByID.get(serverID);
+            if (server != null)
+                found.add(server);
+        }
+        return found;
+    }
+
+    @Override
+    public String toString() {
+        return "Inventory{servers=" + servers.size() + ", images=" + images.size() + ", flavors=" + flavors.size()
+                + ", sharedIPGroups=" + groups.size() + ", timestamp=" + timestamp + '}';
+    }
+}
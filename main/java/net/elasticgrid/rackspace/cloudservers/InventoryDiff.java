@@ -0,0 +1,308 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.elasticgrid.rackspace.cloudservers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Structural differences between two {@link Inventory inventories} of an account: the resources added, removed and
+ * changed in between. Computed in memory, so that change detection does not need to load anything again.
+ * <p/>
+ * A server changes when any of its details does, progress included; the remaining requests of the rate limits are
+ * not considered a change of the limits.
+ */
+public class InventoryDiff {
+    private final Changes<Server> servers;
+    private final Changes<Image> images;
+    private final Changes<Flavor> flavors;
+    private final Changes<SharedIPGroup> groups;
+    private final boolean limitsChanged;
+
+    private InventoryDiff(Inventory before, Inventory after) {
+        servers = SERVERS.compare(before, after);
+        images = IMAGES.compare(before, after);
+        flavors = FLAVORS.compare(before, after);
+        groups = GROUPS.compare(before, after);
+        limitsChanged = !limitsOf(before).equals(limitsOf(after));
+    }
+
+    /**
+     * @param before the older inventory
+     * @param after  the newer inventory
+     * @return what changed from the older inventory to the newer one
+     */
+    public static InventoryDiff between(Inventory before, Inventory after) {
+        return new InventoryDiff(before, after);
+    }
+
+    public Changes<Server> getServers() {
+        return servers;
+    }
+
+    public Changes<Image> getImages() {
+        return images;
+    }
+
+    public Changes<Flavor> getFlavors() {
+        return flavors;
+    }
+
+    public Changes<SharedIPGroup> getSharedIPGroups() {
+        return groups;
+    }
+
+    /**
+     * @return true if an absolute limit or the value of a rate limit changed
+     */
+    public boolean isLimitsChanged() {
+        return limitsChanged;
+    }
+
+    /**
+     * @return true if nothing changed
+     */
+    public boolean isEmpty() {
+        return servers.isEmpty() && images.isEmpty() && flavors.isEmpty() && groups.isEmpty() && !limitsChanged;
+    }
+
+    @Override
+    public String toString() {
+        return "InventoryDiff{servers=" + servers + ", images=" + images + ", flavors=" + flavors
+                + ", sharedIPGroups=" + groups + ", limitsChanged=" + limitsChanged + '}';
+    }
+
+    /**
+     * The changes of one kind of resource.
+     */
+    public static class Changes<T> {
+        private final List<T> added;
+        private final List<T> removed;
+        private final List<Change<T>> changed;
+
+        Changes(List<T> added, List<T> removed, List<Change<T>> changed) {
+            this.added = Collections.unmodifiableList(added);
+            this.removed = Collections.unmodifiableList(removed);
+            this.changed = Collections.unmodifiableList(changed);
+        }
+
+        /**
+         * @return the resources only in the newer inventory
+         */
+        public List<T> getAdded() {
+            return added;
+        }
+
+        /**
+         * @return the resources only in the older inventory
+         */
+        public List<T> getRemoved() {
+            return removed;
+        }
+
+        /**
+         * @return the resources in both inventories, but different
+         */
+        public List<Change<T>> getChanged() {
+            return changed;
+        }
+
+        public boolean isEmpty() {
+            return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return "{added=" + added.size() + ", removed=" + removed.size() + ", changed=" + changed.size() + '}';
+        }
+    }
+
+    /**
+     * The two versions of a resource which changed.
+     */
+    public static class Change<T> {
+        private final T before;
+        private final T after;
+
+        Change(T before, T after) {
+            this.before = before;
+            this.after = after;
+        }
+
+        public T getBefore() {
+            return before;
+        }
+
+        public T getAfter() {
+            return after;
+        }
+    }
+
+    /**
+     * How to match and compare one kind of resource.
+     */
+    private static abstract class Comparison<T> {
+        abstract List<T> list(Inventory inventory);
+
+        abstract Integer idOf(T resource);
+
+        abstract T find(Inventory inventory, int id);
+
+        abstract boolean same(T before, T after);
+
+        Changes<T> compare(Inventory before, Inventory after) {
+            List<T> added = new ArrayList<T>();
+            List<T> removed = new ArrayList<T>();
+            List<Change<T>> changed = new ArrayList<Change<T>>();
+            for (T resource : list(after)) {
+                Integer id = idOf(resource);
+                T previous = id == null ? null : find(before, id);
+                if (previous == null)
+                    added.add(resource);
+                else if (!same(previous, resource))
+                    changed.add(new Change<T>(previous, resource));
+            }
+            for (T resource : list(before)) {
+                Integer id = idOf(resource);
+                if (id == null || find(after, id) == null)
+                    removed.add(resource);
+            }
+            return new Changes<T>(added, removed, changed);
+        }
+    }
+
+    private static final Comparison<Server> SERVERS = new Comparison<Server>() {
+        List<Server> list(Inventory inventory) {
+            return inventory.getServers();
+        }
+
+        Integer idOf(Server server) {
+            return server.getId();
+        }
+
+        Server find(Inventory inventory, int id) {
+            return inventory.getServer(id);
+        }
+
+        boolean same(Server before, Server after) {
+            return equal(before.getName(), after.getName())
+                    && equal(before.getImageID(), after.getImageID())
+                    && equal(before.getFlavorID(), after.getFlavorID())
+                    && before.getStatus() == after.getStatus()
+                    && equal(before.getProgress(), after.getProgress())
+                    && equal(before.getMetadata(), after.getMetadata())
+                    && sameAddresses(before.getAddresses(), after.getAddresses());
+        }
+    };
+
+    private static final Comparison<Image> IMAGES = new Comparison<Image>() {
+        List<Image> list(Inventory inventory) {
+            return inventory.getImages();
+        }
+
+        Integer idOf(Image image) {
+            return image.getId();
+        }
+
+        Image find(Inventory inventory, int id) {
+            return inventory.getImage(id);
+        }
+
+        boolean same(Image before, Image after) {
+            return equal(before.getName(), after.getName())
+                    && equal(before.getServerId(), after.getServerId())
+                    && before.getStatus() == after.getStatus()
+                    && equal(before.getProgress(), after.getProgress())
+                    && equal(before.getUpdated(), after.getUpdated());
+        }
+    };
+
+    private static final Comparison<Flavor> FLAVORS = new Comparison<Flavor>() {
+        List<Flavor> list(Inventory inventory) {
+            return inventory.getFlavors();
+        }
+
+        Integer idOf(Flavor flavor) {
+            return flavor.getId();
+        }
+
+        Flavor find(Inventory inventory, int id) {
+            return inventory.getFlavor(id);
+        }
+
+        boolean same(Flavor before, Flavor after) {
+            return equal(before.getName(), after.getName())
+                    && equal(before.getRam(), after.getRam())
+                    && equal(before.getDisk(), after.getDisk());
+        }
+    };
+
+    private static final Comparison<SharedIPGroup> GROUPS = new Comparison<SharedIPGroup>() {
+        List<SharedIPGroup> list(Inventory inventory) {
+            return inventory.getSharedIPGroups();
+        }
+
+        Integer idOf(SharedIPGroup group) {
+            return group.getId();
+        }
+
+        SharedIPGroup find(Inventory inventory, int id) {
+            return inventory.getSharedIPGroup(id);
+        }
+
+        boolean same(SharedIPGroup before, SharedIPGroup after) {
+            return equal(before.getName(), after.getName())
+                    && equal(membersOf(before), membersOf(after));
+        }
+    };
+
+    private static HashSet<Integer> membersOf(SharedIPGroup group) {
+        return group.getServerIDs() == null ? new HashSet<Integer>() : new HashSet<Integer>(group.getServerIDs());
+    }
+
+    private static boolean sameAddresses(Addresses before, Addresses after) {
+        if (before == null || after == null)
+            return before == after;
+        return equal(before.getPublicAddresses(), after.getPublicAddresses())
+                && equal(before.getPrivateAddresses(), after.getPrivateAddresses());
+    }
+
+    /**
+     * @return the absolute limits and the values of the rate limits, by name
+     */
+    private static Map<String, Integer> limitsOf(Inventory inventory) {
+        Map<String, Integer> values = new HashMap<String, Integer>();
+        Limits limits = inventory.getLimits();
+        if (limits == null)
+            return values;
+        for (RateLimit limit : limits.getRateLimits())
+            values.put(limit.getVerb() + " " + limit.getURI() + " per " + limit.getUnit(), limit.getValue());
+        for (AbsoluteLimit limit : limits.getAbsoluteLimits())
+            values.put(limit.getName(), limit.getValue());
+        return values;
+    }
+
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
@@ -107,7 +107,17 @@ class RateLimit implements Serializable {
     }
 
     enum Unit implements Serializable {
-        MINUTE, HOUR, DAY
+        MINUTE(60 * 1000L), HOUR(60 * 60 * 1000L), DAY(24 * 60 * 60 * 1000L);
+
+        private final long millis;
+
+        Unit(long millis) {
+            this.millis = millis;
+        }
+
+        long toMillis() {
+            return millis;
+        }
     }
 }
 
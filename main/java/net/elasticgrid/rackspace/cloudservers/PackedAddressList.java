@@ -0,0 +1,371 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.elasticgrid.rackspace.cloudservers;
+
+import net.elasticgrid.rackspace.cloudservers.internal.Address;
+import java.io.Serializable;
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Immutable list of IP addresses stored as primitives: an <tt>int</tt> per IPv4 address and two <tt>long</tt>s per
+ * IPv6 address. The {@link InetAddress} objects are only created when elements are accessed, and addresses are only
+ * parsed from literals, so building the list never triggers a DNS lookup.
+ * <p/>
+ * IPv4 addresses come first, in the order they were given, followed by the IPv6 ones.
+ */
+public class PackedAddressList extends AbstractList<InetAddress> implements RandomAccess, Serializable {
+    private final int[] ipv4;
+    // high and low 64 bits of each address
+    private final long[] ipv6;
+
+    private static final PackedAddressList EMPTY = new PackedAddressList(new int[0], new long[0]);
+    private static final Logger logger = Logger.getLogger(PackedAddressList.class.getName());
+
+    private PackedAddressList(int[] ipv4, long[] ipv6) {
+        this.ipv4 = ipv4;
+        this.ipv6 = ipv6;
+    }
+
+    /**
+     * Builds the list from the addresses of an API response. Values which are not IP literals are skipped.
+     */
+    static PackedAddressList fromAddresses(List<Address> addresses) {
+        if (addresses == null || addresses.isEmpty())
+            return EMPTY;
+        Builder builder = new Builder(addresses.size());
+        for (Address address : addresses)
+            builder.add(address.getAddr());
+        return builder.build();
+    }
+
+    /**
+     * Builds the list from IP literals. Values which are not IP literals are skipped.
+     *
+     * @param addresses the IPv4 or IPv6 literals
+     * @return the packed addresses
+     */
+    public static PackedAddressList parse(Collection<String> addresses) {
+        Builder builder = new Builder(addresses.size());
+        for (String address : addresses)
+            builder.add(address);
+        return builder.build();
+    }
+
+    /**
+     * Packs existing addresses.
+     */
+    public static PackedAddressList copyOf(Collection<? extends InetAddress> addresses) {
+        if (addresses instanceof PackedAddressList)
+            return (PackedAddressList) addresses;
+        Builder builder = new Builder(addresses.size());
+        for (InetAddress address : addresses)
+            builder.add(address);
+        return builder.build();
+    }
+
+    @Override
+    public int size() {
+        return ipv4.length + ipv6.length / 2;
+    }
+
+    @Override
+    public InetAddress get(int index) {
+        if (index < 0 || index >= size())
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        try {
+            if (index < ipv4.length)
+                return InetAddress.getByAddress(toBytes(ipv4[index]));
+            int i = (index - ipv4.length) * 2;
+            return InetAddress.getByAddress(toBytes(ipv6[i], ipv6[i + 1]));
+        } catch (UnknownHostException e) {
+            // only thrown for addresses of an invalid length
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public int getIPv4Count() {
+        return ipv4.length;
+    }
+
+    /**
+     * @return the IPv4 address at the given position, as an int in network order
+     */
+    public int getIPv4(int index) {
+        return ipv4[index];
+    }
+
+    public int getIPv6Count() {
+        return ipv6.length / 2;
+    }
+
+    /**
+     * @return the high 64 bits of the IPv6 address at the given position
+     */
+    public long getIPv6High(int index) {
+        return ipv6[index * 2];
+    }
+
+    /**
+     * @return the low 64 bits of the IPv6 address at the given position
+     */
+    public long getIPv6Low(int index) {
+        return ipv6[index * 2 + 1];
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (o instanceof Inet4Address) {
+            int address = toInt(((Inet4Address) o).getAddress());
+            for (int ip : ipv4) {
+                if (ip == address)
+                    return true;
+            }
+            return false;
+        } else if (o instanceof Inet6Address) {
+            byte[] bytes = ((Inet6Address) o).getAddress();
+            long high = toLong(bytes, 0), low = toLong(bytes, 8);
+            for (int i = 0; i < ipv6.length; i += 2) {
+                if (ipv6[i] == high && ipv6[i + 1] == low)
+                    return true;
+            }
+            return false;
+        }
+        return false;
+    }
+
+    /**
+     * Parses an IPv4 literal.
+     *
+     * @return the address as an int in network order, or -1 if the value is not an IPv4 literal
+     */
+    static long parseIPv4(String value) {
+        int length = value.length();
+        long address = 0;
+        int parts = 0;
+        int start = 0;
+        while (start <= length) {
+            int end = value.indexOf('.', start);
+            if (end < 0)
+                end = length;
+            if (end == start || end - start > 3 || ++parts > 4)
+                return -1;
+            int part = 0;
+            for (int i = start; i < end; i++) {
+                char c = value.charAt(i);
+                if (c < '0' || c > '9')
+                    return -1;
+                part = part * 10 + (c - '0');
+            }
+            if (part > 255)
+                return -1;
+            address = (address << 8) | part;
+            start = end + 1;
+        }
+        return parts == 4 ? address : -1;
+    }
+
+    /**
+     * Parses an IPv6 literal, including the compressed and IPv4 suffixed forms. A zone index is ignored.
+     *
+     * @param value the literal
+     * @param dest  where to store the high and low 64 bits of the address
+     * @return false if the value is not an IPv6 literal
+     */
+    static boolean parseIPv6(String value, long[] dest) {
+        int zone = value.indexOf('%');
+        if (zone >= 0)
+            value = value.substring(0, zone);
+        int[] groups;
+        int compressed = value.indexOf("::");
+        if (compressed < 0) {
+            groups = parseGroups(value, true);
+            if (groups == null || groups.length != 8)
+                return false;
+        } else {
+            if (value.indexOf("::", compressed + 1) >= 0)
+                return false;
+            int[] head = parseGroups(value.substring(0, compressed), false);
+            int[] tail = parseGroups(value.substring(compressed + 2), true);
+            if (head == null || tail == null || head.length + tail.length > 7)
+                return false;
+            groups = new int[8];
+            System.arraycopy(head, 0, groups, 0, head.length);
+            System.arraycopy(tail, 0, groups, 8 - tail.length, tail.length);
+        }
+        long high = 0, low = 0;
+        for (int i = 0; i < 4; i++) {
+            high = (high << 16) | groups[i];
+            low = (low << 16) | groups[i + 4];
+        }
+        dest[0] = high;
+        dest[1] = low;
+        return true;
+    }
+
+    /**
+     * @param last true if the part ends the literal, the only place where an IPv4 suffix is allowed
+     * @return the 16 bit groups of part of an IPv6 literal, or null if it is invalid
+     */
+    private static int[] parseGroups(String part, boolean last) {
+        if (part.length() == 0)
+            return new int[0];
+        String[] tokens = part.split(":", -1);
+        int count = tokens.length;
+        boolean ipv4Suffix = last && tokens[count - 1].indexOf('.') >= 0;
+        int[] groups = new int[ipv4Suffix ? count + 1 : count];
+        if (groups.length > 8)
+            return null;
+        for (int i = 0; i < count; i++) {
+            String token = tokens[i];
+            if (i == count - 1 && ipv4Suffix) {
+                long ipv4 = parseIPv4(token);
+                if (ipv4 < 0)
+                    return null;
+                groups[i] = (int) (ipv4 >>> 16);
+                groups[i + 1] = (int) (ipv4 & 0xffff);
+                break;
+            }
+            if (token.length() == 0 || token.length() > 4)
+                return null;
+            int group = 0;
+            for (int j = 0; j < token.length(); j++) {
+                int digit = Character.digit(token.charAt(j), 16);
+                if (digit < 0)
+                    return null;
+                group = (group << 4) | digit;
+            }
+            groups[i] = group;
+        }
+        return groups;
+    }
+
+    /**
+     * @return true for IPv4 mapped IPv6 addresses, which {@link InetAddress} turns into IPv4 addresses
+     */
+    static boolean isIPv4Mapped(long high, long low) {
+        return high == 0 && (low >>> 32) == 0xffff;
+    }
+
+    static int toInt(byte[] bytes) {
+        return ((bytes[0] & 0xff) << 24) | ((bytes[1] & 0xff) << 16) | ((bytes[2] & 0xff) << 8) | (bytes[3] & 0xff);
+    }
+
+    static long toLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++)
+            value = (value << 8) | (bytes[offset + i] & 0xff);
+        return value;
+    }
+
+    private static byte[] toBytes(int address) {
+        return new byte[]{(byte) (address >>> 24), (byte) (address >>> 16), (byte) (address >>> 8), (byte) address};
+    }
+
+    private static byte[] toBytes(long high, long low) {
+        byte[] bytes = new byte[16];
+        for (int i = 0; i < 8; i++) {
+            bytes[i] = (byte) (high >>> (56 - 8 * i));
+            bytes[i + 8] = (byte) (low >>> (56 - 8 * i));
+        }
+        return bytes;
+    }
+
+    /**
+     * Accumulates addresses in arrays sized for the expected number of addresses.
+     */
+    private static class Builder {
+        private int[] ipv4;
+        private long[] ipv6 = new long[0];
+        private int ipv4Count = 0;
+        private int ipv6Count = 0;
+        private final long[] parsed = new long[2];
+
+        Builder(int expected) {
+            ipv4 = new int[expected];
+        }
+
+        void add(String value) {
+            if (value == null)
+                return;
+            value = value.trim();
+            long address = parseIPv4(value);
+            if (address >= 0)
+                addIPv4((int) address);
+            else if (!parseIPv6(value, parsed))
+                logger.log(Level.WARNING, "Ignoring {0} which is not an IP address", value);
+            else if (isIPv4Mapped(parsed[0], parsed[1]))
+                addIPv4((int) parsed[1]);
+            else
+                addIPv6(parsed[0], parsed[1]);
+        }
+
+        void add(InetAddress address) {
+            byte[] bytes = address.getAddress();
+            if (bytes.length == 4)
+                addIPv4(toInt(bytes));
+            else
+                addIPv6(toLong(bytes, 0), toLong(bytes, 8));
+        }
+
+        private void addIPv4(int address) {
+            if (ipv4Count == ipv4.length) {
+                int[] grown = new int[ipv4.length * 2 + 1];
+                System.arraycopy(ipv4, 0, grown, 0, ipv4Count);
+                ipv4 = grown;
+            }
+            ipv4[ipv4Count++] = address;
+        }
+
+        private void addIPv6(long high, long low) {
+            if (ipv6Count * 2 == ipv6.length) {
+                long[] grown = new long[ipv6.length * 2 + 2];
+                System.arraycopy(ipv6, 0, grown, 0, ipv6Count * 2);
+                ipv6 = grown;
+            }
+            ipv6[ipv6Count * 2] = high;
+            ipv6[ipv6Count * 2 + 1] = low;
+            ipv6Count++;
+        }
+
+        PackedAddressList build() {
+            if (ipv4Count == 0 && ipv6Count == 0)
+                return EMPTY;
+            int[] v4 = ipv4;
+            if (ipv4Count != v4.length) {
+                v4 = new int[ipv4Count];
+                System.arraycopy(ipv4, 0, v4, 0, ipv4Count);
+            }
+            long[] v6 = ipv6;
+            if (ipv6Count * 2 != v6.length) {
+                v6 = new long[ipv6Count * 2];
+                System.arraycopy(ipv6, 0, v6, 0, ipv6Count * 2);
+            }
+            return new PackedAddressList(v4, v6);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.elasticgrid.rackspace.cloudservers;
+
+import java.io.Serializable;
+
+/**
+ * Outcome of the provisioning of one server of a fleet.
+ *
+ * @see CloudServers#createServers(int, String, int, int, java.util.Map)
+ */
+public class ProvisionedServer implements Serializable {
+    private final String name;
+    private final Server server;
+    private final long createTime;
+    private final long readyTime;
+    private final CloudServersException failure;
+
+    /**
+     * @param name       the name the server was requested with
+     * @param server     the last known details of the server, null if it could not be created
+     * @param createTime how long the API took to accept the server, in milliseconds
+     * @param readyTime  how long the server took to become active or to fail since it was requested, in milliseconds
+     * @param failure    why the server could not be provisioned, null if it is active
+     */
+    public ProvisionedServer(String name, Server server, long createTime, long readyTime, CloudServersException failure) {
+        this.name = name;
+        this.server = server;
+        this.createTime = createTime;
+        this.readyTime = readyTime;
+        this.failure = failure;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the last known details of the server, null if the API did not accept it
+     */
+    public Server getServer() {
+        return server;
+    }
+
+    /**
+     * @return how long the API took to accept the server, in milliseconds
+     */
+    public long getCreateTime() {
+        return createTime;
+    }
+
+    /**
+     * @return how long the server took to become active or to fail since it was requested, in milliseconds; as
+     *         statuses are polled, this is accurate to the poll interval
+     */
+    public long getReadyTime() {
+        return readyTime;
+    }
+
+    public CloudServersException getFailure() {
+        return failure;
+    }
+
+    public boolean isActive() {
+        return failure == null;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("ProvisionedServer");
+        sb.append("{name='").append(name).append('\'');
+        sb.append(", server=").append(server == null ? null : server.getId());
+        sb.append(", createTime=").append(createTime);
+        sb.append(", readyTime=").append(readyTime);
+        sb.append(", failure=").append(failure);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,35 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.elasticgrid.rackspace.cloudservers;
+
+/**
+ * Receives the resources of a listing one at a time, as they are read from the response.
+ *
+ * @param <T> the type of the resources
+ * @see CloudServers#forEachServerWithDetails(ResourceHandler)
+ */
+public interface ResourceHandler<T> {
+    /**
+     * Called with each resource of the listing, in the order of the response.
+     *
+     * @param resource the resource just read
+     * @return false to stop the listing, the remaining resources being skipped
+     */
+    boolean handle(T resource);
+}
@@ -38,18 +38,25 @@ public class Server implements Serializable {
     private final Integer imageID;
     private final Integer flavorID;
     private final Status status;
+    private final Integer progress;
     private final Map<String, String> metadata;
     private final Personality personality;
     private final Addresses addresses;
 
     public Server(Integer id, String name, String adminPass, Integer imageID, Integer flavorID, Server.Status status,
                   Map<String, String> metadata, Addresses addresses, Personality personality) {
+        this(id, name, adminPass, imageID, flavorID, status, null, metadata, addresses, personality);
+    }
+
+    public Server(Integer id, String name, String adminPass, Integer imageID, Integer flavorID, Server.Status status,
+                  Integer progress, Map<String, String> metadata, Addresses addresses, Personality personality) {
         this.id = id;
         this.name = name;
         this.adminPass = adminPass;
         this.imageID = imageID;
         this.flavorID = flavorID;
         this.status = status;
+        this.progress = progress;
         this.metadata = metadata;
         this.addresses = addresses;
         this.personality = personality;
@@ -83,10 +90,21 @@ public class Server implements Serializable {
         return status;
     }
 
+    /**
+     * @return the progress of the current operation on the server, in percent, or null if it is not known
+     */
+    public Integer getProgress() {
+        return progress;
+    }
+
     public Map<String, String> getMetadata() {
         return metadata;
     }
 
+    public Addresses getAddresses() {
+        return addresses;
+    }
+
     public List<java.net.InetAddress> getPublicAddresses() {
         return addresses.getPublicAddresses();
     }
@@ -111,6 +129,7 @@ public class Server implements Serializable {
         sb.append(", imageID=").append(imageID);
         sb.append(", flavorID=").append(flavorID);
         sb.append(", status=").append(status);
+        sb.append(", progress=").append(progress);
         sb.append(", metadata=").append(metadata);
         sb.append(", personality=").append(personality);
         sb.append(", addresses=").append(addresses);
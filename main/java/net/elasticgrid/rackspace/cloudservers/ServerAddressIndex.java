@@ -0,0 +1,209 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.elasticgrid.rackspace.cloudservers;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Reverse index from IP addresses, public or private, to the servers owning them. The index is a snapshot of the
+ * servers it is built from, stored as sorted primitive arrays and searched by bisection.
+ * <p/>
+ * An address shared through a shared IP group belongs to several servers.
+ */
+public class ServerAddressIndex {
+    // sorted by address, then server ID
+    private final int[] ipv4;
+    private final int[] ipv4Servers;
+    private final long[] ipv6;
+    private final int[] ipv6Servers;
+
+    /**
+     * Indexes the addresses of servers retrieved with their details.
+     *
+     * @param servers the servers to index
+     */
+    public ServerAddressIndex(Collection<Server> servers) {
+        int ipv4Count = 0;
+        int ipv6Count = 0;
+        List<PackedAddressList> lists = new ArrayList<PackedAddressList>(servers.size() * 2);
+        List<Integer> owners = new ArrayList<Integer>(servers.size() * 2);
+        for (Server server : servers) {
+            if (server.getId() == null || server.getAddresses() == null)
+                continue;
+            Addresses serverAddresses = server.getAddresses();
+            for (List<InetAddress> addresses : Arrays.asList(serverAddresses.getPublicAddresses(),
+                    serverAddresses.getPrivateAddresses())) {
+                if (addresses == null)
+                    continue;
+                PackedAddressList packed = PackedAddressList.copyOf(addresses);
+                lists.add(packed);
+                owners.add(server.getId());
+                ipv4Count += packed.getIPv4Count();
+                ipv6Count += packed.getIPv6Count();
+            }
+        }
+
+        // IPv4 address in the high bits and server ID in the low bits sort by address, then server
+        long[] entries = new long[ipv4Count];
+        int n = 0;
+        for (int i = 0; i < lists.size(); i++) {
+            PackedAddressList packed = lists.get(i);
+            for (int j = 0; j < packed.getIPv4Count(); j++)
+                entries[n++] = ((long) packed.getIPv4(j) << 32) | (owners.get(i) & 0xffffffffL);
+        }
+        Arrays.sort(entries);
+        ipv4 = new int[ipv4Count];
+        ipv4Servers = new int[ipv4Count];
+        for (int i = 0; i < ipv4Count; i++) {
+            ipv4[i] = (int) (entries[i] >> 32);
+            ipv4Servers[i] = (int) entries[i];
+        }
+
+        final long[] addresses = new long[ipv6Count * 2];
+        final int[] servers6 = new int[ipv6Count];
+        n = 0;
+        for (int i = 0; i < lists.size(); i++) {
+            PackedAddressList packed = lists.get(i);
+            for (int j = 0; j < packed.getIPv6Count(); j++) {
+                addresses[n * 2] = packed.getIPv6High(j);
+                addresses[n * 2 + 1] = packed.getIPv6Low(j);
+                servers6[n++] = owners.get(i);
+            }
+        }
+        Integer[] order = new Integer[ipv6Count];
+        for (int i = 0; i < ipv6Count; i++)
+            order[i] = i;
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                int c = compare6(addresses[a * 2], addresses[a * 2 + 1], addresses[b * 2], addresses[b * 2 + 1]);
+                return c != 0 ? c : (servers6[a] < servers6[b] ? -1 : (servers6[a] == servers6[b] ? 0 : 1));
+            }
+        });
+        ipv6 = new long[ipv6Count * 2];
+        ipv6Servers = new int[ipv6Count];
+        for (int i = 0; i < ipv6Count; i++) {
+            ipv6[i * 2] = addresses[order[i] * 2];
+            ipv6[i * 2 + 1] = addresses[order[i] * 2 + 1];
+            ipv6Servers[i] = servers6[order[i]];
+        }
+    }
+
+    /**
+     * @return the ID of the server owning the address, the lowest one if the address is shared, or null if no indexed
+     *         server has it
+     */
+    public Integer getServerID(InetAddress address) {
+        List<Integer> ids = getServerIDs(address);
+        return ids.isEmpty() ? null : ids.get(0);
+    }
+
+    /**
+     * Looks up an address given as a literal, without any DNS lookup.
+     *
+     * @param address an IPv4 or IPv6 literal
+     * @return the ID of the server owning the address, or null if no indexed server has it
+     * @throws IllegalArgumentException if the value is not an IP literal
+     */
+    public Integer getServerID(String address) {
+        List<Integer> ids = getServerIDs(address);
+        return ids.isEmpty() ? null : ids.get(0);
+    }
+
+    /**
+     * @return the IDs of the servers sharing the address, in ascending order
+     */
+    public List<Integer> getServerIDs(InetAddress address) {
+        byte[] bytes = address.getAddress();
+        if (address instanceof Inet4Address)
+            return lookupIPv4(PackedAddressList.toInt(bytes));
+        return lookupIPv6(PackedAddressList.toLong(bytes, 0), PackedAddressList.toLong(bytes, 8));
+    }
+
+    /**
+     * @return the IDs of the servers sharing the address given as a literal, in ascending order
+     * @throws IllegalArgumentException if the value is not an IP literal
+     */
+    public List<Integer> getServerIDs(String address) {
+        long ip = PackedAddressList.parseIPv4(address);
+        if (ip >= 0)
+            return lookupIPv4((int) ip);
+        long[] parsed = new long[2];
+        if (PackedAddressList.parseIPv6(address, parsed)) {
+            if (PackedAddressList.isIPv4Mapped(parsed[0], parsed[1]))
+                return lookupIPv4((int) parsed[1]);
+            return lookupIPv6(parsed[0], parsed[1]);
+        }
+        throw new IllegalArgumentException("Invalid IP address " + address);
+    }
+
+    /**
+     * @return the number of indexed addresses
+     */
+    public int size() {
+        return ipv4.length + ipv6Servers.length;
+    }
+
+    private List<Integer> lookupIPv4(int address) {
+        int low = 0, high = ipv4.length;
+        // find the first entry which is not lower than the address
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ipv4[mid] < address)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        if (low == ipv4.length || ipv4[low] != address)
+            return Collections.emptyList();
+        List<Integer> ids = new ArrayList<Integer>(1);
+        for (int i = low; i < ipv4.length && ipv4[i] == address; i++)
+            ids.add(ipv4Servers[i]);
+        return ids;
+    }
+
+    private List<Integer> lookupIPv6(long addressHigh, long addressLow) {
+        int low = 0, high = ipv6Servers.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare6(ipv6[mid * 2], ipv6[mid * 2 + 1], addressHigh, addressLow) < 0)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        List<Integer> ids = new ArrayList<Integer>(1);
+        for (int i = low; i < ipv6Servers.length && ipv6[i * 2] == addressHigh && ipv6[i * 2 + 1] == addressLow; i++)
+            ids.add(ipv6Servers[i]);
+        return ids;
+    }
+
+    private static int compare6(long aHigh, long aLow, long bHigh, long bLow) {
+        if (aHigh != bHigh)
+            return aHigh < bHigh ? -1 : 1;
+        if (aLow != bLow)
+            return aLow < bLow ? -1 : 1;
+        return 0;
+    }
+}
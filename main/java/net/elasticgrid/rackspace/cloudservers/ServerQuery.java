@@ -0,0 +1,75 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.elasticgrid.rackspace.cloudservers;
+
+import net.elasticgrid.rackspace.common.RequestFuture;
+
+/**
+ * A request made for each server of a fan-out query.
+ *
+ * @param <T> the type of the result of the request
+ * @see XMLCloudServers#queryServers(java.util.Collection, ServerQuery, ServerQuery.Listener)
+ */
+public interface ServerQuery<T> {
+    /**
+     * Queries the backup schedule of a server.
+     */
+    ServerQuery<BackupSchedule> BACKUP_SCHEDULE = new ServerQuery<BackupSchedule>() {
+        public RequestFuture<BackupSchedule> query(AsyncCloudServers api, int serverID) {
+            return api.getBackupSchedule(serverID);
+        }
+    };
+
+    /**
+     * Queries the addresses of a server.
+     */
+    ServerQuery<Addresses> ADDRESSES = new ServerQuery<Addresses>() {
+        public RequestFuture<Addresses> query(AsyncCloudServers api, int serverID) {
+            return api.getServerAddresses(serverID);
+        }
+    };
+
+    /**
+     * Queries the details of a server.
+     */
+    ServerQuery<Server> DETAILS = new ServerQuery<Server>() {
+        public RequestFuture<Server> query(AsyncCloudServers api, int serverID) {
+            return api.getServerDetails(serverID);
+        }
+    };
+
+    /**
+     * Starts the request for a server.
+     *
+     * @param api      the API to send the request through
+     * @param serverID the ID of the server
+     * @return the future result for the server
+     */
+    RequestFuture<T> query(AsyncCloudServers api, int serverID);
+
+    /**
+     * Notified of the result of each server as soon as it is known. A failure only concerns its server: the other
+     * servers are still queried.
+     */
+    interface Listener<T> {
+        void onResult(int serverID, T result);
+
+        void onFailure(int serverID, Throwable failure);
+    }
+}
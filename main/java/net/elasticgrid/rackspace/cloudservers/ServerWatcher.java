@@ -0,0 +1,409 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.elasticgrid.rackspace.cloudservers;
+
+import net.elasticgrid.rackspace.cloudservers.Server.Status;
+import net.elasticgrid.rackspace.common.RequestFuture;
+import net.elasticgrid.rackspace.common.RequestFuture.Callback;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Watches the servers of an account and notifies subscribers of their status and progress changes. A single poll of
+ * the servers changed since the previous one serves every subscriber, however many servers they watch.
+ * <p/>
+ * The poll interval adapts to the number of pending transitions, that is servers in a transient status such as
+ * {@link Status#BUILD} plus servers someone waits for: it is the maximum interval when nothing is pending, shrinking
+ * towards the minimum interval as transitions pile up. Polling only runs while there are subscribers.
+ *
+ * @see XMLCloudServers#getWatcher()
+ */
+public class ServerWatcher {
+    private static final Logger logger = Logger.getLogger(ServerWatcher.class.getName());
+
+    /**
+     * Statuses a server stays in until someone acts on it.
+     */
+    private static final EnumSet<Status> STABLE = EnumSet.of(Status.ACTIVE, Status.SUSPENDED, Status.ERROR,
+            Status.DELETED, Status.VERIFY_RESIZE, Status.VERIFY_MOVE, Status.RESCUE, Status.UNKNOWN);
+
+    /**
+     * Changes made on the API just before a poll may be dated after it by a clock running behind ours, so each poll
+     * asks for the changes since a little before the previous one. Changes seen twice are ignored.
+     */
+    private static final long CLOCK_SKEW = TimeUnit.SECONDS.toMillis(60);
+
+    private final XMLCloudServers servers;
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<Subscription>();
+    // last known state of the servers of the account, by ID
+    private final Map<Integer, Server> known = new HashMap<Integer, Server>();
+    private long minPollInterval = TimeUnit.SECONDS.toMillis(20);
+    private long maxPollInterval = TimeUnit.MINUTES.toMillis(2);
+    private long lastPoll = 0;
+    private boolean polling = false;
+    private int waiting = 0;
+    // longest poll intervals asked for by the callers waiting for a status, with how many callers asked for each
+    private final TreeMap<Long, Integer> intervalCaps = new TreeMap<Long, Integer>();
+
+    /**
+     * Notified of the changes of the servers it subscribed to.
+     */
+    public interface Listener {
+        void serverChanged(Change change);
+    }
+
+    /**
+     * A change of the status or of the progress of a server.
+     */
+    public static class Change {
+        private final Server server;
+        private final Status previousStatus;
+        private final Integer previousProgress;
+
+        Change(Server server, Server previous) {
+            this.server = server;
+            this.previousStatus = previous == null ? null : previous.getStatus();
+            this.previousProgress = previous == null ? null : previous.getProgress();
+        }
+
+        /**
+         * @return the details of the server after the change
+         */
+        public Server getServer() {
+            return server;
+        }
+
+        /**
+         * @return the status of the server before the change, null if the server was not known before
+         */
+        public Status getPreviousStatus() {
+            return previousStatus;
+        }
+
+        public Integer getPreviousProgress() {
+            return previousProgress;
+        }
+
+        public boolean isStatusChange() {
+            return previousStatus != server.getStatus();
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder();
+            sb.append("Change");
+            sb.append("{server=").append(server.getId());
+            sb.append(", status=").append(previousStatus).append(" -> ").append(server.getStatus());
+            sb.append(", progress=").append(previousProgress).append(" -> ").append(server.getProgress());
+            sb.append('}');
+            return sb.toString();
+        }
+    }
+
+    /**
+     * A listener and the changes it is interested in.
+     */
+    public class Subscription {
+        private final Listener listener;
+        private final Integer serverID;
+        private final Status status;
+
+        Subscription(Listener listener, Integer serverID, Status status) {
+            this.listener = listener;
+            this.serverID = serverID;
+            this.status = status;
+        }
+
+        /**
+         * Stops notifying the listener.
+         */
+        public void cancel() {
+            subscriptions.remove(this);
+        }
+
+        boolean accepts(Change change) {
+            return (serverID == null || serverID.equals(change.getServer().getId()))
+                    && (status == null || status == change.getServer().getStatus());
+        }
+    }
+
+    ServerWatcher(XMLCloudServers servers) {
+        this.servers = servers;
+    }
+
+    /**
+     * Notifies a listener of every change of the servers of the account.
+     */
+    public Subscription subscribe(Listener listener) {
+        return subscribe(listener, null, null);
+    }
+
+    /**
+     * Notifies a listener of the changes of a server.
+     */
+    public Subscription subscribe(int serverID, Listener listener) {
+        return subscribe(listener, serverID, null);
+    }
+
+    /**
+     * Notifies a listener of the servers going to a status.
+     */
+    public Subscription subscribe(Status status, Listener listener) {
+        return subscribe(listener, null, status);
+    }
+
+    /**
+     * Notifies a listener of the changes matching a filter.
+     *
+     * @param listener the listener to notify
+     * @param serverID the server to watch, or null for all the servers of the account
+     * @param status   the status the servers have to go to, or null for any change
+     * @return the subscription, to cancel once the listener is no longer interested
+     */
+    public Subscription subscribe(Listener listener, Integer serverID, Status status) {
+        Subscription subscription = new Subscription(listener, serverID, status);
+        subscriptions.add(subscription);
+        startPolling();
+        return subscription;
+    }
+
+    /**
+     * Waits for a server to reach a status.
+     *
+     * @param serverID the ID of the server to watch
+     * @param status   the status to wait for
+     * @return the future server details, once the server has the expected status; it fails if the server goes in
+     *         {@link Status#ERROR} or is deleted instead
+     */
+    public RequestFuture<Server> waitForStatus(int serverID, Status status) {
+        return waitForStatus(serverID, status, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Waits for a server to reach a status, polling at least at a given interval meanwhile.
+     *
+     * @param serverID    the ID of the server to watch
+     * @param status      the status to wait for
+     * @param maxInterval the longest delay between two polls while waiting, 0 to leave it to the watcher
+     * @param unit        the unit of the delay
+     * @return the future server details, once the server has the expected status; it fails if the server is or
+     *         goes in {@link Status#ERROR} or is deleted instead
+     */
+    public RequestFuture<Server> waitForStatus(final int serverID, final Status status, long maxInterval,
+                                               TimeUnit unit) {
+        final RequestFuture<Server> result = new RequestFuture<Server>();
+        final Subscription subscription = subscribe(serverID, new Listener() {
+            public void serverChanged(Change change) {
+                check(change.getServer(), status, result);
+            }
+        });
+        final Long cap = maxInterval > 0 ? unit.toMillis(maxInterval) : null;
+        synchronized (this) {
+            waiting++;
+            if (cap != null) {
+                Integer count = intervalCaps.get(cap);
+                intervalCaps.put(cap, count == null ? 1 : count + 1);
+            }
+        }
+        result.addListener(new Runnable() {
+            public void run() {
+                subscription.cancel();
+                synchronized (ServerWatcher.this) {
+                    waiting--;
+                    if (cap != null) {
+                        int count = intervalCaps.get(cap);
+                        if (count == 1)
+                            intervalCaps.remove(cap);
+                        else
+                            intervalCaps.put(cap, count - 1);
+                    }
+                }
+            }
+        }, RequestFuture.SAME_THREAD);
+
+        Server current;
+        synchronized (this) {
+            current = known.get(serverID);
+        }
+        if (current != null) {
+            check(current, status, result);
+        } else {
+            // not seen by the watcher yet
+            servers.getServerDetailsAsync(serverID).addCallback(new Callback<Server>() {
+                public void onSuccess(Server server) {
+                    update(server);
+                    check(server, status, result);
+                }
+
+                public void onFailure(Throwable failure) {
+                    result.setException(failure);
+                }
+            }, RequestFuture.SAME_THREAD);
+        }
+        return result;
+    }
+
+    /**
+     * Completes the wait for a status if the server has it, and fails it if the server can no longer reach it.
+     */
+    private static void check(Server server, Status status, RequestFuture<Server> result) {
+        if (server.getStatus() == status)
+            result.set(server);
+        else if (server.getStatus() == Status.ERROR || server.getStatus() == Status.DELETED)
+            result.setException(new CloudServersException("Server " + server.getId() + " is "
+                    + server.getStatus() + " while waiting for status " + status));
+    }
+
+    /**
+     * @return the number of servers in a transient status plus the number of servers waited for
+     */
+    public synchronized int getPendingTransitions() {
+        int pending = waiting;
+        for (Server server : known.values()) {
+            if (server.getStatus() != null && !STABLE.contains(server.getStatus()))
+                pending++;
+        }
+        return pending;
+    }
+
+    /**
+     * @return the delay until the next poll, given the pending transitions and the callers waiting for a status
+     */
+    synchronized long getPollInterval() {
+        int pending = getPendingTransitions();
+        long interval = Math.max(minPollInterval, maxPollInterval / (pending + 1));
+        if (!intervalCaps.isEmpty())
+            interval = Math.min(interval, intervalCaps.firstKey());
+        return interval;
+    }
+
+    /**
+     * Sets the bounds of the poll interval, 20 seconds and 2 minutes by default. The API limits how often the
+     * changes of the servers can be retrieved, and polls are paced accordingly whatever the minimum interval.
+     */
+    public synchronized void setPollInterval(long min, long max, TimeUnit unit) {
+        if (min <= 0 || max < min)
+            throw new IllegalArgumentException("Invalid poll interval bounds: " + min + ", " + max);
+        this.minPollInterval = unit.toMillis(min);
+        this.maxPollInterval = unit.toMillis(max);
+    }
+
+    private void startPolling() {
+        synchronized (this) {
+            if (polling)
+                return;
+            polling = true;
+        }
+        poll();
+    }
+
+    private void poll() {
+        if (subscriptions.isEmpty()) {
+            synchronized (this) {
+                polling = false;
+            }
+            // a subscription may have come in meanwhile
+            if (!subscriptions.isEmpty())
+                startPolling();
+            return;
+        }
+        final long start = System.currentTimeMillis();
+        RequestFuture<List<Server>> changed;
+        synchronized (this) {
+            changed = lastPoll == 0
+                    ? servers.getServersWithDetailsAsync()
+                    : servers.getServersChangedSinceAsync(lastPoll - CLOCK_SKEW);
+        }
+        changed.addCallback(new Callback<List<Server>>() {
+            public void onSuccess(List<Server> changes) {
+                synchronized (ServerWatcher.this) {
+                    lastPoll = start;
+                }
+                for (Server server : changes)
+                    update(server);
+                scheduleNextPoll();
+            }
+
+            public void onFailure(Throwable failure) {
+                logger.log(Level.WARNING, "Can't retrieve the server changes, will try again", failure);
+                scheduleNextPoll();
+            }
+        }, RequestFuture.SAME_THREAD);
+    }
+
+    private void scheduleNextPoll() {
+        long interval = getPollInterval();
+        logger.log(Level.FINE, "Next server changes poll in {0} ms", interval);
+        servers.scheduleTask(new Runnable() {
+            public void run() {
+                poll();
+            }
+        }, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Records the details of a server learnt from another response, such as the one of its creation, so that waiting
+     * for the server does not load it first, which could fail as servers are not always listed right away.
+     */
+    void seen(Server server) {
+        if (server.getStatus() != null)
+            update(server);
+    }
+
+    /**
+     * Records the latest details of a server, and notifies the subscribers if its status or progress changed.
+     */
+    private void update(Server server) {
+        Server previous;
+        synchronized (this) {
+            previous = known.get(server.getId());
+            if (previous != null && previous.getStatus() == server.getStatus()
+                    && equal(previous.getProgress(), server.getProgress()))
+                return;
+            // deleted servers are kept, so that seeing their deletion again is not a change
+            known.put(server.getId(), server);
+        }
+        Change change = new Change(server, previous);
+        logger.log(Level.FINE, "Server changed: {0}", change);
+        List<Subscription> notified = new ArrayList<Subscription>();
+        for (Subscription subscription : subscriptions) {
+            if (subscription.accepts(change))
+                notified.add(subscription);
+        }
+        for (Subscription subscription : notified) {
+            try {
+                subscription.listener.serverChanged(change);
+            } catch (RuntimeException e) {
+                logger.log(Level.SEVERE, "Server change listener failed on " + change, e);
+            }
+        }
+    }
+
+    private static boolean equal(Integer a, Integer b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
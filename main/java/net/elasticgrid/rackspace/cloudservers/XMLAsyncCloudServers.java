@@ -0,0 +1,256 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.elasticgrid.rackspace.cloudservers;
+
+import net.elasticgrid.rackspace.common.RackspaceException;
+import net.elasticgrid.rackspace.common.RequestFuture;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Asynchronous implementation based on the XML documents. Requests are sent from the executor of the underlying
+ * {@link XMLCloudServers} connection, and share its HTTP connection pool, authentication and retry policy; use
+ * {@link XMLCloudServers#setExecutor(java.util.concurrent.ExecutorService)} to choose the threads they run on.
+ */
+public class XMLAsyncCloudServers implements AsyncCloudServers {
+    private final XMLCloudServers servers;
+
+    /**
+     * Initializes the Rackspace Cloud Servers connection with the Rackspace login information.
+     *
+     * @param username the Rackspace username
+     * @param apiKey   the Rackspace API key
+     * @throws RackspaceException if the credentials are invalid
+     * @throws IOException        if there is a network issue
+     */
+    public XMLAsyncCloudServers(String username, String apiKey) throws RackspaceException, IOException {
+        this(new XMLCloudServers(username, apiKey));
+    }
+
+    /**
+     * Sends requests through an existing connection, so that the synchronous and asynchronous APIs can be mixed.
+     *
+     * @param servers the connection to use
+     */
+    public XMLAsyncCloudServers(XMLCloudServers servers) {
+        this.servers = servers;
+    }
+
+    /**
+     * @return the connection requests are sent through
+     */
+    public XMLCloudServers getConnection() {
+        return servers;
+    }
+
+    public RequestFuture<List<Server>> getServers() {
+        return servers.getServersAsync();
+    }
+
+    public RequestFuture<List<Server>> getServersWithDetails() {
+        return servers.getServersWithDetailsAsync();
+    }
+
+    public RequestFuture<Void> forEachServerWithDetails(ResourceHandler<? super Server> handler) {
+        return servers.forEachServerWithDetailsAsync(handler);
+    }
+
+    public RequestFuture<Inventory> getInventory() {
+        return servers.getInventoryAsync();
+    }
+
+    public <T> RequestFuture<Integer> queryServers(Collection<Integer> serverIDs, ServerQuery<T> query,
+                                                   ServerQuery.Listener<? super T> listener) {
+        return servers.queryServersAsync(serverIDs, query, listener);
+    }
+
+    public RequestFuture<Server> getServerDetails(int serverID) {
+        return servers.getServerDetailsAsync(serverID);
+    }
+
+    public RequestFuture<Server> waitForStatus(int serverID, Server.Status status, long pollInterval, TimeUnit unit) {
+        return servers.waitForStatusAsync(serverID, status, pollInterval, unit);
+    }
+
+    public RequestFuture<Addresses> getServerAddresses(int serverID) {
+        return servers.getServerAddressesAsync(serverID);
+    }
+
+    public RequestFuture<List<InetAddress>> getServerPublicAddresses(int serverID) {
+        return servers.getServerPublicAddressesAsync(serverID);
+    }
+
+    public RequestFuture<List<InetAddress>> getServerPrivateAddresses(int serverID) {
+        return servers.getServerPrivateAddressesAsync(serverID);
+    }
+
+    public RequestFuture<Void> shareAddress(int groupID, int serverID, InetAddress address) {
+        return servers.shareAddressAsync(groupID, serverID, address, false);
+    }
+
+    public RequestFuture<Void> shareAddress(int groupID, int serverID, InetAddress address, boolean configureServer) {
+        return servers.shareAddressAsync(groupID, serverID, address, configureServer);
+    }
+
+    public RequestFuture<Void> unshareAddress(int serverID, InetAddress address) {
+        return servers.unshareAddressAsync(serverID, address);
+    }
+
+    public RequestFuture<Server> createServer(String name, int imageID, int flavorID) {
+        return servers.createServerAsync(name, imageID, flavorID, null);
+    }
+
+    public RequestFuture<Server> createServer(String name, int imageID, int flavorID, Map<String, String> metadata) {
+        return servers.createServerAsync(name, imageID, flavorID, metadata);
+    }
+
+    public RequestFuture<Server> createServer(String name, int imageID, int flavorID, Map<String, String> metadata,
+                                              Personality personality) {
+        return servers.createServerAsync(name, imageID, flavorID, metadata, personality);
+    }
+
+    public RequestFuture<List<ProvisionedServer>> createServers(int count, String nameTemplate, int imageID,
+                                                                int flavorID, Map<String, String> metadata) {
+        return servers.createServersAsync(count, nameTemplate, imageID, flavorID, metadata);
+    }
+
+    public RequestFuture<Void> rebootServer(int serverID) {
+        return servers.rebootServerAsync(serverID, RebootType.SOFT);
+    }
+
+    public RequestFuture<Void> rebootServer(int serverID, RebootType type) {
+        return servers.rebootServerAsync(serverID, type);
+    }
+
+    public RequestFuture<Void> rebuildServer(int serverID) {
+        return servers.rebuildServerAsync(serverID);
+    }
+
+    public RequestFuture<Void> rebuildServer(int serverID, int imageID) {
+        return servers.rebuildServerAsync(serverID, imageID);
+    }
+
+    public RequestFuture<Void> resizeServer(int serverID, int flavorID) {
+        return servers.resizeServerAsync(serverID, flavorID);
+    }
+
+    public RequestFuture<Void> confirmResize(int serverID) {
+        return servers.confirmResizeAsync(serverID);
+    }
+
+    public RequestFuture<Void> revertResize(int serverID) {
+        return servers.revertResizeAsync(serverID);
+    }
+
+    public RequestFuture<Void> updateServerName(int serverID, String name) {
+        return servers.updateServerNameAndPasswordAsync(serverID, name, null);
+    }
+
+    public RequestFuture<Void> updateServerPassword(int serverID, String password) {
+        return servers.updateServerNameAndPasswordAsync(serverID, null, password);
+    }
+
+    public RequestFuture<Void> updateServerNameAndPassword(int serverID, String name, String password) {
+        return servers.updateServerNameAndPasswordAsync(serverID, name, password);
+    }
+
+    public RequestFuture<Void> deleteServer(int serverID) {
+        return servers.deleteServerAsync(serverID);
+    }
+
+    public RequestFuture<Limits> getLimits() {
+        return servers.getLimitsAsync();
+    }
+
+    public RequestFuture<List<Flavor>> getFlavors() {
+        return servers.getFlavorsAsync();
+    }
+
+    public RequestFuture<List<Flavor>> getFlavorsWithDetails() {
+        return servers.getFlavorsWithDetailsAsync();
+    }
+
+    public RequestFuture<Void> forEachFlavorWithDetails(ResourceHandler<? super Flavor> handler) {
+        return servers.forEachFlavorWithDetailsAsync(handler);
+    }
+
+    public RequestFuture<Flavor> getFlavorDetails(int flavorID) {
+        return servers.getFlavorDetailsAsync(flavorID);
+    }
+
+    public RequestFuture<List<Image>> getImages() {
+        return servers.getImagesAsync();
+    }
+
+    public RequestFuture<List<Image>> getImagesWithDetails() {
+        return servers.getImagesWithDetailsAsync();
+    }
+
+    public RequestFuture<Void> forEachImageWithDetails(ResourceHandler<? super Image> handler) {
+        return servers.forEachImageWithDetailsAsync(handler);
+    }
+
+    public RequestFuture<Image> getImageDetails(int imageID) {
+        return servers.getImageDetailsAsync(imageID);
+    }
+
+    public RequestFuture<Image> createImage(String name, int serverID) {
+        return servers.createImageAsync(name, serverID);
+    }
+
+    public RequestFuture<BackupSchedule> getBackupSchedule(int serverID) {
+        return servers.getBackupScheduleAsync(serverID);
+    }
+
+    public RequestFuture<Void> scheduleBackup(int serverID, BackupSchedule schedule) {
+        return servers.scheduleBackupAsync(serverID, schedule);
+    }
+
+    public RequestFuture<Void> deleteBackupSchedule(int serverID) {
+        return servers.deleteBackupScheduleAsync(serverID);
+    }
+
+    public RequestFuture<List<SharedIPGroup>> getSharedIPGroups() {
+        return servers.getSharedIPGroupsAsync();
+    }
+
+    public RequestFuture<List<SharedIPGroup>> getSharedIPGroupsWithDetails() {
+        return servers.getSharedIPGroupsWithDetailsAsync();
+    }
+
+    public RequestFuture<SharedIPGroup> getSharedIPGroup(int groupID) {
+        return servers.getSharedIPGroupAsync(groupID);
+    }
+
+    public RequestFuture<SharedIPGroup> createSharedIPGroup(String name) {
+        return servers.createSharedIPGroupAsync(name, 0);
+    }
+
+    public RequestFuture<SharedIPGroup> createSharedIPGroup(String name, int serverID) {
+        return servers.createSharedIPGroupAsync(name, serverID);
+    }
+
+    public RequestFuture<Void> deleteSharedIPGroup(int groupID) {
+        return servers.deleteSharedIPGroupAsync(groupID);
+    }
+}
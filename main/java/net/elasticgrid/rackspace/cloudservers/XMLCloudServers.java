@@ -35,8 +35,15 @@ import net.elasticgrid.rackspace.cloudservers.internal.Servers;
 import net.elasticgrid.rackspace.cloudservers.internal.SharedIpGroup;
 import net.elasticgrid.rackspace.cloudservers.internal.SharedIpGroups;
 import net.elasticgrid.rackspace.cloudservers.internal.ShareIp;
+import net.elasticgrid.rackspace.common.BindingContextPool;
+import net.elasticgrid.rackspace.common.ConnectionRegistry;
 import net.elasticgrid.rackspace.common.RackspaceConnection;
 import net.elasticgrid.rackspace.common.RackspaceException;
+import net.elasticgrid.rackspace.common.RateLimiter;
+import net.elasticgrid.rackspace.common.RequestFuture;
+import net.elasticgrid.rackspace.common.RequestFuture.AsyncTransformer;
+import net.elasticgrid.rackspace.common.RequestFuture.Callback;
+import net.elasticgrid.rackspace.common.RequestFuture.Transformer;
 import org.apache.http.HttpException;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
@@ -44,32 +51,48 @@ import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.ContentProducer;
 import org.apache.http.entity.EntityTemplate;
-import org.jibx.runtime.BindingDirectory;
-import org.jibx.runtime.IBindingFactory;
-import org.jibx.runtime.IMarshallingContext;
 import org.jibx.runtime.JiBXException;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.InetAddress;
-import java.net.MalformedURLException;
-import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Collections;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Implementation based on the XML documents.
+ * <p/>
+ * Every operation is implemented asynchronously, the synchronous ones waiting for the asynchronous ones to complete.
+ * See {@link XMLAsyncCloudServers} for the asynchronous API.
  *
  * @author Jerome Bernard
  */
 public class XMLCloudServers extends RackspaceConnection implements CloudServers {
     private static final Logger logger = Logger.getLogger(XMLCloudServers.class.getName());
+    private static final int MAX_PERSONALITY_FILES = 5;
+    private volatile int maxConcurrentCreates = 5;
+    private volatile long fleetPollInterval = TimeUnit.SECONDS.toMillis(10);
+    private volatile long provisioningTimeout = TimeUnit.MINUTES.toMillis(30);
+    private volatile int maxConcurrentQueries = 10;
+    private XMLAsyncCloudServers asyncView;
+    private ServerWatcher watcher;
 
     /**
      * Initializes the Rackspace Cloud Servers connection with the Rackspace login information.
@@ -84,46 +107,130 @@ public class XMLCloudServers extends RackspaceConnection implements CloudServers
         super(username, apiKey);
     }
 
+    /**
+     * Initializes the Rackspace Cloud Servers connection of an account managed along with other accounts.
+     *
+     * @param username the Rackspace username
+     * @param apiKey   the Rackspace API key
+     * @param authURL  the URL of the authentication endpoint, {@link #API_AUTH_URL} for the US cloud
+     * @param registry the registry sharing HTTP connections, threads and tokens between accounts
+     * @throws RackspaceException if the credentials are invalid
+     * @throws IOException        if there is a network issue
+     */
+    public XMLCloudServers(String username, String apiKey, String authURL, ConnectionRegistry registry)
+            throws RackspaceException, IOException {
+        super(username, apiKey, authURL, registry);
+    }
+
     public List<Server> getServers() throws CloudServersException {
+        return await(getServersAsync());
+    }
+
+    RequestFuture<List<Server>> getServersAsync() {
         logger.info("Retrieving servers information...");
         HttpGet request = new HttpGet(getServerManagementURL() + "/servers");
-        return buildListOfServers(request);
+        return makeRequestIntAsync(request, Servers.class).transform(TO_SERVERS);
     }
 
     public List<Server> getServersWithDetails() throws CloudServersException {
+        return await(getServersWithDetailsAsync());
+    }
+
+    RequestFuture<List<Server>> getServersWithDetailsAsync() {
         logger.info("Retrieving detailed servers information...");
         HttpGet request = new HttpGet(getServerManagementURL() + "/servers/detail");
-        return buildListOfServers(request);
+        return makeRequestIntAsync(request, Servers.class).transform(TO_SERVERS);
+    }
+
+    public void forEachServerWithDetails(ResourceHandler<? super Server> handler) throws CloudServersException {
+        await(forEachServerWithDetailsAsync(handler));
+    }
+
+    RequestFuture<Void> forEachServerWithDetailsAsync(final ResourceHandler<? super Server> handler) {
+        logger.info("Streaming detailed servers information...");
+        HttpGet request = new HttpGet(getServerManagementURL() + "/servers/detail");
+        return makeRequestIntAsync(request, new ListingReader<net.elasticgrid.rackspace.cloudservers.internal.Server>(
+                net.elasticgrid.rackspace.cloudservers.internal.Server.class, "server") {
+            public boolean handle(net.elasticgrid.rackspace.cloudservers.internal.Server server) {
+                return handler.handle(buildServer(server));
+            }
+        });
+    }
+
+    /**
+     * Retrieves the details of the servers which changed since a given time, deleted servers included.
+     *
+     * @param since the time of the last known change, in milliseconds since the epoch
+     * @return the future list of changed servers, empty if none changed
+     */
+    RequestFuture<List<Server>> getServersChangedSinceAsync(long since) {
+        logger.log(Level.FINE, "Retrieving servers changed since {0}...", since);
+        HttpGet request = new HttpGet(getServerManagementURL() + "/servers/detail?changes-since=" + since / 1000);
+        return makeRequestIntAsync(request, Servers.class).transform(new Transformer<Servers, List<Server>>() {
+            public List<Server> apply(Servers response) throws Exception {
+                // not modified
+                if (response == null)
+                    return Collections.emptyList();
+                return TO_SERVERS.apply(response);
+            }
+        });
     }
 
-    private List<Server> buildListOfServers(HttpGet request) throws CloudServersException {
-        Servers response = makeRequestInt(request, Servers.class);
-        List<Server> servers = new ArrayList<Server>(response.getServers().size());
-        for (net.elasticgrid.rackspace.cloudservers.internal.Server server : response.getServers())
-            servers.add(buildServer(server));
-        return servers;
+    /**
+     * @return the watcher of the servers of this account, shared by all its subscribers
+     */
+    public synchronized ServerWatcher getWatcher() {
+        if (watcher == null)
+            watcher = new ServerWatcher(this);
+        return watcher;
     }
 
+    /**
+     * Lets the other classes of the package schedule their work the way requests are retried.
+     */
+    void scheduleTask(Runnable task, long delay, TimeUnit unit) {
+        schedule(task, delay, unit);
+    }
+
+    private static final Transformer<Servers, List<Server>> TO_SERVERS = new Transformer<Servers, List<Server>>() {
+        public List<Server> apply(Servers response) {
+            List<Server> servers = new ArrayList<Server>(response.getServers().size());
+            for (net.elasticgrid.rackspace.cloudservers.internal.Server server : response.getServers())
+                servers.add(buildServer(server));
+            return servers;
+        }
+    };
+
     public Server getServerDetails(int serverID) throws CloudServersException {
+        return await(getServerDetailsAsync(serverID));
+    }
+
+    RequestFuture<Server> getServerDetailsAsync(int serverID) {
         logger.log(Level.INFO, "Retrieving detailed information for server {0}...", serverID);
-        validateServerID(serverID);
+        if (serverID == 0)
+            return invalidArgument("Invalid serverID " + serverID);
         HttpGet request = new HttpGet(getServerManagementURL() + "/servers/" + serverID);
-        return buildServer(makeRequestInt(request, net.elasticgrid.rackspace.cloudservers.internal.Server.class));
+        return makeRequestIntAsync(request, net.elasticgrid.rackspace.cloudservers.internal.Server.class)
+                .transform(TO_SERVER);
     }
 
-    private Server buildServer(net.elasticgrid.rackspace.cloudservers.internal.Server response) throws CloudServersException {
-        try {
-            return new Server(
-                    response.getId(), response.getName(), response.getAdminPass(),
-                    response.getImageId(), response.getFlavorId(),
-                    response.getStatus() == null ? null : Status.valueOf(response.getStatus().name()),
-                    metadataAsMap(response.getMetadata()),
-                    new Addresses(response.getAddresses()),
-                    new Personality(response.getPersonality())
-            );
-        } catch (UnknownHostException e) {
-            throw new CloudServersException("Can't build server", e);
-        }
+    private static final Transformer<net.elasticgrid.rackspace.cloudservers.internal.Server, Server> TO_SERVER =
+            new Transformer<net.elasticgrid.rackspace.cloudservers.internal.Server, Server>() {
+                public Server apply(net.elasticgrid.rackspace.cloudservers.internal.Server response) {
+                    return buildServer(response);
+                }
+            };
+
+    private static Server buildServer(net.elasticgrid.rackspace.cloudservers.internal.Server response) {
+        return new Server(
+                response.getId(), response.getName(), response.getAdminPass(),
+                response.getImageId(), response.getFlavorId(),
+                response.getStatus() == null ? null : Status.valueOf(response.getStatus().name()),
+                response.getProgress(),
+                metadataAsMap(response.getMetadata()),
+                new Addresses(response.getAddresses()),
+                new Personality(response.getPersonality())
+        );
     }
 
     private static Map<String, String> metadataAsMap(Metadata metadata) {
@@ -136,48 +243,70 @@ public class XMLCloudServers extends RackspaceConnection implements CloudServers
         return meta;
     }
 
+    /**
+     * Waits for a server to reach the expected status, through the {@link #getWatcher() watcher} of the account, so
+     * that one poll of the changed servers serves every wait.
+     *
+     * @param serverID     the ID of the server to watch
+     * @param status       the status to wait for
+     * @param pollInterval the longest delay between two polls while waiting
+     * @param unit         the unit of the delay
+     * @return the future server details, once the server has the expected status; it fails if the server is or
+     *         goes in {@link Status#ERROR} or is deleted instead
+     */
+    RequestFuture<Server> waitForStatusAsync(int serverID, Status status, long pollInterval, TimeUnit unit) {
+        if (serverID == 0)
+            return invalidArgument("Invalid serverID " + serverID);
+        return getWatcher().waitForStatus(serverID, status, pollInterval, unit);
+    }
+
     public Addresses getServerAddresses(int serverID) throws CloudServersException {
+        return await(getServerAddressesAsync(serverID));
+    }
+
+    RequestFuture<Addresses> getServerAddressesAsync(int serverID) {
         logger.log(Level.INFO, "Retrieving all IP addresses of server {0}...", serverID);
-        validateServerID(serverID);
+        if (serverID == 0)
+            return invalidArgument("Invalid serverID " + serverID);
         HttpGet request = new HttpGet(getServerManagementURL() + "/servers/" + serverID + "/ips");
-        net.elasticgrid.rackspace.cloudservers.internal.Addresses response = makeRequestInt(request, net.elasticgrid.rackspace.cloudservers.internal.Addresses.class);
-        try {
-            return new Addresses(response);
-        } catch (UnknownHostException e) {
-            throw new CloudServersException("Can't validate server addresses", e);
-        }
+        return makeRequestIntAsync(request, net.elasticgrid.rackspace.cloudservers.internal.Addresses.class)
+                .transform(new Transformer<net.elasticgrid.rackspace.cloudservers.internal.Addresses, Addresses>() {
+                    public Addresses apply(net.elasticgrid.rackspace.cloudservers.internal.Addresses response) {
+                        return new Addresses(response);
+                    }
+                });
     }
 
     public List<InetAddress> getServerPublicAddresses(int serverID) throws CloudServersException {
+        return await(getServerPublicAddressesAsync(serverID));
+    }
+
+    RequestFuture<List<InetAddress>> getServerPublicAddressesAsync(int serverID) {
         logger.log(Level.INFO, "Retrieving all public IP addresses of server {0}...", serverID);
-        validateServerID(serverID);
+        if (serverID == 0)
+            return invalidArgument("Invalid serverID " + serverID);
         HttpGet request = new HttpGet(getServerManagementURL() + "/servers/" + serverID + "/ips/public");
-        Public response = makeRequestInt(request, Public.class);
-        try {
-            List<InetAddress> addresses = new ArrayList<InetAddress>(response.getAddressLists().size());
-            for (net.elasticgrid.rackspace.cloudservers.internal.Address address : response.getAddressLists()) {
-                addresses.add(InetAddress.getByName(address.getAddr()));
+        return makeRequestIntAsync(request, Public.class).transform(new Transformer<Public, List<InetAddress>>() {
+            public List<InetAddress> apply(Public response) {
+                return PackedAddressList.fromAddresses(response.getAddressLists());
             }
-            return addresses;
-        } catch (UnknownHostException e) {
-            throw new CloudServersException("Can't validate server addresses", e);
-        }
+        });
     }
 
     public List<InetAddress> getServerPrivateAddresses(int serverID) throws CloudServersException {
+        return await(getServerPrivateAddressesAsync(serverID));
+    }
+
+    RequestFuture<List<InetAddress>> getServerPrivateAddressesAsync(int serverID) {
         logger.log(Level.INFO, "Retrieving all private IP addresses of server {0}...", serverID);
-        validateServerID(serverID);
+        if (serverID == 0)
+            return invalidArgument("Invalid serverID " + serverID);
         HttpGet request = new HttpGet(getServerManagementURL() + "/servers/" + serverID + "/ips/private");
-        Private response = makeRequestInt(request, Private.class);
-        try {
-            List<InetAddress> addresses = new ArrayList<InetAddress>(response.getAddressLists().size());
-            for (net.elasticgrid.rackspace.cloudservers.internal.Address address : response.getAddressLists()) {
-                addresses.add(InetAddress.getByName(address.getAddr()));
+        return makeRequestIntAsync(request, Private.class).transform(new Transformer<Private, List<InetAddress>>() {
+            public List<InetAddress> apply(Private response) {
+                return PackedAddressList.fromAddresses(response.getAddressLists());
             }
-            return addresses;
-        } catch (UnknownHostException e) {
-            throw new CloudServersException("Can't validate server addresses", e);
-        }
+        });
     }
 
     public void shareAddress(int groupID, int serverID, InetAddress address) throws CloudServersException {
@@ -185,26 +314,36 @@ public class XMLCloudServers extends RackspaceConnection implements CloudServers
     }
 
     public void shareAddress(int groupID, int serverID, InetAddress address, boolean configureServer) throws CloudServersException {
+        await(shareAddressAsync(groupID, serverID, address, configureServer));
+    }
+
+    RequestFuture<Void> shareAddressAsync(int groupID, int serverID, InetAddress address, boolean configureServer) {
         logger.log(Level.INFO, "Sharing IP in group {0} for address {1} with server {2}...", new Object[]{groupID, address, serverID});
-        validateServerID(serverID);
+        if (serverID == 0)
+            return invalidArgument("Invalid serverID " + serverID);
         if (address == null)
-            throw new IllegalArgumentException("Invalid IP address");
+            return invalidArgument("Invalid IP address");
         ShareIp shareIp = new ShareIp();
         shareIp.setSharedIpGroupId(groupID);
         shareIp.setConfigureServer(configureServer);
         HttpPut request = new HttpPut(getServerManagementURL() + "/servers/" + serverID
                 + "/ips/public/" + address.getHostAddress());
-        makeRequestInt(request);
+        return makeEntityRequestIntAsync(request, shareIp);
     }
 
     public void unshareAddress(int serverID, InetAddress address) throws CloudServersException {
+        await(unshareAddressAsync(serverID, address));
+    }
+
+    RequestFuture<Void> unshareAddressAsync(int serverID, InetAddress address) {
         logger.log(Level.INFO, "Unsharing IP address {0} with server {1}...", new Object[]{address, serverID});
-        validateServerID(serverID);
+        if (serverID == 0)
+            return invalidArgument("Invalid serverID " + serverID);
         if (address == null)
-            throw new IllegalArgumentException("Invalid IP address");
+            return invalidArgument("Invalid IP address");
         HttpDelete request = new HttpDelete(getServerManagementURL() + "/servers/" + serverID
                 + "/ips/public/" + address.getHostAddress());
-        makeRequestInt(request);
+        return makeRequestIntAsync(request);
     }
 
     public Server createServer(String name, int imageID, int flavorID) throws CloudServersException {
@@ -212,14 +351,30 @@ public class XMLCloudServers extends RackspaceConnection implements CloudServers
     }
 
     public Server createServer(String name, int imageID, int flavorID, Map<String, String> metadata) throws CloudServersException {
+        return await(createServerAsync(name, imageID, flavorID, metadata, null));
+    }
+
+    public Server createServer(String name, int imageID, int flavorID, Map<String, String> metadata,
+                               Personality personality) throws CloudServersException {
+        return await(createServerAsync(name, imageID, flavorID, metadata, personality));
+    }
+
+    RequestFuture<Server> createServerAsync(String name, int imageID, int flavorID, Map<String, String> metadata) {
+        return createServerAsync(name, imageID, flavorID, metadata, null);
+    }
+
+    RequestFuture<Server> createServerAsync(String name, int imageID, int flavorID, Map<String, String> metadata,
+                                            Personality personality) {
         logger.log(Level.INFO, "Creating server {0} from image {1} running on flavor {2}...",
                 new Object[]{name, imageID, flavorID});
         if (name == null)
-            throw new IllegalArgumentException("Server name has to be specified!");
+            return invalidArgument("Server name has to be specified!");
         if (imageID == 0)
-            throw new IllegalArgumentException("Image ID has to be specified!");
+            return invalidArgument("Image ID has to be specified!");
         if (flavorID == 0)
-            throw new IllegalArgumentException("Flavor ID has to be specified!");
+            return invalidArgument("Flavor ID has to be specified!");
+        if (personality != null && personality.getFiles().size() > MAX_PERSONALITY_FILES)
+            return invalidArgument("At most " + MAX_PERSONALITY_FILES + " personality files can be injected!");
         HttpPost request = new HttpPost(getServerManagementURL() + "/servers");
         net.elasticgrid.rackspace.cloudservers.internal.Server server = new net.elasticgrid.rackspace.cloudservers.internal.Server();
         server.setName(name);
@@ -236,7 +391,496 @@ public class XMLCloudServers extends RackspaceConnection implements CloudServers
             }
             server.setMetadata(rawMetadata);
         }
-        return buildServer(makeEntityRequestInt(request, server, net.elasticgrid.rackspace.cloudservers.internal.Server.class));
+        if (personality != null && !personality.getFiles().isEmpty())
+            return makeEntityRequestIntAsync(request, server, personality,
+                    net.elasticgrid.rackspace.cloudservers.internal.Server.class).transform(TO_SERVER);
+        return makeEntityRequestIntAsync(request, server, net.elasticgrid.rackspace.cloudservers.internal.Server.class)
+                .transform(TO_SERVER);
+    }
+
+    public List<ProvisionedServer> createServers(int count, String nameTemplate, int imageID, int flavorID,
+                                                 Map<String, String> metadata) throws CloudServersException {
+        return await(createServersAsync(count, nameTemplate, imageID, flavorID, metadata));
+    }
+
+    RequestFuture<List<ProvisionedServer>> createServersAsync(final int count, final String nameTemplate,
+                                                              final int imageID, final int flavorID,
+                                                              final Map<String, String> metadata) {
+        logger.log(Level.INFO, "Creating {0} servers from image {1} running on flavor {2}...",
+                new Object[]{count, imageID, flavorID});
+        if (count <= 0)
+            return invalidArgument("Invalid number of servers: " + count);
+        if (nameTemplate == null)
+            return invalidArgument("Server name template has to be specified!");
+        return getLimitsAsync().then(new AsyncTransformer<Limits, Integer>() {
+            public RequestFuture<Integer> apply(final Limits limits) {
+                final Integer maxRAM = getAbsoluteLimit(limits, "maxTotalRAMSize");
+                if (maxRAM == null)
+                    return getCreateConcurrency(limits);
+                return checkRAMQuota(count, flavorID, maxRAM).then(new AsyncTransformer<Void, Integer>() {
+                    public RequestFuture<Integer> apply(Void input) {
+                        return getCreateConcurrency(limits);
+                    }
+                });
+            }
+        }).then(new AsyncTransformer<Integer, List<ProvisionedServer>>() {
+            public RequestFuture<List<ProvisionedServer>> apply(Integer concurrency) {
+                return new Fleet(count, nameTemplate, imageID, flavorID, metadata, concurrency).start();
+            }
+        });
+    }
+
+    /**
+     * Fails if the servers of the account, with the new ones, would use more RAM than the account allows.
+     */
+    private RequestFuture<Void> checkRAMQuota(final int count, final int flavorID, final int maxRAM) {
+        return getFlavorsWithDetailsAsync().then(new AsyncTransformer<List<Flavor>, Void>() {
+            public RequestFuture<Void> apply(final List<Flavor> flavors) {
+                return getServersWithDetailsAsync().transform(new Transformer<List<Server>, Void>() {
+                    public Void apply(List<Server> servers) throws CloudServersException {
+                        Map<Integer, Integer> ramByFlavor = new HashMap<Integer, Integer>();
+                        for (Flavor flavor : flavors)
+                            ramByFlavor.put(flavor.getId(), flavor.getRam());
+                        Integer ram = ramByFlavor.get(flavorID);
+                        if (ram == null)
+                            throw new CloudServersException("Unknown flavor " + flavorID);
+                        long used = 0;
+                        for (Server server : servers) {
+                            Integer serverRAM = ramByFlavor.get(server.getFlavorID());
+                            if (serverRAM != null)
+                                used += serverRAM;
+                        }
+                        long needed = (long) count * ram;
+                        if (used + needed > maxRAM)
+                            throw new CloudServersException("Can't create " + count + " servers of flavor " + flavorID
+                                    + ": they need " + needed + " MB of RAM and only " + (maxRAM - used)
+                                    + " MB are left out of " + maxRAM);
+                        return null;
+                    }
+                });
+            }
+        });
+    }
+
+    private static Integer getAbsoluteLimit(Limits limits, String name) {
+        for (AbsoluteLimit limit : limits.getAbsoluteLimits()) {
+            if (name.equals(limit.getName()))
+                return limit.getValue();
+        }
+        return null;
+    }
+
+    /**
+     * @return the number of servers to create at the same time: at most {@link #getMaxConcurrentCreates()}, and no
+     *         more than the creations the rate limits still allow. When the limits allow none, the creations are
+     *         left to the rate limiter to pace if there is one, and fail otherwise.
+     */
+    private RequestFuture<Integer> getCreateConcurrency(Limits limits) {
+        int concurrency = maxConcurrentCreates;
+        RateLimit exhausted = null;
+        for (RateLimit limit : limits.getRateLimits()) {
+            if (limit.getVerb() == HTTPVerb.POST && Pattern.compile(limit.getRegex()).matcher("/servers").find()) {
+                concurrency = Math.min(concurrency, limit.getRemaining());
+                if (limit.getRemaining() <= 0)
+                    exhausted = limit;
+            }
+        }
+        if (exhausted != null && !isRateLimited())
+            return RequestFuture.failed(new CloudServersException("Can't create servers: the rate limit of "
+                    + exhausted.getValue() + " POST " + exhausted.getURI() + " per " + exhausted.getUnit()
+                    + " is exhausted until " + new Date(exhausted.getResetTime() * 1000)));
+        return RequestFuture.immediate(Math.max(1, concurrency));
+    }
+
+    public int getMaxConcurrentCreates() {
+        return maxConcurrentCreates;
+    }
+
+    /**
+     * Sets how many servers {@link #createServers(int, String, int, int, Map)} creates at the same time, 5 by
+     * default.
+     */
+    public void setMaxConcurrentCreates(int maxConcurrentCreates) {
+        if (maxConcurrentCreates <= 0)
+            throw new IllegalArgumentException("Invalid concurrency: " + maxConcurrentCreates);
+        this.maxConcurrentCreates = maxConcurrentCreates;
+    }
+
+    /**
+     * Sets the longest delay between two polls of the {@link #getWatcher() watcher} while servers are being
+     * provisioned, 10 seconds by default.
+     */
+    public void setFleetPollInterval(long pollInterval, TimeUnit unit) {
+        this.fleetPollInterval = unit.toMillis(pollInterval);
+    }
+
+    public long getProvisioningTimeout() {
+        return provisioningTimeout;
+    }
+
+    /**
+     * Sets how long {@link #createServers(int, String, int, int, Map)} waits for its servers to be active, 30
+     * minutes by default. The servers still not active or failed by then are reported as failed.
+     */
+    public void setProvisioningTimeout(long timeout, TimeUnit unit) {
+        if (timeout <= 0)
+            throw new IllegalArgumentException("Invalid provisioning timeout: " + timeout);
+        this.provisioningTimeout = unit.toMillis(timeout);
+    }
+
+    /**
+     * Provisioning of a fleet of servers. Creations are started up to the allowed concurrency, each completion
+     * starting the next one, and the servers created are waited for through the {@link #getWatcher() watcher}, whose
+     * single poll of the changes of the account tracks them all, until every one of them is active or has failed.
+     * The servers still pending after the provisioning timeout fail, and cancelling the provisioning stops the
+     * creations not started yet and the waits.
+     */
+    private class Fleet {
+        private final String nameTemplate;
+        private final int imageID;
+        private final int flavorID;
+        private final Map<String, String> metadata;
+        private final int concurrency;
+        private final long timeout = provisioningTimeout;
+        private final RequestFuture<List<ProvisionedServer>> result = new RequestFuture<List<ProvisionedServer>>();
+        private final ProvisionedServer[] outcomes;
+        // members started so far, by index
+        private final Member[] members;
+        private int nextIndex = 0;
+        private int remaining;
+
+        Fleet(int count, String nameTemplate, int imageID, int flavorID, Map<String, String> metadata, int concurrency) {
+            this.nameTemplate = nameTemplate;
+            this.imageID = imageID;
+            this.flavorID = flavorID;
+            this.metadata = metadata;
+            this.concurrency = concurrency;
+            this.outcomes = new ProvisionedServer[count];
+            this.members = new Member[count];
+            this.remaining = count;
+        }
+
+        RequestFuture<List<ProvisionedServer>> start() {
+            logger.log(Level.FINE, "Creating servers {0} at a time", concurrency);
+            result.addListener(new Runnable() {
+                public void run() {
+                    // cancelled, or timed out: the pending waits are no longer needed
+                    for (Member member : startedMembers()) {
+                        RequestFuture<Server> wait = member.wait;
+                        if (wait != null)
+                            wait.cancel(false);
+                    }
+                }
+            }, RequestFuture.SAME_THREAD);
+            schedule(new Runnable() {
+                public void run() {
+                    expire();
+                }
+            }, timeout, TimeUnit.MILLISECONDS);
+            for (int i = 0; i < concurrency; i++)
+                launchNext();
+            return result;
+        }
+
+        private synchronized List<Member> startedMembers() {
+            List<Member> started = new ArrayList<Member>(nextIndex);
+            for (int i = 0; i < nextIndex; i++)
+                started.add(members[i]);
+            return started;
+        }
+
+        private void launchNext() {
+            final Member member;
+            synchronized (this) {
+                if (nextIndex == outcomes.length || result.isDone())
+                    return;
+                member = new Member(nextIndex, nameTemplate);
+                members[nextIndex++] = member;
+            }
+            RequestFuture<Server> created = createServerAsync(member.name, imageID, flavorID, metadata, null);
+            created.addCallback(new Callback<Server>() {
+                public void onSuccess(Server server) {
+                    member.createTime = System.currentTimeMillis() - member.start;
+                    member.server = server;
+                    launchNext();
+                    waitUntilActive(member);
+                }
+
+                public void onFailure(Throwable failure) {
+                    member.createTime = System.currentTimeMillis() - member.start;
+                    complete(member, failure instanceof CloudServersException
+                            ? (CloudServersException) failure
+                            : new CloudServersException("Can't create server " + member.name, failure));
+                    launchNext();
+                }
+            }, RequestFuture.SAME_THREAD);
+        }
+
+        private void waitUntilActive(final Member member) {
+            ServerWatcher watcher = getWatcher();
+            watcher.seen(member.server);
+            RequestFuture<Server> wait = watcher.waitForStatus(member.server.getId(), Status.ACTIVE,
+                    fleetPollInterval, TimeUnit.MILLISECONDS);
+            member.wait = wait;
+            // the fleet may have completed meanwhile, before the wait could be cancelled with the others
+            if (result.isDone())
+                wait.cancel(false);
+            wait.addCallback(new Callback<Server>() {
+                public void onSuccess(Server server) {
+                    member.server = server;
+                    complete(member, null);
+                }
+
+                public void onFailure(Throwable failure) {
+                    complete(member, failure instanceof CloudServersException
+                            ? (CloudServersException) failure
+                            : new CloudServersException("Can't wait for server " + member.name, failure));
+                }
+            }, RequestFuture.SAME_THREAD);
+        }
+
+        /**
+         * Fails the servers still pending once the provisioning timeout passed, those not created yet included.
+         */
+        private void expire() {
+            if (result.isDone())
+                return;
+            List<Member> pending = new ArrayList<Member>();
+            synchronized (this) {
+                for (int i = 0; i < outcomes.length; i++) {
+                    if (outcomes[i] != null)
+                        continue;
+                    if (i >= nextIndex)
+                        members[i] = new Member(i, nameTemplate);
+                    pending.add(members[i]);
+                }
+                // no more creations
+                nextIndex = outcomes.length;
+            }
+            for (Member member : pending)
+                complete(member, new CloudServersException("Server " + member.name + " was not provisioned within "
+                        + timeout + " ms"));
+        }
+
+        private void complete(Member member, CloudServersException failure) {
+            long readyTime = System.currentTimeMillis() - member.start;
+            boolean done;
+            synchronized (this) {
+                if (outcomes[member.index] != null)
+                    // already expired, or completed before
+                    return;
+                outcomes[member.index] = new ProvisionedServer(member.name, member.server, member.createTime,
+                        readyTime, failure);
+                done = --remaining == 0;
+            }
+            if (failure == null)
+                logger.log(Level.INFO, "Server {0} is active after {1} ms", new Object[]{member.name, readyTime});
+            else
+                logger.log(Level.WARNING, "Server " + member.name + " could not be provisioned", failure);
+            if (done)
+                result.set(Arrays.asList(outcomes));
+        }
+    }
+
+    /**
+     * A server of a fleet being provisioned.
+     */
+    private static class Member {
+        final int index;
+        final String name;
+        final long start = System.currentTimeMillis();
+        volatile Server server;
+        volatile long createTime;
+        // the wait for the server to be active, once created
+        volatile RequestFuture<Server> wait;
+
+        Member(int index, String nameTemplate) {
+            this.index = index;
+            this.name = String.format(nameTemplate, index + 1);
+        }
+    }
+
+    /**
+     * Loads the servers, images, flavors and shared IP groups of the account, with their details, and its limits.
+     * The five requests are sent at once, so that the inventory is as close to a consistent view as the API allows.
+     *
+     * @return the inventory of the account
+     * @throws CloudServersException if any of the requests fails
+     */
+    public Inventory getInventory() throws CloudServersException {
+        return await(getInventoryAsync());
+    }
+
+    RequestFuture<Inventory> getInventoryAsync() {
+        logger.info("Retrieving inventory...");
+        final long timestamp = System.currentTimeMillis();
+        final RequestFuture<List<Server>> servers = getServersWithDetailsAsync();
+        final RequestFuture<List<Image>> images = getImagesWithDetailsAsync();
+        final RequestFuture<List<Flavor>> flavors = getFlavorsWithDetailsAsync();
+        final RequestFuture<List<SharedIPGroup>> groups = getSharedIPGroupsWithDetailsAsync();
+        final RequestFuture<Limits> limits = getLimitsAsync();
+        return allOf(servers, images, flavors, groups, limits).transform(new Transformer<Void, Inventory>() {
+            public Inventory apply(Void input) throws Exception {
+                // all completed by now
+                return new Inventory(servers.get(), images.get(), flavors.get(), groups.get(), limits.get(), timestamp);
+            }
+        });
+    }
+
+    /**
+     * @return a future completed once all the futures succeeded, or failed as soon as one of them fails, in which
+     *         case the other ones are cancelled
+     */
+    private static RequestFuture<Void> allOf(final RequestFuture<?>... futures) {
+        final RequestFuture<Void> all = new RequestFuture<Void>();
+        final AtomicInteger pending = new AtomicInteger(futures.length);
+        for (RequestFuture<?> future : futures) {
+            future.addCallback(new Callback<Object>() {
+                public void onSuccess(Object result) {
+                    if (pending.decrementAndGet() == 0)
+                        all.set(null);
+                }
+
+                public void onFailure(Throwable failure) {
+                    if (all.setException(failure)) {
+                        for (RequestFuture<?> other : futures)
+                            other.cancel(false);
+                    }
+                }
+            }, RequestFuture.SAME_THREAD);
+        }
+        all.addListener(new Runnable() {
+            public void run() {
+                if (all.isCancelled()) {
+                    for (RequestFuture<?> future : futures)
+                        future.cancel(false);
+                }
+            }
+        }, RequestFuture.SAME_THREAD);
+        return all;
+    }
+
+    /**
+     * Runs a query for each server of a set, for example to audit the backup schedules of a whole account. Up to
+     * {@link #getMaxConcurrentQueries()} queries run at once, each completion starting the next one, and their
+     * requests go through the rate limiter of the connection like any other. Results are handed to the listener as
+     * they come, and the failure of a server doesn't stop the query of the others.
+     *
+     * @param serverIDs the IDs of the servers to query
+     * @param query     the query to run for each server
+     * @param listener  notified of the result or the failure of each server
+     * @return the number of servers whose query failed
+     * @throws CloudServersException if interrupted while waiting
+     */
+    public <T> int queryServers(Collection<Integer> serverIDs, ServerQuery<T> query,
+                                ServerQuery.Listener<? super T> listener) throws CloudServersException {
+        return await(queryServersAsync(serverIDs, query, listener));
+    }
+
+    /**
+     * @return the future number of servers whose query failed; cancelling it stops starting queries
+     * @see #queryServers(Collection, ServerQuery, ServerQuery.Listener)
+     */
+    <T> RequestFuture<Integer> queryServersAsync(Collection<Integer> serverIDs, ServerQuery<T> query,
+                                                 ServerQuery.Listener<? super T> listener) {
+        logger.log(Level.INFO, "Querying {0} servers...", serverIDs.size());
+        return new FanOut<T>(new ArrayList<Integer>(serverIDs), query, listener).start(maxConcurrentQueries);
+    }
+
+    /**
+     * @return the maximum number of queries a fan-out runs at once
+     */
+    public int getMaxConcurrentQueries() {
+        return maxConcurrentQueries;
+    }
+
+    /**
+     * Sets the maximum number of queries a fan-out runs at once, 10 by default.
+     */
+    public void setMaxConcurrentQueries(int maxConcurrentQueries) {
+        if (maxConcurrentQueries <= 0)
+            throw new IllegalArgumentException("Invalid concurrency: " + maxConcurrentQueries);
+        this.maxConcurrentQueries = maxConcurrentQueries;
+    }
+
+    private synchronized AsyncCloudServers getAsyncView() {
+        if (asyncView == null)
+            asyncView = new XMLAsyncCloudServers(this);
+        return asyncView;
+    }
+
+    /**
+     * Query of a set of servers, started up to the allowed concurrency.
+     */
+    private class FanOut<T> {
+        private final Iterator<Integer> serverIDs;
+        private final ServerQuery<T> query;
+        private final ServerQuery.Listener<? super T> listener;
+        private final RequestFuture<Integer> result = new RequestFuture<Integer>();
+        private int running = 0;
+        private int failures = 0;
+
+        FanOut(List<Integer> serverIDs, ServerQuery<T> query, ServerQuery.Listener<? super T> listener) {
+            this.serverIDs = serverIDs.iterator();
+            this.query = query;
+            this.listener = listener;
+        }
+
+        RequestFuture<Integer> start(int concurrency) {
+            for (int i = 0; i < concurrency; i++)
+                launchNext();
+            return result;
+        }
+
+        private void launchNext() {
+            final int serverID;
+            synchronized (this) {
+                if (result.isDone())
+                    return;
+                if (!serverIDs.hasNext()) {
+                    if (running == 0)
+                        result.set(failures);
+                    return;
+                }
+                serverID = serverIDs.next();
+                running++;
+            }
+            RequestFuture<T> future;
+            try {
+                future = query.query(getAsyncView(), serverID);
+            } catch (RuntimeException e) {
+                future = RequestFuture.failed(e);
+            }
+            future.addCallback(new Callback<T>() {
+                public void onSuccess(T value) {
+                    try {
+                        listener.onResult(serverID, value);
+                    } catch (RuntimeException e) {
+                        logger.log(Level.WARNING, "Listener failed on the result of server " + serverID, e);
+                    }
+                    completed(false);
+                }
+
+                public void onFailure(Throwable failure) {
+                    logger.log(Level.FINE, "Query of server {0} failed: {1}", new Object[]{serverID, failure});
+                    try {
+                        listener.onFailure(serverID, failure);
+                    } catch (RuntimeException e) {
+                        logger.log(Level.WARNING, "Listener failed on the failure of server " + serverID, e);
+                    }
+                    completed(true);
+                }
+            }, RequestFuture.SAME_THREAD);
+        }
+
+        private void completed(boolean failed) {
+            synchronized (this) {
+                running--;
+                if (failed)
+                    failures++;
+            }
+            launchNext();
+        }
     }
 
     public void rebootServer(int serverID) throws CloudServersException {
@@ -244,51 +888,81 @@ public class XMLCloudServers extends RackspaceConnection implements CloudServers
     }
 
     public void rebootServer(int serverID, RebootType type) throws CloudServersException {
+        await(rebootServerAsync(serverID, type));
+    }
+
+    RequestFuture<Void> rebootServerAsync(int serverID, RebootType type) {
         logger.log(Level.INFO, "Rebooting server {0} via {1} reboot...", new Object[]{serverID, type.name()});
-        validateServerID(serverID);
+        if (serverID == 0)
+            return invalidArgument("Invalid serverID " + serverID);
         HttpPost request = new HttpPost(getServerManagementURL() + "/servers/" + serverID + "/action");
         Reboot reboot = new Reboot();
         reboot.setType(net.elasticgrid.rackspace.cloudservers.internal.RebootType.valueOf(type.name()));
-        makeEntityRequestInt(request, reboot);
+        return makeEntityRequestIntAsync(request, reboot);
     }
 
     public void rebuildServer(int serverID) throws CloudServersException {
+        await(rebuildServerAsync(serverID));
+    }
+
+    RequestFuture<Void> rebuildServerAsync(int serverID) {
         logger.log(Level.INFO, "Rebuilding server {0}...", serverID);
-        validateServerID(serverID);
+        if (serverID == 0)
+            return invalidArgument("Invalid serverID " + serverID);
         HttpPost request = new HttpPost(getServerManagementURL() + "/servers/" + serverID + "/action");
-        makeEntityRequestInt(request, new Rebuild());
+        return makeEntityRequestIntAsync(request, new Rebuild());
     }
 
     public void rebuildServer(int serverID, int imageID) throws CloudServersException {
+        await(rebuildServerAsync(serverID, imageID));
+    }
+
+    RequestFuture<Void> rebuildServerAsync(int serverID, int imageID) {
         logger.log(Level.INFO, "Rebuilding server {0} from image {1}...", new Object[]{serverID, imageID});
-        validateServerID(serverID);
+        if (serverID == 0)
+            return invalidArgument("Invalid serverID " + serverID);
         HttpPost request = new HttpPost(getServerManagementURL() + "/servers/" + serverID + "/action");
         Rebuild rebuild = new Rebuild();
         rebuild.setImageId(imageID);
-        makeEntityRequestInt(request, rebuild);
+        return makeEntityRequestIntAsync(request, rebuild);
     }
 
     public void resizeServer(int serverID, int flavorID) throws CloudServersException {
+        await(resizeServerAsync(serverID, flavorID));
+    }
+
+    RequestFuture<Void> resizeServerAsync(int serverID, int flavorID) {
         logger.log(Level.INFO, "Resizing server {0} to run on flavor {1}...", new Object[]{serverID, flavorID});
-        validateServerID(serverID);
+        if (serverID == 0)
+            return invalidArgument("Invalid serverID " + serverID);
         HttpPost request = new HttpPost(getServerManagementURL() + "/servers/" + serverID + "/action");
         Resize resize = new Resize();
         resize.setFlavorId(flavorID);
-        makeEntityRequestInt(request, resize);
+        return makeEntityRequestIntAsync(request, resize);
     }
 
     public void confirmResize(int serverID) throws CloudServersException {
+        await(confirmResizeAsync(serverID));
+    }
+
+    RequestFuture<Void> confirmResizeAsync(int serverID) {
         logger.log(Level.INFO, "Confirming resize of server {0}...", serverID);
-        validateServerID(serverID);
+        if (serverID == 0)
+            return invalidArgument("Invalid serverID " + serverID);
         HttpPost request = new HttpPost(getServerManagementURL() + "/servers/" + serverID + "/action");
-        makeEntityRequestInt(request, new ConfirmResize());
+        return makeEntityRequestIntAsync(request, new ConfirmResize());
     }
 
     public void revertResize(int serverID) throws CloudServersException {
+        await(revertResizeAsync(serverID));
+    }
+
+    RequestFuture<Void> revertResizeAsync(int serverID) {
         logger.log(Level.INFO, "Cancelling resize of server {0}...", serverID);
-        validateServerID(serverID);
+        if (serverID == 0)
+            return invalidArgument("Invalid serverID " + serverID);
         HttpPost request = new HttpPost(getServerManagementURL() + "/servers/" + serverID + "/action");
-        makeEntityRequestInt(request, new RevertResize());
+        return makeEntityRequestIntAsync(request, new RevertResize());
     }
 
     public void updateServerName(int serverID, String name) throws CloudServersException {
@@ -300,7 +974,12 @@ public class XMLCloudServers extends RackspaceConnection implements CloudServers
     }
 
     public void updateServerNameAndPassword(final int serverID, final String name, final String password) throws CloudServersException {
-        validateServerID(serverID);
+        await(updateServerNameAndPasswordAsync(serverID, name, password));
+    }
+
+    RequestFuture<Void> updateServerNameAndPasswordAsync(int serverID, String name, String password) {
+        if (serverID == 0)
+            return invalidArgument("Invalid serverID " + serverID);
         HttpPut request = new HttpPut(getServerManagementURL() + "/servers/" + serverID);
         net.elasticgrid.rackspace.cloudservers.internal.Server server = new net.elasticgrid.rackspace.cloudservers.internal.Server();
         server.setId(serverID);
@@ -308,19 +987,53 @@ public class XMLCloudServers extends RackspaceConnection implements CloudServers
             server.setName(name);
         if (password != null)
             server.setAdminPass(password);
-        makeEntityRequestInt(request, server);
+        return makeEntityRequestIntAsync(request, server);
     }
 
     public void deleteServer(int serverID) throws CloudServersException {
+        await(deleteServerAsync(serverID));
+    }
+
+    RequestFuture<Void> deleteServerAsync(int serverID) {
         logger.log(Level.INFO, "Deleting server {0}...", serverID);
-        validateServerID(serverID);
+        if (serverID == 0)
+            return invalidArgument("Invalid serverID " + serverID);
         HttpDelete request = new HttpDelete(getServerManagementURL() + "/servers/" + serverID);
-        makeRequestInt(request);
+        return makeRequestIntAsync(request);
     }
 
     public Limits getLimits() throws CloudServersException {
+        return await(getLimitsAsync());
+    }
+
+    RequestFuture<Limits> getLimitsAsync() {
         HttpGet request = new HttpGet(getServerManagementURL() + "/limits");
-        net.elasticgrid.rackspace.cloudservers.internal.Limits response = makeRequestInt(request, net.elasticgrid.rackspace.cloudservers.internal.Limits.class);
+        return makeRequestIntAsync(request, net.elasticgrid.rackspace.cloudservers.internal.Limits.class)
+                .transform(new Transformer<net.elasticgrid.rackspace.cloudservers.internal.Limits, Limits>() {
+                    public Limits apply(net.elasticgrid.rackspace.cloudservers.internal.Limits response) {
+                        return buildLimits(response);
+                    }
+                });
+    }
+
+    /**
+     * Loads the rate limits from the Limits API.
+     */
+    @Override
+    protected RequestFuture<List<RateLimiter.Bucket>> loadRateLimits() {
+        return getLimitsAsync().transform(new Transformer<Limits, List<RateLimiter.Bucket>>() {
+            public List<RateLimiter.Bucket> apply(Limits limits) {
+                List<RateLimiter.Bucket> buckets = new ArrayList<RateLimiter.Bucket>(limits.getRateLimits().size());
+                for (RateLimit limit : limits.getRateLimits()) {
+                    buckets.add(new RateLimiter.Bucket(limit.getVerb().name(), limit.getURI(), limit.getRegex(),
+                            limit.getValue(), limit.getRemaining(), limit.getUnit().toMillis()));
+                }
+                return buckets;
+            }
+        });
+    }
+
+    private static Limits buildLimits(net.elasticgrid.rackspace.cloudservers.internal.Limits response) {
         List<RateLimit> rateLimits = new ArrayList<RateLimit>(response.getRate().getRateLimits().size());
         for (net.elasticgrid.rackspace.cloudservers.internal.RateLimit limit : response.getRate().getRateLimits())
             rateLimits.add(new RateLimit(
@@ -339,73 +1052,151 @@ public class XMLCloudServers extends RackspaceConnection implements CloudServers
     }
 
     public List<Flavor> getFlavors() throws CloudServersException {
+        return await(getFlavorsAsync());
+    }
+
+    RequestFuture<List<Flavor>> getFlavorsAsync() {
         logger.info("Retrieving flavors information...");
         HttpGet request = new HttpGet(getServerManagementURL() + "/flavors");
-        return buildListOfFlavors(request);
+        return makeRequestIntAsync(request, Flavors.class).transform(TO_FLAVORS);
     }
 
     public List<Flavor> getFlavorsWithDetails() throws CloudServersException {
+        return await(getFlavorsWithDetailsAsync());
+    }
+
+    RequestFuture<List<Flavor>> getFlavorsWithDetailsAsync() {
         logger.info("Retrieving detailed flavors information...");
         HttpGet request = new HttpGet(getServerManagementURL() + "/flavors/detail");
-        return buildListOfFlavors(request);
+        return makeRequestIntAsync(request, Flavors.class).transform(TO_FLAVORS);
+    }
+
+    public void forEachFlavorWithDetails(ResourceHandler<? super Flavor> handler) throws CloudServersException {
+        await(forEachFlavorWithDetailsAsync(handler));
+    }
+
+    RequestFuture<Void> forEachFlavorWithDetailsAsync(final ResourceHandler<? super Flavor> handler) {
+        logger.info("Streaming detailed flavors information...");
+        HttpGet request = new HttpGet(getServerManagementURL() + "/flavors/detail");
+        return makeRequestIntAsync(request, new ListingReader<net.elasticgrid.rackspace.cloudservers.internal.Flavor>(
+                net.elasticgrid.rackspace.cloudservers.internal.Flavor.class, "flavor") {
+            public boolean handle(net.elasticgrid.rackspace.cloudservers.internal.Flavor flavor) {
+                return handler.handle(buildFlavor(flavor));
+            }
+        });
     }
 
     public Flavor getFlavorDetails(int flavorID) throws CloudServersException {
+        return await(getFlavorDetailsAsync(flavorID));
+    }
+
+    RequestFuture<Flavor> getFlavorDetailsAsync(int flavorID) {
         logger.log(Level.INFO, "Retrieving detailed information for flavor {0}...", flavorID);
-        validateFlavorID(flavorID);
+        if (flavorID == 0)
+            return invalidArgument("Invalid flavorID " + flavorID);
         HttpGet request = new HttpGet(getServerManagementURL() + "/flavors/" + flavorID);
-        return buildFlavor(makeRequestInt(request, net.elasticgrid.rackspace.cloudservers.internal.Flavor.class));
+        return makeRequestIntAsync(request, net.elasticgrid.rackspace.cloudservers.internal.Flavor.class)
+                .transform(new Transformer<net.elasticgrid.rackspace.cloudservers.internal.Flavor, Flavor>() {
+                    public Flavor apply(net.elasticgrid.rackspace.cloudservers.internal.Flavor response) {
+                        return buildFlavor(response);
+                    }
+                });
     }
 
-    private List<Flavor> buildListOfFlavors(HttpGet request) throws CloudServersException {
-        Flavors response = makeRequestInt(request, Flavors.class);
-        List<Flavor> flavors = new ArrayList<Flavor>(response.getFlavors().size());
-        for (net.elasticgrid.rackspace.cloudservers.internal.Flavor flavor : response.getFlavors())
-            flavors.add(buildFlavor(flavor));
-        return flavors;
-    }
+    private static final Transformer<Flavors, List<Flavor>> TO_FLAVORS = new Transformer<Flavors, List<Flavor>>() {
+        public List<Flavor> apply(Flavors response) {
+            List<Flavor> flavors = new ArrayList<Flavor>(response.getFlavors().size());
+            for (net.elasticgrid.rackspace.cloudservers.internal.Flavor flavor : response.getFlavors())
+                flavors.add(buildFlavor(flavor));
+            return flavors;
+        }
+    };
 
-    private Flavor buildFlavor(net.elasticgrid.rackspace.cloudservers.internal.Flavor response) {
+    private static Flavor buildFlavor(net.elasticgrid.rackspace.cloudservers.internal.Flavor response) {
         return new Flavor(response.getId(), response.getName(), response.getRam(), response.getDisk());
     }
 
     public List<Image> getImages() throws CloudServersException {
+        return await(getImagesAsync());
+    }
+
+    RequestFuture<List<Image>> getImagesAsync() {
         logger.info("Retrieving images information...");
         HttpGet request = new HttpGet(getServerManagementURL() + "/images");
-        return buildListOfImages(makeRequestInt(request, Images.class));
+        return makeRequestIntAsync(request, Images.class).transform(TO_IMAGES);
     }
 
     public List<Image> getImagesWithDetails() throws CloudServersException {
+        return await(getImagesWithDetailsAsync());
+    }
+
+    RequestFuture<List<Image>> getImagesWithDetailsAsync() {
         logger.info("Retrieving detailed images information...");
         HttpGet request = new HttpGet(getServerManagementURL() + "/images/detail");
-        return buildListOfImages(makeRequestInt(request, Images.class));
+        return makeRequestIntAsync(request, Images.class).transform(TO_IMAGES);
+    }
+
+    public void forEachImageWithDetails(ResourceHandler<? super Image> handler) throws CloudServersException {
+        await(forEachImageWithDetailsAsync(handler));
+    }
+
+    RequestFuture<Void> forEachImageWithDetailsAsync(final ResourceHandler<? super Image> handler) {
+        logger.info("Streaming detailed images information...");
+        HttpGet request = new HttpGet(getServerManagementURL() + "/images/detail");
+        return makeRequestIntAsync(request, new ListingReader<net.elasticgrid.rackspace.cloudservers.internal.Image>(
+                net.elasticgrid.rackspace.cloudservers.internal.Image.class, "image") {
+            public boolean handle(net.elasticgrid.rackspace.cloudservers.internal.Image image) {
+                return handler.handle(buildImage(image));
+            }
+        });
     }
 
     public Image getImageDetails(int imageID) throws CloudServersException {
+        return await(getImageDetailsAsync(imageID));
+    }
+
+    RequestFuture<Image> getImageDetailsAsync(int imageID) {
         logger.log(Level.INFO, "Retrieving detailed information for image {0}...", imageID);
-        validateImageID(imageID);
+        if (imageID == 0)
+            return invalidArgument("Invalid imageID " + imageID);
         HttpGet request = new HttpGet(getServerManagementURL() + "/images/" + imageID);
-        return buildImage(makeRequestInt(request, net.elasticgrid.rackspace.cloudservers.internal.Image.class));
+        return makeRequestIntAsync(request, net.elasticgrid.rackspace.cloudservers.internal.Image.class)
+                .transform(TO_IMAGE);
     }
 
     public Image createImage(String name, int serverID) throws CloudServersException {
+        return await(createImageAsync(name, serverID));
+    }
+
+    RequestFuture<Image> createImageAsync(String name, int serverID) {
         logger.log(Level.INFO, "Creating image named ''{0}'' from server {1}...", new Object[]{name, serverID});
-        validateServerID(serverID);
+        if (serverID == 0)
+            return invalidArgument("Invalid serverID " + serverID);
         HttpPost request = new HttpPost(getServerManagementURL() + "/images");
         net.elasticgrid.rackspace.cloudservers.internal.Image image = new net.elasticgrid.rackspace.cloudservers.internal.Image();
         image.setName(name);
         image.setServerId(serverID);
-        return buildImage(makeEntityRequestInt(request, image, net.elasticgrid.rackspace.cloudservers.internal.Image.class));
+        return makeEntityRequestIntAsync(request, image, net.elasticgrid.rackspace.cloudservers.internal.Image.class)
+                .transform(TO_IMAGE);
     }
 
-    private List<Image> buildListOfImages(Images response) {
-        List<Image> images = new ArrayList<Image>(response.getImages().size());
-        for (net.elasticgrid.rackspace.cloudservers.internal.Image image : response.getImages())
-            images.add(buildImage(image));
-        return images;
-    }
+    private static final Transformer<Images, List<Image>> TO_IMAGES = new Transformer<Images, List<Image>>() {
+        public List<Image> apply(Images response) {
+            List<Image> images = new ArrayList<Image>(response.getImages().size());
+            for (net.elasticgrid.rackspace.cloudservers.internal.Image image : response.getImages())
+                images.add(buildImage(image));
+            return images;
+        }
+    };
 
-    private Image buildImage(net.elasticgrid.rackspace.cloudservers.internal.Image created) {
+    private static final Transformer<net.elasticgrid.rackspace.cloudservers.internal.Image, Image> TO_IMAGE =
+            new Transformer<net.elasticgrid.rackspace.cloudservers.internal.Image, Image>() {
+                public Image apply(net.elasticgrid.rackspace.cloudservers.internal.Image response) {
+                    return buildImage(response);
+                }
+            };
+
+    private static Image buildImage(net.elasticgrid.rackspace.cloudservers.internal.Image created) {
         return new Image(
                 created.getId(), created.getName(), created.getServerId(),
                 created.getUpdated(), created.getCreated(), created.getProgress(),
@@ -414,52 +1205,83 @@ public class XMLCloudServers extends RackspaceConnection implements CloudServers
     }
 
     public BackupSchedule getBackupSchedule(int serverID) throws CloudServersException {
+        return await(getBackupScheduleAsync(serverID));
+    }
+
+    RequestFuture<BackupSchedule> getBackupScheduleAsync(int serverID) {
         logger.log(Level.INFO, "Retrieving backup schedule for server {0}...", serverID);
-        validateServerID(serverID);
+        if (serverID == 0)
+            return invalidArgument("Invalid serverID " + serverID);
         HttpGet request = new HttpGet(getServerManagementURL() + "/servers/" + serverID + "/backup_schedule");
-        net.elasticgrid.rackspace.cloudservers.internal.BackupSchedule response = makeRequestInt(request, net.elasticgrid.rackspace.cloudservers.internal.BackupSchedule.class);
-        return new BackupSchedule(
-                response.getEnabled(),
-                BackupSchedule.WeeklyBackup.valueOf(response.getWeekly().name()),
-                BackupSchedule.DailyBackup.valueOf(response.getDaily().name())
-        );
+        return makeRequestIntAsync(request, net.elasticgrid.rackspace.cloudservers.internal.BackupSchedule.class)
+                .transform(new Transformer<net.elasticgrid.rackspace.cloudservers.internal.BackupSchedule, BackupSchedule>() {
+                    public BackupSchedule apply(net.elasticgrid.rackspace.cloudservers.internal.BackupSchedule response) {
+                        return new BackupSchedule(
+                                response.getEnabled(),
+                                BackupSchedule.WeeklyBackup.valueOf(response.getWeekly().name()),
+                                BackupSchedule.DailyBackup.valueOf(response.getDaily().name())
+                        );
+                    }
+                });
     }
 
     public void scheduleBackup(int serverID, BackupSchedule schedule) throws CloudServersException {
+        await(scheduleBackupAsync(serverID, schedule));
+    }
+
+    RequestFuture<Void> scheduleBackupAsync(int serverID, BackupSchedule schedule) {
         logger.log(Level.INFO, "Updating backup schedule for server {0} to {1}...",
                 new Object[]{serverID, schedule});
-        validateServerID(serverID);
+        if (serverID == 0)
+            return invalidArgument("Invalid serverID " + serverID);
         HttpPost request = new HttpPost(getServerManagementURL() + "/servers/" + serverID + "/backup_schedule");
         net.elasticgrid.rackspace.cloudservers.internal.BackupSchedule s = new net.elasticgrid.rackspace.cloudservers.internal.BackupSchedule();
         s.setEnabled(schedule.isEnabled());
         s.setWeekly(net.elasticgrid.rackspace.cloudservers.internal.WeeklyBackup.valueOf(schedule.getWeekly().name()));
         s.setDaily(net.elasticgrid.rackspace.cloudservers.internal.DailyBackup.valueOf(schedule.getDaily().name()));
-        makeEntityRequestInt(request, s);
+        return makeEntityRequestIntAsync(request, s);
     }
 
     public void deleteBackupSchedule(int serverID) throws CloudServersException {
+        await(deleteBackupScheduleAsync(serverID));
+    }
+
+    RequestFuture<Void> deleteBackupScheduleAsync(int serverID) {
         logger.log(Level.INFO, "Deleting backup schedule for server {0}...", serverID);
-        validateServerID(serverID);
+        if (serverID == 0)
+            return invalidArgument("Invalid serverID " + serverID);
         HttpDelete request = new HttpDelete(getServerManagementURL() + "/servers/" + serverID + "/backup_schedule");
-        makeRequestInt(request);
+        return makeRequestIntAsync(request);
     }
 
     public List<SharedIPGroup> getSharedIPGroups() throws CloudServersException {
+        return await(getSharedIPGroupsAsync());
+    }
+
+    RequestFuture<List<SharedIPGroup>> getSharedIPGroupsAsync() {
         logger.info("Retrieving shared IP groups information...");
         HttpGet request = new HttpGet(getServerManagementURL() + "/shared_ip_groups");
-        return buildListOfSharedIPGroups(request);
+        return makeRequestIntAsync(request, SharedIpGroups.class).transform(TO_SHARED_IP_GROUPS);
     }
 
     public List<SharedIPGroup> getSharedIPGroupsWithDetails() throws CloudServersException {
+        return await(getSharedIPGroupsWithDetailsAsync());
+    }
+
+    RequestFuture<List<SharedIPGroup>> getSharedIPGroupsWithDetailsAsync() {
         logger.info("Retrieving detailed shared IP groups information...");
         HttpGet request = new HttpGet(getServerManagementURL() + "/shared_ip_groups/detail");
-        return buildListOfSharedIPGroups(request);
+        return makeRequestIntAsync(request, SharedIpGroups.class).transform(TO_SHARED_IP_GROUPS);
     }
 
     public SharedIPGroup getSharedIPGroup(int groupID) throws CloudServersException {
+        return await(getSharedIPGroupAsync(groupID));
+    }
+
+    RequestFuture<SharedIPGroup> getSharedIPGroupAsync(int groupID) {
         logger.log(Level.INFO, "Retrieving detailed shared IP group information for {0}...", groupID);
         HttpGet request = new HttpGet(getServerManagementURL() + "/shared_ip_groups/" + groupID);
-        return buildSharedIPGroup(makeRequestInt(request, SharedIpGroup.class));
+        return makeRequestIntAsync(request, SharedIpGroup.class).transform(TO_SHARED_IP_GROUP);
     }
 
     public SharedIPGroup createSharedIPGroup(String name) throws CloudServersException {
@@ -467,6 +1289,10 @@ public class XMLCloudServers extends RackspaceConnection implements CloudServers
     }
 
     public SharedIPGroup createSharedIPGroup(String name, int serverID) throws CloudServersException {
+        return await(createSharedIPGroupAsync(name, serverID));
+    }
+
+    RequestFuture<SharedIPGroup> createSharedIPGroupAsync(String name, int serverID) {
         logger.log(Level.INFO, "Creating shared IP group named {0} for server {1}...", new Object[]{name, serverID});
         HttpPost request = new HttpPost(getServerManagementURL() + "/shared_ip_groups");
         SharedIpGroup group = new SharedIpGroup();
@@ -476,25 +1302,39 @@ public class XMLCloudServers extends RackspaceConnection implements CloudServers
             server.setId(serverID);
             group.setServer(server);
         }
-        return buildSharedIPGroup(makeEntityRequestInt(request, group, SharedIpGroup.class));
+        return makeEntityRequestIntAsync(request, group, SharedIpGroup.class).transform(TO_SHARED_IP_GROUP);
     }
 
     public void deleteSharedIPGroup(int groupID) throws CloudServersException {
+        await(deleteSharedIPGroupAsync(groupID));
+    }
+
+    RequestFuture<Void> deleteSharedIPGroupAsync(int groupID) {
         logger.log(Level.INFO, "Deleting shared IP group {0}...", groupID);
-        validateSharedIPGroupID(groupID);
+        if (groupID == 0)
+            return invalidArgument("Invalid shared IP group ID " + groupID);
         HttpDelete request = new HttpDelete(getServerManagementURL() + "/shared_ip_groups/" + groupID);
-        makeRequestInt(request);
+        return makeRequestIntAsync(request);
     }
 
-    private List<SharedIPGroup> buildListOfSharedIPGroups(HttpGet request) throws CloudServersException {
-        SharedIpGroups response = makeRequestInt(request, SharedIpGroups.class);
-        List<SharedIPGroup> groups = new ArrayList<SharedIPGroup>(response.getSharedIpGroups().size());
-        for (SharedIpGroup group : response.getSharedIpGroups())
-            groups.add(buildSharedIPGroup(group));
-        return groups;
-    }
+    private static final Transformer<SharedIpGroups, List<SharedIPGroup>> TO_SHARED_IP_GROUPS =
+            new Transformer<SharedIpGroups, List<SharedIPGroup>>() {
+                public List<SharedIPGroup> apply(SharedIpGroups response) {
+                    List<SharedIPGroup> groups = new ArrayList<SharedIPGroup>(response.getSharedIpGroups().size());
+                    for (SharedIpGroup group : response.getSharedIpGroups())
+                        groups.add(buildSharedIPGroup(group));
+                    return groups;
+                }
+            };
 
-    private SharedIPGroup buildSharedIPGroup(SharedIpGroup group) {
+    private static final Transformer<SharedIpGroup, SharedIPGroup> TO_SHARED_IP_GROUP =
+            new Transformer<SharedIpGroup, SharedIPGroup>() {
+                public SharedIPGroup apply(SharedIpGroup group) {
+                    return buildSharedIPGroup(group);
+                }
+            };
+
+    private static SharedIPGroup buildSharedIPGroup(SharedIpGroup group) {
         List<Integer> serverIDs = new ArrayList<Integer>(group.getServers().getServerIDLists().size());
         for (ServerID id : group.getServers().getServerIDLists())
             serverIDs.add(id.getId());
@@ -502,64 +1342,207 @@ public class XMLCloudServers extends RackspaceConnection implements CloudServers
     }
 
     protected void makeEntityRequestInt(HttpEntityEnclosingRequestBase request, final Object entity) throws CloudServersException {
-        makeEntityRequestInt(request, entity, Void.class);
+        await(makeEntityRequestIntAsync(request, entity));
     }
 
     protected <T> T makeEntityRequestInt(HttpEntityEnclosingRequestBase request, final Object entity, Class<T> respType) throws CloudServersException {
+        return await(makeEntityRequestIntAsync(request, entity, respType));
+    }
+
+    protected RequestFuture<Void> makeEntityRequestIntAsync(HttpEntityEnclosingRequestBase request, final Object entity) {
+        return makeEntityRequestIntAsync(request, entity, Void.class);
+    }
+
+    protected <T> RequestFuture<T> makeEntityRequestIntAsync(HttpEntityEnclosingRequestBase request, final Object entity, Class<T> respType) {
+        // marshalled up front, so that the length of the body is known when deciding whether to expect a continue
+        ByteArrayOutputStream body = new ByteArrayOutputStream(512);
+        try {
+            marshal(entity, body);
+        } catch (IOException e) {
+            return RequestFuture.<T>failed(e).transformFailure(TO_CLOUD_SERVERS_EXCEPTION);
+        }
+        request.setEntity(new ByteArrayEntity(body.toByteArray()));
+        return makeRequestIntAsync(request, respType);
+    }
+
+    /**
+     * Sends an entity with personality files. JiBX only marshals documents held in memory, so the entity is marshalled
+     * without the files, which are then written before its closing tag, each one read from its source and encoded
+     * as it is sent. The request can be retried as long as the sources of the files can be opened again.
+     */
+    protected <T> RequestFuture<T> makeEntityRequestIntAsync(HttpEntityEnclosingRequestBase request, final Object entity,
+                                                             final Personality personality, Class<T> respType) {
         request.setEntity(new EntityTemplate(new ContentProducer() {
             public void writeTo(OutputStream output) throws IOException {
-                try {
-                    IBindingFactory bindingFactory = BindingDirectory.getFactory(entity.getClass());
-                    final IMarshallingContext marshallingCxt = bindingFactory.createMarshallingContext();
-                    marshallingCxt.marshalDocument(entity, "UTF-8", true, output);
-                } catch (JiBXException e) {
-                    IOException ioe = new IOException("Can't marshal server details");
-                    ioe.initCause(e);
-                    e.printStackTrace();
-                    throw ioe;
+                ByteArrayOutputStream document = new ByteArrayOutputStream();
+                marshal(entity, document);
+                String xml = document.toString("UTF-8").trim();
+                String head, tail, root;
+                if (xml.endsWith("/>")) {
+                    // empty root element
+                    int start = xml.lastIndexOf('<');
+                    root = xml.substring(start + 1).split("[\\s/]", 2)[0];
+                    head = xml.substring(0, xml.length() - 2) + ">";
+                    tail = "</" + root + ">";
+                } else {
+                    int end = xml.lastIndexOf("</");
+                    root = xml.substring(end + 2, xml.length() - 1).trim();
+                    head = xml.substring(0, end);
+                    tail = xml.substring(end);
+                }
+                int colon = root.indexOf(':');
+                String prefix = colon < 0 ? "" : root.substring(0, colon + 1);
+
+                output.write(head.getBytes("UTF-8"));
+                output.write(("<" + prefix + "personality>").getBytes("UTF-8"));
+                for (File file : personality.getFiles()) {
+                    output.write(("<" + prefix + "file path=\"" + escapeAttribute(file.getPath()) + "\">")
+                            .getBytes("UTF-8"));
+                    Base64OutputStream content = new Base64OutputStream(output);
+                    file.writeContent(content);
+                    content.finish();
+                    output.write(("</" + prefix + "file>").getBytes("UTF-8"));
                 }
+                output.write(("</" + prefix + "personality>").getBytes("UTF-8"));
+                output.write(tail.getBytes("UTF-8"));
             }
         }));
-        return makeRequestInt(request, respType);
+        return makeRequestIntAsync(request, respType);
+    }
+
+    private static void marshal(Object entity, OutputStream output) throws IOException {
+        try {
+            BindingContextPool.marshal(entity, "UTF-8", true, output);
+        } catch (JiBXException e) {
+            IOException ioe = new IOException("Can't marshal server details");
+            ioe.initCause(e);
+            throw ioe;
+        }
+    }
+
+    private static String escapeAttribute(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '&':
+                    escaped.append("&amp;");
+                    break;
+                case '<':
+                    escaped.append("&lt;");
+                    break;
+                case '>':
+                    escaped.append("&gt;");
+                    break;
+                case '"':
+                    escaped.append("&quot;");
+                    break;
+                default:
+                    escaped.append(c);
+            }
+        }
+        return escaped.toString();
     }
 
     protected void makeRequestInt(HttpRequestBase request) throws CloudServersException {
-        makeRequestInt(request, Void.class);
+        await(makeRequestIntAsync(request));
     }
 
     protected <T> T makeRequestInt(HttpRequestBase request, Class<T> respType) throws CloudServersException {
-        try {
-            return makeRequest(request, respType);
-        } catch (RackspaceException e) {
-            throw new CloudServersException(e);
-        } catch (JiBXException e) {
-            throw new CloudServersException("Problem parsing returned message.", e);
-        } catch (MalformedURLException e) {
-            throw new CloudServersException(e.getMessage(), e);
-        } catch (IOException e) {
-            throw new CloudServersException(e.getMessage(), e);
-        } catch (HttpException e) {
-            throw new CloudServersException(e.getMessage(), e);
-        }
+        return await(makeRequestIntAsync(request, respType));
     }
 
-    private void validateServerID(int serverID) throws IllegalArgumentException {
-        if (serverID == 0)
-            throw new IllegalArgumentException("Invalid serverID " + serverID);
+    protected RequestFuture<Void> makeRequestIntAsync(HttpRequestBase request) {
+        return makeRequestIntAsync(request, Void.class);
     }
 
-    private void validateFlavorID(int flavorID) throws IllegalArgumentException {
-        if (flavorID == 0)
-            throw new IllegalArgumentException("Invalid flavorID " + flavorID);
+    /**
+     * Sends a request without waiting for the response.
+     *
+     * @return the future unmarshalled response; it fails with a {@link CloudServersException} if the request fails
+     */
+    protected <T> RequestFuture<T> makeRequestIntAsync(HttpRequestBase request, Class<T> respType) {
+        return makeRequestAsync(request, respType).transformFailure(TO_CLOUD_SERVERS_EXCEPTION);
     }
 
-    private void validateImageID(int imageID) throws IllegalArgumentException {
-        if (imageID == 0)
-            throw new IllegalArgumentException("Invalid imageID " + imageID);
+    /**
+     * Sends a request whose response is read by a reader rather than unmarshalled.
+     *
+     * @return the future result of the reader; it fails with a {@link CloudServersException} if the request fails
+     */
+    protected <T> RequestFuture<T> makeRequestIntAsync(HttpRequestBase request, ResponseReader<T> reader) {
+        return makeRequestAsync(request, reader).transformFailure(TO_CLOUD_SERVERS_EXCEPTION);
     }
 
-    private void validateSharedIPGroupID(int groupID) throws IllegalArgumentException {
-        if (groupID == 0)
-            throw new IllegalArgumentException("Invalid shared IP group ID " + groupID);
+    /**
+     * Reads the elements of a listing one by one, instead of unmarshalling the whole listing before converting it.
+     * Elements read once the request is done are not handled.
+     */
+    private static abstract class ListingReader<E> extends StreamingReader<Void>
+            implements BindingContextPool.ElementHandler<E> {
+        private static final String NAMESPACE = "http://docs.rackspacecloud.com/servers/api/v1.0";
+        private final Class<E> type;
+        private final String element;
+
+        ListingReader(Class<E> type, String element) {
+            this.type = type;
+            this.element = element;
+        }
+
+        public Void read(InputStream content) throws JiBXException {
+            BindingContextPool.ElementHandler<E> handler = new BindingContextPool.ElementHandler<E>() {
+                public boolean handle(E element) {
+                    return !isDone() && ListingReader.this.handle(element);
+                }
+            };
+            if (!BindingContextPool.unmarshalElements(type, content, "UTF-8", NAMESPACE, element, handler))
+                logger.log(Level.FINE, "Listing of {0} elements stopped by its handler", element);
+            return null;
+        }
+    }
+
+    private static final Transformer<Throwable, Throwable> TO_CLOUD_SERVERS_EXCEPTION =
+            new Transformer<Throwable, Throwable>() {
+                public Throwable apply(Throwable e) {
+                    if (e instanceof RackspaceException)
+                        return new CloudServersException(e);
+                    if (e instanceof JiBXException)
+                        return new CloudServersException("Problem parsing returned message.", e);
+                    if (e instanceof IOException || e instanceof HttpException)
+                        return new CloudServersException(e.getMessage(), e);
+                    return e;
+                }
+            };
+
+    /**
+     * Waits for a request to complete.
+     *
+     * @return the result of the request
+     * @throws CloudServersException if the request failed
+     */
+    static <T> T await(RequestFuture<T> future) throws CloudServersException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new CloudServersException("Interrupted while waiting for the Cloud Servers API", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof CloudServersException)
+                throw (CloudServersException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new CloudServersException(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * @return a future failed with an {@link IllegalArgumentException}, for the arguments rejected before sending a
+     *         request
+     */
+    private static <T> RequestFuture<T> invalidArgument(String message) {
+        return RequestFuture.failed(new IllegalArgumentException(message));
     }
 }
@@ -0,0 +1,39 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.elasticgrid.rackspace.common;
+
+/**
+ * Authentication token of an account and the endpoints it gives access to.
+ */
+class AuthSession {
+    final String authToken;
+    final String serverManagementURL;
+    final String storageURL;
+    final String cdnManagementURL;
+    // when the token was issued, in milliseconds since the epoch
+    final long issued;
+
+    AuthSession(String authToken, String serverManagementURL, String storageURL, String cdnManagementURL) {
+        this.authToken = authToken;
+        this.serverManagementURL = serverManagementURL;
+        this.storageURL = storageURL;
+        this.cdnManagementURL = cdnManagementURL;
+        this.issued = System.currentTimeMillis();
+    }
+}
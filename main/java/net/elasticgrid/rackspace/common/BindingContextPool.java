@@ -0,0 +1,189 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.elasticgrid.rackspace.common;
+
+import org.jibx.runtime.BindingDirectory;
+import org.jibx.runtime.IBindingFactory;
+import org.jibx.runtime.IMarshallingContext;
+import org.jibx.runtime.IUnmarshallingContext;
+import org.jibx.runtime.JiBXException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Caches the JiBX binding factory of each class and pools the marshalling and unmarshalling contexts they create.
+ * Looking up a factory goes through reflection and creating a context allocates its buffers, which is significant
+ * next to the parsing of a small document. Contexts are reset before going back to the pool, and are dropped
+ * instead if they failed, so a context is never shared between threads nor reused in an unknown state.
+ */
+public class BindingContextPool {
+    // contexts kept per binding factory, beyond which released contexts are left to the garbage collector
+    private static final int MAX_POOLED = 32;
+
+    private static final ConcurrentMap<Class<?>, IBindingFactory> factories = new ConcurrentHashMap<Class<?>, IBindingFactory>();
+    private static final ConcurrentMap<IBindingFactory, Pool<IUnmarshallingContext>> unmarshallers =
+            new ConcurrentHashMap<IBindingFactory, Pool<IUnmarshallingContext>>();
+    private static final ConcurrentMap<IBindingFactory, Pool<IMarshallingContext>> marshallers =
+            new ConcurrentHashMap<IBindingFactory, Pool<IMarshallingContext>>();
+
+    private BindingContextPool() {
+    }
+
+    /**
+     * @return the binding factory of a class, looked up once
+     * @throws JiBXException if the class is not bound
+     */
+    public static IBindingFactory getFactory(Class<?> type) throws JiBXException {
+        IBindingFactory factory = factories.get(type);
+        if (factory == null) {
+            factory = BindingDirectory.getFactory(type);
+            IBindingFactory previous = factories.putIfAbsent(type, factory);
+            if (previous != null)
+                factory = previous;
+        }
+        return factory;
+    }
+
+    /**
+     * Unmarshals a document with a pooled context.
+     *
+     * @param type     the class the document is bound to
+     * @param in       the document
+     * @param encoding the encoding of the document
+     * @return the unmarshalled document
+     * @throws JiBXException if the document can't be unmarshalled
+     */
+    public static <T> T unmarshal(Class<T> type, InputStream in, String encoding) throws JiBXException {
+        IBindingFactory factory = getFactory(type);
+        Pool<IUnmarshallingContext> pool = getPool(unmarshallers, factory);
+        IUnmarshallingContext context = pool.poll();
+        if (context == null)
+            context = factory.createUnmarshallingContext();
+        Object document = context.unmarshalDocument(in, encoding);
+        // only reached when the context did not fail
+        context.reset();
+        pool.offer(context);
+        return type.cast(document);
+    }
+
+    /**
+     * Unmarshals the children of the root element of a document one at a time, with a pooled context. Each child is
+     * handed over as soon as its end tag is parsed, so that only one of them is held in memory at once.
+     *
+     * @param type      the class the children are bound to
+     * @param in        the document
+     * @param encoding  the encoding of the document
+     * @param namespace the namespace of the children
+     * @param element   the name of the children
+     * @param handler   called with each child
+     * @return false if the handler stopped before the end of the document
+     * @throws JiBXException if the document can't be unmarshalled
+     */
+    public static <T> boolean unmarshalElements(Class<T> type, InputStream in, String encoding,
+                                                String namespace, String element, ElementHandler<? super T> handler)
+            throws JiBXException {
+        IBindingFactory factory = getFactory(type);
+        Pool<IUnmarshallingContext> pool = getPool(unmarshallers, factory);
+        IUnmarshallingContext context = pool.poll();
+        if (context == null)
+            context = factory.createUnmarshallingContext();
+        context.setDocument(in, encoding);
+        // skip the root element
+        context.toStart();
+        context.next();
+        while (context.isAt(namespace, element)) {
+            // a context left in the middle of a document is not reused
+            if (!handler.handle(type.cast(context.unmarshalElement())))
+                return false;
+        }
+        context.reset();
+        pool.offer(context);
+        return true;
+    }
+
+    /**
+     * Receives the elements unmarshalled by {@link BindingContextPool#unmarshalElements}.
+     */
+    public interface ElementHandler<T> {
+        /**
+         * @return false to stop unmarshalling the following elements
+         */
+        boolean handle(T element);
+    }
+
+    /**
+     * Marshals a document with a pooled context.
+     *
+     * @param document   the document to marshal
+     * @param encoding   the encoding to write the document with
+     * @param standalone the standalone attribute of the XML declaration
+     * @param out        the stream to write the document to
+     * @throws JiBXException if the document can't be marshalled
+     */
+    public static void marshal(Object document, String encoding, Boolean standalone, OutputStream out)
+            throws JiBXException {
+        IBindingFactory factory = getFactory(document.getClass());
+        Pool<IMarshallingContext> pool = getPool(marshallers, factory);
+        IMarshallingContext context = pool.poll();
+        if (context == null)
+            context = factory.createMarshallingContext();
+        context.marshalDocument(document, encoding, standalone, out);
+        context.reset();
+        pool.offer(context);
+    }
+
+    private static <C> Pool<C> getPool(ConcurrentMap<IBindingFactory, Pool<C>> pools, IBindingFactory factory) {
+        Pool<C> pool = pools.get(factory);
+        if (pool == null) {
+            pool = new Pool<C>();
+            Pool<C> previous = pools.putIfAbsent(factory, pool);
+            if (previous != null)
+                pool = previous;
+        }
+        return pool;
+    }
+
+    /**
+     * Bounded lock free pool of contexts.
+     */
+    private static class Pool<C> {
+        private final ConcurrentLinkedQueue<C> contexts = new ConcurrentLinkedQueue<C>();
+        // approximate, the bound does not need to be exact
+        private final AtomicInteger size = new AtomicInteger();
+
+        C poll() {
+            C context = contexts.poll();
+            if (context != null)
+                size.decrementAndGet();
+            return context;
+        }
+
+        void offer(C context) {
+            if (size.incrementAndGet() > MAX_POOLED) {
+                size.decrementAndGet();
+                return;
+            }
+            contexts.offer(context);
+        }
+    }
+}
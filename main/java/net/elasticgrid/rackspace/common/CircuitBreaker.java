@@ -0,0 +1,361 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.elasticgrid.rackspace.common;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops sending requests to an endpoint which keeps failing or answering slowly, so that callers fail right away
+ * instead of retrying and waiting on it. The outcome of the last {@link #getWindowSize() window} of requests is
+ * kept; once enough of them failed or were slow the circuit opens and requests are rejected. After the
+ * {@link #getOpenDuration() open duration} a few probe requests are let through: the circuit closes again if they
+ * all succeed, and opens for another period as soon as one of them fails.
+ * <p/>
+ * Each request allowed by {@link #tryAcquire()} must be followed by exactly one call to
+ * {@link #onSuccess(Permit, long)}, {@link #onFailure(Permit, long)} or {@link #release(Permit)} with its permit.
+ * Outcomes only count in the state their request was admitted in: the outcome of a request sent before the circuit
+ * opened, or half opened, is ignored, so that only probes decide whether a half open circuit closes.
+ */
+public class CircuitBreaker {
+    /**
+     * The states of a circuit.
+     */
+    public enum State {
+        /** requests are sent */
+        CLOSED,
+        /** requests are rejected */
+        OPEN,
+        /** a few probe requests are sent, the other ones are rejected */
+        HALF_OPEN
+    }
+
+    /**
+     * The permission to send a request, given back with its outcome.
+     */
+    public static final class Permit {
+        private final long period;
+        private final boolean probe;
+
+        private Permit(long period, boolean probe) {
+            this.period = period;
+            this.probe = probe;
+        }
+
+        /**
+         * @return true if the request is one of the probes of a half open circuit
+         */
+        public boolean isProbe() {
+            return probe;
+        }
+    }
+
+    private final String name;
+    private State state = State.CLOSED;
+    // incremented on each change of state, so that outcomes of requests admitted before are told apart
+    private long period = 0;
+    // shared by the requests admitted while the circuit is closed
+    private Permit closedPermit = new Permit(0, false);
+    // outcomes of the last requests, as a ring buffer
+    private boolean[] failures;
+    private boolean[] slowCalls;
+    private int next = 0;
+    private int recorded = 0;
+    private int failureCount = 0;
+    private int slowCallCount = 0;
+    private int minimumCalls = 10;
+    private double failureRateThreshold = 0.5;
+    private double slowCallRateThreshold = 0.8;
+    private long slowCallDuration = TimeUnit.SECONDS.toNanos(10);
+    private long openDuration = TimeUnit.SECONDS.toMillis(30);
+    private int probes = 3;
+    // when the circuit may half open, in milliseconds since the epoch
+    private long openUntil;
+    private int probesInFlight = 0;
+    private int probesSucceeded = 0;
+    private long openCount = 0;
+    private long rejectedCount = 0;
+
+    /**
+     * @param name the name of the endpoint, used in logs and metrics
+     */
+    public CircuitBreaker(String name) {
+        this.name = name;
+        setWindowSize(20);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Asks for the permission to send a request.
+     *
+     * @return the permit of the request, or null if it should not be sent
+     */
+    public synchronized Permit tryAcquire() {
+        switch (state) {
+            case OPEN:
+                if (System.currentTimeMillis() < openUntil) {
+                    rejectedCount++;
+                    return null;
+                }
+                changeState(State.HALF_OPEN);
+                probesInFlight = 0;
+                probesSucceeded = 0;
+                // fall through
+            case HALF_OPEN:
+                if (probesInFlight + probesSucceeded >= probes) {
+                    rejectedCount++;
+                    return null;
+                }
+                probesInFlight++;
+                return new Permit(period, true);
+            default:
+                return closedPermit;
+        }
+    }
+
+    /**
+     * Records a request which got a response from the endpoint.
+     *
+     * @param permit   the permit of the request
+     * @param duration how long the response took, in nanoseconds
+     */
+    public synchronized void onSuccess(Permit permit, long duration) {
+        if (permit.period != period)
+            return;
+        boolean slow = duration >= slowCallDuration;
+        if (permit.probe) {
+            probesInFlight--;
+            if (slow) {
+                open();
+            } else if (++probesSucceeded >= probes) {
+                changeState(State.CLOSED);
+                clear();
+            }
+            return;
+        }
+        record(false, slow);
+    }
+
+    /**
+     * Records a request which the endpoint failed, or which could not reach it.
+     *
+     * @param permit   the permit of the request
+     * @param duration how long the request took until it failed, in nanoseconds
+     */
+    public synchronized void onFailure(Permit permit, long duration) {
+        if (permit.period != period)
+            return;
+        if (permit.probe) {
+            probesInFlight--;
+            open();
+            return;
+        }
+        record(true, duration >= slowCallDuration);
+    }
+
+    /**
+     * Gives back the permission of a request whose outcome says nothing of the endpoint, such as a cancelled one.
+     *
+     * @param permit the permit of the request
+     */
+    public synchronized void release(Permit permit) {
+        if (permit.probe && permit.period == period)
+            probesInFlight--;
+    }
+
+    /**
+     * @return true if requests are currently rejected
+     */
+    public synchronized boolean isOpen() {
+        return state == State.OPEN && System.currentTimeMillis() < openUntil;
+    }
+
+    private void record(boolean failure, boolean slow) {
+        if (recorded == failures.length) {
+            if (failures[next])
+                failureCount--;
+            if (slowCalls[next])
+                slowCallCount--;
+        } else {
+            recorded++;
+        }
+        failures[next] = failure;
+        slowCalls[next] = slow;
+        if (failure)
+            failureCount++;
+        if (slow)
+            slowCallCount++;
+        next = (next + 1) % failures.length;
+        if (recorded >= minimumCalls && (failureCount >= failureRateThreshold * recorded
+                || slowCallCount >= slowCallRateThreshold * recorded))
+            open();
+    }
+
+    private void open() {
+        changeState(State.OPEN);
+        openUntil = System.currentTimeMillis() + openDuration;
+        openCount++;
+        clear();
+    }
+
+    private void changeState(State state) {
+        this.state = state;
+        period++;
+        closedPermit = new Permit(period, false);
+    }
+
+    private void clear() {
+        next = 0;
+        recorded = 0;
+        failureCount = 0;
+        slowCallCount = 0;
+    }
+
+    public synchronized State getState() {
+        if (state == State.OPEN && System.currentTimeMillis() >= openUntil)
+            return State.HALF_OPEN;
+        return state;
+    }
+
+    /**
+     * @return the share of the recorded requests which failed
+     */
+    public synchronized double getFailureRate() {
+        return recorded == 0 ? 0 : (double) failureCount / recorded;
+    }
+
+    /**
+     * @return the share of the recorded requests slower than the {@link #getSlowCallDuration() slow call duration}
+     */
+    public synchronized double getSlowCallRate() {
+        return recorded == 0 ? 0 : (double) slowCallCount / recorded;
+    }
+
+    /**
+     * @return the number of times the circuit opened
+     */
+    public synchronized long getOpenCount() {
+        return openCount;
+    }
+
+    /**
+     * @return the number of requests rejected while the circuit was open or half open
+     */
+    public synchronized long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /**
+     * Closes the circuit and forgets the recorded requests.
+     */
+    public synchronized void reset() {
+        changeState(State.CLOSED);
+        probesInFlight = 0;
+        probesSucceeded = 0;
+        clear();
+    }
+
+    public synchronized int getWindowSize() {
+        return failures.length;
+    }
+
+    /**
+     * @param size the number of requests whose outcome is kept, 20 by default
+     */
+    public synchronized void setWindowSize(int size) {
+        if (size < 1)
+            throw new IllegalArgumentException("Invalid window size: " + size);
+        failures = new boolean[size];
+        slowCalls = new boolean[size];
+        clear();
+    }
+
+    public synchronized int getMinimumCalls() {
+        return minimumCalls;
+    }
+
+    /**
+     * @param minimumCalls the number of requests recorded before the circuit may open, 10 by default
+     */
+    public synchronized void setMinimumCalls(int minimumCalls) {
+        this.minimumCalls = minimumCalls;
+    }
+
+    public synchronized double getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    /**
+     * @param threshold the share of failed requests which opens the circuit, 0.5 by default
+     */
+    public synchronized void setFailureRateThreshold(double threshold) {
+        this.failureRateThreshold = threshold;
+    }
+
+    public synchronized double getSlowCallRateThreshold() {
+        return slowCallRateThreshold;
+    }
+
+    /**
+     * @param threshold the share of slow requests which opens the circuit, 0.8 by default
+     */
+    public synchronized void setSlowCallRateThreshold(double threshold) {
+        this.slowCallRateThreshold = threshold;
+    }
+
+    public synchronized long getSlowCallDuration() {
+        return TimeUnit.NANOSECONDS.toMillis(slowCallDuration);
+    }
+
+    /**
+     * @param duration how long a response may take before the request counts as slow, 10 seconds by default
+     */
+    public synchronized void setSlowCallDuration(long duration, TimeUnit unit) {
+        this.slowCallDuration = unit.toNanos(duration);
+    }
+
+    public synchronized long getOpenDuration() {
+        return openDuration;
+    }
+
+    /**
+     * @param duration how long requests are rejected once the circuit opens, 30 seconds by default
+     */
+    public synchronized void setOpenDuration(long duration, TimeUnit unit) {
+        this.openDuration = unit.toMillis(duration);
+    }
+
+    public synchronized int getProbes() {
+        return probes;
+    }
+
+    /**
+     * @param probes the number of requests which must succeed for the circuit to close again, 3 by default
+     */
+    public synchronized void setProbes(int probes) {
+        this.probes = probes;
+    }
+
+    @Override
+    public String toString() {
+        return name + " " + getState();
+    }
+}
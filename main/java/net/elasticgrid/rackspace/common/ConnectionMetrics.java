@@ -0,0 +1,155 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.elasticgrid.rackspace.common;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Aggregates the requests of a connection: latency histograms per operation, response counts per status code,
+ * retries, re-authentications and failures. It can be registered as an MBean by
+ * {@link RackspaceConnection#registerMBean()}, or read directly.
+ */
+public class ConnectionMetrics implements MetricsListener, ConnectionMetricsMXBean {
+    private final RackspaceConnection connection;
+    private final LatencyHistogram connectTime = new LatencyHistogram();
+    private final ConcurrentMap<String, LatencyHistogram> timeToFirstByte = new ConcurrentHashMap<String, LatencyHistogram>();
+    private final ConcurrentMap<String, LatencyHistogram> unmarshalTime = new ConcurrentHashMap<String, LatencyHistogram>();
+    private final ConcurrentMap<Integer, AtomicLong> statusCodes = new ConcurrentHashMap<Integer, AtomicLong>();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong reauthentications = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * @param connection the connection whose HTTP connection pool is reported
+     */
+    public ConnectionMetrics(RackspaceConnection connection) {
+        this.connection = connection;
+    }
+
+    public void connected(String host, long duration) {
+        connectTime.record(duration);
+    }
+
+    public void responseReceived(String operation, int statusCode, long duration) {
+        histogram(timeToFirstByte, operation).record(duration);
+        AtomicLong counter = statusCodes.get(statusCode);
+        if (counter == null) {
+            counter = new AtomicLong();
+            AtomicLong previous = statusCodes.putIfAbsent(statusCode, counter);
+            if (previous != null)
+                counter = previous;
+        }
+        counter.incrementAndGet();
+    }
+
+    public void responseUnmarshalled(String operation, long duration) {
+        histogram(unmarshalTime, operation).record(duration);
+    }
+
+    public void retrying(String operation, int statusCode, long delay) {
+        retries.incrementAndGet();
+    }
+
+    public void reauthenticated() {
+        reauthentications.incrementAndGet();
+    }
+
+    public void failed(String operation, Throwable failure) {
+        failures.incrementAndGet();
+    }
+
+    public Map<String, LatencyHistogram.Snapshot> getTimeToFirstByte() {
+        return snapshots(timeToFirstByte);
+    }
+
+    public Map<String, LatencyHistogram.Snapshot> getUnmarshalTime() {
+        return snapshots(unmarshalTime);
+    }
+
+    public LatencyHistogram.Snapshot getConnectTime() {
+        return connectTime.getSnapshot();
+    }
+
+    public Map<Integer, Long> getStatusCodes() {
+        Map<Integer, Long> counts = new TreeMap<Integer, Long>();
+        for (Map.Entry<Integer, AtomicLong> entry : statusCodes.entrySet())
+            counts.put(entry.getKey(), entry.getValue().get());
+        return counts;
+    }
+
+    public long getRetries() {
+        return retries.get();
+    }
+
+    public long getReauthentications() {
+        return reauthentications.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public int getConnectionsInPool() {
+        return connection.getConnectionsInPool();
+    }
+
+    public int getMaxConnections() {
+        return connection.getMaxConnections();
+    }
+
+    public Map<String, String> getCircuitStates() {
+        return connection.getCircuitStates();
+    }
+
+    public long getCircuitRejections() {
+        return connection.getCircuitRejections();
+    }
+
+    public void reset() {
+        connectTime.reset();
+        timeToFirstByte.clear();
+        unmarshalTime.clear();
+        statusCodes.clear();
+        retries.set(0);
+        reauthentications.set(0);
+        failures.set(0);
+    }
+
+    private static LatencyHistogram histogram(ConcurrentMap<String, LatencyHistogram> histograms, String operation) {
+        LatencyHistogram histogram = histograms.get(operation);
+        if (histogram == null) {
+            histogram = new LatencyHistogram();
+            LatencyHistogram previous = histograms.putIfAbsent(operation, histogram);
+            if (previous != null)
+                histogram = previous;
+        }
+        return histogram;
+    }
+
+    private static Map<String, LatencyHistogram.Snapshot> snapshots(Map<String, LatencyHistogram> histograms) {
+        Map<String, LatencyHistogram.Snapshot> snapshots = new TreeMap<String, LatencyHistogram.Snapshot>();
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet())
+            snapshots.put(entry.getKey(), entry.getValue().getSnapshot());
+        return snapshots;
+    }
+}
@@ -0,0 +1,60 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.elasticgrid.rackspace.common;
+
+import java.util.Map;
+
+/**
+ * JMX view of the {@link ConnectionMetrics} of a connection. Latencies are in milliseconds, per operation.
+ */
+public interface ConnectionMetricsMXBean {
+
+    Map<String, LatencyHistogram.Snapshot> getTimeToFirstByte();
+
+    Map<String, LatencyHistogram.Snapshot> getUnmarshalTime();
+
+    LatencyHistogram.Snapshot getConnectTime();
+
+    /**
+     * @return the number of responses, per status code
+     */
+    Map<Integer, Long> getStatusCodes();
+
+    long getRetries();
+
+    long getReauthentications();
+
+    long getFailures();
+
+    /**
+     * @return the number of HTTP connections open, leased or idle
+     */
+    int getConnectionsInPool();
+
+    int getMaxConnections();
+
+    /**
+     * @return the state of the circuit breaker of each endpoint, empty if circuit breaking is disabled
+     */
+    Map<String, String> getCircuitStates();
+
+    long getCircuitRejections();
+
+    void reset();
+}
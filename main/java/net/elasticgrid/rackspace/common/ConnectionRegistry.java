@@ -0,0 +1,303 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.elasticgrid.rackspace.common;
+
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpClient;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.params.HttpProtocolParams;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Resources shared by the connections of many accounts, or tenants, managed from the same JVM:
+ * <ul>
+ *   <li>one bounded HTTP connection pool, with a limit per route,</li>
+ *   <li>the authentication tokens, cached per authentication endpoint and username, so that the connections of an
+ *       account authenticate once and a token expired for one of them is renewed once for all of them,</li>
+ *   <li>a pool of threads sending the requests, taking the requests of the tenants in turn so that a burst from one
+ *       tenant does not starve the others.</li>
+ * </ul>
+ * Connections are bound to a registry when created, see
+ * {@link RackspaceConnection#RackspaceConnection(String, String, String, ConnectionRegistry)}. Connections of a
+ * registry don't report connection times to their metrics listeners, as connections are not owned by one of them.
+ */
+public class ConnectionRegistry {
+    private static final Logger logger = Logger.getLogger(ConnectionRegistry.class.getName());
+
+    private final ConcurrentMap<String, Tenant> tenants = new ConcurrentHashMap<String, Tenant>();
+    private final FairExecutor executor;
+    private HttpClient hc = null;
+    private boolean shutdown = false;
+    private int maxConnections = 200;
+    private int maxConnectionsPerRoute = 50;
+    private int connectionManagerTimeout = 0;
+    private int soTimeout = 0;
+    private int connectionTimeout = 0;
+    // tokens are valid 24 hours, and renewed a bit before
+    private volatile long tokenLifetime = TimeUnit.HOURS.toMillis(23);
+    private final ExpectContinuePolicy expectContinuePolicy = new ExpectContinuePolicy();
+
+    /**
+     * Creates a registry sending requests from 50 threads, at most 10 of them for the same tenant.
+     */
+    public ConnectionRegistry() {
+        this(50, 10);
+    }
+
+    /**
+     * @param threads                the number of threads sending requests
+     * @param maxConcurrentPerTenant the number of requests a tenant can have in flight at the same time
+     */
+    public ConnectionRegistry(int threads, int maxConcurrentPerTenant) {
+        if (threads <= 0 || maxConcurrentPerTenant <= 0)
+            throw new IllegalArgumentException("Invalid number of threads: " + threads + ", " + maxConcurrentPerTenant);
+        this.executor = new FairExecutor("rackspace-tenant-request", threads, maxConcurrentPerTenant);
+    }
+
+    /**
+     * @return the policy deciding which requests of the connections of this registry send
+     *         <tt>Expect: 100-continue</tt>
+     */
+    public ExpectContinuePolicy getExpectContinuePolicy() {
+        return expectContinuePolicy;
+    }
+
+    /**
+     * @return the HTTP client shared by the connections of this registry
+     */
+    public synchronized HttpClient getHttpClient() {
+        if (shutdown)
+            throw new IllegalStateException("Connection registry shut down");
+        if (hc == null) {
+            HttpParams params = new BasicHttpParams();
+            HttpProtocolParams.setVersion(params, HttpVersion.HTTP_1_1);
+            HttpProtocolParams.setContentCharset(params, "UTF-8");
+            HttpProtocolParams.setUserAgent(params, RackspaceConnection.defaultUserAgent());
+            HttpProtocolParams.setUseExpectContinue(params, false);
+            ConnManagerParams.setTimeout(params, connectionManagerTimeout);
+            ConnManagerParams.setMaxTotalConnections(params, maxConnections);
+            ConnManagerParams.setMaxConnectionsPerRoute(params, new ConnPerRouteBean(maxConnectionsPerRoute));
+            params.setIntParameter("http.socket.timeout", soTimeout);
+            params.setIntParameter("http.connection.timeout", connectionTimeout);
+
+            SchemeRegistry schemeRegistry = new SchemeRegistry();
+            schemeRegistry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+            schemeRegistry.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
+            hc = RackspaceConnection.createHttpClient(params, schemeRegistry, expectContinuePolicy);
+        }
+        return hc;
+    }
+
+    /**
+     * Authenticates a connection with the token cached for its account, unless the connection found it invalid or it
+     * expired, in which case the account authenticates again. Connections of the same account wait for each other, so
+     * that the token is renewed once.
+     *
+     * @param connection the connection to authenticate
+     * @param staleToken the token the connection currently has, null if it has none
+     * @return the session to use
+     */
+    AuthSession authenticate(RackspaceConnection connection, String staleToken) throws RackspaceException, IOException {
+        Tenant tenant = getTenant(connection);
+        synchronized (tenant) {
+            AuthSession session = tenant.session;
+            if (session != null && connection.getApiKey().equals(tenant.apiKey) && !isExpired(session)
+                    && !session.authToken.equals(staleToken))
+                return session;
+            logger.log(Level.FINE, "Renewing the authentication token of {0}", tenant.key);
+            session = connection.login();
+            tenant.apiKey = connection.getApiKey();
+            tenant.session = session;
+            return session;
+        }
+    }
+
+    /**
+     * @return true if the token of a connection expired, or was renewed by another connection of the account
+     */
+    boolean isStale(RackspaceConnection connection, String authToken, long issued) {
+        Tenant tenant = tenants.get(keyOf(connection));
+        if (tenant == null)
+            return true;
+        AuthSession session = tenant.session;
+        return session == null || !session.authToken.equals(authToken)
+                || System.currentTimeMillis() - issued > tokenLifetime;
+    }
+
+    private boolean isExpired(AuthSession session) {
+        return System.currentTimeMillis() - session.issued > tokenLifetime;
+    }
+
+    /**
+     * @return the executor sending the requests of the account of a connection
+     */
+    ExecutorService getExecutor(RackspaceConnection connection) {
+        return getTenant(connection).executor;
+    }
+
+    /**
+     * Forgets the token cached for an account, for example after its API key changed.
+     *
+     * @param authURL  the authentication endpoint of the account
+     * @param username the username of the account
+     */
+    public void invalidate(String authURL, String username) {
+        Tenant tenant = tenants.get(authURL + " " + username);
+        if (tenant != null) {
+            synchronized (tenant) {
+                tenant.session = null;
+            }
+        }
+    }
+
+    /**
+     * @return the number of accounts known to this registry
+     */
+    public int getTenantCount() {
+        return tenants.size();
+    }
+
+    public long getTokenLifetime() {
+        return tokenLifetime;
+    }
+
+    /**
+     * Sets how long tokens are used before being renewed, 23 hours by default.
+     */
+    public void setTokenLifetime(long lifetime, TimeUnit unit) {
+        this.tokenLifetime = unit.toMillis(lifetime);
+    }
+
+    public synchronized int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public synchronized void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+        resetHttpClient();
+    }
+
+    public synchronized int getMaxConnectionsPerRoute() {
+        return maxConnectionsPerRoute;
+    }
+
+    public synchronized void setMaxConnectionsPerRoute(int maxConnectionsPerRoute) {
+        this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+        resetHttpClient();
+    }
+
+    public synchronized int getConnectionManagerTimeout() {
+        return connectionManagerTimeout;
+    }
+
+    public synchronized void setConnectionManagerTimeout(int timeout) {
+        connectionManagerTimeout = timeout;
+        resetHttpClient();
+    }
+
+    public synchronized int getSoTimeout() {
+        return soTimeout;
+    }
+
+    public synchronized void setSoTimeout(int timeout) {
+        soTimeout = timeout;
+        resetHttpClient();
+    }
+
+    public synchronized int getConnectionTimeout() {
+        return connectionTimeout;
+    }
+
+    public synchronized void setConnectionTimeout(int timeout) {
+        connectionTimeout = timeout;
+        resetHttpClient();
+    }
+
+    /**
+     * Stops the threads and closes the HTTP connections of this registry. Its connections can't be used afterwards:
+     * the requests still queued fail, and the threads stop once they are done with them.
+     */
+    public void shutdown() {
+        executor.shutdown();
+        HttpClient client;
+        synchronized (this) {
+            shutdown = true;
+            client = hc;
+            hc = null;
+        }
+        if (client != null)
+            client.getConnectionManager().shutdown();
+    }
+
+    /**
+     * Closes the HTTP client, so that the next request creates one with the current settings. Requests in flight on
+     * its connections fail and are retried like any other I/O error. Called with the lock of the registry held.
+     */
+    private void resetHttpClient() {
+        if (hc == null)
+            return;
+        hc.getConnectionManager().shutdown();
+        hc = null;
+    }
+
+    private Tenant getTenant(RackspaceConnection connection) {
+        String key = keyOf(connection);
+        Tenant tenant = tenants.get(key);
+        if (tenant == null) {
+            tenant = new Tenant(key, executor.forTenant(key));
+            Tenant previous = tenants.putIfAbsent(key, tenant);
+            if (previous != null)
+                tenant = previous;
+        }
+        return tenant;
+    }
+
+    private static String keyOf(RackspaceConnection connection) {
+        return connection.getAuthURL() + " " + connection.getUsername();
+    }
+
+    /**
+     * An account, identified by its authentication endpoint and its username.
+     */
+    private static class Tenant {
+        final String key;
+        final ExecutorService executor;
+        // guarded by the tenant
+        String apiKey;
+        volatile AuthSession session;
+
+        Tenant(String key, ExecutorService executor) {
+            this.key = key;
+            this.executor = executor;
+        }
+    }
+}
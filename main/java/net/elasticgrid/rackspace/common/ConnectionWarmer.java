@@ -0,0 +1,121 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.elasticgrid.rackspace.common;
+
+import org.apache.http.HttpHost;
+import org.apache.http.client.HttpClient;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.protocol.BasicHttpContext;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Opens connections to the endpoints of an account ahead of the requests, so that the first requests don't pay for
+ * the DNS lookup, the TCP connection and the TLS handshake. Connections are opened through the connection manager of
+ * the HTTP client and released to its pool, where requests pick them up.
+ * <p/>
+ * Warming up again later checks the connections left idle in the pool: those the server closed are opened again.
+ */
+class ConnectionWarmer {
+    private static final Logger logger = Logger.getLogger(ConnectionWarmer.class.getName());
+
+    // how long to wait for a pooled connection; the pool being busy means the endpoint is warm anyway
+    private static final long LEASE_TIMEOUT = 1000;
+
+    private ConnectionWarmer() {
+    }
+
+    /**
+     * Makes sure a number of open connections to each endpoint are in the pool.
+     *
+     * @param client    the HTTP client whose pool is warmed up
+     * @param endpoints the URLs of the endpoints, null ones being ignored
+     * @param count     the number of connections per endpoint
+     * @param validity  how long the connections can stay idle in the pool, in milliseconds
+     */
+    static void warmUp(HttpClient client, List<String> endpoints, int count, long validity) {
+        ClientConnectionManager manager = client.getConnectionManager();
+        for (HttpRoute route : routesOf(endpoints)) {
+            int opened = 0;
+            List<ManagedClientConnection> leased = new ArrayList<ManagedClientConnection>(count);
+            try {
+                // connections are held until all are leased, so that the pool hands out different ones
+                for (int i = 0; i < count; i++) {
+                    ManagedClientConnection connection =
+                            manager.requestConnection(route, null).getConnection(LEASE_TIMEOUT, TimeUnit.MILLISECONDS);
+                    leased.add(connection);
+                    if (connection.isOpen() && connection.isStale())
+                        connection.close();
+                    if (!connection.isOpen()) {
+                        connection.open(route, new BasicHttpContext(), client.getParams());
+                        opened++;
+                    }
+                    connection.markReusable();
+                }
+            } catch (ConnectionPoolTimeoutException e) {
+                logger.log(Level.FINE, "Pool busy, not warming up more connections to {0}", route.getTargetHost());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Can't warm up connections to " + route.getTargetHost(), e);
+            } finally {
+                for (ManagedClientConnection connection : leased)
+                    manager.releaseConnection(connection, validity, TimeUnit.MILLISECONDS);
+            }
+            logger.log(Level.FINE, "Opened {0} connections to {1}, {2} were already open",
+                    new Object[]{opened, route.getTargetHost(), leased.size() - opened});
+        }
+        manager.closeExpiredConnections();
+    }
+
+    /**
+     * @return the distinct routes to the given endpoints
+     */
+    private static List<HttpRoute> routesOf(List<String> endpoints) {
+        Set<String> targets = new HashSet<String>();
+        List<HttpRoute> routes = new ArrayList<HttpRoute>();
+        for (String endpoint : endpoints) {
+            if (endpoint == null)
+                continue;
+            URI uri;
+            try {
+                uri = new URI(endpoint);
+            } catch (URISyntaxException e) {
+                logger.log(Level.WARNING, "Not warming up invalid endpoint {0}", endpoint);
+                continue;
+            }
+            boolean secure = "https".equalsIgnoreCase(uri.getScheme());
+            int port = uri.getPort() != -1 ? uri.getPort() : secure ? 443 : 80;
+            if (targets.add(uri.getScheme() + "://" + uri.getHost() + ":" + port))
+                routes.add(new HttpRoute(new HttpHost(uri.getHost(), port, uri.getScheme()), null, secure));
+        }
+        return routes;
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.elasticgrid.rackspace.common;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.protocol.HttpContext;
+import java.io.IOException;
+
+/**
+ * Decides which requests send <tt>Expect: 100-continue</tt>. The handshake lets the server reject a request before
+ * its body is sent, which saves uploading a large body for nothing, but it costs a round trip on every request: most
+ * API calls are actions with a body of a few hundred bytes, which are cheaper to send right away. Only bodies of at
+ * least {@link #getThreshold() threshold} bytes, and bodies of unknown length such as streamed uploads, expect a
+ * continue.
+ * <p/>
+ * The policy is a request interceptor of the HTTP client, run after the ones of HttpClient, so that it has the last
+ * word on the <tt>Expect</tt> header.
+ */
+public class ExpectContinuePolicy implements HttpRequestInterceptor {
+    private static final String EXPECT = "Expect";
+    private static final String CONTINUE = "100-continue";
+
+    private volatile long threshold = 64 * 1024;
+
+    public void process(HttpRequest request, HttpContext context) throws HttpException, IOException {
+        if (!(request instanceof HttpEntityEnclosingRequest))
+            return;
+        HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+        if (entity != null && expectsContinue(entity)) {
+            if (!request.containsHeader(EXPECT))
+                request.addHeader(EXPECT, CONTINUE);
+        } else {
+            request.removeHeaders(EXPECT);
+        }
+    }
+
+    /**
+     * @return true if a request with the given body should wait for a continue before sending it
+     */
+    public boolean expectsContinue(HttpEntity entity) {
+        long length = entity.getContentLength();
+        return length < 0 || (length > 0 && length >= threshold);
+    }
+
+    /**
+     * @return the size from which request bodies expect a continue, in bytes
+     */
+    public long getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * @param threshold the size from which request bodies expect a continue, in bytes; 64 KB by default, 0 for all
+     *                  the requests with a body, {@link Long#MAX_VALUE} for the streamed ones only
+     */
+    public void setThreshold(long threshold) {
+        if (threshold < 0)
+            throw new IllegalArgumentException("Invalid threshold: " + threshold);
+        this.threshold = threshold;
+    }
+}
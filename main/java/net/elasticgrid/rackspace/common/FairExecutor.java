@@ -0,0 +1,206 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.elasticgrid.rackspace.common;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pool of threads shared by several tenants, each submitting its tasks through its own {@link #forTenant(String)
+ * executor}. Threads take the tasks of the tenants in turn rather than in submission order, and a tenant never has
+ * more than a given number of tasks running, so that a burst from one tenant only delays the others by one task.
+ */
+class FairExecutor {
+    private static final Logger logger = Logger.getLogger(FairExecutor.class.getName());
+
+    private final int maxRunningPerTenant;
+    private final Thread[] workers;
+    // tenants having tasks queued and fewer than maxRunningPerTenant running, in turn order
+    private final Queue<TenantExecutor> ready = new ArrayDeque<TenantExecutor>();
+    private boolean shutdown = false;
+    // notified when a task ends after shutdown; the pool itself is notified when tasks are ready, waking one thread
+    private final Object termination = new Object();
+
+    /**
+     * @param name                the prefix of the names of the threads
+     * @param threads             the number of threads
+     * @param maxRunningPerTenant the number of tasks a tenant can have running at the same time
+     */
+    FairExecutor(String name, int threads, int maxRunningPerTenant) {
+        this.maxRunningPerTenant = maxRunningPerTenant;
+        this.workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(new Runnable() {
+                public void run() {
+                    work();
+                }
+            }, name + "-" + (i + 1));
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * @return a new executor for the tasks of a tenant
+     */
+    ExecutorService forTenant(String tenant) {
+        return new TenantExecutor(tenant);
+    }
+
+    /**
+     * Stops accepting tasks. The tasks already queued still run, and the threads stop once they are done.
+     */
+    void shutdown() {
+        synchronized (this) {
+            shutdown = true;
+            notifyAll();
+        }
+        terminationChanged();
+    }
+
+    private void terminationChanged() {
+        synchronized (termination) {
+            termination.notifyAll();
+        }
+    }
+
+    private void work() {
+        while (true) {
+            TenantExecutor tenant;
+            Runnable task;
+            synchronized (this) {
+                while (ready.isEmpty() && !shutdown) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                // a tenant with tasks queued but none ready has some running, whose threads come back for them
+                if (ready.isEmpty())
+                    return;
+                tenant = ready.poll();
+                tenant.queued = false;
+                task = tenant.tasks.poll();
+                tenant.running++;
+                // back of the line if it still has work
+                tenant.scheduleIfReady();
+            }
+            try {
+                task.run();
+            } catch (Throwable t) {
+                logger.log(Level.SEVERE, "Task of tenant " + tenant.name + " failed", t);
+            }
+            boolean terminating;
+            synchronized (this) {
+                tenant.running--;
+                tenant.scheduleIfReady();
+                terminating = shutdown;
+            }
+            if (terminating)
+                terminationChanged();
+        }
+    }
+
+    private class TenantExecutor extends AbstractExecutorService {
+        private final String name;
+        private final Queue<Runnable> tasks = new ArrayDeque<Runnable>();
+        private int running = 0;
+        private boolean queued = false;
+
+        TenantExecutor(String name) {
+            this.name = name;
+        }
+
+        public void execute(Runnable command) {
+            synchronized (FairExecutor.this) {
+                if (shutdown)
+                    throw new RejectedExecutionException("Executor shut down");
+                tasks.add(command);
+                scheduleIfReady();
+            }
+        }
+
+        /**
+         * Puts this tenant in line if it has tasks to run and can run more. Called with the lock of the pool held.
+         */
+        void scheduleIfReady() {
+            if (queued) {
+                if (tasks.isEmpty() || running >= maxRunningPerTenant) {
+                    ready.remove(this);
+                    queued = false;
+                }
+            } else if (!tasks.isEmpty() && running < maxRunningPerTenant) {
+                ready.add(this);
+                queued = true;
+                FairExecutor.this.notify();
+            }
+        }
+
+        /**
+         * The pool is shared, so a tenant can't shut it down.
+         */
+        public void shutdown() {
+        }
+
+        public List<Runnable> shutdownNow() {
+            List<Runnable> pending;
+            synchronized (FairExecutor.this) {
+                pending = new ArrayList<Runnable>(tasks);
+                tasks.clear();
+                scheduleIfReady();
+            }
+            terminationChanged();
+            return pending;
+        }
+
+        public boolean isShutdown() {
+            synchronized (FairExecutor.this) {
+                return shutdown;
+            }
+        }
+
+        public boolean isTerminated() {
+            synchronized (FairExecutor.this) {
+                return shutdown && tasks.isEmpty() && running == 0;
+            }
+        }
+
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            synchronized (termination) {
+                while (!isTerminated()) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0)
+                        return false;
+                    TimeUnit.NANOSECONDS.timedWait(termination, remaining);
+                }
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.elasticgrid.rackspace.common;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram of durations. Each power of two is split in four buckets, so percentiles are estimated within
+ * 12.5% whatever the range of the durations, in a fixed amount of memory.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKETS = 4;
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos the duration, in nanoseconds
+     */
+    public void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+        counts.incrementAndGet(bucketOf(nanos));
+        count.incrementAndGet();
+        sum.addAndGet(nanos);
+        long current;
+        while (nanos > (current = max.get())) {
+            if (max.compareAndSet(current, nanos))
+                break;
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @param quantile the quantile, between 0 and 1
+     * @return the estimated duration below which the given share of the durations are, in nanoseconds
+     */
+    public long getPercentile(double quantile) {
+        long total = count.get();
+        if (total == 0)
+            return 0;
+        long target = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= target)
+                return Math.min(max.get(), lowerBound(i) + (lowerBound(i + 1) - lowerBound(i)) / 2);
+        }
+        return max.get();
+    }
+
+    /**
+     * @return a consistent enough summary of the durations recorded so far
+     */
+    public Snapshot getSnapshot() {
+        long n = count.get();
+        return new Snapshot(n, n == 0 ? 0 : sum.get() / n, getPercentile(0.5), getPercentile(0.9),
+                getPercentile(0.99), max.get());
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++)
+            counts.set(i, 0);
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    static int bucketOf(long nanos) {
+        if (nanos < SUB_BUCKETS)
+            return (int) nanos;
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (exponent - 2)) & (SUB_BUCKETS - 1);
+        return (exponent - 1) * SUB_BUCKETS + sub;
+    }
+
+    static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int exponent = bucket / SUB_BUCKETS + 1;
+        int sub = bucket % SUB_BUCKETS;
+        if (exponent > 62)
+            return Long.MAX_VALUE;
+        return (long) (SUB_BUCKETS + sub) << (exponent - 2);
+    }
+
+    /**
+     * Summary of a histogram, in milliseconds.
+     */
+    public static class Snapshot {
+        private final long count;
+        private final double mean;
+        private final double median;
+        private final double p90;
+        private final double p99;
+        private final double max;
+
+        Snapshot(long count, long mean, long median, long p90, long p99, long max) {
+            this.count = count;
+            this.mean = toMillis(mean);
+            this.median = toMillis(median);
+            this.p90 = toMillis(p90);
+            this.p99 = toMillis(p99);
+            this.max = toMillis(max);
+        }
+
+        private static double toMillis(long nanos) {
+            return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getMean() {
+            return mean;
+        }
+
+        public double getMedian() {
+            return median;
+        }
+
+        public double get90thPercentile() {
+            return p90;
+        }
+
+        public double get99thPercentile() {
+            return p99;
+        }
+
+        public double getMax() {
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d, mean=%.1fms, median=%.1fms, p90=%.1fms, p99=%.1fms, max=%.1fms",
+                    count, mean, median, p90, p99, max);
+        }
+    }
+}
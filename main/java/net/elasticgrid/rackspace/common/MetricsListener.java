@@ -0,0 +1,79 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.elasticgrid.rackspace.common;
+
+/**
+ * Notified of the requests sent by a {@link RackspaceConnection}, to feed a metrics system. Listeners are called on
+ * the threads sending the requests, so they have to be quick and thread safe.
+ * <p/>
+ * Operations are named after the method and the URI of the requests, relative to the API endpoint, with IDs and
+ * addresses replaced by <tt>{id}</tt>, for example <tt>GET /servers/{id}</tt>. Durations are in nanoseconds.
+ *
+ * @see RackspaceConnection#addMetricsListener(MetricsListener)
+ * @see ConnectionMetrics
+ */
+public interface MetricsListener {
+
+    /**
+     * A connection to the API was opened.
+     *
+     * @param host     the host connected to
+     * @param duration how long the connection took to establish, TLS handshake included for secure connections
+     */
+    void connected(String host, long duration);
+
+    /**
+     * The status line and headers of a response were received.
+     *
+     * @param operation  the operation of the request
+     * @param statusCode the status code of the response
+     * @param duration   how long the response took since the request was sent, connection included
+     */
+    void responseReceived(String operation, int statusCode, long duration);
+
+    /**
+     * The body of a successful response was read and unmarshalled.
+     *
+     * @param operation the operation of the request
+     * @param duration  how long the body took to read and unmarshal
+     */
+    void responseUnmarshalled(String operation, long duration);
+
+    /**
+     * A request is about to be sent again.
+     *
+     * @param operation  the operation of the request
+     * @param statusCode the status code of the response which caused the retry
+     * @param delay      how long the retry waits, in milliseconds
+     */
+    void retrying(String operation, int statusCode, long delay);
+
+    /**
+     * The authentication token expired and was renewed.
+     */
+    void reauthenticated();
+
+    /**
+     * A request failed for good, retries included.
+     *
+     * @param operation the operation of the request
+     * @param failure   why it failed
+     */
+    void failed(String operation, Throwable failure);
+}
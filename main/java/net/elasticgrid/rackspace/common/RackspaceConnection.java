@@ -44,24 +44,49 @@ import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeRegistry;
 import org.apache.http.conn.ssl.SSLSocketFactory;
 import org.apache.http.entity.HttpEntityWrapper;
-import org.apache.http.entity.EntityTemplate;
 import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.cookie.DateParseException;
+import org.apache.http.impl.cookie.DateUtils;
 import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
 import org.apache.http.params.BasicHttpParams;
 import org.apache.http.params.HttpParams;
 import org.apache.http.params.HttpProtocolParams;
 import org.apache.http.protocol.HttpContext;
-import org.jibx.runtime.BindingDirectory;
-import org.jibx.runtime.IBindingFactory;
-import org.jibx.runtime.IUnmarshallingContext;
 import org.jibx.runtime.JiBXException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.GZIPInputStream;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 /**
  * This class provides common code to the REST connection classes.
@@ -82,7 +107,7 @@ import java.util.zip.GZIPInputStream;
  *     </tr>
  *     <tr>
  *       <td>FINEST</td>
- *       <td>Request Body, Response Body</td>
+ *       <td>Request Body, Response Body (up to {@link #getWireCaptureLimit()} bytes each)</td>
  *     </tr>
  *   </tbody>
  * </table>
@@ -92,7 +117,31 @@ import java.util.zip.GZIPInputStream;
 public class RackspaceConnection {
     // this is the number of automatic retries
     private int maxRetries = 5;
-    private String userAgent = "Elastic-Grid/";
+    // backoff before the first retry, and longest backoff, in milliseconds
+    private long baseBackoff = 1000;
+    private long maxBackoff = 32000;
+    // each request adds retryBudgetRatio to the budget, up to maxRetryBudget, and each retry takes one from it
+    private double retryBudgetRatio = 0.2;
+    private double maxRetryBudget = 10;
+    private double retryBudget = maxRetryBudget;
+    private final AtomicLong retryCount = new AtomicLong();
+    private final AtomicLong retriesDenied = new AtomicLong();
+    private final AtomicLong totalBackoffTime = new AtomicLong();
+    // GETs are hedged once they waited longer than hedgePercentile of the recent GETs, within a budget like retries
+    private volatile boolean hedging = false;
+    private volatile double hedgePercentile = 0.95;
+    private volatile long minHedgeDelay = TimeUnit.MILLISECONDS.toNanos(10);
+    private volatile LatencyHistogram getLatencies = new LatencyHistogram();
+    private volatile long learnedHedgeDelay = 0;
+    private double hedgeBudgetRatio = 0.05;
+    private double maxHedgeBudget = 5;
+    private double hedgeBudget = maxHedgeBudget;
+    private final AtomicLong hedgeCount = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    // time a request may take, retries included, in milliseconds; 0 for no deadline
+    private volatile long requestDeadline = 0;
+    private final Random random = new Random();
+    private String userAgent;
     private HttpClient hc = null;
     private int maxConnections = 100;
     private String proxyHost = null;
@@ -100,20 +149,61 @@ public class RackspaceConnection {
     private int connectionManagerTimeout = 0;
     private int soTimeout = 0;
     private int connectionTimeout = 0;
+    // number of bytes of each request and response body kept for logging
+    private int wireCaptureLimit = 8192;
+    private volatile RateLimiter rateLimiter = null;
+    private final ExpectContinuePolicy expectContinuePolicy = new ExpectContinuePolicy();
+    // circuit breakers per endpoint, null if circuit breaking is disabled
+    private volatile Map<String, CircuitBreaker> circuitBreakers = null;
+    private final List<MetricsListener> metricsListeners = new CopyOnWriteArrayList<MetricsListener>();
+    private ConnectionMetrics mbean;
+    // connections opened to each endpoint ahead of the requests, and how often they are checked
+    private volatile int warmUpConnections = 0;
+    private volatile long warmUpInterval = TimeUnit.SECONDS.toMillis(30);
+    private boolean warmUpChecks = false;
+    private ObjectName mbeanName;
 
     private final String username;
     private final String apiKey;
-    private String serverManagementURL;
-    private String storageURL;
-    private String cdnManagementURL;
-    private String authToken;
+    private final String authURL;
+    // shares the HTTP connections, threads and tokens of many accounts, null if this connection has its own
+    private final ConnectionRegistry registry;
+    // token and endpoints, replaced as a whole so that requests never see half of a session; null until authenticated
+    private volatile AuthSession session;
+    // held while authenticating, so that concurrent requests finding the token expired log in once
+    private final Object authLock = new Object();
 
-    private boolean authenticated = false;
+    /**
+     * The authentication endpoint of the Rackspace Cloud in the US.
+     */
+    public static final String API_AUTH_URL = "https://auth.api.rackspacecloud.com/v1.0";
 
-    private static final String API_AUTH_URL = "https://auth.api.rackspacecloud.com/v1.0";
+    /**
+     * The names of the endpoints of an account, as used by {@link #getCircuitBreaker(String)}.
+     */
+    public static final String AUTH_ENDPOINT = "auth";
+    public static final String SERVER_MANAGEMENT_ENDPOINT = "server-management";
+    public static final String STORAGE_ENDPOINT = "storage";
+    public static final String CDN_MANAGEMENT_ENDPOINT = "cdn-management";
 
     private static final Logger logger = Logger.getLogger(RackspaceConnection.class.getName());
 
+    // GETs timed before hedging starts, and after which their histogram is started over
+    private static final int MIN_HEDGE_SAMPLES = 64;
+    private static final int MAX_HEDGE_SAMPLES = 4096;
+
+    // only times retries and polls, which are then run from the executor
+    private static final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "rackspace-scheduler");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+    private static ExecutorService defaultExecutor;
+    private ExecutorService executor;
+
     /**
      * Initializes the Rackspace connection with the Rackspace login information.
      *
@@ -124,18 +214,41 @@ public class RackspaceConnection {
      * @see #authenticate()
      */
     public RackspaceConnection(String username, String apiKey) throws RackspaceException, IOException {
+        this(username, apiKey, API_AUTH_URL, null);
+    }
+
+    /**
+     * Initializes the Rackspace connection with the Rackspace login information, authenticating on a given endpoint
+     * and possibly sharing its resources with the connections of other accounts.
+     *
+     * @param username the Rackspace username
+     * @param apiKey   the Rackspace API key
+     * @param authURL  the URL of the authentication endpoint
+     * @param registry the registry sharing HTTP connections, threads and tokens between accounts, or null for a
+     *                 connection having its own
+     * @throws RackspaceException if the credentials are invalid
+     * @throws IOException        if there is a network issue
+     */
+    public RackspaceConnection(String username, String apiKey, String authURL, ConnectionRegistry registry)
+            throws RackspaceException, IOException {
         this.username = username;
         this.apiKey = apiKey;
+        this.authURL = authURL;
+        this.registry = registry;
+        userAgent = defaultUserAgent();
+        authenticate();
+    }
+
+    static String defaultUserAgent() {
         String version;
         try {
             Properties props = new Properties();
-            props.load(this.getClass().getClassLoader().getResourceAsStream("version.properties"));
+            props.load(RackspaceConnection.class.getClassLoader().getResourceAsStream("version.properties"));
             version = props.getProperty("version");
         } catch (Exception ex) {
             version = "?";
         }
-        userAgent = userAgent + version + " (" + System.getProperty("os.arch") + "; " + System.getProperty("os.name") + ")";
-        authenticate();
+        return "Elastic-Grid/" + version + " (" + System.getProperty("os.arch") + "; " + System.getProperty("os.name") + ")";
     }
 
     /**
@@ -147,23 +260,56 @@ public class RackspaceConnection {
      * @throws IOException        if there is a network issue
      */
     public String authenticate() throws RackspaceException, IOException {
+        AuthSession renewed;
+        synchronized (authLock) {
+            AuthSession current = session;
+            renewed = registry == null ? login() : registry.authenticate(this, current == null ? null : current.authToken);
+            session = renewed;
+        }
+        if (warmUpConnections > 0)
+            startWarmUp();
+        return renewed.authToken;
+    }
+
+    /**
+     * Authenticates again unless another request already did since the given session was found invalid.
+     *
+     * @param stale the session found invalid, null if there was none
+     * @return the session to send requests with
+     */
+    private AuthSession renewSession(AuthSession stale) throws RackspaceException, IOException {
+        synchronized (authLock) {
+            AuthSession current = session;
+            if (current != null && current != stale && !isStale(current))
+                return current;
+            authenticate();
+            return session;
+        }
+    }
+
+    private boolean isStale(AuthSession session) {
+        return registry != null && registry.isStale(this, session.authToken, session.issued);
+    }
+
+    /**
+     * Authenticates on the authentication endpoint.
+     *
+     * @return the new token and endpoints
+     */
+    AuthSession login() throws RackspaceException, IOException {
         logger.info("Authenticating to Rackspace API...");
-        HttpGet request = new HttpGet(API_AUTH_URL);
+        HttpGet request = new HttpGet(authURL);
         request.addHeader("X-Auth-User", username);
         request.addHeader("X-Auth-Key", apiKey);
-        HttpResponse response = getHttpClient().execute(request);
+        HttpResponse response = send(request, getCircuitBreaker(AUTH_ENDPOINT));
         int statusCode = response.getStatusLine().getStatusCode();
         switch (statusCode) {
             case 204:
-                if (response.getFirstHeader("X-Server-Management-Url") != null)
-                    serverManagementURL = response.getFirstHeader("X-Server-Management-Url").getValue();
-                if (response.getFirstHeader("X-Storage-Url") != null)
-                    storageURL = response.getFirstHeader("X-Storage-Url").getValue();
-                if (response.getFirstHeader("X-CDN-Management-Url") != null)
-                    cdnManagementURL = response.getFirstHeader("X-CDN-Management-Url").getValue();
-                authToken = response.getFirstHeader("X-Auth-Token").getValue();
-                authenticated = true;
-                return authToken;
+                return new AuthSession(
+                        response.getFirstHeader("X-Auth-Token").getValue(),
+                        headerValue(response, "X-Server-Management-Url"),
+                        headerValue(response, "X-Storage-Url"),
+                        headerValue(response, "X-CDN-Management-Url"));
             case 401:
                 throw new RackspaceException("Invalid credentials: " + response.getStatusLine().getReasonPhrase());
             default:
@@ -172,7 +318,8 @@ public class RackspaceConnection {
     }
 
     /**
-     * Make a http request and process the response. This method also performs automatic retries.
+     * Make a http request and process the response. This method also performs automatic retries, and blocks until
+     * the request succeeds or fails for good.
      *
      * @param request  the HTTP method to use (GET, POST, DELETE, etc)
      * @param respType the class that represents the desired/expected return type
@@ -181,136 +328,744 @@ public class RackspaceConnection {
      * @throws IOException        if there is an I/O exception
      * @throws HttpException      if there is an HTTP exception
      * @throws JiBXException      if the result can't be unmarshalled
+     * @see #makeRequestAsync(HttpRequestBase, Class)
      */
-    @SuppressWarnings("unchecked")
     protected <T> T makeRequest(HttpRequestBase request, Class<T> respType)
             throws HttpException, IOException, JiBXException, RackspaceException {
+        RequestFuture<T> future = makeRequestAsync(request, respType);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + request.getURI());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RackspaceException)
+                throw (RackspaceException) cause;
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof HttpException)
+                throw (HttpException) cause;
+            if (cause instanceof JiBXException)
+                throw (JiBXException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new RackspaceException(cause);
+        }
+    }
 
-        if (!authenticated)
-            authenticate();
-
-        // add auth params, and protocol specific headers
-        request.addHeader("X-Auth-Token", getAuthToken());
+    /**
+     * Make a http request and process the response without blocking the caller. Retries are scheduled rather than
+     * slept on: on a 503 or 413 the next attempt is sent after a random delay of up to twice the previous one (or
+     * after the delay the server asked for in <tt>Retry-After</tt>), as long as the retry budget of this connection
+     * allows it.
+     *
+     * @param request  the HTTP method to use (GET, POST, DELETE, etc)
+     * @param respType the class that represents the desired/expected return type
+     * @return the future unmarshalled entity; it fails with the exceptions {@link #makeRequest} would throw
+     */
+    protected <T> RequestFuture<T> makeRequestAsync(final HttpRequestBase request, final Class<T> respType) {
+        return makeRequestAsync(request, unmarshaller(respType));
+    }
 
+    /**
+     * Make a http request and let a reader process the body of the response, for responses which should not be
+     * unmarshalled into a single document.
+     *
+     * @param request the HTTP method to use (GET, POST, DELETE, etc)
+     * @param reader  reads the body of a successful response; null to ignore it
+     * @return the future result of the reader
+     * @see #makeRequestAsync(HttpRequestBase, Class)
+     */
+    protected <T> RequestFuture<T> makeRequestAsync(final HttpRequestBase request, final ResponseReader<T> reader) {
         // set accept and content-type headers
         request.setHeader("Accept", "application/xml; charset=UTF-8");
         request.setHeader("Accept-Encoding", "gzip");
         request.setHeader("Content-Type", "application/xml; charset=UTF-8");
 
-        // send the request
-        T result = null;
-        boolean done = false;
-        int retries = 0;
-        boolean doRetry = false;
-        RackspaceException error = null;
-        do {
-            HttpResponse response = null;
-            if (retries > 0)
-                logger.log(Level.INFO, "Retry #{0}: querying via {1} {2}",
-                        new Object[]{retries, request.getMethod(), request.getURI()});
-            else
-                logger.log(Level.INFO, "Querying via {0} {1}", new Object[]{request.getMethod(), request.getURI()});
-
-            if (logger.isLoggable(Level.FINEST) && request instanceof HttpEntityEnclosingRequestBase) {
-                HttpEntity entity = ((HttpEntityEnclosingRequestBase) request).getEntity();
-                if (entity instanceof EntityTemplate) {
-                    EntityTemplate template = (EntityTemplate) entity;
-                    ByteArrayOutputStream baos = null;
-                    try {
-                        baos = new ByteArrayOutputStream();
-                        template.writeTo(baos);
-                        logger.log(Level.FINEST, "Request body:\n{0}", baos.toString());
-                    } finally {
-                        IOUtils.closeQuietly(baos);
-                    }
+        // when wire logging, tee the request body as it is sent
+        WireCapture requestCapture = null;
+        if (logger.isLoggable(Level.FINEST) && request instanceof HttpEntityEnclosingRequestBase) {
+            HttpEntityEnclosingRequestBase entityRequest = (HttpEntityEnclosingRequestBase) request;
+            if (entityRequest.getEntity() != null) {
+                requestCapture = new WireCapture(wireCaptureLimit);
+                entityRequest.setEntity(new CapturingEntity(entityRequest.getEntity(), requestCapture));
+            }
+        }
+
+        depositRetryBudget();
+        RequestFuture<T> future = new RequestFuture<T>();
+        // streaming readers hand what they read to the caller, so a duplicate would hand it twice
+        boolean streaming = reader instanceof StreamingReader;
+        if (streaming)
+            ((StreamingReader<T>) reader).future = future;
+        boolean hedged = hedging && request instanceof HttpGet && !streaming;
+        if (!hedged && requestDeadline <= 0) {
+            submitAttempt(request, reader, requestCapture, 0, future);
+            return future;
+        }
+        RequestFuture<T> attempt = new RequestFuture<T>();
+        AtomicInteger running = new AtomicInteger();
+        race(request, attempt, future, running, request instanceof HttpGet && !streaming, false);
+        submitAttempt(request, reader, requestCapture, 0, attempt);
+        if (hedged)
+            scheduleHedge(request, reader, future, running);
+        if (requestDeadline > 0)
+            scheduleDeadline(request, future, requestDeadline);
+        return future;
+    }
+
+    /**
+     * Completes a request with the first of its attempts to succeed, and aborts the other attempts once it is
+     * complete, unless the request was cancelled. The request only fails once all of its attempts failed, with the
+     * failure of the last one.
+     * <p/>
+     * All timed attempts count towards the hedge delay, not only the winners: an attempt aborted because another one
+     * won, or the deadline passed, is timed up to its abort, so that the slow GETs hedging cuts short still count.
+     *
+     * @param running the number of attempts of the request still running
+     * @param timed   true if the attempt is timed to learn the hedge delay
+     * @param hedge   true if the attempt is the duplicate of a slow one
+     */
+    private <T> void race(final HttpRequestBase request, final RequestFuture<T> attempt,
+                          final RequestFuture<T> future, final AtomicInteger running, final boolean timed,
+                          final boolean hedge) {
+        final long start = System.nanoTime();
+        running.incrementAndGet();
+        attempt.addCallback(new RequestFuture.Callback<T>() {
+            public void onSuccess(T result) {
+                running.decrementAndGet();
+                if (timed)
+                    learnGetLatency(System.nanoTime() - start);
+                if (future.set(result) && hedge)
+                    hedgeWins.incrementAndGet();
+            }
+
+            public void onFailure(Throwable failure) {
+                if (running.decrementAndGet() > 0) {
+                    logger.log(Level.FINE, "Attempt of {0} failed, waiting for the others: {1}",
+                            new Object[]{request.getURI(), failure});
+                    return;
                 }
+                future.setException(failure);
             }
+        }, RequestFuture.SAME_THREAD);
+        future.addListener(new Runnable() {
+            public void run() {
+                if (attempt.isDone())
+                    return;
+                attempt.cancel(false);
+                if (future.isCancelled())
+                    return;
+                request.abort();
+                if (timed)
+                    learnGetLatency(System.nanoTime() - start);
+            }
+        }, RequestFuture.SAME_THREAD);
+    }
+
+    /**
+     * Sends a duplicate of a GET on another connection if it takes longer than most GETs, so that a slow server or
+     * connection does not make the caller wait. Nothing is sent until enough GETs were timed, nor once the hedge
+     * budget is exhausted.
+     */
+    private <T> void scheduleHedge(final HttpRequestBase request, final ResponseReader<T> reader,
+                                   final RequestFuture<T> future, final AtomicInteger running) {
+        depositHedgeBudget();
+        long delay = learnedHedgeDelay;
+        if (delay <= 0)
+            return;
+        final long hedgeDelay = Math.max(delay, minHedgeDelay);
+        try {
+            scheduler.schedule(new Runnable() {
+                public void run() {
+                    if (future.isDone() || !withdrawHedgeBudget())
+                        return;
+                    logger.log(Level.FINE, "No response from {0} after {1} ms, sending it again",
+                            new Object[]{request.getURI(), TimeUnit.NANOSECONDS.toMillis(hedgeDelay)});
+                    HttpGet duplicate = new HttpGet(request.getURI());
+                    for (Header header : request.getAllHeaders())
+                        duplicate.addHeader(header.getName(), header.getValue());
+                    RequestFuture<T> hedge = new RequestFuture<T>();
+                    race(duplicate, hedge, future, running, true, true);
+                    hedgeCount.incrementAndGet();
+                    submitAttempt(duplicate, reader, null, 0, hedge);
+                }
+            }, hedgeDelay, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            logger.log(Level.FINE, "Can't schedule hedge of {0}", request.getURI());
+        }
+    }
+
+    /**
+     * Fails a request still pending after the deadline, which aborts its attempts.
+     */
+    private void scheduleDeadline(final HttpRequestBase request, final RequestFuture<?> future, final long deadline) {
+        final ScheduledFuture<?> timer;
+        try {
+            timer = scheduler.schedule(new Runnable() {
+                public void run() {
+                    fail(request, future, new InterruptedIOException("No response within " + deadline + " ms from "
+                            + request.getURI() + " via " + request.getMethod()));
+                }
+            }, deadline, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            future.setException(e);
+            return;
+        }
+        future.addListener(new Runnable() {
+            public void run() {
+                timer.cancel(false);
+            }
+        }, RequestFuture.SAME_THREAD);
+    }
+
+    /**
+     * Times a GET to learn after how long GETs are hedged. The histogram is started over regularly, so that the
+     * delay follows the latency of the API.
+     */
+    private void learnGetLatency(long nanos) {
+        LatencyHistogram latencies = getLatencies;
+        latencies.record(nanos);
+        long count = latencies.getCount();
+        if (count >= MIN_HEDGE_SAMPLES && count % 16 == 0)
+            learnedHedgeDelay = latencies.getPercentile(hedgePercentile);
+        if (count >= MAX_HEDGE_SAMPLES)
+            getLatencies = new LatencyHistogram();
+    }
 
-            InputStream entityStream = null;
-            HttpEntity entity = null;
+    /**
+     * @return a reader unmarshalling a response into a document, or null for {@link Void}
+     */
+    private static <T> ResponseReader<T> unmarshaller(final Class<T> respType) {
+        if (respType == Void.class)
+            return null;
+        return new ResponseReader<T>() {
+            public T read(InputStream content) throws JiBXException {
+                return BindingContextPool.unmarshal(respType, content, "UTF-8");
+            }
+        };
+    }
 
-            if (logger.isLoggable(Level.FINEST)) {
-                response = getHttpClient().execute(request);
-                entity = response.getEntity();
+    private <T> void submitAttempt(final HttpRequestBase request, final ResponseReader<T> reader,
+                                   final WireCapture requestCapture, final int retries,
+                                   final RequestFuture<T> future) {
+        final Runnable attempt = new Runnable() {
+            public void run() {
+                attempt(request, reader, requestCapture, retries, future);
+            }
+        };
+        try {
+            long pacing = reserveRateLimit(request, new Runnable() {
+                public void run() {
+                    submitAttempt(request, reader, requestCapture, retries, future);
+                }
+            });
+            if (pacing < 0) {
+                logger.log(Level.FINE, "Holding {0} {1} until the rate limits are loaded",
+                        new Object[]{request.getMethod(), request.getURI()});
+            } else if (pacing > 0) {
+                logger.log(pacing > 60000 ? Level.WARNING : Level.FINE,
+                        "Delaying {0} {1} by {2} ms to stay within the API rate limits",
+                        new Object[]{request.getMethod(), request.getURI(), pacing});
+                // the executor may be shut down meanwhile, which would otherwise leave the request pending forever
+                scheduler.schedule(new Runnable() {
+                    public void run() {
+                        try {
+                            getExecutor().execute(attempt);
+                        } catch (RejectedExecutionException e) {
+                            future.setException(e);
+                        }
+                    }
+                }, pacing, TimeUnit.MILLISECONDS);
+            } else {
+                getExecutor().execute(attempt);
+            }
+        } catch (RejectedExecutionException e) {
+            future.setException(e);
+        }
+    }
+
+    /**
+     * Reserves a token for a request from the rate limiter, reloading the limits first if they are out of date.
+     * Requests are held while the limits are not loaded yet, or reloaded after a rejection, except the request
+     * loading them.
+     *
+     * @param resubmit submits the request again once the limits are loaded, if it is held
+     * @return how long the request should wait, in milliseconds, or -1 if it is held
+     */
+    private long reserveRateLimit(HttpRequestBase request, Runnable resubmit) {
+        RateLimiter limiter = rateLimiter;
+        String base = getServerManagementURL();
+        String uri = request.getURI().toString();
+        if (limiter == null || base == null || !uri.startsWith(base))
+            return 0;
+        if (limiter.startResync())
+            resyncRateLimits(limiter);
+        String path = uri.substring(base.length());
+        if (!path.startsWith("/limits") && limiter.hold(resubmit))
+            return -1;
+        return limiter.reserve(request.getMethod(), path);
+    }
+
+    private void resyncRateLimits(final RateLimiter limiter) {
+        RequestFuture<List<RateLimiter.Bucket>> limits;
+        try {
+            limits = loadRateLimits();
+        } catch (RuntimeException e) {
+            limits = RequestFuture.failed(e);
+        }
+        if (limits == null) {
+            limiter.updateFailed();
+            return;
+        }
+        limits.addCallback(new RequestFuture.Callback<List<RateLimiter.Bucket>>() {
+            public void onSuccess(List<RateLimiter.Bucket> buckets) {
+                logger.log(Level.FINE, "Loaded rate limits {0}", buckets);
+                limiter.update(buckets);
+            }
+
+            public void onFailure(Throwable failure) {
+                logger.log(Level.WARNING, "Can't load rate limits, keeping the previous ones", failure);
+                limiter.updateFailed();
+            }
+        }, RequestFuture.SAME_THREAD);
+    }
+
+    /**
+     * Loads the rate limits of the API, for connections created with rate limiting enabled. The default
+     * implementation knows of no limits.
+     *
+     * @return the future rate limits, or null if the API has no rate limits
+     * @see #setRateLimited(boolean)
+     */
+    protected RequestFuture<List<RateLimiter.Bucket>> loadRateLimits() {
+        return null;
+    }
+
+    private <T> void attempt(final HttpRequestBase request, final ResponseReader<T> reader,
+                             final WireCapture requestCapture, final int retries,
+                             final RequestFuture<T> future) {
+        if (future.isDone())
+            return;
+        long delay;
+        try {
+            future.set(exchange(request, reader, requestCapture, retries));
+            return;
+        } catch (RetryLater retry) {
+            if (retries + 1 > maxRetries) {
+                retriesDenied.incrementAndGet();
+                fail(request, future, new HttpException("Number of retries exceeded for " + request.getURI()));
+                return;
+            }
+            CircuitBreaker breaker = circuitBreakerOf(request);
+            if (breaker != null && breaker.isOpen()) {
+                retriesDenied.incrementAndGet();
+                fail(request, future, new CircuitOpenException(breaker.getName(), "Circuit of " + breaker.getName()
+                        + " endpoint opened, not retrying " + request.getURI()));
+                return;
+            }
+            if (retry.backoff && !withdrawRetryBudget()) {
+                retriesDenied.incrementAndGet();
+                fail(request, future, new HttpException("Retry budget exhausted, not retrying " + request.getURI()));
+                return;
+            }
+            delay = retry.backoff ? backoffDelay(retries + 1, retry.retryAfter) : 0;
+            if (isInstrumented())
+                fireRetrying(operationOf(request), retry.statusCode, delay);
+        } catch (Throwable t) {
+            fail(request, future, t);
+            return;
+        }
+
+        retryCount.incrementAndGet();
+        totalBackoffTime.addAndGet(delay);
+        if (delay == 0) {
+            submitAttempt(request, reader, requestCapture, retries + 1, future);
+            return;
+        }
+        logger.log(Level.WARNING, "Service unavailable or over limit on {0} via {1}. Will retry in {2} ms.",
+                new Object[]{request.getURI(), request.getMethod(), delay});
+        try {
+            scheduler.schedule(new Runnable() {
+                public void run() {
+                    submitAttempt(request, reader, requestCapture, retries + 1, future);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            future.setException(e);
+        }
+    }
+
+    /**
+     * Sends a request once and unmarshalls the response.
+     *
+     * @throws RetryLater if the request should be sent again
+     */
+    private <T> T exchange(HttpRequestBase request, ResponseReader<T> reader, WireCapture requestCapture, int retries)
+            throws HttpException, IOException, JiBXException, RackspaceException, RetryLater {
+        AuthSession session = this.session;
+        if (session == null || isStale(session))
+            session = renewSession(session);
+
+        // add auth params, set again on each attempt as the token may have been renewed
+        request.setHeader("X-Auth-Token", session.authToken);
+
+        if (retries > 0)
+            logger.log(Level.INFO, "Retry #{0}: querying via {1} {2}",
+                    new Object[]{retries, request.getMethod(), request.getURI()});
+        else
+            logger.log(Level.INFO, "Querying via {0} {1}", new Object[]{request.getMethod(), request.getURI()});
+
+        InputStream entityStream = null;
+        WireCapture responseCapture = null;
+
+        // operations are only named when someone listens
+        boolean instrumented = isInstrumented();
+        String operation = instrumented ? operationOf(request) : null;
+        long start = instrumented ? System.nanoTime() : 0;
+
+        HttpResponse response = send(request, circuitBreakerOf(request));
+        int statusCode = response.getStatusLine().getStatusCode();
+        HttpEntity entity = response.getEntity();
+
+        if (instrumented)
+            fireResponseReceived(operation, statusCode, System.nanoTime() - start);
+
+        if (requestCapture != null)
+            logger.log(Level.FINEST, "Request body:\n{0}", requestCapture);
+
+        switch (statusCode) {
+            case 200:
+            case 202:
+            case 203:
                 try {
-                    entityStream = entity.getContent();
-                    logger.log(Level.FINEST, "Response body on " + request.getURI()
-                            + " via " + request.getMethod() + ":\n" + IOUtils.toString(entityStream));
+                    if (logger.isLoggable(Level.FINEST))
+                        responseCapture = new WireCapture(wireCaptureLimit);
+                    long unmarshalStart = instrumented ? System.nanoTime() : 0;
+                    entityStream = openContent(entity, responseCapture);
+                    if (reader == null)
+                        return null;
+                    T result = reader.read(entityStream);
+                    if (instrumented)
+                        fireResponseUnmarshalled(operation, System.nanoTime() - unmarshalStart);
+                    return result;
                 } finally {
+                    if (responseCapture != null)
+                        logger.log(Level.FINEST, "Response body on " + request.getURI()
+                                + " via " + request.getMethod() + ":\n" + responseCapture);
+                    entity.consumeContent();
                     IOUtils.closeQuietly(entityStream);
                 }
-            }
+            case 304:   // not modified, for conditional requests
+                if (entity != null)
+                    entity.consumeContent();
+                return null;
+            case 413:   // over limit
+                if (rateLimiter != null)
+                    rateLimiter.invalidate();
+                // fall through
+            case 503:   // service unavailable
+                if (entity != null)
+                    entity.consumeContent();
+                throw new RetryLater(statusCode, true, retryAfter(response));
+            case 401:   // unauthorized
+                if (entity != null)
+                    entity.consumeContent();
+                logger.warning("Not authenticated or authentication token expired. Authenticating...");
+                renewSession(session);
+                if (instrumented)
+                    fireReauthenticated();
+                throw new RetryLater(statusCode, false, 0);
+            case 417:
+                if (entity != null)
+                    entity.consumeContent();
+                throw new RackspaceException(new IllegalArgumentException("Some parameters are invalid!")); // TODO: temp hack 'til Rackspace API is fixed!
+            case 400:
+            case 500:
+            default:
+                // faults are always captured, as they are logged when they can't be unmarshalled
+                responseCapture = new WireCapture(wireCaptureLimit);
+                try {
+                    entityStream = openContent(entity, responseCapture);
+                    CloudServersAPIFault fault = BindingContextPool.unmarshal(CloudServersAPIFault.class, entityStream, "UTF-8");
+                    throw new RackspaceException(fault.getCode(), fault.getMessage(), fault.getDetails());
+                } catch (JiBXException e) {
+                    responseCapture.drain(entityStream);
+                    logger.log(Level.SEVERE, "Can't unmarshal response from " + request.getURI()
+                            + " via " + request.getMethod() + ":" + responseCapture, e);
+                    throw e;
+                } finally {
+                    entity.consumeContent();
+                    IOUtils.closeQuietly(entityStream);
+                }
+        }
+    }
 
+    /**
+     * Sends a request through the circuit breaker of its endpoint, which records whether the endpoint answered.
+     * Server errors, service unavailable responses and I/O errors count as failures; requests aborted by this
+     * connection say nothing of the endpoint.
+     *
+     * @param breaker the circuit breaker of the endpoint, or null
+     * @throws CircuitOpenException if the circuit of the endpoint is open
+     */
+    private HttpResponse send(HttpRequestBase request, CircuitBreaker breaker) throws IOException {
+        if (breaker == null)
+            return getHttpClient().execute(request);
+        CircuitBreaker.Permit permit = breaker.tryAcquire();
+        if (permit == null)
+            throw new CircuitOpenException(breaker.getName(), "Circuit of " + breaker.getName()
+                    + " endpoint is open, not sending " + request.getMethod() + " " + request.getURI());
+        long sent = System.nanoTime();
+        HttpResponse response;
+        try {
             response = getHttpClient().execute(request);
-            int statusCode = response.getStatusLine().getStatusCode();
-            entity = response.getEntity();
-
-            switch (statusCode) {
-                case 200:
-                case 202:
-                case 203:
-                    try {
-                        entityStream = entity.getContent();
-                        IBindingFactory bindingFactory = BindingDirectory.getFactory(respType);
-                        IUnmarshallingContext unmarshallingCxt = bindingFactory.createUnmarshallingContext();
-                        result = (T) unmarshallingCxt.unmarshalDocument(entityStream, "UTF-8");
-                    } finally {
-                        entity.consumeContent();
-                        IOUtils.closeQuietly(entityStream);
-                    }
-                    done = true;
-                    break;
-                case 503:   // service unavailable
-                    logger.log(Level.WARNING, "Service unavailable on {0} via {1}. Will retry in {2} seconds.",
-                            new Object[]{request.getURI(), request.getMethod(), Math.pow(2.0, retries + 1)});
-                    doRetry = true;
-                    break;
-                case 401:   // unauthorized
-                    logger.warning("Not authenticated or authentication token expired. Authenticating...");
-                    authenticate();
-                    doRetry = true;
-                    break;
-                case 417:
-                    throw new RackspaceException(new IllegalArgumentException("Some parameters are invalid!")); // TODO: temp hack 'til Rackspace API is fixed!
-                case 400:
-                case 500:
-                default:
-                    try {
-                        entityStream = entity.getContent();
-                        IBindingFactory bindingFactory = BindingDirectory.getFactory(CloudServersAPIFault.class);
-                        IUnmarshallingContext unmarshallingCxt = bindingFactory.createUnmarshallingContext();
-                        CloudServersAPIFault fault = (CloudServersAPIFault) unmarshallingCxt.unmarshalDocument(entityStream, "UTF-8");
-                        done = true;
-                        throw new RackspaceException(fault.getCode(), fault.getMessage(), fault.getDetails());
-                    } catch (JiBXException e) {
-                        response = getHttpClient().execute(request);
-                        entity = response.getEntity();
-                        entityStream = entity.getContent();
-                        logger.log(Level.SEVERE, "Can't unmarshal response from " + request.getURI()
-                                + " via " + request.getMethod() + ":" + IOUtils.toString(entityStream));
-                        e.printStackTrace();
-                        throw e;
-                    } finally {
-                        entity.consumeContent();
-                        IOUtils.closeQuietly(entityStream);
-                    }
+        } catch (IOException e) {
+            if (request.isAborted())
+                breaker.release(permit);
+            else
+                breaker.onFailure(permit, System.nanoTime() - sent);
+            throw e;
+        } catch (RuntimeException e) {
+            breaker.release(permit);
+            throw e;
+        }
+        if (response.getStatusLine().getStatusCode() >= 500)
+            breaker.onFailure(permit, System.nanoTime() - sent);
+        else
+            breaker.onSuccess(permit, System.nanoTime() - sent);
+        return response;
+    }
+
+    /**
+     * @return the circuit breaker of the endpoint a request is sent to, or null
+     */
+    private CircuitBreaker circuitBreakerOf(HttpRequestBase request) {
+        Map<String, CircuitBreaker> breakers = circuitBreakers;
+        if (breakers == null)
+            return null;
+        AuthSession session = this.session;
+        if (session == null)
+            return null;
+        String uri = request.getURI().toString();
+        if (session.serverManagementURL != null && uri.startsWith(session.serverManagementURL))
+            return breakers.get(SERVER_MANAGEMENT_ENDPOINT);
+        if (session.storageURL != null && uri.startsWith(session.storageURL))
+            return breakers.get(STORAGE_ENDPOINT);
+        if (session.cdnManagementURL != null && uri.startsWith(session.cdnManagementURL))
+            return breakers.get(CDN_MANAGEMENT_ENDPOINT);
+        return null;
+    }
+
+    /**
+     * Full jitter backoff: a random delay between zero and the exponential backoff for this retry, but never
+     * shorter than what the server asked for.
+     */
+    private long backoffDelay(int retry, long retryAfter) {
+        long ceiling = Math.min(maxBackoff, baseBackoff * (1L << Math.min(retry, 30)));
+        long delay = (long) (random.nextDouble() * ceiling);
+        if (retryAfter > 0)
+            // spread clients told to come back at the same time
+            delay = retryAfter + (long) (random.nextDouble() * baseBackoff);
+        return delay;
+    }
+
+    /**
+     * @return the delay in milliseconds asked for by the <tt>Retry-After</tt> header, or 0
+     */
+    static long retryAfter(HttpResponse response) {
+        Header header = response.getFirstHeader("Retry-After");
+        if (header == null || header.getValue() == null)
+            return 0;
+        String value = header.getValue().trim();
+        try {
+            return Math.max(0, Long.parseLong(value) * 1000);
+        } catch (NumberFormatException e) {
+            try {
+                return Math.max(0, DateUtils.parseDate(value).getTime() - System.currentTimeMillis());
+            } catch (DateParseException ex) {
+                logger.log(Level.WARNING, "Ignoring invalid Retry-After header: {0}", value);
+                return 0;
             }
+        }
+    }
+
+    private synchronized void depositHedgeBudget() {
+        hedgeBudget = Math.min(maxHedgeBudget, hedgeBudget + hedgeBudgetRatio);
+    }
+
+    private synchronized boolean withdrawHedgeBudget() {
+        if (hedgeBudget < 1)
+            return false;
+        hedgeBudget--;
+        return true;
+    }
+
+    private synchronized void depositRetryBudget() {
+        retryBudget = Math.min(maxRetryBudget, retryBudget + retryBudgetRatio);
+    }
+
+    private synchronized boolean withdrawRetryBudget() {
+        if (retryBudget < 1)
+            return false;
+        retryBudget--;
+        return true;
+    }
+
+    /**
+     * Reads the body of a successful response.
+     */
+    protected interface ResponseReader<T> {
+        /**
+         * @param content the body of the response, closed by the caller
+         * @return the result of the request
+         */
+        T read(InputStream content) throws IOException, JiBXException;
+    }
+
+    /**
+     * Reads the body of a response as it arrives and hands its parts to the caller as it goes, such as the elements
+     * of a listing. As the parts can't be taken back, requests read this way are never hedged, and are not timed to
+     * learn the hedge delay since they take as long as the caller needs. A reader must stop handing parts to the
+     * caller once its request is {@link #isDone() done}, failed after its deadline for example, as the request is
+     * only aborted once the reader gets back to the connection.
+     */
+    protected static abstract class StreamingReader<T> implements ResponseReader<T> {
+        private volatile RequestFuture<?> future;
 
-            if (doRetry) {
-                retries++;
-                if (retries > maxRetries) {
-                    throw new HttpException("Number of retries exceeded for " + request.getURI(), error);
+        /**
+         * @return true once the request completed, failed or was cancelled
+         */
+        protected boolean isDone() {
+            RequestFuture<?> request = future;
+            return request != null && request.isDone();
+        }
+    }
+
+    /**
+     * Signals that a request should be sent again.
+     */
+    private static class RetryLater extends Exception {
+        // the status code of the response asking for the retry
+        final int statusCode;
+        // whether the retry waits and draws on the retry budget
+        final boolean backoff;
+        // the delay asked for by the server, in milliseconds
+        final long retryAfter;
+
+        RetryLater(int statusCode, boolean backoff, long retryAfter) {
+            this.statusCode = statusCode;
+            this.backoff = backoff;
+            this.retryAfter = retryAfter;
+        }
+    }
+
+    /**
+     * @return the number of connections opened to each endpoint of the account ahead of the requests
+     */
+    public int getWarmUpConnections() {
+        return warmUpConnections;
+    }
+
+    /**
+     * Opens connections to the server management, storage and CDN endpoints of the account in the background, each
+     * time this connection authenticates, so that the first requests to each endpoint don't pay for the connection
+     * setup. The connections are then checked every {@link #setWarmUpInterval(long, TimeUnit) interval}, and opened
+     * again if the server closed them. Connections through a proxy are not warmed up.
+     *
+     * @param count the number of connections per endpoint, 0 to disable the warm-up (the default)
+     */
+    public void setWarmUpConnections(int count) {
+        this.warmUpConnections = Math.min(count, maxConnections);
+        if (count > 0 && session != null)
+            startWarmUp();
+    }
+
+    public long getWarmUpInterval() {
+        return warmUpInterval;
+    }
+
+    /**
+     * Sets how often the warmed up connections are checked, 30 seconds by default.
+     */
+    public void setWarmUpInterval(long interval, TimeUnit unit) {
+        this.warmUpInterval = unit.toMillis(interval);
+    }
+
+    private void startWarmUp() {
+        if (proxyHost != null) {
+            logger.fine("Not warming up connections through a proxy");
+            return;
+        }
+        getExecutor().execute(new Runnable() {
+            public void run() {
+                warmUp();
+            }
+        });
+        synchronized (this) {
+            if (warmUpChecks)
+                return;
+            warmUpChecks = true;
+        }
+        scheduler.schedule(new WarmUpCheck(this), warmUpInterval, TimeUnit.MILLISECONDS);
+    }
+
+    private void warmUp() {
+        int count = warmUpConnections;
+        AuthSession session = this.session;
+        if (count > 0 && session != null)
+            ConnectionWarmer.warmUp(getHttpClient(),
+                    Arrays.asList(session.serverManagementURL, session.storageURL, session.cdnManagementURL),
+                    count, 2 * warmUpInterval);
+    }
+
+    /**
+     * Periodic check of the warmed up connections. It does not keep the connection from being garbage collected,
+     * and stops once it is or once the warm-up is disabled.
+     */
+    private static class WarmUpCheck implements Runnable {
+        private final WeakReference<RackspaceConnection> connection;
+
+        WarmUpCheck(RackspaceConnection connection) {
+            this.connection = new WeakReference<RackspaceConnection>(connection);
+        }
+
+        public void run() {
+            final RackspaceConnection rc = connection.get();
+            if (rc == null)
+                return;
+            if (rc.warmUpConnections == 0) {
+                synchronized (rc) {
+                    rc.warmUpChecks = false;
                 }
-                doRetry = false;
-                try {
-                    Thread.sleep((int) Math.pow(2.0, retries) * 1000);
-                } catch (InterruptedException ex) {
-                    // do nothing
+                return;
+            }
+            final WarmUpCheck next = this;
+            try {
+                rc.getExecutor().execute(new Runnable() {
+                    public void run() {
+                        try {
+                            rc.warmUp();
+                        } finally {
+                            scheduler.schedule(next, rc.warmUpInterval, TimeUnit.MILLISECONDS);
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                synchronized (rc) {
+                    rc.warmUpChecks = false;
                 }
             }
-        } while (!done);
+        }
+    }
 
-        return result;
+    private static String headerValue(HttpResponse response, String name) {
+        Header header = response.getFirstHeader(name);
+        return header == null ? null : header.getValue();
     }
 
     private void configureHttpClient() {
@@ -319,7 +1074,8 @@ public class RackspaceConnection {
         HttpProtocolParams.setVersion(params, HttpVersion.HTTP_1_1);
         HttpProtocolParams.setContentCharset(params, "UTF-8");
         HttpProtocolParams.setUserAgent(params, userAgent);
-        HttpProtocolParams.setUseExpectContinue(params, true);
+        // decided per request by the expect continue policy
+        HttpProtocolParams.setUseExpectContinue(params, false);
 
 //        params.setBooleanParameter("http.tcp.nodelay", true);
 //        params.setBooleanParameter("http.coonection.stalecheck", false);
@@ -330,19 +1086,38 @@ public class RackspaceConnection {
         params.setIntParameter("http.connection.timeout", getConnectionTimeout());
 
         SchemeRegistry schemeRegistry = new SchemeRegistry();
-        schemeRegistry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
-        schemeRegistry.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
+        schemeRegistry.register(new Scheme("http",
+                TimedSocketFactory.wrap(PlainSocketFactory.getSocketFactory(), this), 80));
+        schemeRegistry.register(new Scheme("https",
+                TimedSocketFactory.wrap(SSLSocketFactory.getSocketFactory(), this), 443));
+        hc = createHttpClient(params, schemeRegistry, expectContinuePolicy);
+
+        if (proxyHost != null) {
+            HttpHost proxy = new HttpHost(proxyHost, proxyPort);
+            hc.getParams().setParameter(ConnRoutePNames.DEFAULT_PROXY, proxy);
+            logger.info("Proxy Host set to " + proxyHost + ":" + proxyPort);
+        }
+    }
+
+    /**
+     * Creates a pooling HTTP client, asking for and decompressing gzipped responses.
+     *
+     * @param expectContinue the policy deciding which requests expect a continue
+     */
+    static DefaultHttpClient createHttpClient(HttpParams params, SchemeRegistry schemeRegistry,
+                                              ExpectContinuePolicy expectContinue) {
         ClientConnectionManager connMgr = new ThreadSafeClientConnManager(params, schemeRegistry);
-        hc = new DefaultHttpClient(connMgr, params);
+        DefaultHttpClient hc = new DefaultHttpClient(connMgr, params);
 
-        ((DefaultHttpClient) hc).addRequestInterceptor(new HttpRequestInterceptor() {
+        hc.addRequestInterceptor(new HttpRequestInterceptor() {
             public void process(HttpRequest request, HttpContext context) throws HttpException, IOException {
                 if (!request.containsHeader("Accept-Encoding")) {
                     request.addHeader("Accept-Encoding", "gzip");
                 }
             }
         });
-        ((DefaultHttpClient) hc).addResponseInterceptor(new HttpResponseInterceptor() {
+        hc.addRequestInterceptor(expectContinue);
+        hc.addResponseInterceptor(new HttpResponseInterceptor() {
             public void process(HttpResponse response, HttpContext context) throws HttpException, IOException {
                 HttpEntity entity = response.getEntity();
                 if (entity == null)
@@ -358,37 +1133,266 @@ public class RackspaceConnection {
                 }
             }
         });
+        return hc;
+    }
 
-        if (proxyHost != null) {
-            HttpHost proxy = new HttpHost(proxyHost, proxyPort);
-            hc.getParams().setParameter(ConnRoutePNames.DEFAULT_PROXY, proxy);
-            logger.info("Proxy Host set to " + proxyHost + ":" + proxyPort);
+    /**
+     * @return the executor requests are sent from
+     */
+    protected ExecutorService getExecutor() {
+        if (executor != null)
+            return executor;
+        if (registry != null)
+            return registry.getExecutor(this);
+        synchronized (RackspaceConnection.class) {
+            if (defaultExecutor == null) {
+                defaultExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "rackspace-request-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            }
+            return defaultExecutor;
+        }
+    }
+
+    /**
+     * Sets the executor requests are sent from. By default all connections share a pool of daemon threads which grows
+     * as needed, or send their requests from the threads of their {@link ConnectionRegistry registry}.
+     *
+     * @param executor the executor to use, or null for the default one
+     */
+    public void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Runs a task after a delay on the executor of this connection, without holding a thread while waiting.
+     *
+     * @param task  the task to run
+     * @param delay the delay before running it
+     * @param unit  the unit of the delay
+     */
+    protected void schedule(final Runnable task, long delay, TimeUnit unit) {
+        scheduler.schedule(new Runnable() {
+            public void run() {
+                getExecutor().execute(task);
+            }
+        }, delay, unit);
+    }
+
+    /**
+     * Registers a listener notified of the requests sent through this connection. Requests are only timed while at
+     * least one listener is registered.
+     *
+     * @param listener the listener to add
+     */
+    public void addMetricsListener(MetricsListener listener) {
+        metricsListeners.add(listener);
+    }
+
+    public void removeMetricsListener(MetricsListener listener) {
+        metricsListeners.remove(listener);
+    }
+
+    /**
+     * Collects the metrics of this connection and exposes them as an MBean of the platform MBean server, named
+     * <tt>net.elasticgrid.rackspace:type=RackspaceConnection,name=</tt><i>username</i>.
+     *
+     * @return the metrics, also readable directly
+     * @throws JMException if the MBean can't be registered
+     */
+    public synchronized ConnectionMetrics registerMBean() throws JMException {
+        if (mbean != null)
+            return mbean;
+        ObjectName name = new ObjectName("net.elasticgrid.rackspace:type=RackspaceConnection,name="
+                + ObjectName.quote(username));
+        ConnectionMetrics metrics = new ConnectionMetrics(this);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, name);
+        addMetricsListener(metrics);
+        mbean = metrics;
+        mbeanName = name;
+        return metrics;
+    }
+
+    /**
+     * Removes the MBean registered by {@link #registerMBean()} and stops collecting its metrics.
+     *
+     * @throws JMException if the MBean can't be unregistered
+     */
+    public synchronized void unregisterMBean() throws JMException {
+        if (mbean == null)
+            return;
+        removeMetricsListener(mbean);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        if (server.isRegistered(mbeanName))
+            server.unregisterMBean(mbeanName);
+        mbean = null;
+        mbeanName = null;
+    }
+
+    /**
+     * @return the number of HTTP connections open, leased or idle, or -1 if the connection manager can't tell
+     */
+    public int getConnectionsInPool() {
+        HttpClient client = hc != null ? hc : registry != null ? registry.getHttpClient() : null;
+        if (client == null)
+            return 0;
+        ClientConnectionManager manager = client.getConnectionManager();
+        if (manager instanceof ThreadSafeClientConnManager)
+            return ((ThreadSafeClientConnManager) manager).getConnectionsInPool();
+        return -1;
+    }
+
+    boolean isInstrumented() {
+        return !metricsListeners.isEmpty();
+    }
+
+    /**
+     * @return the name of the operation of a request: its method and its path relative to the API endpoint, with
+     *         IDs and addresses replaced by <tt>{id}</tt>
+     */
+    String operationOf(HttpRequestBase request) {
+        String uri = request.getURI().toString();
+        String base = getServerManagementURL();
+        String path = base != null && uri.startsWith(base) ? uri.substring(base.length()) : request.getURI().getPath();
+        int query = path.indexOf('?');
+        if (query >= 0)
+            path = path.substring(0, query);
+        StringBuilder operation = new StringBuilder(request.getMethod()).append(' ');
+        for (String segment : path.split("/")) {
+            if (segment.length() == 0)
+                continue;
+            operation.append('/');
+            if (Character.isDigit(segment.charAt(0)) || segment.indexOf(':') >= 0)
+                operation.append("{id}");
+            else
+                operation.append(segment);
+        }
+        return operation.toString();
+    }
+
+    void fireConnected(String host, long duration) {
+        for (MetricsListener listener : metricsListeners) {
+            try {
+                listener.connected(host, duration);
+            } catch (RuntimeException e) {
+                logger.log(Level.SEVERE, "Metrics listener " + listener + " failed", e);
+            }
+        }
+    }
+
+    private void fireResponseReceived(String operation, int statusCode, long duration) {
+        for (MetricsListener listener : metricsListeners) {
+            try {
+                listener.responseReceived(operation, statusCode, duration);
+            } catch (RuntimeException e) {
+                logger.log(Level.SEVERE, "Metrics listener " + listener + " failed", e);
+            }
+        }
+    }
+
+    private void fireResponseUnmarshalled(String operation, long duration) {
+        for (MetricsListener listener : metricsListeners) {
+            try {
+                listener.responseUnmarshalled(operation, duration);
+            } catch (RuntimeException e) {
+                logger.log(Level.SEVERE, "Metrics listener " + listener + " failed", e);
+            }
+        }
+    }
+
+    private void fireRetrying(String operation, int statusCode, long delay) {
+        for (MetricsListener listener : metricsListeners) {
+            try {
+                listener.retrying(operation, statusCode, delay);
+            } catch (RuntimeException e) {
+                logger.log(Level.SEVERE, "Metrics listener " + listener + " failed", e);
+            }
+        }
+    }
+
+    private void fireReauthenticated() {
+        for (MetricsListener listener : metricsListeners) {
+            try {
+                listener.reauthenticated();
+            } catch (RuntimeException e) {
+                logger.log(Level.SEVERE, "Metrics listener " + listener + " failed", e);
+            }
+        }
+    }
+
+    private void fireFailed(String operation, Throwable failure) {
+        for (MetricsListener listener : metricsListeners) {
+            try {
+                listener.failed(operation, failure);
+            } catch (RuntimeException e) {
+                logger.log(Level.SEVERE, "Metrics listener " + listener + " failed", e);
+            }
         }
     }
 
+    private void fail(HttpRequestBase request, RequestFuture<?> future, Throwable failure) {
+        // attempts cancelled or timed out fail once aborted
+        if (future.isDone())
+            return;
+        if (isInstrumented())
+            fireFailed(operationOf(request), failure);
+        future.setException(failure);
+    }
+
     public String getAuthToken() {
-        return authToken;
+        AuthSession session = this.session;
+        return session == null ? null : session.authToken;
     }
 
     public String getServerManagementURL() {
-        return serverManagementURL;
+        AuthSession session = this.session;
+        return session == null ? null : session.serverManagementURL;
     }
 
     public String getStorageURL() {
-        return storageURL;
+        AuthSession session = this.session;
+        return session == null ? null : session.storageURL;
     }
 
     public String getCdnManagementURL() {
-        return cdnManagementURL;
+        AuthSession session = this.session;
+        return session == null ? null : session.cdnManagementURL;
     }
 
     protected HttpClient getHttpClient() {
         if (hc == null) {
+            if (registry != null)
+                return registry.getHttpClient();
             configureHttpClient();
         }
         return hc;
     }
 
+    String getUsername() {
+        return username;
+    }
+
+    String getApiKey() {
+        return apiKey;
+    }
+
+    String getAuthURL() {
+        return authURL;
+    }
+
+    /**
+     * @return the registry this connection shares its resources with, null if it has its own
+     */
+    public ConnectionRegistry getRegistry() {
+        return registry;
+    }
+
     public void setHttpClient(HttpClient hc) {
         this.hc = hc;
     }
@@ -447,6 +1451,412 @@ public class RackspaceConnection {
         hc = null;
     }
 
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    public long getBaseBackoff() {
+        return baseBackoff;
+    }
+
+    /**
+     * @param baseBackoff the longest delay before the first retry, in milliseconds; it doubles for each retry
+     */
+    public void setBaseBackoff(long baseBackoff) {
+        this.baseBackoff = baseBackoff;
+    }
+
+    public long getMaxBackoff() {
+        return maxBackoff;
+    }
+
+    public void setMaxBackoff(long maxBackoff) {
+        this.maxBackoff = maxBackoff;
+    }
+
+    /**
+     * Sets the retry budget of this connection. Each request adds <tt>ratio</tt> to the budget, up to
+     * <tt>max</tt>, and each retry after a 503 or 413 takes one from it; when it is empty, failed requests are not
+     * retried. This keeps retries from piling up on an API which is already overloaded.
+     *
+     * @param ratio the share of requests which may be retried
+     * @param max   the number of retries which may happen in a burst
+     */
+    public synchronized void setRetryBudget(double ratio, double max) {
+        retryBudgetRatio = ratio;
+        maxRetryBudget = max;
+        retryBudget = Math.min(retryBudget, max);
+    }
+
+    public boolean isHedging() {
+        return hedging;
+    }
+
+    /**
+     * Enables or disables the hedging of GETs. When enabled, a GET which did not get its response after the
+     * {@link #setHedgePercentile hedge percentile} of the recent GETs is sent again on another connection, the first
+     * successful response is used and the other request is aborted. The GET only fails if both requests fail. GETs
+     * are idempotent, so this trades a few more requests for a shorter tail latency. Streamed listings are never
+     * hedged, as their elements are handed to the caller as they are read.
+     *
+     * @param hedging true to enable hedging
+     * @see #setHedgeBudget(double, double)
+     */
+    public void setHedging(boolean hedging) {
+        this.hedging = hedging;
+    }
+
+    public double getHedgePercentile() {
+        return hedgePercentile;
+    }
+
+    /**
+     * @param percentile the share of GETs which should get their response before being hedged, 0.95 by default
+     */
+    public void setHedgePercentile(double percentile) {
+        if (percentile <= 0 || percentile >= 1)
+            throw new IllegalArgumentException("Invalid percentile: " + percentile);
+        this.hedgePercentile = percentile;
+    }
+
+    /**
+     * Sets the shortest delay before a GET is hedged, whatever the latency of the recent GETs, 10 ms by default.
+     */
+    public void setMinHedgeDelay(long delay, TimeUnit unit) {
+        this.minHedgeDelay = unit.toNanos(delay);
+    }
+
+    /**
+     * Sets the hedge budget of this connection, which caps the rate of hedges the way the retry budget caps retries.
+     * Each GET adds <tt>ratio</tt> to the budget, up to <tt>max</tt>, and each hedge takes one from it.
+     *
+     * @param ratio the share of GETs which may be hedged, 0.05 by default
+     * @param max   the number of hedges which may happen in a burst, 5 by default
+     */
+    public synchronized void setHedgeBudget(double ratio, double max) {
+        hedgeBudgetRatio = ratio;
+        maxHedgeBudget = max;
+        hedgeBudget = Math.min(hedgeBudget, max);
+    }
+
+    /**
+     * @return the delay after which GETs are currently hedged, in milliseconds; 0 until enough GETs were timed
+     */
+    public long getHedgeDelay() {
+        long delay = learnedHedgeDelay;
+        return delay <= 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(Math.max(delay, minHedgeDelay));
+    }
+
+    /**
+     * @return the number of GETs sent again because they were slow
+     */
+    public long getHedgeCount() {
+        return hedgeCount.get();
+    }
+
+    /**
+     * @return the number of hedges whose response came before the one of the request they duplicated
+     */
+    public long getHedgeWins() {
+        return hedgeWins.get();
+    }
+
+    /**
+     * @return the time a request may take, retries included, in milliseconds; 0 for no deadline
+     */
+    public long getRequestDeadline() {
+        return requestDeadline;
+    }
+
+    /**
+     * Sets the time a request may take, retries and delays included. A request still pending then fails with an
+     * {@link InterruptedIOException} and its connection is aborted. There is no deadline by default.
+     *
+     * @param deadline the time a request may take, 0 for no deadline
+     */
+    public void setRequestDeadline(long deadline, TimeUnit unit) {
+        this.requestDeadline = unit.toMillis(deadline);
+    }
+
+    public boolean isRateLimited() {
+        return rateLimiter != null;
+    }
+
+    /**
+     * Enables or disables client side rate limiting. When enabled, the rate limits of the API are loaded before the
+     * first request, and requests are delayed as needed to stay within them.
+     *
+     * @param rateLimited true to enable rate limiting
+     * @see RateLimiter
+     */
+    public void setRateLimited(boolean rateLimited) {
+        RateLimiter limiter = rateLimiter;
+        if (!rateLimited) {
+            rateLimiter = null;
+            // sends the requests waiting for the limits
+            if (limiter != null)
+                limiter.updateFailed();
+        } else if (limiter == null) {
+            rateLimiter = new RateLimiter();
+        }
+    }
+
+    /**
+     * @return the rate limiter of this connection, or null if rate limiting is disabled
+     */
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * @return the number of requests which can be sent right away, per rate limit; empty if rate limiting is disabled
+     * @see RateLimiter#getHeadroom()
+     */
+    public Map<String, Double> getRateLimitHeadroom() {
+        RateLimiter limiter = rateLimiter;
+        if (limiter == null)
+            return Collections.emptyMap();
+        return limiter.getHeadroom();
+    }
+
+    /**
+     * @return the policy deciding which requests of this connection send <tt>Expect: 100-continue</tt>, shared with
+     *         the other connections of its registry if it has one
+     */
+    public ExpectContinuePolicy getExpectContinuePolicy() {
+        return registry == null ? expectContinuePolicy : registry.getExpectContinuePolicy();
+    }
+
+    public boolean isCircuitBreaking() {
+        return circuitBreakers != null;
+    }
+
+    /**
+     * Enables or disables the circuit breakers of the endpoints. When enabled, requests to an endpoint which keeps
+     * failing or answering slowly fail right away with a {@link CircuitOpenException} instead of being sent and
+     * retried, until probe requests show the endpoint is back.
+     *
+     * @param circuitBreaking true to enable circuit breaking
+     * @see CircuitBreaker
+     * @see #getCircuitBreaker(String)
+     */
+    public void setCircuitBreaking(boolean circuitBreaking) {
+        if (!circuitBreaking) {
+            circuitBreakers = null;
+        } else if (circuitBreakers == null) {
+            Map<String, CircuitBreaker> breakers = new LinkedHashMap<String, CircuitBreaker>();
+            for (String endpoint : new String[]{AUTH_ENDPOINT, SERVER_MANAGEMENT_ENDPOINT, STORAGE_ENDPOINT,
+                    CDN_MANAGEMENT_ENDPOINT})
+                breakers.put(endpoint, new CircuitBreaker(endpoint));
+            circuitBreakers = Collections.unmodifiableMap(breakers);
+        }
+    }
+
+    /**
+     * @param endpoint the name of an endpoint, such as {@link #SERVER_MANAGEMENT_ENDPOINT}
+     * @return the circuit breaker of the endpoint, to read or tune, or null if circuit breaking is disabled
+     */
+    public CircuitBreaker getCircuitBreaker(String endpoint) {
+        Map<String, CircuitBreaker> breakers = circuitBreakers;
+        return breakers == null ? null : breakers.get(endpoint);
+    }
+
+    /**
+     * @return the state of the circuit of each endpoint; empty if circuit breaking is disabled
+     */
+    public Map<String, String> getCircuitStates() {
+        Map<String, CircuitBreaker> breakers = circuitBreakers;
+        if (breakers == null)
+            return Collections.emptyMap();
+        Map<String, String> states = new LinkedHashMap<String, String>();
+        for (CircuitBreaker breaker : breakers.values())
+            states.put(breaker.getName(), breaker.getState().name());
+        return states;
+    }
+
+    /**
+     * @return the number of requests rejected by the circuit breakers of the endpoints
+     */
+    public long getCircuitRejections() {
+        Map<String, CircuitBreaker> breakers = circuitBreakers;
+        long rejected = 0;
+        if (breakers != null) {
+            for (CircuitBreaker breaker : breakers.values())
+                rejected += breaker.getRejectedCount();
+        }
+        return rejected;
+    }
+
+    /**
+     * @return the number of requests sent again after a 503, 413 or 401
+     */
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    /**
+     * @return the number of requests which failed because they ran out of retries or of retry budget
+     */
+    public long getRetriesDenied() {
+        return retriesDenied.get();
+    }
+
+    /**
+     * @return the total time requests waited before being retried, in milliseconds
+     */
+    public long getTotalBackoffTime() {
+        return totalBackoffTime.get();
+    }
+
+    public int getWireCaptureLimit() {
+        return wireCaptureLimit;
+    }
+
+    /**
+     * Sets how many bytes of each request and response body are logged. Bodies are captured while they are sent
+     * and unmarshalled, so logging never issues additional requests.
+     *
+     * @param wireCaptureLimit the maximum number of bytes captured per body
+     */
+    public void setWireCaptureLimit(int wireCaptureLimit) {
+        this.wireCaptureLimit = wireCaptureLimit;
+    }
+
+    private static InputStream openContent(HttpEntity entity, WireCapture capture) throws IOException {
+        InputStream content = entity.getContent();
+        if (capture == null || content == null)
+            return content;
+        return new CapturingInputStream(content, capture);
+    }
+
+    /**
+     * Keeps a copy of the first bytes of a body, and counts the ones which did not fit.
+     */
+    static class WireCapture {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final int limit;
+        private long total;
+
+        WireCapture(int limit) {
+            this.limit = limit;
+        }
+
+        synchronized void capture(byte[] b, int off, int len) {
+            total += len;
+            int kept = Math.min(len, limit - bytes.size());
+            if (kept > 0)
+                bytes.write(b, off, kept);
+        }
+
+        synchronized void capture(int b) {
+            total++;
+            if (bytes.size() < limit)
+                bytes.write(b);
+        }
+
+        synchronized void reset() {
+            bytes.reset();
+            total = 0;
+        }
+
+        synchronized boolean isFull() {
+            return bytes.size() >= limit;
+        }
+
+        /**
+         * Reads what is left of a capturing stream, so that a body which could not be parsed is logged in full,
+         * up to the limit.
+         */
+        void drain(InputStream in) {
+            if (in == null)
+                return;
+            byte[] buffer = new byte[1024];
+            try {
+                while (!isFull() && in.read(buffer) != -1) {
+                    // captured as it is read
+                }
+            } catch (IOException e) {
+                // log what we have
+            }
+        }
+
+        @Override
+        public synchronized String toString() {
+            String text;
+            try {
+                text = bytes.toString("UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                text = bytes.toString();
+            }
+            if (total > bytes.size())
+                text += "... (" + (total - bytes.size()) + " more bytes)";
+            return text;
+        }
+    }
+
+    /**
+     * Captures the bytes of the wrapped stream as they are read.
+     */
+    static class CapturingInputStream extends FilterInputStream {
+        private final WireCapture capture;
+
+        CapturingInputStream(InputStream in, WireCapture capture) {
+            super(in);
+            this.capture = capture;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1)
+                capture.capture(b);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0)
+                capture.capture(b, off, read);
+            return read;
+        }
+    }
+
+    /**
+     * Captures the body of a request as it is written to the connection.
+     */
+    static class CapturingEntity extends HttpEntityWrapper {
+        private final WireCapture capture;
+
+        public CapturingEntity(final HttpEntity entity, WireCapture capture) {
+            super(entity);
+            this.capture = capture;
+        }
+
+        @Override
+        public void writeTo(final OutputStream outstream) throws IOException {
+            // a retried request is written again
+            capture.reset();
+            wrappedEntity.writeTo(new FilterOutputStream(outstream) {
+                @Override
+                public void write(int b) throws IOException {
+                    out.write(b);
+                    capture.capture(b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                    capture.capture(b, off, len);
+                }
+            });
+        }
+    }
+
     static class GzipDecompressingEntity extends HttpEntityWrapper {
 
         public GzipDecompressingEntity(final HttpEntity entity) {
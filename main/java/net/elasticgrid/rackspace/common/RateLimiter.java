@@ -0,0 +1,245 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.elasticgrid.rackspace.common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Client side view of the rate limits of a Rackspace API. Each limit is a token bucket holding up to the number of
+ * requests allowed per period and refilled continuously. Requests reserve a token from every bucket they match, and
+ * are delayed until the emptiest of them has refilled, so that bursts are spread instead of rejected with a 413.
+ * <p/>
+ * The buckets are reloaded from the API every {@link #getResyncInterval() resync interval}, and after the API
+ * rejected a request anyway. Until the first load completes, and while reloading after a rejection, the buckets are
+ * unknown or known to be wrong: requests are then {@link #hold(Runnable) held} rather than sent unpaced.
+ */
+public class RateLimiter {
+    private List<Bucket> buckets = Collections.emptyList();
+    private long resyncInterval = TimeUnit.MINUTES.toMillis(5);
+    private long lastSync = 0;
+    private boolean syncing = false;
+    // whether the buckets can be trusted, and the requests waiting until they can
+    private boolean synced = false;
+    private List<Runnable> held = new ArrayList<Runnable>();
+
+    /**
+     * Reserves a token from the buckets matching a request.
+     *
+     * @param method the HTTP method of the request
+     * @param path   the URI of the request, relative to the API endpoint
+     * @return how long the request should wait before being sent, in milliseconds
+     */
+    public synchronized long reserve(String method, String path) {
+        long now = System.currentTimeMillis();
+        long delay = 0;
+        for (Bucket bucket : buckets) {
+            if (bucket.matches(method, path))
+                delay = Math.max(delay, bucket.reserve(now));
+        }
+        return delay;
+    }
+
+    /**
+     * Holds a request until the buckets are loaded, if they are not yet or are being reloaded after a rejection.
+     *
+     * @param request run once the buckets are loaded, or failed to load
+     * @return true if the request is held, false if it can reserve its tokens right away
+     */
+    public synchronized boolean hold(Runnable request) {
+        if (synced)
+            return false;
+        held.add(request);
+        return true;
+    }
+
+    /**
+     * Marks the buckets as being reloaded if they are out of date.
+     *
+     * @return true if the caller should reload the buckets and then call {@link #update(List)} or
+     *         {@link #updateFailed()}
+     */
+    public synchronized boolean startResync() {
+        if (syncing || System.currentTimeMillis() - lastSync < resyncInterval)
+            return false;
+        syncing = true;
+        return true;
+    }
+
+    /**
+     * Replaces the buckets with the ones just loaded from the API.
+     */
+    public void update(List<Bucket> buckets) {
+        List<Runnable> released;
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            List<Bucket> updated = new ArrayList<Bucket>(buckets);
+            // the API does not know yet of the requests waiting for their reservation
+            for (Bucket bucket : updated) {
+                for (Bucket previous : this.buckets) {
+                    if (previous.getName().equals(bucket.getName()))
+                        bucket.takeOver(previous, now);
+                }
+            }
+            this.buckets = updated;
+            lastSync = now;
+            syncing = false;
+            released = release();
+        }
+        run(released);
+    }
+
+    /**
+     * Keeps the current buckets until the next resync interval.
+     */
+    public void updateFailed() {
+        List<Runnable> released;
+        synchronized (this) {
+            lastSync = System.currentTimeMillis();
+            syncing = false;
+            released = release();
+        }
+        run(released);
+    }
+
+    /**
+     * Makes the buckets out of date, so they are reloaded before the next request, which is held until then. Called
+     * when the API rejected a request the buckets allowed.
+     */
+    public synchronized void invalidate() {
+        lastSync = 0;
+        synced = false;
+    }
+
+    private List<Runnable> release() {
+        synced = true;
+        List<Runnable> released = held;
+        held = new ArrayList<Runnable>();
+        return released;
+    }
+
+    private static void run(List<Runnable> requests) {
+        for (Runnable request : requests)
+            request.run();
+    }
+
+    /**
+     * @return the number of requests which can be sent right away, per bucket; negative when requests are waiting
+     */
+    public synchronized Map<String, Double> getHeadroom() {
+        long now = System.currentTimeMillis();
+        Map<String, Double> headroom = new LinkedHashMap<String, Double>();
+        for (Bucket bucket : buckets)
+            headroom.put(bucket.getName(), bucket.headroom(now));
+        return headroom;
+    }
+
+    public synchronized long getResyncInterval() {
+        return resyncInterval;
+    }
+
+    public synchronized void setResyncInterval(long resyncInterval) {
+        this.resyncInterval = resyncInterval;
+    }
+
+    /**
+     * A rate limit of the API.
+     */
+    public static class Bucket {
+        private final String verb;
+        private final String uri;
+        private final Pattern regex;
+        private final double capacity;
+        private final double refillPerMillis;
+        private double tokens;
+        private long updated;
+        // when the requests which reserved a token and are still waiting will be sent
+        private final PriorityQueue<Long> scheduled = new PriorityQueue<Long>();
+
+        /**
+         * @param verb         the HTTP method the limit applies to
+         * @param uri          the human readable URI pattern of the limit
+         * @param regex        the regular expression matching the URIs the limit applies to
+         * @param value        the number of requests allowed per period
+         * @param remaining    the number of requests still allowed in the current period
+         * @param periodMillis the period, in milliseconds
+         */
+        public Bucket(String verb, String uri, String regex, int value, int remaining, long periodMillis) {
+            this.verb = verb;
+            this.uri = uri;
+            this.regex = Pattern.compile(regex);
+            this.capacity = value;
+            this.refillPerMillis = (double) value / periodMillis;
+            this.tokens = Math.min(remaining, value);
+            this.updated = System.currentTimeMillis();
+        }
+
+        public String getName() {
+            return verb + " " + uri;
+        }
+
+        boolean matches(String method, String path) {
+            return verb.equalsIgnoreCase(method) && regex.matcher(path).find();
+        }
+
+        long reserve(long now) {
+            refill(now);
+            tokens -= 1;
+            if (tokens >= 0 || refillPerMillis <= 0)
+                return 0;
+            long delay = (long) Math.ceil(-tokens / refillPerMillis);
+            scheduled.add(now + delay);
+            return delay;
+        }
+
+        /**
+         * Takes the reservations of the requests still waiting from the bucket this one replaces, as the remaining
+         * count given by the API does not include them.
+         */
+        void takeOver(Bucket previous, long now) {
+            while (!previous.scheduled.isEmpty() && previous.scheduled.peek() <= now)
+                previous.scheduled.poll();
+            tokens -= previous.scheduled.size();
+            scheduled.addAll(previous.scheduled);
+        }
+
+        double headroom(long now) {
+            refill(now);
+            return tokens;
+        }
+
+        private void refill(long now) {
+            if (now > updated) {
+                tokens = Math.min(capacity, tokens + (now - updated) * refillPerMillis);
+                updated = now;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return getName() + " (" + regex.pattern() + ")";
+        }
+    }
+}
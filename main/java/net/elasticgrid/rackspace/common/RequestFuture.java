@@ -0,0 +1,359 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.elasticgrid.rackspace.common;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The pending result of a request. It is completed by whoever runs the request, and listeners are called once it
+ * completes, so callers can react to the result without parking a thread on {@link #get()}.
+ * <p/>
+ * Futures compose: {@link #transform(Transformer)} converts a result once it is there, and {@link #then(AsyncTransformer)}
+ * starts another request from it. A failure skips the following steps and fails the last future, and cancelling the
+ * last future cancels the step still pending.
+ *
+ * @param <T> the type of the result
+ */
+public class RequestFuture<T> implements Future<T> {
+    private T result;
+    private Throwable failure;
+    private boolean done = false;
+    private boolean cancelled = false;
+    private List<Listener> listeners = new ArrayList<Listener>();
+
+    private static final Logger logger = Logger.getLogger(RequestFuture.class.getName());
+
+    /**
+     * Runs listeners on the thread completing the future. Only suitable for short, non blocking listeners.
+     */
+    public static final Executor SAME_THREAD = new Executor() {
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    /**
+     * Converts the result of a future.
+     */
+    public interface Transformer<F, T> {
+        T apply(F input) throws Exception;
+    }
+
+    /**
+     * Starts the next step from the result of a future.
+     */
+    public interface AsyncTransformer<F, T> {
+        RequestFuture<T> apply(F input) throws Exception;
+    }
+
+    /**
+     * Notified once a future completes, unless it was cancelled.
+     */
+    public interface Callback<T> {
+        void onSuccess(T result);
+
+        void onFailure(Throwable failure);
+    }
+
+    /**
+     * @return a future already completed with the given result
+     */
+    public static <T> RequestFuture<T> immediate(T result) {
+        RequestFuture<T> future = new RequestFuture<T>();
+        future.set(result);
+        return future;
+    }
+
+    /**
+     * @return a future already failed with the given exception
+     */
+    public static <T> RequestFuture<T> failed(Throwable failure) {
+        RequestFuture<T> future = new RequestFuture<T>();
+        future.setException(failure);
+        return future;
+    }
+
+    /**
+     * Completes the future with a result.
+     *
+     * @param result the result of the request
+     * @return false if the future was already completed or cancelled
+     */
+    public boolean set(T result) {
+        synchronized (this) {
+            if (done)
+                return false;
+            this.result = result;
+            done = true;
+            notifyAll();
+        }
+        fireListeners();
+        return true;
+    }
+
+    /**
+     * Completes the future with a failure.
+     *
+     * @param failure the reason why the request failed
+     * @return false if the future was already completed or cancelled
+     */
+    public boolean setException(Throwable failure) {
+        synchronized (this) {
+            if (done)
+                return false;
+            this.failure = failure;
+            done = true;
+            notifyAll();
+        }
+        fireListeners();
+        return true;
+    }
+
+    /**
+     * Cancels the future. A request already sent is not interrupted, but it won't be retried.
+     */
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        synchronized (this) {
+            if (done)
+                return false;
+            cancelled = true;
+            done = true;
+            notifyAll();
+        }
+        fireListeners();
+        return true;
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    public synchronized T get() throws InterruptedException, ExecutionException {
+        while (!done)
+            wait();
+        return getResult();
+    }
+
+    public synchronized T get(long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!done) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0)
+                throw new TimeoutException();
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return getResult();
+    }
+
+    private T getResult() throws ExecutionException {
+        if (cancelled)
+            throw new CancellationException();
+        if (failure != null)
+            throw new ExecutionException(failure);
+        return result;
+    }
+
+    /**
+     * Registers a listener called once the future completes, or right away if it already has.
+     *
+     * @param listener the listener to call
+     * @param executor the executor the listener runs on
+     */
+    public void addListener(Runnable listener, Executor executor) {
+        synchronized (this) {
+            if (!done) {
+                listeners.add(new Listener(listener, executor));
+                return;
+            }
+        }
+        new Listener(listener, executor).fire();
+    }
+
+    /**
+     * Registers a callback called with the result or the failure once the future completes.
+     *
+     * @param callback the callback to notify
+     * @param executor the executor the callback runs on
+     */
+    public void addCallback(final Callback<? super T> callback, Executor executor) {
+        addListener(new Runnable() {
+            public void run() {
+                Throwable failure;
+                synchronized (RequestFuture.this) {
+                    if (cancelled)
+                        return;
+                    failure = RequestFuture.this.failure;
+                }
+                if (failure != null)
+                    callback.onFailure(failure);
+                else
+                    callback.onSuccess(result);
+            }
+        }, executor);
+    }
+
+    /**
+     * Converts the result of this future once it completes. The transformer runs on the thread completing this
+     * future, so it should be quick.
+     *
+     * @param transformer the conversion; if it throws, the returned future fails with the exception
+     * @return the future converted result
+     */
+    public <V> RequestFuture<V> transform(final Transformer<? super T, ? extends V> transformer) {
+        final RequestFuture<V> next = new RequestFuture<V>();
+        propagateCancellation(next);
+        addCallback(new Callback<T>() {
+            public void onSuccess(T result) {
+                try {
+                    next.set(transformer.apply(result));
+                } catch (Throwable t) {
+                    next.setException(t);
+                }
+            }
+
+            public void onFailure(Throwable failure) {
+                next.setException(failure);
+            }
+        }, SAME_THREAD);
+        return next;
+    }
+
+    /**
+     * Converts the failure of this future once it completes, for example to a more specific exception. The result of
+     * a successful future is passed on as is.
+     *
+     * @param transformer the conversion of the failure
+     * @return the future with the converted failure
+     */
+    public RequestFuture<T> transformFailure(final Transformer<? super Throwable, ? extends Throwable> transformer) {
+        final RequestFuture<T> next = new RequestFuture<T>();
+        propagateCancellation(next);
+        addCallback(new Callback<T>() {
+            public void onSuccess(T result) {
+                next.set(result);
+            }
+
+            public void onFailure(Throwable failure) {
+                try {
+                    next.setException(transformer.apply(failure));
+                } catch (Throwable t) {
+                    next.setException(t);
+                }
+            }
+        }, SAME_THREAD);
+        return next;
+    }
+
+    /**
+     * Starts another request once this future completes.
+     *
+     * @param transformer starts the next request from the result of this one
+     * @return the future result of the next request
+     */
+    public <V> RequestFuture<V> then(final AsyncTransformer<? super T, V> transformer) {
+        final RequestFuture<V> next = new RequestFuture<V>();
+        propagateCancellation(next);
+        addCallback(new Callback<T>() {
+            public void onSuccess(T result) {
+                final RequestFuture<V> step;
+                try {
+                    step = transformer.apply(result);
+                } catch (Throwable t) {
+                    next.setException(t);
+                    return;
+                }
+                next.propagateCancellation(step);
+                step.addCallback(new Callback<V>() {
+                    public void onSuccess(V result) {
+                        next.set(result);
+                    }
+
+                    public void onFailure(Throwable failure) {
+                        next.setException(failure);
+                    }
+                }, SAME_THREAD);
+            }
+
+            public void onFailure(Throwable failure) {
+                next.setException(failure);
+            }
+        }, SAME_THREAD);
+        return next;
+    }
+
+    /**
+     * Cancels this future when the dependent one is cancelled, and the dependent one when this one is.
+     */
+    private void propagateCancellation(final RequestFuture<?> dependent) {
+        dependent.addListener(new Runnable() {
+            public void run() {
+                if (dependent.isCancelled())
+                    cancel(false);
+            }
+        }, SAME_THREAD);
+        addListener(new Runnable() {
+            public void run() {
+                if (isCancelled())
+                    dependent.cancel(false);
+            }
+        }, SAME_THREAD);
+    }
+
+    private void fireListeners() {
+        List<Listener> toFire;
+        synchronized (this) {
+            toFire = listeners;
+            listeners = new ArrayList<Listener>();
+        }
+        for (Listener listener : toFire)
+            listener.fire();
+    }
+
+    private static class Listener {
+        private final Runnable runnable;
+        private final Executor executor;
+
+        Listener(Runnable runnable, Executor executor) {
+            this.runnable = runnable;
+            this.executor = executor;
+        }
+
+        void fire() {
+            try {
+                executor.execute(runnable);
+            } catch (RuntimeException e) {
+                logger.log(Level.SEVERE, "Can't run listener " + runnable, e);
+            }
+        }
+    }
+}
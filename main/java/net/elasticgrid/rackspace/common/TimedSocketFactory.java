@@ -0,0 +1,82 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.elasticgrid.rackspace.common;
+
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.scheme.LayeredSocketFactory;
+import org.apache.http.conn.scheme.SocketFactory;
+import org.apache.http.params.HttpParams;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.UnknownHostException;
+
+/**
+ * Socket factory reporting how long connections take to establish to the metrics listeners of a connection.
+ */
+class TimedSocketFactory implements SocketFactory {
+    private final SocketFactory factory;
+    private final RackspaceConnection connection;
+
+    /**
+     * @return a factory timing the connections of the given one, layered if the given one is
+     */
+    static SocketFactory wrap(SocketFactory factory, RackspaceConnection connection) {
+        if (factory instanceof LayeredSocketFactory)
+            return new Layered((LayeredSocketFactory) factory, connection);
+        return new TimedSocketFactory(factory, connection);
+    }
+
+    private TimedSocketFactory(SocketFactory factory, RackspaceConnection connection) {
+        this.factory = factory;
+        this.connection = connection;
+    }
+
+    public Socket createSocket() throws IOException {
+        return factory.createSocket();
+    }
+
+    public Socket connectSocket(Socket sock, String host, int port, InetAddress localAddress, int localPort,
+                                HttpParams params) throws IOException, UnknownHostException, ConnectTimeoutException {
+        if (!connection.isInstrumented())
+            return factory.connectSocket(sock, host, port, localAddress, localPort, params);
+        long start = System.nanoTime();
+        Socket socket = factory.connectSocket(sock, host, port, localAddress, localPort, params);
+        connection.fireConnected(host, System.nanoTime() - start);
+        return socket;
+    }
+
+    public boolean isSecure(Socket sock) throws IllegalArgumentException {
+        return factory.isSecure(sock);
+    }
+
+    private static class Layered extends TimedSocketFactory implements LayeredSocketFactory {
+        private final LayeredSocketFactory factory;
+
+        Layered(LayeredSocketFactory factory, RackspaceConnection connection) {
+            super(factory, connection);
+            this.factory = factory;
+        }
+
+        public Socket createSocket(Socket socket, String host, int port, boolean autoClose)
+                throws IOException, UnknownHostException {
+            return factory.createSocket(socket, host, port, autoClose);
+        }
+    }
+}
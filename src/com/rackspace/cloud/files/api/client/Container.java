@@ -133,4 +133,19 @@ public class Container extends Entity {
 		this.logRetention = logRetention;
 	}
 
+	/**
+	 * @return true if the other container has the same storage and CDN
+	 *         attributes, so that a view showing one can show the other
+	 */
+	public boolean hasSameAttributes(Container other) {
+		return other != null && equal(name, other.name) && count == other.count
+				&& bytes == other.bytes && cdnEnabled == other.cdnEnabled
+				&& Ttl == other.Ttl && equal(cdnUrl, other.cdnUrl)
+				&& logRetention == other.logRetention;
+	}
+
+	private static boolean equal(String a, String b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
 }
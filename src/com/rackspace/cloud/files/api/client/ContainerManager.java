@@ -3,6 +3,14 @@ package com.rackspace.cloud.files.api.client;
 import java.io.IOException;
 import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import javax.xml.parsers.FactoryConfigurationError;
 import javax.xml.parsers.ParserConfigurationException;
@@ -29,6 +37,7 @@ import com.rackspace.cloud.files.api.client.parsers.ContainerXMLParser;
 import com.rackspace.cloud.servers.api.client.Account;
 import com.rackspace.cloud.servers.api.client.CloudServersException;
 import com.rackspace.cloud.servers.api.client.EntityManager;
+import com.rackspace.cloud.servers.api.client.http.SingleFlight;
 import com.rackspace.cloud.servers.api.client.parsers.CloudServersFaultXMLParser;
 
 /**
@@ -36,6 +45,15 @@ import com.rackspace.cloud.servers.api.client.parsers.CloudServersFaultXMLParser
  * 
  */
 public class ContainerManager extends EntityManager {
+	// runs the CDN half of the overviews, shared by every manager
+	private static final ExecutorService cdnListings = Executors.newFixedThreadPool(2, new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "CDN listing");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
 	private Context context;
 	
 	public ContainerManager(Context context) {
@@ -68,7 +86,16 @@ public class ContainerManager extends EntityManager {
 		return resp;
 	}
 
-	public ArrayList<Container> createCDNList(boolean detail) throws CloudServersException {
+	public ArrayList<Container> createCDNList(final boolean detail) throws CloudServersException {
+		return SingleFlight.get(Account.getCdnManagementUrl() + "?format=xml", Account.getAuthToken(),
+				new SingleFlight.Request<ArrayList<Container>>() {
+			public ArrayList<Container> execute() throws CloudServersException {
+				return fetchCDNList(detail);
+			}
+		});
+	}
+
+	private ArrayList<Container> fetchCDNList(boolean detail) throws CloudServersException {
 		
 		CustomHttpClient httpclient = new CustomHttpClient(context);
 		HttpGet get = new HttpGet(Account.getCdnManagementUrl()+"?format=xml");
@@ -212,7 +239,18 @@ public class ContainerManager extends EntityManager {
 		return resp;
 	}
 
-	public ArrayList<Container> createList(boolean detail)
+	public ArrayList<Container> createList(final boolean detail)
+			throws CloudServersException {
+		return SingleFlight.get(Account.getStorageUrl() + "?format=xml",
+				Account.getStorageToken(),
+				new SingleFlight.Request<ArrayList<Container>>() {
+			public ArrayList<Container> execute() throws CloudServersException {
+				return fetchList(detail);
+			}
+		});
+	}
+
+	private ArrayList<Container> fetchList(boolean detail)
 			throws CloudServersException {
 
 		CustomHttpClient httpclient = new CustomHttpClient(context);
@@ -272,4 +310,66 @@ public class ContainerManager extends EntityManager {
 		return containers;
 	}
 
-}
\ No newline at end of file
+	/**
+	 * Lists the containers together with their CDN attributes. The storage
+	 * and CDN listings are fetched at the same time and joined by container
+	 * name. The CDN listing is cancelled if the storage listing fails.
+	 */
+	public ArrayList<Container> createOverview() throws CloudServersException {
+		Future<ArrayList<Container>> cdnList = cdnListings.submit(new Callable<ArrayList<Container>>() {
+			public ArrayList<Container> call() throws CloudServersException {
+				return createCDNList(true);
+			}
+		});
+
+		try {
+			ArrayList<Container> containers = createList(true);
+			return join(containers, cdnList.get());
+		} catch (InterruptedException e) {
+			CloudServersException cse = new CloudServersException();
+			cse.setMessage(e.getLocalizedMessage());
+			throw cse;
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof CloudServersException) {
+				throw (CloudServersException) e.getCause();
+			}
+			CloudServersException cse = new CloudServersException();
+			cse.setMessage(e.getCause().getLocalizedMessage());
+			throw cse;
+		} finally {
+			// no-op once the listing completed
+			cdnList.cancel(true);
+		}
+	}
+
+	/**
+	 * Joins a storage listing with a CDN listing. The result holds new
+	 * containers in storage listing order, with the CDN attributes of the
+	 * CDN container of the same name, if any; the listings are not modified,
+	 * so either side can be refreshed and joined again with the other.
+	 */
+	public static ArrayList<Container> join(List<Container> containers, List<Container> cdnContainers) {
+		HashMap<String, Container> cdnIndex = new HashMap<String, Container>(cdnContainers.size() * 2);
+		for (Container cdnContainer : cdnContainers) {
+			cdnIndex.put(cdnContainer.getName(), cdnContainer);
+		}
+
+		ArrayList<Container> overview = new ArrayList<Container>(containers.size());
+		for (Container container : containers) {
+			Container joined = new Container();
+			joined.setName(container.getName());
+			joined.setCount(container.getCount());
+			joined.setBytes(container.getBytes());
+			Container cdnContainer = cdnIndex.get(container.getName());
+			if (cdnContainer != null) {
+				joined.setCdnEnabled(cdnContainer.isCdnEnabled());
+				joined.setCdnUrl(cdnContainer.getCdnUrl());
+				joined.setTtl(cdnContainer.getTtl());
+				joined.setLogRetention(cdnContainer.isLogRetention());
+			}
+			overview.add(joined);
+		}
+		return overview;
+	}
+
+}
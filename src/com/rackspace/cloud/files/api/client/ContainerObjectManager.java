@@ -1,7 +1,10 @@
 package com.rackspace.cloud.files.api.client;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringReader;
+import java.net.URLEncoder;
 import java.util.ArrayList;
 
 import javax.xml.parsers.FactoryConfigurationError;
@@ -9,6 +12,8 @@ import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.methods.HttpDelete;
@@ -26,6 +31,7 @@ import com.rackspace.cloud.files.api.client.parsers.ContainerObjectXMLparser;
 import com.rackspace.cloud.servers.api.client.Account;
 import com.rackspace.cloud.servers.api.client.CloudServersException;
 import com.rackspace.cloud.servers.api.client.EntityManager;
+import com.rackspace.cloud.servers.api.client.http.SingleFlight;
 import com.rackspace.cloud.servers.api.client.parsers.CloudServersFaultXMLParser;
 
 /** 
@@ -38,12 +44,23 @@ public class ContainerObjectManager extends EntityManager {
 	public String LOG = "ContainerObjectManager";
 	private Context context;
 	public static final String storageToken = Account.getStorageToken();
+	// maximum number of objects returned by a single listing request
+	private static final int LISTING_LIMIT = 10000;
 	
 	public ContainerObjectManager(Context context) {
 		this.context = context;
 	}
 
-	public ArrayList<ContainerObjects> createList(boolean detail, String passName) throws CloudServersException {
+	public ArrayList<ContainerObjects> createList(final boolean detail, final String passName) throws CloudServersException {
+		return SingleFlight.get(Account.getStorageUrl() + "/" + passName + "?format=xml", storageToken,
+				new SingleFlight.Request<ArrayList<ContainerObjects>>() {
+			public ArrayList<ContainerObjects> execute() throws CloudServersException {
+				return fetchList(detail, passName);
+			}
+		});
+	}
+
+	private ArrayList<ContainerObjects> fetchList(boolean detail, String passName) throws CloudServersException {
 		
 		CustomHttpClient httpclient = new CustomHttpClient(context);
 		HttpGet get = new HttpGet(Account.getStorageUrl()+"/"+passName+"?format=xml");
@@ -103,6 +120,164 @@ public class ContainerObjectManager extends EntityManager {
 		
 	}
 
+	/**
+	 * Lists a container into a {@link ContainerObjectStore} rather than one
+	 * entity per object, following the listing markers so that containers
+	 * larger than a single listing page are fetched completely.
+	 */
+	public ContainerObjectStore createStore(String passName) throws CloudServersException {
+
+		CustomHttpClient httpclient = new CustomHttpClient(context);
+		ContainerObjectStore store = new ContainerObjectStore();
+		String marker = null;
+
+		try {
+			while (true) {
+				String url = Account.getStorageUrl() + "/" + passName + "?format=xml&limit=" + LISTING_LIMIT;
+				if (marker != null) {
+					url += "&marker=" + URLEncoder.encode(marker, "UTF-8");
+				}
+				HttpGet get = new HttpGet(url);
+				get.addHeader("Content-Type", "application/xml");
+				get.addHeader("X-Storage-Token", storageToken);
+
+				HttpResponse resp = httpclient.execute(get);
+				BasicResponseHandler responseHandler = new BasicResponseHandler();
+				String body = responseHandler.handleResponse(resp);
+
+				if (resp.getStatusLine().getStatusCode() == 200 || resp.getStatusLine().getStatusCode() == 203) {
+					ContainerObjectXMLparser filesXMLParser = new ContainerObjectXMLparser(store);
+					SAXParser saxParser = SAXParserFactory.newInstance().newSAXParser();
+					XMLReader xmlReader = saxParser.getXMLReader();
+					xmlReader.setContentHandler(filesXMLParser);
+					xmlReader.parse(new InputSource(new StringReader(body)));
+
+					if (filesXMLParser.getStoredCount() < LISTING_LIMIT) {
+						break;
+					}
+					marker = filesXMLParser.getLastStoredName();
+				} else {
+					CloudServersFaultXMLParser parser = new CloudServersFaultXMLParser();
+					SAXParser saxParser = SAXParserFactory.newInstance().newSAXParser();
+					XMLReader xmlReader = saxParser.getXMLReader();
+					xmlReader.setContentHandler(parser);
+					xmlReader.parse(new InputSource(new StringReader(body)));
+					CloudServersException cse = parser.getException();
+					throw cse;
+				}
+			}
+		} catch (ClientProtocolException e) {
+			CloudServersException cse = new CloudServersException();
+			cse.setMessage(e.getLocalizedMessage());
+			throw cse;
+		} catch (IOException e) {
+			CloudServersException cse = new CloudServersException();
+			cse.setMessage(e.getLocalizedMessage());
+			throw cse;
+		} catch (ParserConfigurationException e) {
+			CloudServersException cse = new CloudServersException();
+			cse.setMessage(e.getLocalizedMessage());
+			throw cse;
+		} catch (SAXException e) {
+			CloudServersException cse = new CloudServersException();
+			cse.setMessage(e.getLocalizedMessage());
+			throw cse;
+		} catch (FactoryConfigurationError e) {
+			CloudServersException cse = new CloudServersException();
+			cse.setMessage(e.getLocalizedMessage());
+			throw cse;
+		}
+		store.trimToSize();
+		return store;
+	}
+
+	/**
+	 * Downloads the content of an object, asking for at most maxBytes with a
+	 * range request. The object is read through the CDN when cdnUrl is given,
+	 * otherwise from storage with the auth token.
+	 * 
+	 * @return the object content, or null if the object is larger than
+	 *         maxBytes and would only be partially downloaded
+	 */
+	public byte[] getObjectData(String container, String object, String cdnUrl, int maxBytes) throws CloudServersException {
+		CustomHttpClient httpclient = new CustomHttpClient(context);
+		HttpGet get;
+		if (cdnUrl != null) {
+			get = new HttpGet(cdnUrl + "/" + object);
+		} else {
+			get = new HttpGet(Account.getStorageUrl() + "/" + container + "/" + object);
+			get.addHeader("X-Auth-Token", Account.getAuthToken());
+		}
+		get.addHeader("Range", "bytes=0-" + (maxBytes - 1));
+
+		InputStream in = null;
+		try {
+			HttpResponse resp = httpclient.execute(get);
+			HttpEntity entity = resp.getEntity();
+			int statusCode = resp.getStatusLine().getStatusCode();
+			if (statusCode != 200 && statusCode != 206) {
+				if (entity != null) {
+					entity.consumeContent();
+				}
+				CloudServersException cse = new CloudServersException();
+				cse.setCode(statusCode);
+				cse.setMessage(resp.getStatusLine().getReasonPhrase());
+				throw cse;
+			}
+			if (entity == null) {
+				return new byte[0];
+			}
+			// Content-Range: bytes 0-1023/146515
+			Header range = resp.getFirstHeader("Content-Range");
+			if (statusCode == 206 && range != null) {
+				String total = range.getValue().substring(range.getValue().indexOf('/') + 1);
+				if (!"*".equals(total) && Long.parseLong(total.trim()) > maxBytes) {
+					get.abort();
+					return null;
+				}
+			}
+			if (entity.getContentLength() > maxBytes) {
+				get.abort();
+				return null;
+			}
+
+			in = entity.getContent();
+			ByteArrayOutputStream out = new ByteArrayOutputStream(
+					entity.getContentLength() > 0 ? (int) entity.getContentLength() : 8192);
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				if (out.size() + read > maxBytes) {
+					// server ignored the range, don't download the rest
+					get.abort();
+					return null;
+				}
+				out.write(buffer, 0, read);
+			}
+			return out.toByteArray();
+		} catch (ClientProtocolException e) {
+			CloudServersException cse = new CloudServersException();
+			cse.setMessage(e.getLocalizedMessage());
+			throw cse;
+		} catch (IOException e) {
+			CloudServersException cse = new CloudServersException();
+			cse.setMessage(e.getLocalizedMessage());
+			throw cse;
+		} catch (NumberFormatException e) {
+			CloudServersException cse = new CloudServersException();
+			cse.setMessage(e.getLocalizedMessage());
+			throw cse;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					// nothing left to read
+				}
+			}
+		}
+	}
+
 	public HttpResponse deleteObject(String Container, String Object) throws CloudServersException {
 		HttpResponse resp = null;
 		CustomHttpClient httpclient = new CustomHttpClient(context);
@@ -0,0 +1,445 @@
+package com.rackspace.cloud.files.api.client;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Column oriented storage for a container listing. Instead of one
+ * {@link ContainerObjects} per row, every attribute lives in its own primitive
+ * array: names are packed into a shared char arena addressed by offsets, sizes
+ * and last modification dates (epoch millis, UTC) are kept in long arrays, MD5
+ * hashes are packed as 16 raw bytes and content types are dictionary encoded.
+ *
+ * Rows are appended by {@link com.rackspace.cloud.files.api.client.parsers.ContainerObjectXMLparser}
+ * and can be materialized one at a time with {@link #get(int)} when a screen
+ * needs a full entity.
+ */
+public class ContainerObjectStore implements Serializable {
+
+	private static final long serialVersionUID = -2937262843367015838L;
+	private static final int INITIAL_ROWS = 64;
+	private static final int HASH_BYTES = 16;
+
+	private int size;
+
+	// name arena, row i spans [nameOffsets[i], nameOffsets[i + 1])
+	private char[] names;
+	private int[] nameOffsets;
+
+	private long[] bytes;
+	private long[] lastModified;
+	private byte[] hashes;
+
+	// content type dictionary
+	private int[] contentTypeCodes;
+	private ArrayList<String> contentTypes;
+	private transient HashMap<String, Integer> contentTypeIndex;
+
+	public ContainerObjectStore() {
+		this(INITIAL_ROWS);
+	}
+
+	public ContainerObjectStore(int expectedRows) {
+		int rows = Math.max(expectedRows, 1);
+		names = new char[rows * 16];
+		nameOffsets = new int[rows + 1];
+		bytes = new long[rows];
+		lastModified = new long[rows];
+		hashes = new byte[rows * HASH_BYTES];
+		contentTypeCodes = new int[rows];
+		contentTypes = new ArrayList<String>();
+		contentTypeIndex = new HashMap<String, Integer>();
+	}
+
+	/**
+	 * Appends a row to the store.
+	 *
+	 * @param name the object name
+	 * @param hash the hex encoded MD5 of the object, may be null
+	 * @param size the object size in bytes
+	 * @param contentType the object content type, may be null
+	 * @param lastModified the last modification date, in epoch millis
+	 */
+	public void add(String name, String hash, long size, String contentType, long lastModified) {
+		ensureRowCapacity(this.size + 1);
+		int row = this.size;
+
+		int start = nameOffsets[row];
+		int length = name == null ? 0 : name.length();
+		ensureNameCapacity(start + length);
+		if (length > 0) {
+			name.getChars(0, length, names, start);
+		}
+		nameOffsets[row + 1] = start + length;
+
+		bytes[row] = size;
+		this.lastModified[row] = lastModified;
+		packHash(hash, row);
+		contentTypeCodes[row] = encodeContentType(contentType);
+		this.size++;
+	}
+
+	/**
+	 * @return the number of rows
+	 */
+	public int size() {
+		return size;
+	}
+
+	public String getName(int row) {
+		checkRow(row);
+		int start = nameOffsets[row];
+		return new String(names, start, nameOffsets[row + 1] - start);
+	}
+
+	public long getBytes(int row) {
+		checkRow(row);
+		return bytes[row];
+	}
+
+	/**
+	 * @return the last modification date of the row, in epoch millis, or -1
+	 *         if the listing did not provide a parsable date
+	 */
+	public long getLastModified(int row) {
+		checkRow(row);
+		return lastModified[row];
+	}
+
+	public String getContentType(int row) {
+		checkRow(row);
+		int code = contentTypeCodes[row];
+		return code < 0 ? null : contentTypes.get(code);
+	}
+
+	/**
+	 * @return the dictionary code of the row's content type, -1 if it has none;
+	 *         codes can be compared instead of strings
+	 */
+	public int getContentTypeCode(int row) {
+		checkRow(row);
+		return contentTypeCodes[row];
+	}
+
+	/**
+	 * @return the hex encoded MD5 of the row, or null if none was listed
+	 */
+	public String getHash(int row) {
+		checkRow(row);
+		int offset = row * HASH_BYTES;
+		boolean empty = true;
+		char[] hex = new char[HASH_BYTES * 2];
+		for (int i = 0; i < HASH_BYTES; i++) {
+			int b = hashes[offset + i] & 0xff;
+			empty &= b == 0;
+			hex[i * 2] = HEX[b >>> 4];
+			hex[i * 2 + 1] = HEX[b & 0x0f];
+		}
+		return empty ? null : new String(hex);
+	}
+
+	/**
+	 * Materializes a row as a regular entity, for screens which need one.
+	 */
+	public ContainerObjects get(int row) {
+		ContainerObjects object = new ContainerObjects();
+		object.setCName(getName(row));
+		object.setHash(getHash(row));
+		object.setBytes(getBytes(row));
+		object.setContentType(getContentType(row));
+		object.setLastMod(formatLastModified(getLastModified(row)));
+		return object;
+	}
+
+	/**
+	 * Releases the slack left by the growth policy once the listing is complete.
+	 */
+	public void trimToSize() {
+		names = copyOf(names, nameOffsets[size]);
+		nameOffsets = copyOf(nameOffsets, size + 1);
+		bytes = copyOf(bytes, size);
+		lastModified = copyOf(lastModified, size);
+		hashes = copyOf(hashes, size * HASH_BYTES);
+		contentTypeCodes = copyOf(contentTypeCodes, size);
+		contentTypes.trimToSize();
+	}
+
+	//
+	// Sorting, done on row indexes so that the columns themselves never move
+	//
+
+	/**
+	 * @return the row indexes ordered by name
+	 */
+	public int[] sortByName(final boolean ascending) {
+		return sort(new RowComparator() {
+			int compare(int a, int b) {
+				int aStart = nameOffsets[a], aEnd = nameOffsets[a + 1];
+				int bStart = nameOffsets[b], bEnd = nameOffsets[b + 1];
+				int n = Math.min(aEnd - aStart, bEnd - bStart);
+				for (int i = 0; i < n; i++) {
+					int c = names[aStart + i] - names[bStart + i];
+					if (c != 0) {
+						return ascending ? c : -c;
+					}
+				}
+				int c = (aEnd - aStart) - (bEnd - bStart);
+				return ascending ? c : -c;
+			}
+		});
+	}
+
+	/**
+	 * @return the row indexes ordered by size
+	 */
+	public int[] sortBySize(boolean ascending) {
+		return sortByColumn(bytes, ascending);
+	}
+
+	/**
+	 * @return the row indexes ordered by last modification date
+	 */
+	public int[] sortByLastModified(boolean ascending) {
+		return sortByColumn(lastModified, ascending);
+	}
+
+	private int[] sortByColumn(final long[] column, final boolean ascending) {
+		return sort(new RowComparator() {
+			int compare(int a, int b) {
+				long x = column[a], y = column[b];
+				int c = x < y ? -1 : (x == y ? 0 : 1);
+				return ascending ? c : -c;
+			}
+		});
+	}
+
+	private abstract static class RowComparator {
+		abstract int compare(int a, int b);
+	}
+
+	// stable merge sort on primitive row indexes, no boxing involved
+	private int[] sort(RowComparator comparator) {
+		int[] rows = new int[size];
+		for (int i = 0; i < size; i++) {
+			rows[i] = i;
+		}
+		int[] buffer = new int[size];
+		for (int width = 1; width < size; width <<= 1) {
+			for (int low = 0; low < size - width; low += width << 1) {
+				int mid = low + width;
+				int high = Math.min(low + (width << 1), size);
+				if (comparator.compare(rows[mid - 1], rows[mid]) <= 0) {
+					continue; // already ordered
+				}
+				int i = low, j = mid, k = low;
+				while (i < mid && j < high) {
+					buffer[k++] = comparator.compare(rows[i], rows[j]) <= 0 ? rows[i++] : rows[j++];
+				}
+				while (i < mid) {
+					buffer[k++] = rows[i++];
+				}
+				while (j < high) {
+					buffer[k++] = rows[j++];
+				}
+				System.arraycopy(buffer, low, rows, low, high - low);
+			}
+		}
+		return rows;
+	}
+
+	//
+	// Last modification dates
+	//
+
+	/**
+	 * Parses the last_modified value of a listing, such as
+	 * <code>2010-12-01T18:03:41.652530</code>, as a UTC date without going
+	 * through SimpleDateFormat.
+	 *
+	 * @return the date in epoch millis, or -1 if the value can't be parsed
+	 */
+	public static long parseLastModified(String value) {
+		if (value == null || value.length() < 19 || value.charAt(4) != '-' || value.charAt(7) != '-'
+				|| value.charAt(10) != 'T' || value.charAt(13) != ':' || value.charAt(16) != ':') {
+			return -1;
+		}
+		int year = digits(value, 0, 4);
+		int month = digits(value, 5, 2);
+		int day = digits(value, 8, 2);
+		int hour = digits(value, 11, 2);
+		int minute = digits(value, 14, 2);
+		int second = digits(value, 17, 2);
+		if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31 || hour < 0 || minute < 0 || second < 0) {
+			return -1;
+		}
+		int millis = 0;
+		if (value.length() > 20 && value.charAt(19) == '.') {
+			int end = Math.min(value.length(), 23);
+			for (int i = 20; i < 23; i++) {
+				int digit = i < end ? value.charAt(i) - '0' : 0;
+				if (digit < 0 || digit > 9) {
+					digit = 0;
+				}
+				millis = millis * 10 + digit;
+			}
+		}
+		long days = daysFromCivil(year, month, day);
+		return ((days * 24 + hour) * 60 + minute) * 60000L + second * 1000L + millis;
+	}
+
+	/**
+	 * Inverse of {@link #parseLastModified(String)}, used when a row is
+	 * materialized back into an entity.
+	 */
+	public static String formatLastModified(long millis) {
+		if (millis < 0) {
+			return null;
+		}
+		long days = millis / 86400000L;
+		int msOfDay = (int) (millis % 86400000L);
+		// civil from days, see daysFromCivil
+		long z = days + 719468;
+		long era = z / 146097;
+		int doe = (int) (z - era * 146097);
+		int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+		int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+		int mp = (5 * doy + 2) / 153;
+		int day = doy - (153 * mp + 2) / 5 + 1;
+		int month = mp < 10 ? mp + 3 : mp - 9;
+		long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+
+		StringBuilder sb = new StringBuilder(26);
+		pad(sb, year, 4).append('-');
+		pad(sb, month, 2).append('-');
+		pad(sb, day, 2).append('T');
+		pad(sb, msOfDay / 3600000, 2).append(':');
+		pad(sb, msOfDay / 60000 % 60, 2).append(':');
+		pad(sb, msOfDay / 1000 % 60, 2).append('.');
+		pad(sb, msOfDay % 1000, 3).append("000");
+		return sb.toString();
+	}
+
+	// days since 1970-01-01 in the proleptic Gregorian calendar
+	private static long daysFromCivil(int year, int month, int day) {
+		long y = month <= 2 ? year - 1 : year;
+		long era = y / 400;
+		int yoe = (int) (y - era * 400);
+		int doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+		int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+		return era * 146097 + doe - 719468;
+	}
+
+	private static int digits(String value, int start, int count) {
+		int result = 0;
+		for (int i = start; i < start + count; i++) {
+			int digit = value.charAt(i) - '0';
+			if (digit < 0 || digit > 9) {
+				return -1;
+			}
+			result = result * 10 + digit;
+		}
+		return result;
+	}
+
+	private static StringBuilder pad(StringBuilder sb, long value, int width) {
+		String s = Long.toString(value);
+		for (int i = s.length(); i < width; i++) {
+			sb.append('0');
+		}
+		return sb.append(s);
+	}
+
+	//
+	// Internals
+	//
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private void packHash(String hash, int row) {
+		int offset = row * HASH_BYTES;
+		if (hash == null || hash.length() != HASH_BYTES * 2) {
+			return; // left zeroed, reported as missing
+		}
+		for (int i = 0; i < HASH_BYTES; i++) {
+			int high = Character.digit(hash.charAt(i * 2), 16);
+			int low = Character.digit(hash.charAt(i * 2 + 1), 16);
+			if (high < 0 || low < 0) {
+				for (int j = 0; j < HASH_BYTES; j++) {
+					hashes[offset + j] = 0;
+				}
+				return;
+			}
+			hashes[offset + i] = (byte) ((high << 4) | low);
+		}
+	}
+
+	private int encodeContentType(String contentType) {
+		if (contentType == null) {
+			return -1;
+		}
+		if (contentTypeIndex == null) {
+			// dropped by serialization, rebuild it before appending again
+			contentTypeIndex = new HashMap<String, Integer>();
+			for (int i = 0; i < contentTypes.size(); i++) {
+				contentTypeIndex.put(contentTypes.get(i), i);
+			}
+		}
+		Integer code = contentTypeIndex.get(contentType);
+		if (code == null) {
+			code = contentTypes.size();
+			contentTypes.add(contentType);
+			contentTypeIndex.put(contentType, code);
+		}
+		return code;
+	}
+
+	private void ensureRowCapacity(int rows) {
+		if (rows <= bytes.length) {
+			return;
+		}
+		int capacity = Math.max(rows, bytes.length + (bytes.length >> 1) + 1);
+		nameOffsets = copyOf(nameOffsets, capacity + 1);
+		bytes = copyOf(bytes, capacity);
+		lastModified = copyOf(lastModified, capacity);
+		hashes = copyOf(hashes, capacity * HASH_BYTES);
+		contentTypeCodes = copyOf(contentTypeCodes, capacity);
+	}
+
+	private void ensureNameCapacity(int chars) {
+		if (chars > names.length) {
+			names = copyOf(names, Math.max(chars, names.length + (names.length >> 1) + 1));
+		}
+	}
+
+	private void checkRow(int row) {
+		if (row < 0 || row >= size) {
+			throw new IndexOutOfBoundsException("Row: " + row + ", size: " + size);
+		}
+	}
+
+	// Arrays.copyOf is not available before Android 2.3
+	private static char[] copyOf(char[] array, int length) {
+		char[] copy = new char[length];
+		System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+		return copy;
+	}
+
+	private static int[] copyOf(int[] array, int length) {
+		int[] copy = new int[length];
+		System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+		return copy;
+	}
+
+	private static long[] copyOf(long[] array, int length) {
+		long[] copy = new long[length];
+		System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+		return copy;
+	}
+
+	private static byte[] copyOf(byte[] array, int length) {
+		byte[] copy = new byte[length];
+		System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+		return copy;
+	}
+}
@@ -12,7 +12,7 @@ public class ContainerObjects extends Entity {
 	private String object;
 	private String hash;
 	private String lastMod;
-	private int bytes;
+	private long bytes;
 	private String cname;
 	private String contentType;
 
@@ -75,14 +75,14 @@ public class ContainerObjects extends Entity {
 	 * 
 	 * @return the objects size
 	 */
-	public int getBytes() {
+	public long getBytes() {
 		return bytes;
 	}
 	/**
 	 * 
 	 * @param the bytes the object is set to
 	 */
-	public void setBytes(int bytes) {
+	public void setBytes(long bytes) {
 		this.bytes = bytes;
 	}
 	/**
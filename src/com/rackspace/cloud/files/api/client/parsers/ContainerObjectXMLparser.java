@@ -7,6 +7,7 @@ import org.xml.sax.helpers.DefaultHandler;
 
 import android.util.Log;
 
+import com.rackspace.cloud.files.api.client.ContainerObjectStore;
 import com.rackspace.cloud.files.api.client.ContainerObjects;
 
 /**
@@ -19,9 +20,29 @@ public class ContainerObjectXMLparser extends DefaultHandler {
 	private ContainerObjects object;
 	private ArrayList<ContainerObjects> files;
 
+	// when set, objects are emitted as rows instead of entities
+	private ContainerObjectStore store;
+	private String objectName;
+	private String objectHash;
+	private long objectBytes;
+	private String objectContentType;
+	private String objectLastMod;
+	private int objectCount;
+
 	private StringBuffer currentData;
 	public String LOG = "ViewFilesXMLparser";
 
+	public ContainerObjectXMLparser() {
+	}
+
+	/**
+	 * @param store
+	 *            the store the parsed objects are appended to
+	 */
+	public ContainerObjectXMLparser(ContainerObjectStore store) {
+		this.store = store;
+	}
+
 	public void startDocument() {
 		Log.v(LOG, "startDocument");
 	}
@@ -37,7 +58,15 @@ public class ContainerObjectXMLparser extends DefaultHandler {
 		if ("container".equals(name)) {
 			files = new ArrayList<ContainerObjects>();
 		} else if ("object".equals(name)) {
-			object = new ContainerObjects();
+			if (store == null) {
+				object = new ContainerObjects();
+			} else {
+				objectName = null;
+				objectHash = null;
+				objectBytes = 0;
+				objectContentType = null;
+				objectLastMod = null;
+			}
 		}
 	}
 
@@ -47,6 +76,8 @@ public class ContainerObjectXMLparser extends DefaultHandler {
 
 		if ("container".equals(name)) {
 
+		} else if (store != null) {
+			endStoreElement(name, value);
 		} else if ("object".equals(name)) {
 			if (files != null) {
 				files.add(object);
@@ -58,13 +89,31 @@ public class ContainerObjectXMLparser extends DefaultHandler {
 		} else if ("hash".equals(name)) {
 			object.setHash(value);
 		} else if ("bytes".equals(name)) {
-			object.setBytes(Integer.parseInt(value));
+			object.setBytes(Long.parseLong(value));
 		} else if ("last_modified".equals(name)) {
 			object.setLastMod(value);
 
 		}
 	}
 
+	private void endStoreElement(String name, String value) {
+		if ("object".equals(name)) {
+			store.add(objectName, objectHash, objectBytes, objectContentType,
+					ContainerObjectStore.parseLastModified(objectLastMod));
+			objectCount++;
+		} else if ("name".equals(name)) {
+			objectName = value;
+		} else if ("content_type".equals(name)) {
+			objectContentType = value;
+		} else if ("hash".equals(name)) {
+			objectHash = value;
+		} else if ("bytes".equals(name)) {
+			objectBytes = Long.parseLong(value);
+		} else if ("last_modified".equals(name)) {
+			objectLastMod = value;
+		}
+	}
+
 	public void characters(char ch[], int start, int length) {
 
 		Log.d("Rackspace-Cloud", "Characters:    \"");
@@ -121,4 +170,26 @@ public class ContainerObjectXMLparser extends DefaultHandler {
 		this.files = files;
 	}
 
+	/**
+	 * @return the store objects are emitted into, if any
+	 */
+	public ContainerObjectStore getStore() {
+		return store;
+	}
+
+	/**
+	 * @return the number of objects appended to the store by this parser
+	 */
+	public int getStoredCount() {
+		return objectCount;
+	}
+
+	/**
+	 * @return the name of the last object appended to the store by this
+	 *         parser, used as the marker of the next listing page
+	 */
+	public String getLastStoredName() {
+		return objectName;
+	}
+
 }
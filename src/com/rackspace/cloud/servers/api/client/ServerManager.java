@@ -26,6 +26,7 @@ import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.XMLReader;
 
+import com.rackspace.cloud.servers.api.client.http.SingleFlight;
 import com.rackspace.cloud.servers.api.client.parsers.CloudServersFaultXMLParser;
 import com.rackspace.cloud.servers.api.client.parsers.ServersXMLParser;
 
@@ -102,7 +103,16 @@ public class ServerManager extends EntityManager {
 		}	
 	}
 
-	public ArrayList<Server> createList(boolean detail) throws CloudServersException {
+	public ArrayList<Server> createList(final boolean detail) throws CloudServersException {
+		return SingleFlight.get(Account.getServerUrl() + "/servers/detail.xml", Account.getAuthToken(),
+				new SingleFlight.Request<ArrayList<Server>>() {
+			public ArrayList<Server> execute() throws CloudServersException {
+				return fetchList(detail);
+			}
+		});
+	}
+
+	private ArrayList<Server> fetchList(boolean detail) throws CloudServersException {
 		
 		DefaultHttpClient httpclient = new DefaultHttpClient();
 		HttpGet get = new HttpGet(Account.getServerUrl() + "/servers/detail.xml" + cacheBuster());
@@ -157,7 +167,16 @@ public class ServerManager extends EntityManager {
 		return servers;
 	}
 
-	public Server find(long id) throws CloudServersException {
+	public Server find(final long id) throws CloudServersException {
+		return SingleFlight.get(Account.getServerUrl() + "/servers/" + id + ".xml", Account.getAuthToken(),
+				new SingleFlight.Request<Server>() {
+			public Server execute() throws CloudServersException {
+				return fetchServer(id);
+			}
+		});
+	}
+
+	private Server fetchServer(long id) throws CloudServersException {
 		Server server = null;
 		DefaultHttpClient httpclient = new DefaultHttpClient();
 		HttpGet get = new HttpGet(Account.getServerUrl() + "/servers/" + id + ".xml" + cacheBuster());
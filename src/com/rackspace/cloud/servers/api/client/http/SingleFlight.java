@@ -0,0 +1,118 @@
+package com.rackspace.cloud.servers.api.client.http;
+
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+
+import com.rackspace.cloud.servers.api.client.CloudServersException;
+
+/**
+ * Coalesces identical GET requests. While a request for a given URL and auth
+ * token is in flight, callers asking for the same thing wait for it and get
+ * the same parsed result (or the same exception) instead of going to the
+ * network again. Nothing is kept once the request completes, so this is not
+ * a cache: a caller arriving later always triggers a new request.
+ *
+ * Results are shared between callers and must be treated as read only.
+ */
+public class SingleFlight {
+
+	/**
+	 * The request to run when no identical one is in flight.
+	 */
+	public interface Request<T> {
+		T execute() throws CloudServersException;
+	}
+
+	private static class Flight {
+		final CountDownLatch done = new CountDownLatch(1);
+		Object result;
+		CloudServersException exception;
+		// unchecked exception or error of the leader
+		Throwable failure;
+	}
+
+	private static final HashMap<String, Flight> flights = new HashMap<String, Flight>();
+	private static long hits;
+	private static long misses;
+
+	/**
+	 * Runs a GET, or joins the identical one already in flight.
+	 *
+	 * @param url the URL of the request, without any cache buster
+	 * @param authToken the token the request is sent with, so that requests
+	 *            made for different accounts are never shared
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T get(String url, String authToken, Request<T> request) throws CloudServersException {
+		String key = "GET " + url + " " + authToken;
+		Flight flight;
+		boolean leader = false;
+		synchronized (flights) {
+			flight = flights.get(key);
+			if (flight == null) {
+				flight = new Flight();
+				flights.put(key, flight);
+				leader = true;
+				misses++;
+			} else {
+				hits++;
+			}
+		}
+
+		if (leader) {
+			try {
+				flight.result = request.execute();
+			} catch (CloudServersException e) {
+				flight.exception = e;
+			} catch (Throwable t) {
+				flight.failure = t;
+			} finally {
+				synchronized (flights) {
+					flights.remove(key);
+				}
+				flight.done.countDown();
+			}
+		} else {
+			boolean interrupted = false;
+			while (flight.done.getCount() > 0) {
+				try {
+					flight.done.await();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		if (flight.exception != null) {
+			throw flight.exception;
+		}
+		if (flight.failure instanceof RuntimeException) {
+			throw (RuntimeException) flight.failure;
+		}
+		if (flight.failure instanceof Error) {
+			throw (Error) flight.failure;
+		}
+		return (T) flight.result;
+	}
+
+	/**
+	 * @return the number of requests which joined one already in flight
+	 */
+	public static long getHits() {
+		synchronized (flights) {
+			return hits;
+		}
+	}
+
+	/**
+	 * @return the number of requests which went to the network
+	 */
+	public static long getMisses() {
+		synchronized (flights) {
+			return misses;
+		}
+	}
+}
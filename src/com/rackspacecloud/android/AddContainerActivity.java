@@ -19,7 +19,6 @@ import android.app.Activity;
 import android.app.AlertDialog;
 import android.content.Context;
 import android.content.DialogInterface;
-import android.os.AsyncTask;
 import android.os.Bundle;
 import android.view.View;
 import android.view.View.OnClickListener;
@@ -58,7 +57,7 @@ public class AddContainerActivity extends Activity implements  OnClickListener {
 			showAlert("Required Fields Missing", " Container name is required.");
 		} else {
 			showActivityIndicators();
-				new SaveFileTask().execute((Void[]) null);
+				new SaveFileTask().execute(AddContainerActivity.this);
 		}
 	}
 	
@@ -120,11 +119,22 @@ public class AddContainerActivity extends Activity implements  OnClickListener {
 		return cse;
     }
     
-    private class SaveFileTask extends AsyncTask<Void, Void, HttpResponse> {
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+		// results would arrive for a screen that is gone
+		RequestScheduler.getInstance().cancelAll(this);
+	}
+
+    private class SaveFileTask extends RequestTask<HttpResponse> {
+
+    	SaveFileTask() {
+    		super(Priority.MUTATION);
+    	}
     	private CloudServersException exception;
     	
     	@Override
-		protected HttpResponse doInBackground(Void... arg0) {
+		protected HttpResponse doInBackground() {
 			HttpResponse resp = null;
 			try {
 				resp = (new ContainerManager(context)).create(fileName.getText());
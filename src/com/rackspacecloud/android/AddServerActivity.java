@@ -8,7 +8,6 @@ import java.util.Iterator;
 import android.app.Activity;
 import android.app.AlertDialog;
 import android.content.DialogInterface;
-import android.os.AsyncTask;
 import android.os.Bundle;
 import android.view.View;
 import android.view.View.OnClickListener;
@@ -113,7 +112,7 @@ public class AddServerActivity extends Activity implements OnItemSelectedListene
 			server.setName(serverName.getText().toString());
 			server.setImageId(selectedImageId);
 			server.setFlavorId(selectedFlavorId);
-			new SaveServerTask().execute((Void[]) null);
+			new SaveServerTask().execute(AddServerActivity.this);
 		}
 	}
 	
@@ -144,12 +143,23 @@ public class AddServerActivity extends Activity implements OnItemSelectedListene
     	setActivityIndicatorsVisibility(View.INVISIBLE);
     }
         
-    private class SaveServerTask extends AsyncTask<Void, Void, Server> {
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+		// results would arrive for a screen that is gone
+		RequestScheduler.getInstance().cancelAll(this);
+	}
+
+    private class SaveServerTask extends RequestTask<Server> {
+
+    	SaveServerTask() {
+    		super(Priority.MUTATION);
+    	}
     	
 		private CloudServersException exception;
     	
 		@Override
-		protected Server doInBackground(Void... arg0) {
+		protected Server doInBackground() {
 			try {
 				(new ServerManager()).create(server);
 			} catch (CloudServersException e) {
@@ -2,9 +2,9 @@ package com.rackspacecloud.android;
 
 import java.io.IOException;
 import java.io.StringReader;
-import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.TimeZone;
 
 import javax.xml.parsers.FactoryConfigurationError;
 import javax.xml.parsers.ParserConfigurationException;
@@ -24,8 +24,8 @@ import android.app.Dialog;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
+import android.graphics.Bitmap;
 import android.net.Uri;
-import android.os.AsyncTask;
 import android.os.Bundle;
 import android.util.Log;
 import android.view.Menu;
@@ -33,9 +33,11 @@ import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.widget.Button;
+import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.rackspace.cloud.files.api.client.ContainerObjectManager;
+import com.rackspace.cloud.files.api.client.ContainerObjectStore;
 import com.rackspace.cloud.files.api.client.ContainerObjects;
 import com.rackspace.cloud.servers.api.client.CloudServersException;
 import com.rackspace.cloud.servers.api.client.parsers.CloudServersFaultXMLParser;
@@ -50,6 +52,11 @@ import com.rackspace.cloud.servers.api.client.parsers.CloudServersFaultXMLParser
 public class ContainerObjectDetails extends Activity {
 	
 	private static final int deleteObject = 0;
+	// only used from the UI thread, listing dates are UTC
+	private static final SimpleDateFormat DISPLAY_DATE_FORMAT = new SimpleDateFormat("MMM-dd-yyyy");
+	static {
+		DISPLAY_DATE_FORMAT.setTimeZone(TimeZone.getTimeZone("UTC"));
+	}
 	private ContainerObjects objects;
 	private String containerNames;
 	private String cdnURL;
@@ -128,36 +135,51 @@ public class ContainerObjectDetails extends Activity {
     	cType.setText(objects.getContentType().toString());
         
     	//Last Modification date
-        String strDate = objects.getLastMod();
-        SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.ssssss");
-        Date dateStr = null;
-			try {
-				dateStr = formatter.parse(strDate);
-			} catch (ParseException e1) {
-				e1.printStackTrace();
-			}
-        String formattedDate = formatter.format(dateStr);
-        Date date1 = null;
-			try {
-				date1 = formatter.parse(formattedDate);
-			} catch (ParseException e) {
-				e.printStackTrace();
-			}      
-        formatter = new SimpleDateFormat("MMM-dd-yyyy");
-        formattedDate = formatter.format(date1);
+        long lastModified = ContainerObjectStore.parseLastModified(objects.getLastMod());
     	TextView lastmod = (TextView) findViewById(R.id.view_file_modification);
-    	lastmod.setText(formattedDate);    	  
+    	if (lastModified >= 0) {
+    		lastmod.setText(DISPLAY_DATE_FORMAT.format(new Date(lastModified)));
+    	} else {
+    		lastmod.setText(objects.getLastMod());
+    	}
     	    	
     }
     
     private class MyOnClickListener implements View.OnClickListener {
         @Override
         public void onClick(View v) {
-        	Intent viewIntent = new Intent("android.intent.action.VIEW", Uri.parse(cdnURL + "/" + objects.getCName()));
-        	startActivity(viewIntent);  
-
+        	if (PreviewCache.isPreviewable(objects)) {
+        		// images are shown in place, decoded at screen size
+        		previewButton.setEnabled(false);
+        		int width = getWindowManager().getDefaultDisplay().getWidth();
+        		int height = getWindowManager().getDefaultDisplay().getHeight();
+        		PreviewCache.getInstance(context).load(containerNames, objects, cdnURL, width, height,
+        				RequestTask.Priority.FOREGROUND,
+        				new PreviewCache.Callback() {
+        			public void onPreviewLoaded(String key, Bitmap bitmap) {
+        				if (isFinishing()) {
+        					return;
+        				}
+        				previewButton.setEnabled(true);
+        				if (bitmap != null) {
+        					ImageView preview = (ImageView) findViewById(R.id.preview_image);
+        					preview.setImageBitmap(bitmap);
+        					preview.setVisibility(View.VISIBLE);
+        				} else {
+        					openInBrowser();
+        				}
+        			}
+        		});
+        	} else {
+        		openInBrowser();
+        	}
         }
     }
+
+    private void openInBrowser() {
+    	Intent viewIntent = new Intent("android.intent.action.VIEW", Uri.parse(cdnURL + "/" + objects.getCName()));
+    	startActivity(viewIntent);
+    }
     
     private void showAlert(String title, String message) {
 		AlertDialog alert = new AlertDialog.Builder(this).create();
@@ -202,7 +224,7 @@ public class ContainerObjectDetails extends Activity {
         	.setPositiveButton("Delete File", new DialogInterface.OnClickListener() {
         		public void onClick(DialogInterface dialog, int whichButton) {
         			// User clicked OK so do some stuff
-        			new ContainerObjectDeleteTask().execute((Void[]) null);
+        			new ContainerObjectDeleteTask().execute(ContainerObjectDetails.this);
         		}
         	})
         	.setNegativeButton("Cancel", new DialogInterface.OnClickListener() {
@@ -260,12 +282,23 @@ public class ContainerObjectDetails extends Activity {
 	    			return cse;
 	    	    }
 	    	 
-	    	 private class ContainerObjectDeleteTask extends AsyncTask<Void, Void, HttpResponse> {
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+		// results would arrive for a screen that is gone
+		RequestScheduler.getInstance().cancelAll(this);
+	}
+
+	    	 private class ContainerObjectDeleteTask extends RequestTask<HttpResponse> {
+
+	    		ContainerObjectDeleteTask() {
+	    			super(Priority.MUTATION);
+	    		}
 	    	    	
 	    			private CloudServersException exception;
 
 	    			@Override
-	    			protected HttpResponse doInBackground(Void... arg0) {
+	    			protected HttpResponse doInBackground() {
 	    				HttpResponse resp = null;	
 	    				try {
 	    					resp = (new ContainerObjectManager(context)).deleteObject(containerNames, objects.getCName() );
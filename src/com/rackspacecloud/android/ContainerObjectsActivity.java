@@ -23,7 +23,7 @@ import android.app.ListActivity;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
-import android.os.AsyncTask;
+import android.graphics.Bitmap;
 import android.os.Bundle;
 import android.util.Log;
 import android.view.LayoutInflater;
@@ -32,7 +32,9 @@ import android.view.MenuInflater;
 import android.view.MenuItem;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AbsListView;
 import android.widget.ArrayAdapter;
+import android.widget.ImageView;
 import android.widget.ListView;
 import android.widget.TextView;
 
@@ -48,9 +50,13 @@ import com.rackspace.cloud.servers.api.client.parsers.CloudServersFaultXMLParser
  * @author Phillip Toohill
  * 
  */
-public class ContainerObjectsActivity extends ListActivity {
+public class ContainerObjectsActivity extends ListActivity implements PreviewCache.Callback {
 
 	private static final int deleteContainer = 0;
+	// thumbnail size in pixels, matches the cell layout
+	private static final int THUMBNAIL_SIZE = 37;
+	// rows fetched past the visible ones, and on first display
+	private static final int PREFETCH_AHEAD = 8;
 	private ContainerObjects[] files;
 	private static Container container;
 	public String LOG = "viewFilesActivity";
@@ -60,6 +66,7 @@ public class ContainerObjectsActivity extends ListActivity {
 	public int bConver = 1048576;
 	public int kbConver = 1024;
 	private Context context;
+	private PreviewCache previewCache;
 
 	@Override
 	public void onCreate(Bundle savedInstanceState) {
@@ -72,6 +79,19 @@ public class ContainerObjectsActivity extends ListActivity {
 		} else {
 			cdnEnabledIs = "false";
 		}
+		previewCache = PreviewCache.getInstance(context);
+		getListView().setOnScrollListener(new AbsListView.OnScrollListener() {
+			public void onScrollStateChanged(AbsListView view, int scrollState) {
+				// don't fetch what is flung past, only where the list stops
+				if (scrollState == SCROLL_STATE_IDLE) {
+					prefetchThumbnails(view.getFirstVisiblePosition(), view.getChildCount());
+				}
+			}
+
+			public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount,
+					int totalItemCount) {
+			}
+		});
 		restoreState(savedInstanceState);
 	}
 
@@ -89,7 +109,7 @@ public class ContainerObjectsActivity extends ListActivity {
 			} else {
 				getListView().setDividerHeight(1); // restore divider lines
 				setListAdapter(new FileAdapter());
-
+				prefetchThumbnails(0, PREFETCH_AHEAD);
 			}
 		} else {
 			loadFiles();
@@ -111,7 +131,7 @@ public class ContainerObjectsActivity extends ListActivity {
 
 	private void loadFiles() {
 		displayLoadingCell();
-		new LoadFilesTask().execute((Void[]) null);
+		new LoadFilesTask().execute(ContainerObjectsActivity.this);
 
 	}
 
@@ -135,6 +155,33 @@ public class ContainerObjectsActivity extends ListActivity {
 		} else {
 			getListView().setDividerHeight(1); // restore divider lines
 			setListAdapter(new FileAdapter());
+			prefetchThumbnails(0, PREFETCH_AHEAD);
+		}
+	}
+
+	private String getPreviewCdnUrl() {
+		return container.isCdnEnabled() ? container.getCdnUrl() : null;
+	}
+
+	/**
+	 * Loads the thumbnails of the image rows in view, and a few rows ahead.
+	 */
+	private void prefetchThumbnails(int first, int count) {
+		if (files == null) {
+			return;
+		}
+		int last = Math.min(files.length, first + count + PREFETCH_AHEAD);
+		for (int i = Math.max(first, 0); i < last; i++) {
+			if (PreviewCache.isPreviewable(files[i])) {
+				previewCache.load(container.getName(), files[i], getPreviewCdnUrl(),
+						THUMBNAIL_SIZE, THUMBNAIL_SIZE, RequestTask.Priority.PREFETCH, this);
+			}
+		}
+	}
+
+	public void onPreviewLoaded(String key, Bitmap bitmap) {
+		if (bitmap != null && !isFinishing() && getListAdapter() instanceof FileAdapter) {
+			((FileAdapter) getListAdapter()).notifyDataSetChanged();
 		}
 	}
 
@@ -179,13 +226,23 @@ public class ContainerObjectsActivity extends ListActivity {
 		}
 	}
 
-	private class LoadFilesTask extends
-			AsyncTask<Void, Void, ArrayList<ContainerObjects>> {
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+		// results would arrive for a screen that is gone
+		RequestScheduler.getInstance().cancelAll(this);
+	}
+
+	private class LoadFilesTask extends RequestTask<ArrayList<ContainerObjects>> {
+
+		LoadFilesTask() {
+			super(Priority.FOREGROUND);
+		}
 
 		private CloudServersException exception;
 
 		@Override
-		protected ArrayList<ContainerObjects> doInBackground(Void... arg0) {
+		protected ArrayList<ContainerObjects> doInBackground() {
 			ArrayList<ContainerObjects> files = null;
 			try {
 				files = (new ContainerObjectManager(context)).createList(true,
@@ -222,6 +279,18 @@ public class ContainerObjectsActivity extends ListActivity {
 			TextView label = (TextView) row.findViewById(R.id.label);
 			label.setText(file.getCName());
 
+			ImageView thumbnail = (ImageView) row.findViewById(R.id.thumbnail);
+			if (PreviewCache.isPreviewable(file)) {
+				Bitmap bitmap = previewCache.getCached(file, THUMBNAIL_SIZE, THUMBNAIL_SIZE);
+				if (bitmap != null) {
+					thumbnail.setImageBitmap(bitmap);
+					thumbnail.setVisibility(View.VISIBLE);
+				} else {
+					// keep the row aligned until the thumbnail arrives
+					thumbnail.setVisibility(View.INVISIBLE);
+				}
+			}
+
 			if (file.getBytes() >= bConver) {
 				megaBytes = Math.abs(file.getBytes() / bConver + 0.2);
 				TextView sublabel = (TextView) row.findViewById(R.id.sublabel);
@@ -281,7 +350,7 @@ public class ContainerObjectsActivity extends ListActivity {
 										int whichButton) {
 									// User clicked OK so do some stuff
 									new DeleteContainerTask()
-											.execute((Void[]) null);
+											.execute(ContainerObjectsActivity.this);
 								}
 							})
 					.setNegativeButton("Cancel",
@@ -344,13 +413,16 @@ public class ContainerObjectsActivity extends ListActivity {
 		return cse;
 	}
 
-	private class DeleteContainerTask extends
-			AsyncTask<Void, Void, HttpResponse> {
+	private class DeleteContainerTask extends RequestTask<HttpResponse> {
+
+		DeleteContainerTask() {
+			super(Priority.MUTATION);
+		}
 
 		private CloudServersException exception;
 
 		@Override
-		protected HttpResponse doInBackground(Void... arg0) {
+		protected HttpResponse doInBackground() {
 			HttpResponse resp = null;
 			try {
 				resp = (new ContainerManager(context)).delete(container.getName());
@@ -20,7 +20,6 @@ import android.app.AlertDialog;
 import android.app.Dialog;
 import android.content.Context;
 import android.content.DialogInterface;
-import android.os.AsyncTask;
 import android.os.Bundle;
 import android.view.View;
 import android.view.View.OnClickListener;
@@ -154,7 +153,7 @@ public class EnableCDNActivity extends Activity implements OnClickListener,
 								public void onClick(DialogInterface dialog,
 										int whichButton) {
 									// User clicked OK so do some stuff
-									new EnableCDNTask().execute((Void[]) null);
+									new EnableCDNTask().execute(EnableCDNActivity.this);
 								}
 							})
 					.setNegativeButton("Cancel",
@@ -175,7 +174,7 @@ public class EnableCDNActivity extends Activity implements OnClickListener,
 								public void onClick(DialogInterface dialog,
 										int whichButton) {
 									// User clicked OK so do some stuff
-									new ChangeAttributesCDNTask().execute((Void[]) null);
+									new ChangeAttributesCDNTask().execute(EnableCDNActivity.this);
 								}
 							})
 					.setNegativeButton("Cancel",
@@ -237,11 +236,22 @@ public class EnableCDNActivity extends Activity implements OnClickListener,
 		return cse;
 	}
 
-	public class EnableCDNTask extends AsyncTask<Void, Void, HttpResponse> {
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+		// results would arrive for a screen that is gone
+		RequestScheduler.getInstance().cancelAll(this);
+	}
+
+	public class EnableCDNTask extends RequestTask<HttpResponse> {
+
+		EnableCDNTask() {
+			super(Priority.MUTATION);
+		}
 		private CloudServersException exception;
 
 		@Override
-		protected HttpResponse doInBackground(Void... arg0) {
+		protected HttpResponse doInBackground() {
 			HttpResponse resp = null;
 			try {
 				resp = (new ContainerManager(context)).enable(containerName,
@@ -283,11 +293,15 @@ public class EnableCDNActivity extends Activity implements OnClickListener,
 		}
 	}
 
-	public class ChangeAttributesCDNTask extends AsyncTask<Void, Void, HttpResponse> {
+	public class ChangeAttributesCDNTask extends RequestTask<HttpResponse> {
+
+		ChangeAttributesCDNTask() {
+			super(Priority.MUTATION);
+		}
 		private CloudServersException exception;
 
 		@Override
-		protected HttpResponse doInBackground(Void... arg0) {
+		protected HttpResponse doInBackground() {
 			HttpResponse resp = null;
 			try {
 				resp = (new ContainerManager(context)).disable(containerName,
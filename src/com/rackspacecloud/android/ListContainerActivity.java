@@ -1,13 +1,13 @@
 package com.rackspacecloud.android;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import android.app.AlertDialog;
 import android.app.ListActivity;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
-import android.os.AsyncTask;
 import android.os.Bundle;
 import android.util.Log;
 import android.view.LayoutInflater;
@@ -82,8 +82,58 @@ public class ListContainerActivity extends ListActivity {
 	}
 
 	private void loadContainers() {
-		displayLoadingCell();
-		new LoadContainersTask().execute((Void[]) null);
+		if (!(getListAdapter() instanceof FileAdapter)) {
+			// on refresh the current rows stay until the new ones arrive
+			displayLoadingCell();
+		}
+		new LoadContainersTask().execute(ListContainerActivity.this);
+	}
+
+	/**
+	 * Shows a new overview. When the same containers are listed in the same
+	 * order only the rows whose attributes changed are bound again, instead
+	 * of rebuilding the whole list.
+	 */
+	private void updateContainerList(ArrayList<Container> overview) {
+		if (containers == null || containers.length != overview.size()
+				|| !(getListAdapter() instanceof FileAdapter)) {
+			setContainers(overview);
+			setContainerList();
+			return;
+		}
+		for (int i = 0; i < containers.length; i++) {
+			if (!containers[i].getName().equals(overview.get(i).getName())) {
+				setContainers(overview);
+				setContainerList();
+				return;
+			}
+		}
+
+		ListView list = getListView();
+		FileAdapter adapter = (FileAdapter) getListAdapter();
+		int first = list.getFirstVisiblePosition();
+		for (int i = 0; i < containers.length; i++) {
+			Container container = overview.get(i);
+			if (!containers[i].hasSameAttributes(container)) {
+				// the adapter reads this array, so rows scrolled in later
+				// are bound with the new attributes
+				containers[i] = container;
+				View row = i >= first ? list.getChildAt(i - first) : null;
+				if (row != null) {
+					adapter.bindRow(row, container);
+				}
+			}
+		}
+	}
+
+	private void setContainers(ArrayList<Container> containerList) {
+		containerNames = new String[containerList.size()];
+		containers = new Container[containerList.size()];
+		for (int i = 0; i < containerList.size(); i++) {
+			Container container = containerList.get(i);
+			containers[i] = container;
+			containerNames[i] = container.getName();
+		}
 	}
 
 	private void setContainerList() {
@@ -136,17 +186,27 @@ public class ListContainerActivity extends ListActivity {
 		}
 	}
 
-	private class LoadContainersTask extends
-			AsyncTask<Void, Void, ArrayList<Container>> {
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+		// results would arrive for a screen that is gone
+		RequestScheduler.getInstance().cancelAll(this);
+	}
+
+	private class LoadContainersTask extends RequestTask<ArrayList<Container>> {
+
+		LoadContainersTask() {
+			super(Priority.FOREGROUND);
+		}
 
 		private CloudServersException exception;
 
 		@Override
-		protected ArrayList<Container> doInBackground(Void... arg0) {
+		protected ArrayList<Container> doInBackground() {
 			ArrayList<Container> containers = null;
 
 			try {
-				containers = (new ContainerManager(context)).createList(true);
+				containers = (new ContainerManager(context)).createOverview();
 			} catch (CloudServersException e) {
 				exception = e;
 			}
@@ -158,28 +218,24 @@ public class ListContainerActivity extends ListActivity {
 			if (exception != null) {
 				showAlert("Error", exception.getMessage());
 			}
-			ArrayList<Container> containerList = result;
-			containerNames = new String[containerList.size()];
-			containers = new Container[containerList.size()];
-			if (containerList != null) {
-				for (int i = 0; i < containerList.size(); i++) {
-					Container container = containerList.get(i);
-					containers[i] = container;
-					containerNames[i] = container.getName();
-				}
-			}
-
-			new LoadCDNContainersTask().execute((Void[]) null);
+			updateContainerList(result != null ? result : new ArrayList<Container>());
 		}
 	}
 
-	private class LoadCDNContainersTask extends
-			AsyncTask<Void, Void, ArrayList<Container>> {
+	/**
+	 * Refreshes the CDN attributes only, joining them with the storage
+	 * attributes already on screen.
+	 */
+	private class LoadCDNContainersTask extends RequestTask<ArrayList<Container>> {
+
+		LoadCDNContainersTask() {
+			super(Priority.FOREGROUND);
+		}
 
 		private CloudServersException exception;
 
 		@Override
-		protected ArrayList<Container> doInBackground(Void... arg0) {
+		protected ArrayList<Container> doInBackground() {
 			ArrayList<Container> cdnContainers = null;
 
 			try {
@@ -196,21 +252,9 @@ public class ListContainerActivity extends ListActivity {
 			if (exception != null) {
 				showAlert("Error", exception.getMessage());
 			}
-
-			ArrayList<Container> cdnContainers = result;
-
-			for (int i = 0; i < containers.length; i++) {
-				Container container = containers[i];
-				for (int t = 0; t < cdnContainers.size(); t++) {
-					Container cdnContainer = cdnContainers.get(t);
-					if (container.getName().equals(cdnContainer.getName())) {
-						container.setCdnEnabled(cdnContainer.isCdnEnabled());
-						container.setCdnUrl(cdnContainer.getCdnUrl());
-						container.setTtl(cdnContainer.getTtl());
-					}
-				}
+			if (result != null && containers != null) {
+				updateContainerList(ContainerManager.join(Arrays.asList(containers), result));
 			}
-			setContainerList();
 		}
 	}
 
@@ -253,7 +297,11 @@ public class ListContainerActivity extends ListActivity {
 			LayoutInflater inflater = getLayoutInflater();
 			View row = inflater.inflate(R.layout.listcontainerscell, parent,
 					false);
+			bindRow(row, container);
+			return (row);
+		}
 
+		void bindRow(View row, Container container) {
 			TextView label = (TextView) row.findViewById(R.id.label);
 			label.setText(container.getName());
 
@@ -272,8 +320,6 @@ public class ListContainerActivity extends ListActivity {
 				sublabel.setText(container.getCount() + " Objects "
 						+ container.getBytes() + " B");
 			}
-
-			return (row);
 		}
 	}
 
@@ -284,6 +330,9 @@ public class ListContainerActivity extends ListActivity {
 		if (resultCode == RESULT_OK) {
 			// a sub-activity kicked back, so we want to refresh the server list
 			loadContainers();
+		} else if (requestCode == 55 && containers != null) {
+			// the CDN settings may have been changed while in the container
+			new LoadCDNContainersTask().execute(ListContainerActivity.this);
 		}
 	}
 
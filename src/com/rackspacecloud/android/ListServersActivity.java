@@ -9,7 +9,6 @@ import android.app.AlertDialog;
 import android.app.ListActivity;
 import android.content.DialogInterface;
 import android.content.Intent;
-import android.os.AsyncTask;
 import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.Menu;
@@ -70,7 +69,7 @@ public class ListServersActivity extends ListActivity {
     
     private void loadServers() {
     	displayLoadingCell();
-    	new LoadServersTask().execute((Void[]) null);
+    	new LoadServersTask().execute(ListServersActivity.this);
     }
     
     private void setServerList(ArrayList<Server> servers) {
@@ -132,12 +131,23 @@ public class ListServersActivity extends ListActivity {
     }
     
     
-    private class LoadServersTask extends AsyncTask<Void, Void, ArrayList<Server>> {
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+		// results would arrive for a screen that is gone
+		RequestScheduler.getInstance().cancelAll(this);
+	}
+
+    private class LoadServersTask extends RequestTask<ArrayList<Server>> {
+
+    	LoadServersTask() {
+    		super(Priority.FOREGROUND);
+    	}
     	
     	private CloudServersException exception;
     	
 		@Override
-		protected ArrayList<Server> doInBackground(Void... arg0) {
+		protected ArrayList<Server> doInBackground() {
 			ArrayList<Server> servers = null;
 			try {
 				servers = (new ServerManager()).createList(true);
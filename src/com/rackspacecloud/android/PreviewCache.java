@@ -0,0 +1,342 @@
+package com.rackspacecloud.android;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import com.rackspace.cloud.files.api.client.ContainerObjectManager;
+import com.rackspace.cloud.files.api.client.ContainerObjects;
+import com.rackspace.cloud.servers.api.client.CloudServersException;
+import com.rackspacecloud.android.RequestTask.Priority;
+
+/**
+ * Loads and caches previews of image objects. Objects are downloaded with a
+ * range limited request, decoded off the UI thread at the size they will be
+ * displayed, and kept in two levels: an in memory LRU bounded by bitmap bytes
+ * and an on disk LRU in the application cache directory. Entries are keyed by
+ * the object ETag, so a modified object never hits a stale preview.
+ */
+public class PreviewCache {
+
+	/**
+	 * Notified on the UI thread when a preview is available; bitmap is null if
+	 * the object could not be previewed.
+	 */
+	public interface Callback {
+		void onPreviewLoaded(String key, Bitmap bitmap);
+	}
+
+	private static final String LOG = "PreviewCache";
+
+	// largest object downloaded for a preview
+	public static final int MAX_FETCH_BYTES = 2 * 1024 * 1024;
+	private static final long DISK_CACHE_BYTES = 10 * 1024 * 1024;
+
+	private static PreviewCache instance;
+
+	private final Context context;
+	private final MemoryCache memory;
+	private final DiskCache disk;
+	// callbacks waiting for a key, so that a preview is only loaded once
+	private final HashMap<String, ArrayList<Callback>> pending = new HashMap<String, ArrayList<Callback>>();
+
+	public static synchronized PreviewCache getInstance(Context context) {
+		if (instance == null) {
+			instance = new PreviewCache(context.getApplicationContext());
+		}
+		return instance;
+	}
+
+	private PreviewCache(Context context) {
+		this.context = context;
+		this.memory = new MemoryCache(Runtime.getRuntime().maxMemory() / 8);
+		this.disk = new DiskCache(new File(context.getCacheDir(), "previews"), DISK_CACHE_BYTES);
+	}
+
+	/**
+	 * @return true if the object is an image small enough to be previewed
+	 */
+	public static boolean isPreviewable(ContainerObjects object) {
+		String contentType = object.getContentType();
+		return contentType != null && contentType.startsWith("image/")
+				&& object.getBytes() <= MAX_FETCH_BYTES;
+	}
+
+	/**
+	 * @return the cache key of the object preview at the given size
+	 */
+	public static String keyFor(ContainerObjects object, int width, int height) {
+		String etag = object.getHash();
+		if (etag == null || "".equals(etag)) {
+			etag = Integer.toHexString(object.getCName().hashCode()) + "-" + object.getBytes();
+		}
+		return etag + "_" + width + "x" + height;
+	}
+
+	/**
+	 * @return the preview if it is in memory, null otherwise; never blocks
+	 */
+	public Bitmap getCached(ContainerObjects object, int width, int height) {
+		return memory.get(keyFor(object, width, height));
+	}
+
+	/**
+	 * Loads the preview of an object in the background. The callback, if any,
+	 * is invoked on the UI thread.
+	 *
+	 * @param cdnUrl the CDN URL of the container, or null to read the object
+	 *            from storage
+	 * @param priority FOREGROUND when the user is waiting for this preview,
+	 *            PREFETCH otherwise
+	 */
+	public void load(final String container, final ContainerObjects object, final String cdnUrl,
+			final int width, final int height, Priority priority, Callback callback) {
+		final String key = keyFor(object, width, height);
+		Bitmap bitmap = memory.get(key);
+		if (bitmap != null) {
+			if (callback != null) {
+				callback.onPreviewLoaded(key, bitmap);
+			}
+			return;
+		}
+
+		synchronized (pending) {
+			ArrayList<Callback> callbacks = pending.get(key);
+			if (callbacks != null) {
+				// already on its way
+				if (callback != null) {
+					callbacks.add(callback);
+				}
+				return;
+			}
+			callbacks = new ArrayList<Callback>();
+			if (callback != null) {
+				callbacks.add(callback);
+			}
+			pending.put(key, callbacks);
+		}
+
+		// not owned by an activity: the result is cached whoever asked for it
+		new RequestTask<Bitmap>(priority) {
+			@Override
+			protected Bitmap doInBackground() {
+				try {
+					return loadBitmap(key, container, object, cdnUrl, width, height);
+				} catch (OutOfMemoryError e) {
+					Log.w(LOG, "Not enough memory to decode " + object.getCName());
+					return null;
+				}
+			}
+
+			@Override
+			protected void onPostExecute(Bitmap bitmap) {
+				notifyLoaded(key, bitmap);
+			}
+		}.execute(null);
+	}
+
+	private Bitmap loadBitmap(String key, String container, ContainerObjects object, String cdnUrl,
+			int width, int height) {
+		File cached = disk.get(key);
+		if (cached != null) {
+			Bitmap bitmap = BitmapFactory.decodeFile(cached.getPath());
+			if (bitmap != null) {
+				memory.put(key, bitmap);
+				return bitmap;
+			}
+			disk.remove(key);
+		}
+
+		byte[] data;
+		try {
+			data = new ContainerObjectManager(context).getObjectData(container, object.getCName(),
+					cdnUrl, MAX_FETCH_BYTES);
+		} catch (CloudServersException e) {
+			Log.w(LOG, "Can't download " + object.getCName() + ": " + e.getMessage());
+			return null;
+		}
+		if (data == null) {
+			return null;
+		}
+
+		Bitmap bitmap = decodeSampled(data, width, height);
+		if (bitmap != null) {
+			memory.put(key, bitmap);
+			disk.put(key, bitmap);
+		}
+		return bitmap;
+	}
+
+	private void notifyLoaded(String key, Bitmap bitmap) {
+		ArrayList<Callback> callbacks;
+		synchronized (pending) {
+			callbacks = pending.remove(key);
+		}
+		if (callbacks != null) {
+			for (Callback callback : callbacks) {
+				callback.onPreviewLoaded(key, bitmap);
+			}
+		}
+	}
+
+	/**
+	 * Decodes an image with the largest power of two subsampling which keeps
+	 * it at least as large as the requested size, so a full resolution bitmap
+	 * is never allocated for a thumbnail.
+	 */
+	static Bitmap decodeSampled(byte[] data, int width, int height) {
+		BitmapFactory.Options options = new BitmapFactory.Options();
+		options.inJustDecodeBounds = true;
+		BitmapFactory.decodeByteArray(data, 0, data.length, options);
+		if (options.outWidth <= 0 || options.outHeight <= 0) {
+			return null;
+		}
+		int sampleSize = 1;
+		while (options.outWidth / (sampleSize * 2) >= width && options.outHeight / (sampleSize * 2) >= height) {
+			sampleSize *= 2;
+		}
+		options = new BitmapFactory.Options();
+		options.inSampleSize = sampleSize;
+		return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+	}
+
+	/**
+	 * LRU of decoded bitmaps bounded by the bytes they use.
+	 */
+	static class MemoryCache {
+		private final LinkedHashMap<String, Bitmap> entries = new LinkedHashMap<String, Bitmap>(16, 0.75f, true);
+		private final long maxBytes;
+		private long bytes;
+
+		MemoryCache(long maxBytes) {
+			this.maxBytes = maxBytes;
+		}
+
+		synchronized Bitmap get(String key) {
+			return entries.get(key);
+		}
+
+		synchronized void put(String key, Bitmap bitmap) {
+			Bitmap previous = entries.put(key, bitmap);
+			bytes += sizeOf(bitmap);
+			if (previous != null) {
+				bytes -= sizeOf(previous);
+			}
+			Iterator<Bitmap> eldest = entries.values().iterator();
+			while (bytes > maxBytes && eldest.hasNext()) {
+				bytes -= sizeOf(eldest.next());
+				eldest.remove();
+			}
+		}
+
+		private static long sizeOf(Bitmap bitmap) {
+			return (long) bitmap.getRowBytes() * bitmap.getHeight();
+		}
+	}
+
+	/**
+	 * LRU of encoded previews stored as files, bounded by their total size.
+	 * Recency survives restarts through the file modification dates.
+	 */
+	static class DiskCache {
+		private final File directory;
+		private final long maxBytes;
+		private final LinkedHashMap<String, Long> entries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+		private long bytes;
+
+		DiskCache(File directory, long maxBytes) {
+			this.directory = directory;
+			this.maxBytes = maxBytes;
+			if (!directory.isDirectory() && !directory.mkdirs()) {
+				Log.w(LOG, "Can't create preview cache directory " + directory);
+			}
+			File[] files = directory.listFiles();
+			if (files != null) {
+				Arrays.sort(files, new Comparator<File>() {
+					public int compare(File a, File b) {
+						long x = a.lastModified(), y = b.lastModified();
+						return x < y ? -1 : (x == y ? 0 : 1);
+					}
+				});
+				for (File file : files) {
+					if (file.getName().endsWith(".tmp")) {
+						// interrupted write
+						file.delete();
+						continue;
+					}
+					entries.put(file.getName(), file.length());
+					bytes += file.length();
+				}
+			}
+		}
+
+		synchronized File get(String key) {
+			if (entries.get(key) == null) {
+				return null;
+			}
+			File file = new File(directory, key);
+			file.setLastModified(System.currentTimeMillis());
+			return file;
+		}
+
+		synchronized void put(String key, Bitmap bitmap) {
+			File file = new File(directory, key);
+			File temp = new File(directory, key + ".tmp");
+			FileOutputStream out = null;
+			try {
+				out = new FileOutputStream(temp);
+				bitmap.compress(bitmap.hasAlpha() ? Bitmap.CompressFormat.PNG : Bitmap.CompressFormat.JPEG, 85, out);
+				out.close();
+				out = null;
+				if (!temp.renameTo(file)) {
+					temp.delete();
+					return;
+				}
+			} catch (IOException e) {
+				Log.w(LOG, "Can't write preview " + key + ": " + e.getMessage());
+				temp.delete();
+				return;
+			} finally {
+				if (out != null) {
+					try {
+						out.close();
+					} catch (IOException e) {
+						// already failing
+					}
+				}
+			}
+			Long previous = entries.put(key, file.length());
+			bytes += file.length();
+			if (previous != null) {
+				bytes -= previous;
+			}
+			Iterator<Map.Entry<String, Long>> eldest = entries.entrySet().iterator();
+			while (bytes > maxBytes && eldest.hasNext()) {
+				Map.Entry<String, Long> entry = eldest.next();
+				new File(directory, entry.getKey()).delete();
+				bytes -= entry.getValue();
+				eldest.remove();
+			}
+		}
+
+		synchronized void remove(String key) {
+			Long length = entries.remove(key);
+			if (length != null) {
+				bytes -= length;
+				new File(directory, key).delete();
+			}
+		}
+	}
+}
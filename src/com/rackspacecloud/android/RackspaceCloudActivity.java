@@ -10,7 +10,6 @@ import android.content.DialogInterface;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.SharedPreferences.Editor;
-import android.os.AsyncTask;
 import android.os.Bundle;
 import android.text.method.PasswordTransformationMethod;
 import android.text.method.SingleLineTransformationMethod;
@@ -120,7 +119,7 @@ public class RackspaceCloudActivity extends Activity implements View.OnClickList
     	if (hasValidInput()) {
         	showActivityIndicators();
         	setLoginPreferences();
-        	new AuthenticateTask().execute((Void[]) null);
+        	new AuthenticateTask().execute(RackspaceCloudActivity.this);
     	} else {
     		showAlert("Fields Missing", "User Name and API Key are required.");
     	}
@@ -211,10 +210,21 @@ public class RackspaceCloudActivity extends Activity implements View.OnClickList
     	setActivityIndicatorsVisibility(View.INVISIBLE);
     }
     
-    private class AuthenticateTask extends AsyncTask<Void, Void, Boolean> {
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+		// results would arrive for a screen that is gone
+		RequestScheduler.getInstance().cancelAll(this);
+	}
+
+    private class AuthenticateTask extends RequestTask<Boolean> {
+
+    	AuthenticateTask() {
+    		super(Priority.FOREGROUND);
+    	}
     	
 		@Override
-		protected Boolean doInBackground(Void... arg0) {
+		protected Boolean doInBackground() {
 			authenticating = true;
 			return new Boolean(Authentication.authenticate());
 		}
@@ -224,17 +234,21 @@ public class RackspaceCloudActivity extends Activity implements View.OnClickList
 			authenticating = false;
 			if (result.booleanValue()) {
 				//startActivity(tabViewIntent);
-	        	new LoadImagesTask().execute((Void[]) null);				
+	        	new LoadImagesTask().execute(RackspaceCloudActivity.this);				
 			} else {
 				showAlert("Login Failure", "Authentication failed.  Please check your User Name and API Key.");
 			}
 		}
     }
 
-    private class LoadFlavorsTask extends AsyncTask<Void, Void, ArrayList<Flavor>> {
+    private class LoadFlavorsTask extends RequestTask<ArrayList<Flavor>> {
+
+    	LoadFlavorsTask() {
+    		super(Priority.FOREGROUND);
+    	}
     	
 		@Override
-		protected ArrayList<Flavor> doInBackground(Void... arg0) {
+		protected ArrayList<Flavor> doInBackground() {
 			return (new FlavorManager()).createList(true);
 		}
     	
@@ -255,10 +269,14 @@ public class RackspaceCloudActivity extends Activity implements View.OnClickList
 		}
     }
 
-    private class LoadImagesTask extends AsyncTask<Void, Void, ArrayList<Image>> {
+    private class LoadImagesTask extends RequestTask<ArrayList<Image>> {
+
+    	LoadImagesTask() {
+    		super(Priority.FOREGROUND);
+    	}
     	
 		@Override
-		protected ArrayList<Image> doInBackground(Void... arg0) {
+		protected ArrayList<Image> doInBackground() {
 			return (new ImageManager()).createList(true);
 		}
     	
@@ -271,7 +289,7 @@ public class RackspaceCloudActivity extends Activity implements View.OnClickList
 					imageMap.put(image.getId(), image);
 				}
 				Image.setImages(imageMap);
-				new LoadFlavorsTask().execute((Void[]) null);
+				new LoadFlavorsTask().execute(RackspaceCloudActivity.this);
 				//startActivity(tabViewIntent);
 			} else {
 				showAlert("Login Failure", "There was a problem loading server images.  Please try again.");
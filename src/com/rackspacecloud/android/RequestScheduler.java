@@ -0,0 +1,163 @@
+package com.rackspacecloud.android;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import android.app.Activity;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import com.rackspacecloud.android.RequestTask.Priority;
+
+/**
+ * Runs every background request of the app. Tasks wait in one queue per
+ * priority class and are started highest class first, within the class cap.
+ * Prefetch and poll tasks are held back while a foreground task is running
+ * or waiting and run at background thread priority, so they never delay
+ * what the user is waiting for.
+ */
+public class RequestScheduler {
+
+	private static final String LOG = "RequestScheduler";
+
+	private static RequestScheduler instance;
+
+	private final Priority[] priorities = Priority.values();
+	private final ArrayList<LinkedList<RequestTask<?>>> queues = new ArrayList<LinkedList<RequestTask<?>>>();
+	private final int[] running = new int[priorities.length];
+	// queued and running tasks of each activity, to cancel when it goes away
+	private final HashMap<Activity, ArrayList<RequestTask<?>>> owned = new HashMap<Activity, ArrayList<RequestTask<?>>>();
+	// activities already destroyed, whose late callbacks may still submit tasks
+	private final WeakHashMap<Activity, Boolean> destroyed = new WeakHashMap<Activity, Boolean>();
+	private final ExecutorService workers = Executors.newCachedThreadPool();
+	private final Handler handler = new Handler(Looper.getMainLooper());
+
+	public static synchronized RequestScheduler getInstance() {
+		if (instance == null) {
+			instance = new RequestScheduler();
+		}
+		return instance;
+	}
+
+	private RequestScheduler() {
+		for (int i = 0; i < priorities.length; i++) {
+			queues.add(new LinkedList<RequestTask<?>>());
+		}
+	}
+
+	synchronized void submit(RequestTask<?> task) {
+		Activity owner = task.getOwner();
+		if (owner != null && destroyed.containsKey(owner)) {
+			if (task.getPriority() != Priority.MUTATION) {
+				task.cancel();
+				return;
+			}
+			task.ownerDestroyed();
+			owner = null;
+		}
+		queues.get(task.getPriority().ordinal()).add(task);
+		if (owner != null) {
+			ArrayList<RequestTask<?>> tasks = owned.get(owner);
+			if (tasks == null) {
+				tasks = new ArrayList<RequestTask<?>>();
+				owned.put(owner, tasks);
+			}
+			tasks.add(task);
+		}
+		dispatch();
+	}
+
+	synchronized void remove(RequestTask<?> task) {
+		queues.get(task.getPriority().ordinal()).remove(task);
+		disown(task);
+	}
+
+	/**
+	 * Cancels the queued and running tasks started by an activity. Called
+	 * from onDestroy. Mutations are still sent, but their results are no
+	 * longer delivered to the activity; tasks it submits afterwards are
+	 * treated the same way.
+	 */
+	public void cancelAll(Activity owner) {
+		ArrayList<RequestTask<?>> tasks;
+		synchronized (this) {
+			destroyed.put(owner, Boolean.TRUE);
+			tasks = owned.remove(owner);
+		}
+		if (tasks != null) {
+			for (RequestTask<?> task : tasks) {
+				if (task.getPriority() == Priority.MUTATION) {
+					task.ownerDestroyed();
+				} else {
+					task.cancel();
+				}
+			}
+		}
+	}
+
+	private void disown(RequestTask<?> task) {
+		Activity owner = task.getOwner();
+		if (owner != null) {
+			ArrayList<RequestTask<?>> tasks = owned.get(owner);
+			if (tasks != null) {
+				tasks.remove(task);
+				if (tasks.isEmpty()) {
+					owned.remove(owner);
+				}
+			}
+		}
+	}
+
+	private void dispatch() {
+		int foreground = Priority.FOREGROUND.ordinal();
+		boolean foregroundBusy = running[foreground] > 0 || !queues.get(foreground).isEmpty();
+		for (Priority priority : priorities) {
+			if (priority.yields && foregroundBusy) {
+				continue;
+			}
+			LinkedList<RequestTask<?>> queue = queues.get(priority.ordinal());
+			while (running[priority.ordinal()] < priority.maxRunning && !queue.isEmpty()) {
+				start(queue.removeFirst());
+			}
+		}
+	}
+
+	private void start(final RequestTask<?> task) {
+		final Priority priority = task.getPriority();
+		running[priority.ordinal()]++;
+		workers.execute(new Runnable() {
+			public void run() {
+				Process.setThreadPriority(priority.yields ? Process.THREAD_PRIORITY_BACKGROUND
+						: Process.THREAD_PRIORITY_DEFAULT);
+				try {
+					if (!task.isCancelled()) {
+						post(task);
+					}
+				} catch (RuntimeException e) {
+					Log.e(LOG, "Request failed", e);
+				} finally {
+					synchronized (RequestScheduler.this) {
+						running[priority.ordinal()]--;
+						disown(task);
+						dispatch();
+					}
+				}
+			}
+		});
+	}
+
+	private <Result> void post(final RequestTask<Result> task) {
+		final Result result = task.doInBackground();
+		handler.post(new Runnable() {
+			public void run() {
+				task.deliver(result);
+			}
+		});
+	}
+}
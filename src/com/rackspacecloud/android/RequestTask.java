@@ -0,0 +1,123 @@
+package com.rackspacecloud.android;
+
+import android.app.Activity;
+
+/**
+ * A background request run by the {@link RequestScheduler}. Like an
+ * AsyncTask, doInBackground runs on a worker thread and onPostExecute on the
+ * UI thread, but every task belongs to a priority class and, optionally, to
+ * the activity that started it, so it is cancelled when that activity is
+ * destroyed. Mutations are not cancelled with their activity, as a change the
+ * user asked for must still be sent, but once the activity is destroyed
+ * onCancelled is called instead of onPostExecute, so that the task neither
+ * touches the destroyed screen nor starts follow-up tasks for it.
+ */
+public abstract class RequestTask<Result> {
+
+	/**
+	 * Priority classes, highest first. Each class has its own cap on the
+	 * number of tasks running at once; yielding classes only start when no
+	 * foreground task is running or waiting.
+	 */
+	public enum Priority {
+		// the data the user is looking at and waiting for
+		FOREGROUND(3, false),
+		// changes the user asked for
+		MUTATION(2, false),
+		// data the user may look at next
+		PREFETCH(2, true),
+		// refreshes of data already on screen
+		POLL(1, true);
+
+		final int maxRunning;
+		final boolean yields;
+
+		Priority(int maxRunning, boolean yields) {
+			this.maxRunning = maxRunning;
+			this.yields = yields;
+		}
+	}
+
+	private final Priority priority;
+	private Activity owner;
+	private volatile boolean cancelled;
+	private volatile boolean ownerDestroyed;
+
+	protected RequestTask(Priority priority) {
+		this.priority = priority;
+	}
+
+	public Priority getPriority() {
+		return priority;
+	}
+
+	Activity getOwner() {
+		return owner;
+	}
+
+	/**
+	 * Queues the task. Must be called on the UI thread.
+	 *
+	 * @param owner the activity whose destruction cancels the task, or null
+	 *            if the task outlives activities
+	 */
+	public final void execute(Activity owner) {
+		this.owner = owner;
+		RequestScheduler.getInstance().submit(this);
+	}
+
+	/**
+	 * Cancels the task. A queued task never runs; a running one finishes its
+	 * request but onCancelled is called instead of onPostExecute.
+	 */
+	public final void cancel() {
+		cancelled = true;
+		RequestScheduler.getInstance().remove(this);
+	}
+
+	public final boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Called by the scheduler when the owner of a task which is not cancelled
+	 * with it is destroyed.
+	 */
+	final void ownerDestroyed() {
+		ownerDestroyed = true;
+	}
+
+	/**
+	 * @return true if the activity which started the task was destroyed
+	 */
+	public final boolean isOwnerDestroyed() {
+		return ownerDestroyed;
+	}
+
+	/**
+	 * Runs on a worker thread.
+	 */
+	protected abstract Result doInBackground();
+
+	/**
+	 * Runs on the UI thread with the result of doInBackground, unless the
+	 * task was cancelled or its owner destroyed.
+	 */
+	protected void onPostExecute(Result result) {
+	}
+
+	/**
+	 * Runs on the UI thread instead of onPostExecute if the task was
+	 * cancelled while running, or its owner destroyed before it completed.
+	 */
+	protected void onCancelled() {
+	}
+
+	final void deliver(Result result) {
+		if (cancelled || ownerDestroyed) {
+			onCancelled();
+		} else {
+			onPostExecute(result);
+		}
+	}
+}
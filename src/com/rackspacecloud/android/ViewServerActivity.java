@@ -24,7 +24,6 @@ import android.app.AlertDialog;
 import android.app.Dialog;
 import android.content.DialogInterface;
 import android.graphics.Color;
-import android.os.AsyncTask;
 import android.os.Bundle;
 import android.view.View;
 import android.view.View.OnClickListener;
@@ -108,7 +107,7 @@ public class ViewServerActivity extends Activity {
     	// show status and possibly the progress, with polling
     	if (!"ACTIVE".equals(server.getStatus())) {
         	status.setText(server.getStatus() + " - " + server.getProgress() + "%");
-    		new PollServerTask().execute((Void[]) null);
+    		new PollServerTask().execute(ViewServerActivity.this);
     	} else {
         	status.setText(server.getStatus());
     	}
@@ -229,7 +228,7 @@ public class ViewServerActivity extends Activity {
         	.setPositiveButton("Reboot Server", new DialogInterface.OnClickListener() {
         		public void onClick(DialogInterface dialog, int whichButton) {
         			// User clicked OK so do some stuff
-        			new SoftRebootServerTask().execute((Void[]) null);
+        			new SoftRebootServerTask().execute(ViewServerActivity.this);
         		}
         	})
         	.setNegativeButton("Cancel", new DialogInterface.OnClickListener() {
@@ -246,7 +245,7 @@ public class ViewServerActivity extends Activity {
         	.setPositiveButton("Reboot Server", new DialogInterface.OnClickListener() {
         		public void onClick(DialogInterface dialog, int whichButton) {
         			// User clicked OK so do some stuff
-        			new HardRebootServerTask().execute((Void[]) null);
+        			new HardRebootServerTask().execute(ViewServerActivity.this);
         		}
         	})
         	.setNegativeButton("Cancel", new DialogInterface.OnClickListener() {
@@ -274,7 +273,7 @@ public class ViewServerActivity extends Activity {
         	.setPositiveButton("Delete Server", new DialogInterface.OnClickListener() {
         		public void onClick(DialogInterface dialog, int whichButton) {
         			// User clicked OK so do some stuff
-        			new DeleteServerTask().execute((Void[]) null);
+        			new DeleteServerTask().execute(ViewServerActivity.this);
         		}
         	})
         	.setNegativeButton("Cancel", new DialogInterface.OnClickListener() {
@@ -291,7 +290,7 @@ public class ViewServerActivity extends Activity {
 
 		public void onClick(DialogInterface dialog, int which) {
 			selectedFlavorId = which + "";
-			new ResizeServerTask().execute((Void[]) null);
+			new ResizeServerTask().execute(ViewServerActivity.this);
 		}
     	
     }
@@ -328,10 +327,21 @@ public class ViewServerActivity extends Activity {
     
     // HTTP request tasks
     
-	private class PollServerTask extends AsyncTask<Void, Void, Server> {
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+		// results would arrive for a screen that is gone
+		RequestScheduler.getInstance().cancelAll(this);
+	}
+
+	private class PollServerTask extends RequestTask<Server> {
+
+		PollServerTask() {
+			super(Priority.POLL);
+		}
     	
 		@Override
-		protected Server doInBackground(Void... arg0) {
+		protected Server doInBackground() {
 			try {
 				server = (new ServerManager()).find(Integer.parseInt(server.getId()));
 			} catch (NumberFormatException e) {
@@ -350,12 +360,16 @@ public class ViewServerActivity extends Activity {
     }
 
     
-	private class SoftRebootServerTask extends AsyncTask<Void, Void, HttpResponse> {
+	private class SoftRebootServerTask extends RequestTask<HttpResponse> {
+
+		SoftRebootServerTask() {
+			super(Priority.MUTATION);
+		}
     	
 		private CloudServersException exception;
 		
 		@Override
-		protected HttpResponse doInBackground(Void... arg0) {
+		protected HttpResponse doInBackground() {
 			HttpResponse resp = null;
 			try {
 				resp = (new ServerManager()).reboot(server, ServerManager.SOFT_REBOOT);
@@ -385,12 +399,16 @@ public class ViewServerActivity extends Activity {
 		}
     }
 
-	private class HardRebootServerTask extends AsyncTask<Void, Void, HttpResponse> {
+	private class HardRebootServerTask extends RequestTask<HttpResponse> {
+
+		HardRebootServerTask() {
+			super(Priority.MUTATION);
+		}
     	
 		private CloudServersException exception;
 
 		@Override
-		protected HttpResponse doInBackground(Void... arg0) {
+		protected HttpResponse doInBackground() {
 			HttpResponse resp = null;			
 			try {
 				resp = (new ServerManager()).reboot(server, ServerManager.HARD_REBOOT);
@@ -419,12 +437,16 @@ public class ViewServerActivity extends Activity {
 		}
     }
 
-	private class ResizeServerTask extends AsyncTask<Void, Void, HttpResponse> {
+	private class ResizeServerTask extends RequestTask<HttpResponse> {
+
+		ResizeServerTask() {
+			super(Priority.MUTATION);
+		}
     	
 		private CloudServersException exception;
 
 		@Override
-		protected HttpResponse doInBackground(Void... arg0) {
+		protected HttpResponse doInBackground() {
 			HttpResponse resp = null;
 			try {
 				resp = (new ServerManager()).resize(server, Integer.parseInt(selectedFlavorId));
@@ -439,7 +461,7 @@ public class ViewServerActivity extends Activity {
 			if (response != null) {
 				int statusCode = response.getStatusLine().getStatusCode();			
 				if (statusCode == 202) {
-					new PollServerTask().execute((Void[]) null);
+					new PollServerTask().execute(ViewServerActivity.this);
 				} else {					
 					CloudServersException cse = parseCloudServersException(response);
 					if ("".equals(cse.getMessage())) {
@@ -456,12 +478,16 @@ public class ViewServerActivity extends Activity {
 		}
     }
 	
-	private class DeleteServerTask extends AsyncTask<Void, Void, HttpResponse> {
+	private class DeleteServerTask extends RequestTask<HttpResponse> {
+
+		DeleteServerTask() {
+			super(Priority.MUTATION);
+		}
     	
 		private CloudServersException exception;
 
 		@Override
-		protected HttpResponse doInBackground(Void... arg0) {
+		protected HttpResponse doInBackground() {
 			HttpResponse resp = null;
 			try {
 				resp = (new ServerManager()).delete(server);
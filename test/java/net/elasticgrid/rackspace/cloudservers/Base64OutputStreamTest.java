@@ -0,0 +1,90 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.elasticgrid.rackspace.cloudservers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static net.elasticgrid.rackspace.common.Assert.assertEquals;
+
+/**
+ * Checks {@link Base64OutputStream} against the test vectors of RFC 4648, and that its buffering does not change what
+ * it writes.
+ */
+public class Base64OutputStreamTest {
+
+    public static void main(String[] args) throws Exception {
+        vectors();
+        buffering();
+        System.out.println("Base64OutputStreamTest OK");
+    }
+
+    static void vectors() throws IOException {
+        String[][] vectors = {{"", ""}, {"f", "Zg=="}, {"fo", "Zm8="}, {"foo", "Zm9v"}, {"foob", "Zm9vYg=="},
+                {"fooba", "Zm9vYmE="}, {"foobar", "Zm9vYmFy"}};
+        for (String[] vector : vectors)
+            assertEquals("encoding of \"" + vector[0] + "\"", vector[1], encode(vector[0].getBytes("US-ASCII")));
+        assertEquals("high bytes", "/+8A", encode(new byte[]{(byte) 0xff, (byte) 0xef, 0}));
+    }
+
+    /**
+     * Content larger than the buffer of the stream, written byte per byte or in odd chunks, encodes as the
+     * concatenation of its 3 byte groups encoded separately.
+     */
+    static void buffering() throws IOException {
+        Random random = new Random(42);
+        for (int size : new int[]{3 * 1024 - 1, 3 * 1024, 3 * 1024 + 1, 10000, 65537}) {
+            byte[] content = new byte[size];
+            random.nextBytes(content);
+            StringBuilder expected = new StringBuilder();
+            for (int i = 0; i < size; i += 3) {
+                byte[] group = new byte[Math.min(3, size - i)];
+                System.arraycopy(content, i, group, 0, group.length);
+                expected.append(encode(group));
+            }
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Base64OutputStream base64 = new Base64OutputStream(out);
+            for (int i = 0; i < size; ) {
+                int chunk = Math.min(size - i, 1 + random.nextInt(700));
+                base64.write(content, i, chunk);
+                i += chunk;
+            }
+            base64.finish();
+            assertEquals("chunked encoding of " + size + " bytes", expected.toString(), out.toString("US-ASCII"));
+
+            out.reset();
+            base64 = new Base64OutputStream(out);
+            for (byte b : content)
+                base64.write(b);
+            base64.close();
+            assertEquals("byte per byte encoding of " + size + " bytes", expected.toString(),
+                    out.toString("US-ASCII"));
+        }
+    }
+
+    private static String encode(byte[] content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Base64OutputStream base64 = new Base64OutputStream(out);
+        base64.write(content);
+        base64.finish();
+        return out.toString("US-ASCII");
+    }
+}
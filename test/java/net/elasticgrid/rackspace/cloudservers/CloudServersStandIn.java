@@ -0,0 +1,1061 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.elasticgrid.rackspace.cloudservers;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * In-process stand-in for the v1.0 Cloud Servers API, serving the XML endpoints {@link XMLCloudServers} relies on:
+ * authentication, servers and their actions, addresses, images, flavors, limits, backup schedules and shared IP
+ * groups. It keeps its resources in memory, so that the client can be tested and benchmarked without an account.
+ * <p/>
+ * Servers go through <tt>BUILD</tt> (or the transitional status of an action) for the configured
+ * {@link #setTransitionTime transition time}, with their progress increasing, before becoming active. Latency can be
+ * added to every API request, faults injected on a number of requests or a share of them, and tokens expired, to
+ * exercise the retries and re-authentications of the client.
+ * <p/>
+ * Clients connect with {@link #getAuthURL()} as their authentication endpoint:
+ * <pre>
+ * CloudServersStandIn standIn = new CloudServersStandIn("user", "key");
+ * standIn.start();
+ * CloudServers api = new XMLCloudServers("user", "key", standIn.getAuthURL(), null);
+ * </pre>
+ */
+public class CloudServersStandIn {
+    private static final String NAMESPACE = "http://docs.rackspacecloud.com/servers/api/v1.0";
+    private static final String ACCOUNT = "123456";
+    private static final Pattern ROOT_ELEMENT = Pattern.compile("<(?:\\w+:)?(\\w+)([^>]*)>");
+    private static final Pattern ATTRIBUTE = Pattern.compile("(\\w+)\\s*=\\s*\"([^\"]*)\"");
+    private static final Pattern META = Pattern.compile(
+            "<(?:\\w+:)?meta\\s+key\\s*=\\s*\"([^\"]*)\"\\s*>([^<]*)</(?:\\w+:)?meta>");
+
+    private final String username;
+    private final String apiKey;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    // resources, guarded by this
+    private final Map<Integer, ServerState> servers = new LinkedHashMap<Integer, ServerState>();
+    private final Map<Integer, ImageState> images = new LinkedHashMap<Integer, ImageState>();
+    private final Map<Integer, int[]> flavors = new LinkedHashMap<Integer, int[]>();
+    private final Map<Integer, GroupState> groups = new LinkedHashMap<Integer, GroupState>();
+    private final Map<String, Long> tokens = new HashMap<String, Long>();
+    private final LinkedList<Integer> scriptedFaults = new LinkedList<Integer>();
+    private final Map<Integer, Double> faultRates = new LinkedHashMap<Integer, Double>();
+    private int nextID = 1000;
+
+    private volatile long minLatency = 0;
+    private volatile long maxLatency = 0;
+    private volatile long transitionTime = TimeUnit.SECONDS.toMillis(5);
+    private volatile long tokenLifetime = TimeUnit.HOURS.toMillis(24);
+    private volatile int retryAfter = 0;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong authentications = new AtomicLong();
+    private final AtomicLong injectedFaults = new AtomicLong();
+    private final AtomicLong rejectedTokens = new AtomicLong();
+    private final Random random = new Random();
+
+    private static final Logger logger = Logger.getLogger(CloudServersStandIn.class.getName());
+
+    /**
+     * Creates a stand-in with the usual flavors and a few base images, and no server.
+     *
+     * @param username the username clients authenticate with
+     * @param apiKey   the API key clients authenticate with
+     */
+    public CloudServersStandIn(String username, String apiKey) {
+        this.username = username;
+        this.apiKey = apiKey;
+        int[][] defaults = {{1, 256, 10}, {2, 512, 20}, {3, 1024, 40}, {4, 2048, 80}, {5, 4096, 160},
+                {6, 8192, 320}, {7, 15872, 620}};
+        for (int[] flavor : defaults)
+            flavors.put(flavor[0], flavor);
+        String[] distributions = {"CentOS 5.4", "Ubuntu 10.04 LTS", "Debian 5.0", "Fedora 13"};
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < distributions.length; i++) {
+            ImageState image = new ImageState(i + 1, distributions[i], null, now - TimeUnit.DAYS.toMillis(30), 0);
+            images.put(image.id, image);
+        }
+    }
+
+    /**
+     * Starts serving on a free port of the loopback interface.
+     */
+    public synchronized void start() throws IOException {
+        if (server != null)
+            return;
+        executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            private int count = 0;
+
+            public synchronized Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "cloudservers-standin-" + ++count);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0), 128);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    dispatch(exchange);
+                } catch (RuntimeException e) {
+                    logger.log(Level.SEVERE, "Can't serve " + exchange.getRequestURI(), e);
+                    send(exchange, 500, fault(500, "Internal error", e.toString()));
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        server.setExecutor(executor);
+        server.start();
+        logger.log(Level.INFO, "Cloud Servers stand-in listening on {0}", getAuthURL());
+    }
+
+    public synchronized void stop() {
+        if (server == null)
+            return;
+        server.stop(0);
+        executor.shutdownNow();
+        server = null;
+    }
+
+    /**
+     * @return the authentication endpoint clients should use
+     */
+    public synchronized String getAuthURL() {
+        if (server == null)
+            throw new IllegalStateException("Stand-in not started");
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/v1.0";
+    }
+
+    /**
+     * Adds a latency to every API request, drawn uniformly between the given bounds. Authentication is not delayed.
+     */
+    public void setLatency(long min, long max, TimeUnit unit) {
+        this.minLatency = unit.toMillis(min);
+        this.maxLatency = Math.max(minLatency, unit.toMillis(max));
+    }
+
+    /**
+     * Sets how long servers and images stay in their transitional status before becoming active.
+     */
+    public void setTransitionTime(long time, TimeUnit unit) {
+        this.transitionTime = unit.toMillis(time);
+    }
+
+    /**
+     * Sets how long the tokens issued from now on are accepted.
+     */
+    public void setTokenLifetime(long lifetime, TimeUnit unit) {
+        this.tokenLifetime = unit.toMillis(lifetime);
+    }
+
+    /**
+     * Sets the <tt>Retry-After</tt> header of injected 503 and 413 responses; 0 to leave it out.
+     */
+    public void setRetryAfter(int seconds) {
+        this.retryAfter = seconds;
+    }
+
+    /**
+     * Answers the next API requests with an error, before they have any effect.
+     *
+     * @param statusCode the status of the responses, typically 503, 413 or 401
+     * @param count      the number of requests to fail
+     */
+    public synchronized void failNext(int statusCode, int count) {
+        for (int i = 0; i < count; i++)
+            scriptedFaults.add(statusCode);
+    }
+
+    /**
+     * Answers a share of the API requests with an error, before they have any effect.
+     *
+     * @param statusCode the status of the responses
+     * @param rate       the share of the requests to fail, 0 to stop failing them
+     */
+    public synchronized void setFaultRate(int statusCode, double rate) {
+        if (rate <= 0)
+            faultRates.remove(statusCode);
+        else
+            faultRates.put(statusCode, rate);
+    }
+
+    /**
+     * Revokes every token issued so far, so that clients have to authenticate again.
+     */
+    public synchronized void expireTokens() {
+        tokens.clear();
+    }
+
+    /**
+     * Adds active servers, as if they had been created a while ago.
+     *
+     * @param count    the number of servers to add
+     * @param imageID  the image of the servers
+     * @param flavorID the flavor of the servers
+     * @return the IDs of the servers
+     */
+    public synchronized List<Integer> addServers(int count, int imageID, int flavorID) {
+        List<Integer> ids = new ArrayList<Integer>(count);
+        long created = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1);
+        for (int i = 0; i < count; i++) {
+            ServerState server = new ServerState(nextID++, "server-" + (i + 1), imageID, flavorID, created, 0);
+            server.metadata.put("role", i % 2 == 0 ? "web" : "db");
+            servers.put(server.id, server);
+            ids.add(server.id);
+        }
+        return ids;
+    }
+
+    /**
+     * @param serverID the ID of a server created through the API
+     * @return the decoded content of the personality files the server was created with, by path, or null if there is
+     *         no such server
+     */
+    public synchronized Map<String, byte[]> getPersonality(int serverID) {
+        ServerState server = servers.get(serverID);
+        return server == null ? null : new LinkedHashMap<String, byte[]>(server.personality);
+    }
+
+    /**
+     * @return the number of API requests received, authentication excluded
+     */
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    public long getAuthenticationCount() {
+        return authentications.get();
+    }
+
+    public long getInjectedFaultCount() {
+        return injectedFaults.get();
+    }
+
+    /**
+     * @return the number of API requests rejected because of an unknown or expired token
+     */
+    public long getRejectedTokenCount() {
+        return rejectedTokens.get();
+    }
+
+    private void dispatch(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String method = exchange.getRequestMethod();
+        if ("/v1.0".equals(path) || "/v1.0/".equals(path)) {
+            authenticate(exchange);
+            return;
+        }
+        String prefix = "/v1.0/" + ACCOUNT;
+        if (!path.startsWith(prefix)) {
+            send(exchange, 404, fault(404, "Not found", path));
+            return;
+        }
+        requests.incrementAndGet();
+        String body = read(exchange.getRequestBody());
+
+        if (!isValid(exchange.getRequestHeaders().getFirst("X-Auth-Token"))) {
+            rejectedTokens.incrementAndGet();
+            send(exchange, 401, "<unauthorized xmlns=\"" + NAMESPACE + "\" code=\"401\">"
+                    + "<message>Unauthorized</message></unauthorized>");
+            return;
+        }
+        delay();
+        Integer injected = nextFault();
+        if (injected != null) {
+            injectedFaults.incrementAndGet();
+            sendFault(exchange, injected);
+            return;
+        }
+
+        String[] segments = path.substring(prefix.length()).replaceAll("^/+|/+$", "").split("/");
+        String query = exchange.getRequestURI().getRawQuery();
+        Response response;
+        synchronized (this) {
+            response = route(method, segments, query, body);
+        }
+        send(exchange, response.status, response.body);
+    }
+
+    private void authenticate(HttpExchange exchange) throws IOException {
+        authentications.incrementAndGet();
+        String user = exchange.getRequestHeaders().getFirst("X-Auth-User");
+        String key = exchange.getRequestHeaders().getFirst("X-Auth-Key");
+        if (!username.equals(user) || !apiKey.equals(key)) {
+            send(exchange, 401, null);
+            return;
+        }
+        String token = UUID.randomUUID().toString();
+        synchronized (this) {
+            tokens.put(token, System.currentTimeMillis() + tokenLifetime);
+        }
+        String base = getAuthURL();
+        String root = base.substring(0, base.length() - "/v1.0".length());
+        exchange.getResponseHeaders().set("X-Auth-Token", token);
+        exchange.getResponseHeaders().set("X-Server-Management-Url", base + "/" + ACCOUNT);
+        exchange.getResponseHeaders().set("X-Storage-Url", root + "/storage/" + ACCOUNT);
+        exchange.getResponseHeaders().set("X-CDN-Management-Url", root + "/cdn/" + ACCOUNT);
+        send(exchange, 204, null);
+    }
+
+    private synchronized boolean isValid(String token) {
+        Long expires = token == null ? null : tokens.get(token);
+        if (expires == null)
+            return false;
+        if (expires < System.currentTimeMillis()) {
+            tokens.remove(token);
+            return false;
+        }
+        return true;
+    }
+
+    private void delay() {
+        long latency = minLatency;
+        if (maxLatency > minLatency) {
+            synchronized (random) {
+                latency += (long) (random.nextDouble() * (maxLatency - minLatency));
+            }
+        }
+        if (latency <= 0)
+            return;
+        try {
+            Thread.sleep(latency);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized Integer nextFault() {
+        if (!scriptedFaults.isEmpty())
+            return scriptedFaults.removeFirst();
+        for (Map.Entry<Integer, Double> rate : faultRates.entrySet()) {
+            if (random.nextDouble() < rate.getValue())
+                return rate.getKey();
+        }
+        return null;
+    }
+
+    private void sendFault(HttpExchange exchange, int statusCode) throws IOException {
+        if ((statusCode == 503 || statusCode == 413) && retryAfter > 0)
+            exchange.getResponseHeaders().set("Retry-After", String.valueOf(retryAfter));
+        switch (statusCode) {
+            case 401:
+                send(exchange, 401, "<unauthorized xmlns=\"" + NAMESPACE + "\" code=\"401\">"
+                        + "<message>Unauthorized</message></unauthorized>");
+                break;
+            case 413:
+                send(exchange, 413, "<overLimit xmlns=\"" + NAMESPACE + "\" code=\"413\">"
+                        + "<message>Too many requests...</message></overLimit>");
+                break;
+            case 503:
+                send(exchange, 503, "<serviceUnavailable xmlns=\"" + NAMESPACE + "\" code=\"503\">"
+                        + "<message>Service unavailable</message></serviceUnavailable>");
+                break;
+            default:
+                send(exchange, statusCode, fault(statusCode, "Injected fault", null));
+        }
+    }
+
+    private Response route(String method, String[] segments, String query, String body) {
+        String resource = segments[0];
+        if ("servers".equals(resource))
+            return routeServers(method, segments, query, body);
+        if ("images".equals(resource))
+            return routeImages(method, segments, body);
+        if ("flavors".equals(resource))
+            return routeFlavors(method, segments);
+        if ("limits".equals(resource) && segments.length == 1 && "GET".equals(method))
+            return ok(limitsXML());
+        if ("shared_ip_groups".equals(resource))
+            return routeGroups(method, segments, body);
+        return notFound(resource);
+    }
+
+    private Response routeServers(String method, String[] segments, String query, String body) {
+        if (segments.length == 1) {
+            if ("GET".equals(method))
+                return ok(serversXML(false, -1));
+            if ("POST".equals(method))
+                return createServer(body);
+            return badMethod(method);
+        }
+        if ("detail".equals(segments[1]) && segments.length == 2) {
+            String since = parameter(query, "changes-since");
+            if (since == null)
+                return ok(serversXML(true, -1));
+            String changed = serversXML(true, Long.parseLong(since) * 1000);
+            return changed == null ? new Response(304, null) : ok(changed);
+        }
+        ServerState server = findServer(segments[1]);
+        if (server == null)
+            return notFound("server " + segments[1]);
+        if (segments.length == 2) {
+            if ("GET".equals(method))
+                return ok(serverXML(server, true, true, null));
+            if ("PUT".equals(method)) {
+                Map<String, String> attributes = attributes(body);
+                if (attributes.get("name") != null)
+                    server.name = attributes.get("name");
+                server.updated = System.currentTimeMillis();
+                return accepted();
+            }
+            if ("DELETE".equals(method)) {
+                server.deleted = true;
+                server.updated = System.currentTimeMillis();
+                return accepted();
+            }
+            return badMethod(method);
+        }
+        String sub = segments[2];
+        if ("ips".equals(sub))
+            return routeAddresses(method, server, segments);
+        if ("action".equals(sub) && "POST".equals(method))
+            return action(server, body);
+        if ("backup_schedule".equals(sub)) {
+            if ("GET".equals(method))
+                return ok(server.backupXML());
+            if ("POST".equals(method)) {
+                Map<String, String> attributes = attributes(body);
+                server.backup = new String[]{attributes.get("enabled"), attributes.get("weekly"),
+                        attributes.get("daily")};
+                return accepted();
+            }
+            if ("DELETE".equals(method)) {
+                server.backup = null;
+                return accepted();
+            }
+            return badMethod(method);
+        }
+        return notFound(sub);
+    }
+
+    private Response routeAddresses(String method, ServerState server, String[] segments) {
+        if (segments.length == 3 && "GET".equals(method))
+            return ok(server.addressesXML(true));
+        if (segments.length == 4 && "GET".equals(method)) {
+            if ("public".equals(segments[3]))
+                return ok(server.addressListXML("public", server.publicAddresses, true));
+            if ("private".equals(segments[3]))
+                return ok(server.addressListXML("private", server.privateAddresses, true));
+        }
+        if (segments.length == 5 && "public".equals(segments[3])) {
+            if ("PUT".equals(method)) {
+                if (!server.publicAddresses.contains(segments[4]))
+                    server.publicAddresses.add(segments[4]);
+                server.transition("SHARE_IP", transitionTime);
+                return accepted();
+            }
+            if ("DELETE".equals(method)) {
+                server.publicAddresses.remove(segments[4]);
+                server.transition("DELETE_IP", transitionTime);
+                return accepted();
+            }
+        }
+        return notFound("address");
+    }
+
+    private Response createServer(String body) {
+        // parsed as a whole, so that a body the client spliced personality files into has to be well formed
+        Map<String, byte[]> personality;
+        try {
+            personality = personality(body);
+        } catch (IOException e) {
+            return new Response(400, fault(400, "Bad request", e.getMessage()));
+        }
+        Map<String, String> attributes = attributes(body);
+        int imageID = integer(attributes.get("imageId"));
+        int flavorID = integer(attributes.get("flavorId"));
+        if (!images.containsKey(imageID) || !flavors.containsKey(flavorID))
+            return new Response(400, fault(400, "Bad request", "Unknown image or flavor"));
+        ServerState server = new ServerState(nextID++, attributes.get("name"), imageID, flavorID,
+                System.currentTimeMillis(), transitionTime);
+        Matcher meta = META.matcher(body);
+        while (meta.find())
+            server.metadata.put(unescape(meta.group(1)), unescape(meta.group(2)));
+        server.personality.putAll(personality);
+        servers.put(server.id, server);
+        // the password is only ever sent with the creation
+        return new Response(202, serverXML(server, true, true, Long.toHexString(random.nextLong())));
+    }
+
+    private Response action(ServerState server, String body) {
+        Matcher root = ROOT_ELEMENT.matcher(stripDeclaration(body));
+        if (!root.find())
+            return new Response(400, fault(400, "Bad request", "No action"));
+        String action = root.group(1);
+        Map<String, String> attributes = attributes(body);
+        if ("reboot".equals(action)) {
+            server.transition("HARD".equals(attributes.get("type")) ? "HARD_REBOOT" : "REBOOT", transitionTime);
+        } else if ("rebuild".equals(action)) {
+            if (attributes.get("imageId") != null)
+                server.imageID = integer(attributes.get("imageId"));
+            server.transition("REBUILD", transitionTime);
+        } else if ("resize".equals(action)) {
+            server.resizedFlavorID = integer(attributes.get("flavorId"));
+            server.transition("RESIZE", transitionTime);
+            server.settledStatus = "VERIFY_RESIZE";
+        } else if ("confirmResize".equals(action) || "revertResize".equals(action)) {
+            if (!"VERIFY_RESIZE".equals(server.status()))
+                return new Response(409, fault(409, "Resize not allowed", "Server is not waiting for a resize"));
+            if ("confirmResize".equals(action))
+                server.flavorID = server.resizedFlavorID;
+            server.settledStatus = "ACTIVE";
+            server.updated = System.currentTimeMillis();
+        } else {
+            return new Response(400, fault(400, "Bad request", "Unknown action " + action));
+        }
+        return accepted();
+    }
+
+    private Response routeImages(String method, String[] segments, String body) {
+        if (segments.length == 1) {
+            if ("GET".equals(method))
+                return ok(imagesXML(false));
+            if ("POST".equals(method)) {
+                Map<String, String> attributes = attributes(body);
+                ServerState server = servers.get(integer(attributes.get("serverId")));
+                if (server == null || server.deleted)
+                    return notFound("server " + attributes.get("serverId"));
+                ImageState image = new ImageState(nextID++, attributes.get("name"), server.id,
+                        System.currentTimeMillis(), transitionTime);
+                images.put(image.id, image);
+                return new Response(202, imageXML(image, true, true));
+            }
+            return badMethod(method);
+        }
+        if ("detail".equals(segments[1]))
+            return ok(imagesXML(true));
+        ImageState image = images.get(integer(segments[1]));
+        if (image == null)
+            return notFound("image " + segments[1]);
+        if ("GET".equals(method))
+            return ok(imageXML(image, true, true));
+        if ("DELETE".equals(method)) {
+            images.remove(image.id);
+            return accepted();
+        }
+        return badMethod(method);
+    }
+
+    private Response routeFlavors(String method, String[] segments) {
+        if (!"GET".equals(method))
+            return badMethod(method);
+        if (segments.length == 1 || "detail".equals(segments[1])) {
+            boolean detailed = segments.length > 1;
+            StringBuilder xml = new StringBuilder("<flavors xmlns=\"" + NAMESPACE + "\">");
+            for (int[] flavor : flavors.values())
+                xml.append(flavorXML(flavor, detailed, false));
+            return ok(xml.append("</flavors>").toString());
+        }
+        int[] flavor = flavors.get(integer(segments[1]));
+        return flavor == null ? notFound("flavor " + segments[1]) : ok(flavorXML(flavor, true, true));
+    }
+
+    private Response routeGroups(String method, String[] segments, String body) {
+        if (segments.length == 1 || "detail".equals(segments[1])) {
+            if ("POST".equals(method) && segments.length == 1) {
+                Map<String, String> attributes = attributes(body);
+                GroupState group = new GroupState(nextID++, attributes.get("name"));
+                // the only attribute of the server element
+                Matcher server = Pattern.compile("<(?:\\w+:)?server\\s+id\\s*=\\s*\"(\\d+)\"").matcher(body);
+                if (server.find())
+                    group.serverIDs.add(Integer.valueOf(server.group(1)));
+                groups.put(group.id, group);
+                return new Response(202, group.toXML(true));
+            }
+            if (!"GET".equals(method))
+                return badMethod(method);
+            StringBuilder xml = new StringBuilder("<sharedIpGroups xmlns=\"" + NAMESPACE + "\">");
+            for (GroupState group : groups.values())
+                xml.append(group.toXML(false));
+            return ok(xml.append("</sharedIpGroups>").toString());
+        }
+        GroupState group = groups.get(integer(segments[1]));
+        if (group == null)
+            return notFound("shared IP group " + segments[1]);
+        if ("GET".equals(method))
+            return ok(group.toXML(true));
+        if ("DELETE".equals(method)) {
+            groups.remove(group.id);
+            return accepted();
+        }
+        return badMethod(method);
+    }
+
+    private ServerState findServer(String id) {
+        ServerState server = servers.get(integer(id));
+        return server == null || server.deleted ? null : server;
+    }
+
+    /**
+     * @param since only list the servers changed since this time, deleted ones included; -1 for all live servers
+     * @return the listing, or null if no server changed
+     */
+    private String serversXML(boolean detailed, long since) {
+        StringBuilder xml = new StringBuilder("<servers xmlns=\"" + NAMESPACE + "\">");
+        boolean changed = false;
+        for (ServerState server : servers.values()) {
+            if (since < 0 ? server.deleted : server.lastChange() < since)
+                continue;
+            xml.append(serverXML(server, detailed, false, null));
+            changed = true;
+        }
+        if (since >= 0 && !changed)
+            return null;
+        return xml.append("</servers>").toString();
+    }
+
+    private String serverXML(ServerState server, boolean detailed, boolean root, String adminPass) {
+        StringBuilder xml = new StringBuilder("<server");
+        if (root)
+            xml.append(" xmlns=\"").append(NAMESPACE).append('"');
+        xml.append(" id=\"").append(server.id).append("\" name=\"").append(escape(server.name)).append('"');
+        if (!detailed)
+            return xml.append("/>").toString();
+        xml.append(" imageId=\"").append(server.imageID).append("\" flavorId=\"").append(server.flavorID)
+                .append("\" hostId=\"").append(Integer.toHexString(server.id * 7919)).append("\" status=\"")
+                .append(server.status()).append("\" progress=\"").append(server.progress()).append('"');
+        if (adminPass != null)
+            xml.append(" adminPass=\"").append(adminPass).append('"');
+        xml.append('>');
+        if (!server.metadata.isEmpty()) {
+            xml.append("<metadata>");
+            for (Map.Entry<String, String> meta : server.metadata.entrySet())
+                xml.append("<meta key=\"").append(escape(meta.getKey())).append("\">")
+                        .append(escape(meta.getValue())).append("</meta>");
+            xml.append("</metadata>");
+        }
+        return xml.append(server.addressesXML(false)).append("</server>").toString();
+    }
+
+    private String imagesXML(boolean detailed) {
+        StringBuilder xml = new StringBuilder("<images xmlns=\"" + NAMESPACE + "\">");
+        for (ImageState image : images.values())
+            xml.append(imageXML(image, detailed, false));
+        return xml.append("</images>").toString();
+    }
+
+    private String imageXML(ImageState image, boolean detailed, boolean root) {
+        StringBuilder xml = new StringBuilder("<image");
+        if (root)
+            xml.append(" xmlns=\"").append(NAMESPACE).append('"');
+        xml.append(" id=\"").append(image.id).append("\" name=\"").append(escape(image.name)).append('"');
+        if (detailed) {
+            if (image.serverID != null)
+                xml.append(" serverId=\"").append(image.serverID).append('"');
+            xml.append(" created=\"").append(date(image.created)).append("\" updated=\"")
+                    .append(date(Math.max(image.created, image.readyAt))).append("\" status=\"")
+                    .append(image.isReady() ? "ACTIVE" : "SAVING").append('"');
+            if (!image.isReady())
+                xml.append(" progress=\"").append(image.progress()).append('"');
+        }
+        return xml.append("/>").toString();
+    }
+
+    private static String flavorXML(int[] flavor, boolean detailed, boolean root) {
+        StringBuilder xml = new StringBuilder("<flavor");
+        if (root)
+            xml.append(" xmlns=\"").append(NAMESPACE).append('"');
+        xml.append(" id=\"").append(flavor[0]).append("\" name=\"").append(flavor[1]).append(" server\"");
+        if (detailed)
+            xml.append(" ram=\"").append(flavor[1]).append("\" disk=\"").append(flavor[2]).append('"');
+        return xml.append("/>").toString();
+    }
+
+    private static String limitsXML() {
+        long reset = System.currentTimeMillis() / 1000 + 60;
+        String[][] rates = {
+                {"POST", "*", ".*", "10", "MINUTE"},
+                {"POST", "*/servers", "^/servers", "50", "DAY"},
+                {"PUT", "*", ".*", "10", "MINUTE"},
+                {"GET", "*changes-since*", "changes-since", "3", "MINUTE"},
+                {"DELETE", "*", ".*", "100", "MINUTE"}
+        };
+        StringBuilder xml = new StringBuilder("<limits xmlns=\"" + NAMESPACE + "\"><rate>");
+        for (String[] rate : rates)
+            xml.append("<limit verb=\"").append(rate[0]).append("\" URI=\"").append(rate[1])
+                    .append("\" regex=\"").append(rate[2]).append("\" value=\"").append(rate[3])
+                    .append("\" remaining=\"").append(rate[3]).append("\" unit=\"").append(rate[4])
+                    .append("\" resetTime=\"").append(reset).append("\"/>");
+        xml.append("</rate><absolute>")
+                .append("<limit name=\"maxTotalRAMSize\" value=\"51200\"/>")
+                .append("<limit name=\"maxIPGroups\" value=\"25\"/>")
+                .append("<limit name=\"maxIPGroupMembers\" value=\"25\"/>");
+        return xml.append("</absolute></limits>").toString();
+    }
+
+    private static Response ok(String body) {
+        return new Response(200, body);
+    }
+
+    /**
+     * Answers the requests without a body with a 202, the client taking only 200, 202 and 203 as successes.
+     */
+    private static Response accepted() {
+        return new Response(202, null);
+    }
+
+    private static Response notFound(String what) {
+        return new Response(404, fault(404, "Not found", what));
+    }
+
+    private static Response badMethod(String method) {
+        return new Response(405, fault(405, "Bad method", method));
+    }
+
+    /**
+     * Faults are all sent as <tt>cloudServersFault</tt>, the element the client unmarshals them from.
+     */
+    private static String fault(int code, String message, String details) {
+        StringBuilder xml = new StringBuilder("<cloudServersFault xmlns=\"" + NAMESPACE + "\" code=\"")
+                .append(code).append("\"><message>").append(escape(message)).append("</message>");
+        if (details != null)
+            xml.append("<details>").append(escape(details)).append("</details>");
+        return xml.append("</cloudServersFault>").toString();
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        byte[] bytes = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" + body).getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", "application/xml; charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) != -1)
+            bytes.write(buffer, 0, n);
+        return bytes.toString("UTF-8");
+    }
+
+    private static String stripDeclaration(String body) {
+        return body.replaceFirst("^\\s*<\\?xml[^>]*\\?>", "");
+    }
+
+    /**
+     * @return the attributes of the root element of a request
+     */
+    private static Map<String, String> attributes(String body) {
+        Map<String, String> attributes = new HashMap<String, String>();
+        Matcher root = ROOT_ELEMENT.matcher(stripDeclaration(body));
+        if (!root.find())
+            return attributes;
+        Matcher attribute = ATTRIBUTE.matcher(root.group(2));
+        while (attribute.find())
+            attributes.put(attribute.group(1), unescape(attribute.group(2)));
+        return attributes;
+    }
+
+    /**
+     * Parses a server creation request.
+     *
+     * @return the decoded content of the personality files of the request, by path
+     * @throws IOException if the request is not a well formed server document
+     */
+    private static Map<String, byte[]> personality(String body) throws IOException {
+        Document document;
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            document = factory.newDocumentBuilder().parse(new InputSource(new StringReader(body)));
+        } catch (ParserConfigurationException e) {
+            throw new IllegalStateException(e);
+        } catch (SAXException e) {
+            throw new IOException("Malformed server: " + e.getMessage());
+        }
+        Element root = document.getDocumentElement();
+        if (!NAMESPACE.equals(root.getNamespaceURI()) || !"server".equals(root.getLocalName()))
+            throw new IOException("Expected a server, got " + root.getNodeName());
+        Map<String, byte[]> files = new LinkedHashMap<String, byte[]>();
+        NodeList personalities = root.getElementsByTagNameNS(NAMESPACE, "personality");
+        if (personalities.getLength() > 1)
+            throw new IOException("More than one personality");
+        for (int i = 0; i < personalities.getLength(); i++) {
+            Element personality = (Element) personalities.item(i);
+            if (personality.getParentNode() != root)
+                throw new IOException("Misplaced personality");
+            NodeList list = personality.getElementsByTagNameNS(NAMESPACE, "file");
+            for (int j = 0; j < list.getLength(); j++) {
+                Element file = (Element) list.item(j);
+                if (!file.hasAttribute("path"))
+                    throw new IOException("File without a path");
+                files.put(file.getAttribute("path"), decodeBase64(file.getTextContent()));
+            }
+        }
+        return files;
+    }
+
+    private static byte[] decodeBase64(String text) throws IOException {
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream(text.length() * 3 / 4);
+        int buffer = 0, bits = 0, padding = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c))
+                continue;
+            if (c == '=') {
+                padding++;
+                continue;
+            }
+            int value = alphabet.indexOf(c);
+            if (value < 0 || padding > 0)
+                throw new IOException("Malformed base64 content");
+            buffer = (buffer << 6) | value;
+            bits += 6;
+            if (bits >= 8) {
+                bits -= 8;
+                decoded.write(buffer >> bits);
+                buffer &= (1 << bits) - 1;
+            }
+        }
+        if (padding > 2 || bits >= 6)
+            throw new IOException("Malformed base64 content");
+        return decoded.toByteArray();
+    }
+
+    private static String parameter(String query, String name) {
+        if (query == null)
+            return null;
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0 && pair.substring(0, equals).equals(name))
+                return pair.substring(equals + 1);
+        }
+        return null;
+    }
+
+    private static int integer(String value) {
+        try {
+            return value == null ? 0 : Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static String date(long time) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(time));
+    }
+
+    private static String escape(String value) {
+        if (value == null)
+            return "";
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    private static String unescape(String value) {
+        return value.replace("&quot;", "\"").replace("&lt;", "<").replace("&gt;", ">").replace("&amp;", "&");
+    }
+
+    private static class Response {
+        final int status;
+        final String body;
+
+        Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    /**
+     * A server, whose status is derived from the time of its last action.
+     */
+    private static class ServerState {
+        final int id;
+        String name;
+        int imageID;
+        int flavorID;
+        int resizedFlavorID;
+        boolean deleted = false;
+        final Map<String, String> metadata = new LinkedHashMap<String, String>();
+        final Map<String, byte[]> personality = new LinkedHashMap<String, byte[]>();
+        final List<String> publicAddresses = new ArrayList<String>();
+        final List<String> privateAddresses = new ArrayList<String>();
+        String[] backup;
+        // the status while the transition runs, and the one it settles to
+        String transitionStatus = "BUILD";
+        String settledStatus = "ACTIVE";
+        long transitionStart;
+        long readyAt;
+        long updated;
+
+        ServerState(int id, String name, int imageID, int flavorID, long created, long buildTime) {
+            this.id = id;
+            this.name = name;
+            this.imageID = imageID;
+            this.flavorID = flavorID;
+            this.transitionStart = created;
+            this.readyAt = created + buildTime;
+            this.updated = created;
+            publicAddresses.add("67.23." + (id / 256 % 256) + "." + (id % 256));
+            privateAddresses.add("10.176." + (id / 256 % 256) + "." + (id % 256));
+        }
+
+        void transition(String status, long time) {
+            transitionStatus = status;
+            settledStatus = "ACTIVE";
+            transitionStart = System.currentTimeMillis();
+            readyAt = transitionStart + time;
+            updated = transitionStart;
+        }
+
+        boolean isSettled() {
+            return System.currentTimeMillis() >= readyAt;
+        }
+
+        String status() {
+            if (deleted)
+                return "DELETED";
+            return isSettled() ? settledStatus : transitionStatus;
+        }
+
+        int progress() {
+            if (isSettled())
+                return 100;
+            return (int) (100 * (System.currentTimeMillis() - transitionStart) / (readyAt - transitionStart));
+        }
+
+        /**
+         * @return when the server last changed; its progress changes all along a transition
+         */
+        long lastChange() {
+            if (!isSettled())
+                return System.currentTimeMillis();
+            return Math.max(updated, readyAt);
+        }
+
+        String addressesXML(boolean root) {
+            StringBuilder xml = new StringBuilder("<addresses");
+            if (root)
+                xml.append(" xmlns=\"").append(NAMESPACE).append('"');
+            return xml.append('>').append(addressListXML("public", publicAddresses, false))
+                    .append(addressListXML("private", privateAddresses, false)).append("</addresses>").toString();
+        }
+
+        String addressListXML(String element, List<String> addresses, boolean root) {
+            StringBuilder xml = new StringBuilder("<").append(element);
+            if (root)
+                xml.append(" xmlns=\"").append(NAMESPACE).append('"');
+            xml.append('>');
+            for (String address : addresses)
+                xml.append("<ip addr=\"").append(address).append("\"/>");
+            return xml.append("</").append(element).append('>').toString();
+        }
+
+        String backupXML() {
+            String[] schedule = backup != null ? backup : new String[]{"false", "DISABLED", "DISABLED"};
+            return "<backupSchedule xmlns=\"" + NAMESPACE + "\" enabled=\"" + schedule[0] + "\" weekly=\""
+                    + schedule[1] + "\" daily=\"" + schedule[2] + "\"/>";
+        }
+    }
+
+    private static class ImageState {
+        final int id;
+        final String name;
+        final Integer serverID;
+        final long created;
+        final long readyAt;
+
+        ImageState(int id, String name, Integer serverID, long created, long saveTime) {
+            this.id = id;
+            this.name = name;
+            this.serverID = serverID;
+            this.created = created;
+            this.readyAt = created + saveTime;
+        }
+
+        boolean isReady() {
+            return System.currentTimeMillis() >= readyAt;
+        }
+
+        int progress() {
+            if (isReady())
+                return 100;
+            return (int) (100 * (System.currentTimeMillis() - created) / (readyAt - created));
+        }
+    }
+
+    private static class GroupState {
+        final int id;
+        final String name;
+        final List<Integer> serverIDs = new ArrayList<Integer>();
+
+        GroupState(int id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        String toXML(boolean root) {
+            StringBuilder xml = new StringBuilder("<sharedIpGroup");
+            if (root)
+                xml.append(" xmlns=\"").append(NAMESPACE).append('"');
+            xml.append(" id=\"").append(id).append("\" name=\"").append(escape(name)).append("\"><servers>");
+            for (Integer serverID : serverIDs)
+                xml.append("<server id=\"").append(serverID).append("\"/>");
+            return xml.append("</servers></sharedIpGroup>").toString();
+        }
+    }
+}
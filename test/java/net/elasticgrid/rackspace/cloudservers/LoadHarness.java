@@ -0,0 +1,266 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.elasticgrid.rackspace.cloudservers;
+
+import net.elasticgrid.rackspace.common.LatencyHistogram;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Drives a {@link CloudServers} client from a number of threads, each picking operations from a weighted mix for a
+ * given duration, and reports the throughput and latency percentiles of each operation. Latencies are recorded
+ * after a warm-up period, once connections are open and classes loaded.
+ * <p/>
+ * Run as a program, it benchmarks {@link XMLCloudServers} against a {@link CloudServersStandIn}, configured with
+ * system properties:
+ * <ul>
+ * <li><tt>threads</tt>: the number of client threads (16)</li>
+ * <li><tt>duration</tt>: the measured duration, in seconds (30)</li>
+ * <li><tt>warmup</tt>: the warm-up duration, in seconds (5)</li>
+ * <li><tt>servers</tt>: the number of servers of the account (200)</li>
+ * <li><tt>latency</tt>: the latency added by the stand-in, in milliseconds, as <tt>min</tt> or <tt>min-max</tt>
+ * (10-30)</li>
+ * <li><tt>faults.503</tt>, <tt>faults.413</tt>, <tt>faults.401</tt>: the share of requests failed with the status
+ * (0)</li>
+ * <li><tt>tokenLifetime</tt>: the lifetime of the tokens issued by the stand-in, in seconds (one day)</li>
+ * </ul>
+ */
+public class LoadHarness {
+    private final Map<String, Operation> operations = new LinkedHashMap<String, Operation>();
+    private final Map<String, Integer> weights = new LinkedHashMap<String, Integer>();
+    private int concurrency = 16;
+    private long duration = TimeUnit.SECONDS.toMillis(30);
+    private long warmUp = TimeUnit.SECONDS.toMillis(5);
+
+    /**
+     * An operation of the mix.
+     */
+    public interface Operation {
+        /**
+         * @param api    the client to exercise
+         * @param random the random generator of the calling thread
+         */
+        void run(CloudServers api, Random random) throws Exception;
+    }
+
+    public void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    public void setDuration(long duration, TimeUnit unit) {
+        this.duration = unit.toMillis(duration);
+    }
+
+    public void setWarmUp(long warmUp, TimeUnit unit) {
+        this.warmUp = unit.toMillis(warmUp);
+    }
+
+    /**
+     * Adds an operation to the mix.
+     *
+     * @param name      the name the operation is reported under
+     * @param weight    how often the operation is picked, relative to the other ones
+     * @param operation the operation
+     */
+    public void addOperation(String name, int weight, Operation operation) {
+        operations.put(name, operation);
+        weights.put(name, weight);
+    }
+
+    /**
+     * Runs the mix until the warm-up and the measured duration are over.
+     *
+     * @param api the client to exercise
+     * @return the measures of the run
+     */
+    public Report run(final CloudServers api) throws InterruptedException {
+        if (operations.isEmpty())
+            throw new IllegalStateException("No operation to run");
+        final List<String> names = new ArrayList<String>(operations.keySet());
+        final int[] cumulative = new int[names.size()];
+        int total = 0;
+        for (int i = 0; i < names.size(); i++) {
+            total += weights.get(names.get(i));
+            cumulative[i] = total;
+        }
+        final int totalWeight = total;
+
+        final Report report = new Report(names);
+        final long measureStart = System.currentTimeMillis() + warmUp;
+        final long end = measureStart + duration;
+        final CountDownLatch done = new CountDownLatch(concurrency);
+        for (int t = 0; t < concurrency; t++) {
+            final long seed = t;
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    Random random = new Random(seed);
+                    try {
+                        long now;
+                        while ((now = System.currentTimeMillis()) < end) {
+                            int pick = random.nextInt(totalWeight);
+                            int index = 0;
+                            while (cumulative[index] <= pick)
+                                index++;
+                            String name = names.get(index);
+                            long start = System.nanoTime();
+                            boolean failed = false;
+                            try {
+                                operations.get(name).run(api, random);
+                            } catch (Exception e) {
+                                failed = true;
+                            }
+                            if (now >= measureStart)
+                                report.record(name, System.nanoTime() - start, failed);
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }, "load-" + t);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        done.await();
+        report.elapsed = duration;
+        return report;
+    }
+
+    /**
+     * The latencies, throughput and errors of a run, per operation.
+     */
+    public static class Report {
+        private final Map<String, LatencyHistogram> latencies = new LinkedHashMap<String, LatencyHistogram>();
+        private final Map<String, AtomicLong> errors = new LinkedHashMap<String, AtomicLong>();
+        private long elapsed;
+
+        Report(List<String> names) {
+            for (String name : names) {
+                latencies.put(name, new LatencyHistogram());
+                errors.put(name, new AtomicLong());
+            }
+        }
+
+        void record(String name, long nanos, boolean failed) {
+            latencies.get(name).record(nanos);
+            if (failed)
+                errors.get(name).incrementAndGet();
+        }
+
+        public LatencyHistogram.Snapshot getLatencies(String name) {
+            return latencies.get(name).getSnapshot();
+        }
+
+        public long getErrors(String name) {
+            return errors.get(name).get();
+        }
+
+        /**
+         * @return the number of operations completed per second, errors included
+         */
+        public double getThroughput(String name) {
+            return elapsed == 0 ? 0 : latencies.get(name).getCount() * 1000.0 / elapsed;
+        }
+
+        public double getTotalThroughput() {
+            double throughput = 0;
+            for (String name : latencies.keySet())
+                throughput += getThroughput(name);
+            return throughput;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(String.format("%-24s %8s %8s %8s %8s %8s %8s %8s%n",
+                    "operation", "ops/s", "errors", "mean", "p50", "p90", "p99", "max"));
+            for (String name : latencies.keySet()) {
+                LatencyHistogram.Snapshot snapshot = getLatencies(name);
+                sb.append(String.format("%-24s %8.1f %8d %8.1f %8.1f %8.1f %8.1f %8.1f%n", name,
+                        getThroughput(name), getErrors(name), snapshot.getMean(), snapshot.getMedian(),
+                        snapshot.get90thPercentile(), snapshot.get99thPercentile(), snapshot.getMax()));
+            }
+            sb.append(String.format("%-24s %8.1f  (latencies in ms)%n", "total", getTotalThroughput()));
+            return sb.toString();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        CloudServersStandIn standIn = new CloudServersStandIn("load", "secret");
+        String[] latency = System.getProperty("latency", "10-30").split("-");
+        standIn.setLatency(Long.parseLong(latency[0]), Long.parseLong(latency[latency.length - 1]),
+                TimeUnit.MILLISECONDS);
+        for (int status : new int[]{503, 413, 401})
+            standIn.setFaultRate(status, Double.parseDouble(System.getProperty("faults." + status, "0")));
+        standIn.setRetryAfter(0);
+        standIn.setTokenLifetime(Long.getLong("tokenLifetime", TimeUnit.DAYS.toSeconds(1)), TimeUnit.SECONDS);
+        final List<Integer> serverIDs = standIn.addServers(Integer.getInteger("servers", 200), 1, 1);
+        standIn.start();
+        try {
+            XMLCloudServers api = new XMLCloudServers("load", "secret", standIn.getAuthURL(), null);
+
+            LoadHarness harness = new LoadHarness();
+            harness.setConcurrency(Integer.getInteger("threads", 16));
+            harness.setDuration(Long.getLong("duration", 30), TimeUnit.SECONDS);
+            harness.setWarmUp(Long.getLong("warmup", 5), TimeUnit.SECONDS);
+            harness.addOperation("getServerDetails", 40, new Operation() {
+                public void run(CloudServers api, Random random) throws Exception {
+                    api.getServerDetails(serverIDs.get(random.nextInt(serverIDs.size())));
+                }
+            });
+            harness.addOperation("getServerAddresses", 15, new Operation() {
+                public void run(CloudServers api, Random random) throws Exception {
+                    api.getServerAddresses(serverIDs.get(random.nextInt(serverIDs.size())));
+                }
+            });
+            harness.addOperation("getServersWithDetails", 15, new Operation() {
+                public void run(CloudServers api, Random random) throws Exception {
+                    api.getServersWithDetails();
+                }
+            });
+            harness.addOperation("getImagesWithDetails", 10, new Operation() {
+                public void run(CloudServers api, Random random) throws Exception {
+                    api.getImagesWithDetails();
+                }
+            });
+            harness.addOperation("getFlavorsWithDetails", 10, new Operation() {
+                public void run(CloudServers api, Random random) throws Exception {
+                    api.getFlavorsWithDetails();
+                }
+            });
+            harness.addOperation("getLimits", 10, new Operation() {
+                public void run(CloudServers api, Random random) throws Exception {
+                    api.getLimits();
+                }
+            });
+
+            Report report = harness.run(api);
+            System.out.print(report);
+            System.out.printf("stand-in: %d requests, %d authentications, %d injected faults, %d rejected tokens%n",
+                    standIn.getRequestCount(), standIn.getAuthenticationCount(), standIn.getInjectedFaultCount(),
+                    standIn.getRejectedTokenCount());
+        } finally {
+            standIn.stop();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.elasticgrid.rackspace.cloudservers;
+
+import java.net.InetAddress;
+import java.util.Arrays;
+
+import static net.elasticgrid.rackspace.common.Assert.assertEquals;
+import static net.elasticgrid.rackspace.common.Assert.assertFalse;
+import static net.elasticgrid.rackspace.common.Assert.assertTrue;
+
+/**
+ * Checks the IP literal parsers of {@link PackedAddressList} against the addresses {@link InetAddress} parses.
+ */
+public class PackedAddressListTest {
+
+    public static void main(String[] args) throws Exception {
+        ipv4();
+        ipv6();
+        packing();
+        System.out.println("PackedAddressListTest OK");
+    }
+
+    static void ipv4() {
+        assertEquals("0.0.0.0", 0L, PackedAddressList.parseIPv4("0.0.0.0"));
+        assertEquals("10.1.2.3", 0x0a010203L, PackedAddressList.parseIPv4("10.1.2.3"));
+        assertEquals("255.255.255.255", 0xffffffffL, PackedAddressList.parseIPv4("255.255.255.255"));
+        for (String invalid : new String[]{"", "1", "1.2.3", "1.2.3.4.5", "1.2.3.", ".1.2.3", "1..2.3", "256.1.1.1",
+                "1.2.3.1000", "1.2.3.a", "1.2.3.-4", " 1.2.3.4", "::1"})
+            assertEquals("invalid IPv4 " + invalid, -1L, PackedAddressList.parseIPv4(invalid));
+    }
+
+    static void ipv6() throws Exception {
+        for (String literal : new String[]{"::", "::1", "1::", "fe80::1", "2001:db8::8:800:200c:417a",
+                "2001:0db8:0000:0000:0008:0800:200c:417a", "1:2:3:4:5:6:7:8", "1:2:3:4:5:6::8", "1::3:4:5:6:7:8",
+                "::ffff:10.1.2.3", "::10.1.2.3", "1:2:3:4:5:6:10.1.2.3", "1::10.1.2.3", "FE80::ABCD"})
+            assertIPv6(literal, literal);
+        assertIPv6("zone index", "fe80::1%eth0");
+
+        long[] parsed = new long[2];
+        for (String invalid : new String[]{"", ":", ":::", "1::2::3", "1:2:3:4:5:6:7", "1:2:3:4:5:6:7:8:9",
+                "1:2:3:4:5:6:7::8", "12345::", "1:2:3:4:5:6:7:g", "1.2.3.4::", "1.2.3.4::1", "::1.2.3.4:1",
+                "1:2:3:4:5:6:7:1.2.3.4", "::1.2.3", "::256.1.1.1", "1:", ":1", "1:::2"})
+            assertFalse("invalid IPv6 " + invalid, PackedAddressList.parseIPv6(invalid, parsed));
+    }
+
+    private static void assertIPv6(String message, String literal) throws Exception {
+        long[] parsed = new long[2];
+        assertTrue(message + " parses", PackedAddressList.parseIPv6(literal, parsed));
+        int zone = literal.indexOf('%');
+        byte[] bytes = toIPv6Bytes(InetAddress.getByName(zone < 0 ? literal : literal.substring(0, zone)));
+        assertEquals(message + " high bits", PackedAddressList.toLong(bytes, 0), parsed[0]);
+        assertEquals(message + " low bits", PackedAddressList.toLong(bytes, 8), parsed[1]);
+    }
+
+    /**
+     * @return the 16 bytes of an address, mapping IPv4 addresses the way {@link InetAddress} unmaps them
+     */
+    private static byte[] toIPv6Bytes(InetAddress address) {
+        byte[] bytes = address.getAddress();
+        if (bytes.length == 16)
+            return bytes;
+        byte[] mapped = new byte[16];
+        mapped[10] = (byte) 0xff;
+        mapped[11] = (byte) 0xff;
+        System.arraycopy(bytes, 0, mapped, 12, 4);
+        return mapped;
+    }
+
+    static void packing() throws Exception {
+        PackedAddressList list = PackedAddressList.parse(Arrays.asList("10.1.2.3", "::ffff:10.1.2.4", "fe80::1",
+                "not an address", "1.2.3.4::"));
+        assertEquals("addresses kept", 3, list.size());
+        assertEquals("mapped addresses packed as IPv4", 2, list.getIPv4Count());
+        assertEquals("IPv6 addresses", 1, list.getIPv6Count());
+        assertTrue("IPv4 lookup", list.contains(InetAddress.getByName("10.1.2.4")));
+        assertTrue("IPv6 lookup", list.contains(InetAddress.getByName("fe80::1")));
+        assertFalse("missing address", list.contains(InetAddress.getByName("10.1.2.5")));
+        assertEquals("first address", InetAddress.getByName("10.1.2.3"), list.get(0));
+        assertEquals("IPv6 address", InetAddress.getByName("fe80::1"), list.get(2));
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.elasticgrid.rackspace.cloudservers;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Creates servers with personality files against a {@link CloudServersStandIn}, which parses the bodies the client
+ * splices the files into, and checks that the stand-in got back every file as it was sent. Exits with a non-zero
+ * status on the first mismatch.
+ */
+public class PersonalityRoundTrip {
+
+    public static void main(String[] args) throws Exception {
+        CloudServersStandIn standIn = new CloudServersStandIn("personality", "secret");
+        standIn.start();
+        try {
+            XMLCloudServers api = new XMLCloudServers("personality", "secret", standIn.getAuthURL(), null);
+
+            final byte[] binary = new byte[256 * 3 + 1];
+            for (int i = 0; i < binary.length; i++)
+                binary[i] = (byte) i;
+            final byte[] text = "#!/bin/sh\necho \"<ready>\" && exit 0\n".getBytes("UTF-8");
+            List<File> files = new ArrayList<File>();
+            files.add(new File("/etc/motd", text));
+            files.add(new File("/root/a & b \"<quoted>\".bin", binary));
+            files.add(new File("/var/empty", new byte[0]));
+            files.add(new File("/opt/streamed.bin", new File.Source() {
+                public InputStream open() throws IOException {
+                    return new ByteArrayInputStream(binary, 1, binary.length - 1);
+                }
+            }));
+            Personality personality = new Personality(files);
+
+            Map<String, String> metadata = new LinkedHashMap<String, String>();
+            metadata.put("role", "web");
+            // with metadata the root element has children, without it is empty: both are spliced differently
+            check(standIn, api.createServer("with-metadata", 1, 1, metadata, personality), files);
+            check(standIn, api.createServer("without-metadata", 1, 1, null, personality), files);
+            check(standIn, api.createServer("without-files", 1, 1, metadata, new Personality(new ArrayList<File>())),
+                    Collections.<File>emptyList());
+            System.out.println("Personality files went through unchanged");
+        } finally {
+            standIn.stop();
+        }
+    }
+
+    private static void check(CloudServersStandIn standIn, Server server, List<File> files) {
+        Map<String, byte[]> received = standIn.getPersonality(server.getId());
+        if (received.size() != files.size())
+            fail(server, "expected " + files.size() + " files, got " + received.keySet());
+        for (File file : files) {
+            byte[] content = received.get(file.getPath());
+            if (content == null)
+                fail(server, "missing " + file.getPath());
+            if (!Arrays.equals(file.getBase64Binary(), content))
+                fail(server, "content of " + file.getPath() + " changed");
+        }
+    }
+
+    private static void fail(Server server, String message) {
+        System.err.println(server.getName() + ": " + message);
+        System.exit(1);
+    }
+}
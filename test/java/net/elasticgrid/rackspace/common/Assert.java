@@ -0,0 +1,55 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.elasticgrid.rackspace.common;
+
+import java.util.Arrays;
+
+/**
+ * The few assertions the tests of this project need, as they run as plain programs. Each test class runs its checks
+ * from its <tt>main</tt> method, which fails with an {@link AssertionError} on the first check which does not hold.
+ */
+public final class Assert {
+    private Assert() {
+    }
+
+    public static void assertTrue(String message, boolean condition) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+
+    public static void assertFalse(String message, boolean condition) {
+        assertTrue(message, !condition);
+    }
+
+    public static void assertEquals(String message, Object expected, Object actual) {
+        if (expected == null ? actual != null : !expected.equals(actual))
+            throw new AssertionError(message + ": expected " + expected + ", got " + actual);
+    }
+
+    public static void assertEquals(String message, long expected, long actual) {
+        if (expected != actual)
+            throw new AssertionError(message + ": expected " + expected + ", got " + actual);
+    }
+
+    public static void assertArrayEquals(String message, byte[] expected, byte[] actual) {
+        if (!Arrays.equals(expected, actual))
+            throw new AssertionError(message + ": expected " + Arrays.toString(expected) + ", got "
+                    + Arrays.toString(actual));
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.elasticgrid.rackspace.common;
+
+import net.elasticgrid.rackspace.cloudservers.internal.Flavors;
+import net.elasticgrid.rackspace.cloudservers.internal.Images;
+import net.elasticgrid.rackspace.cloudservers.internal.Servers;
+import org.jibx.runtime.BindingDirectory;
+import org.jibx.runtime.IBindingFactory;
+import org.jibx.runtime.IUnmarshallingContext;
+import org.jibx.runtime.JiBXException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import java.io.ByteArrayInputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares unmarshalling API responses with a factory lookup and a new context per document, as makeRequest used
+ * to, against {@link BindingContextPool}. Documents are servers, images and flavors lists of 10, 100 and 1000
+ * entries. The benchmark is run with several threads, as the pool is shared between requests.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BindingContextPoolBenchmark {
+    private static final String NAMESPACE = "http://docs.rackspacecloud.com/servers/api/v1.0";
+
+    @Param({"servers", "images", "flavors"})
+    public String document;
+
+    @Param({"10", "100", "1000"})
+    public int entries;
+
+    private byte[] xml;
+    private Class<?> type;
+
+    @Setup
+    public void setUp() throws UnsupportedEncodingException {
+        StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        sb.append('<').append(document).append(" xmlns=\"").append(NAMESPACE).append("\">");
+        for (int i = 1; i <= entries; i++) {
+            if ("servers".equals(document)) {
+                sb.append("<server id=\"").append(i).append("\" name=\"server-").append(i)
+                        .append("\" imageId=\"2\" flavorId=\"1\" status=\"ACTIVE\" progress=\"100\"")
+                        .append(" hostId=\"e4d909c290d0fb1ca068ffaddf22cbd0\">")
+                        .append("<metadata><meta key=\"role\">web</meta></metadata>")
+                        .append("<addresses><public><ip addr=\"67.23.").append(i / 256).append('.').append(i % 256)
+                        .append("\"/></public><private><ip addr=\"10.176.").append(i / 256).append('.')
+                        .append(i % 256).append("\"/></private></addresses></server>");
+            } else if ("images".equals(document)) {
+                sb.append("<image id=\"").append(i).append("\" name=\"image-").append(i)
+                        .append("\" serverId=\"").append(i).append("\" updated=\"2010-10-10T12:00:00Z\"")
+                        .append(" created=\"2010-08-10T12:00:00Z\" status=\"ACTIVE\"/>");
+            } else {
+                sb.append("<flavor id=\"").append(i).append("\" name=\"").append(256 * i)
+                        .append(" server\" ram=\"").append(256 * i).append("\" disk=\"").append(10 * i).append("\"/>");
+            }
+        }
+        sb.append("</").append(document).append('>');
+        xml = sb.toString().getBytes("UTF-8");
+        type = "servers".equals(document) ? Servers.class : "images".equals(document) ? Images.class : Flavors.class;
+    }
+
+    @Benchmark
+    public Object newContextPerDocument() throws JiBXException {
+        IBindingFactory bindingFactory = BindingDirectory.getFactory(type);
+        IUnmarshallingContext unmarshallingCxt = bindingFactory.createUnmarshallingContext();
+        return unmarshallingCxt.unmarshalDocument(new ByteArrayInputStream(xml), "UTF-8");
+    }
+
+    @Benchmark
+    public Object pooledContext() throws JiBXException {
+        return BindingContextPool.unmarshal(type, new ByteArrayInputStream(xml), "UTF-8");
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(BindingContextPoolBenchmark.class.getSimpleName())
+                .threads(4)
+                .build()).run();
+    }
+}
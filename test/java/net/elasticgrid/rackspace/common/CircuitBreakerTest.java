@@ -0,0 +1,151 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.elasticgrid.rackspace.common;
+
+import java.util.concurrent.TimeUnit;
+
+import static net.elasticgrid.rackspace.common.Assert.assertEquals;
+import static net.elasticgrid.rackspace.common.Assert.assertFalse;
+import static net.elasticgrid.rackspace.common.Assert.assertTrue;
+
+/**
+ * Walks a {@link CircuitBreaker} through its states.
+ */
+public class CircuitBreakerTest {
+    private static final long OPEN_MILLIS = 20;
+
+    public static void main(String[] args) throws Exception {
+        opensOnFailures();
+        opensOnSlowCalls();
+        closesAfterProbes();
+        reopensOnProbeFailure();
+        ignoresOutcomesOfEarlierStates();
+        System.out.println("CircuitBreakerTest OK");
+    }
+
+    private static CircuitBreaker breaker() {
+        CircuitBreaker breaker = new CircuitBreaker("test");
+        breaker.setWindowSize(10);
+        breaker.setMinimumCalls(4);
+        breaker.setProbes(2);
+        breaker.setOpenDuration(OPEN_MILLIS, TimeUnit.MILLISECONDS);
+        return breaker;
+    }
+
+    private static void trip(CircuitBreaker breaker) {
+        for (int i = 0; i < 4; i++)
+            breaker.onFailure(breaker.tryAcquire(), 0);
+        assertEquals("tripped", CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    private static void waitUntilHalfOpen() throws InterruptedException {
+        Thread.sleep(OPEN_MILLIS + 10);
+    }
+
+    static void opensOnFailures() {
+        CircuitBreaker breaker = breaker();
+        for (int i = 0; i < 3; i++)
+            breaker.onFailure(breaker.tryAcquire(), 0);
+        assertEquals("closed below the minimum number of calls", CircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.reset();
+        CircuitBreaker.Permit permit = breaker.tryAcquire();
+        assertFalse("closed circuits don't probe", permit.isProbe());
+        breaker.onSuccess(permit, 0);
+        breaker.onSuccess(breaker.tryAcquire(), 0);
+        breaker.onSuccess(breaker.tryAcquire(), 0);
+        breaker.onFailure(breaker.tryAcquire(), 0);
+        breaker.onFailure(breaker.tryAcquire(), 0);
+        assertEquals("closed below the failure rate", CircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.onFailure(breaker.tryAcquire(), 0);
+        assertEquals("open at the failure rate", CircuitBreaker.State.OPEN, breaker.getState());
+        assertTrue("open", breaker.isOpen());
+        assertEquals("rejected while open", null, breaker.tryAcquire());
+        assertEquals("rejections", 1, breaker.getRejectedCount());
+        assertEquals("openings", 1, breaker.getOpenCount());
+    }
+
+    static void opensOnSlowCalls() {
+        CircuitBreaker breaker = breaker();
+        long slow = TimeUnit.MILLISECONDS.toNanos(breaker.getSlowCallDuration());
+        for (int i = 0; i < 3; i++)
+            breaker.onSuccess(breaker.tryAcquire(), slow);
+        breaker.onSuccess(breaker.tryAcquire(), 0);
+        assertEquals("closed below the slow call rate", CircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.onSuccess(breaker.tryAcquire(), slow);
+        assertEquals("open at the slow call rate", CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    static void closesAfterProbes() throws InterruptedException {
+        CircuitBreaker breaker = breaker();
+        trip(breaker);
+        waitUntilHalfOpen();
+        assertEquals("half open after the open duration", CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        CircuitBreaker.Permit first = breaker.tryAcquire();
+        CircuitBreaker.Permit second = breaker.tryAcquire();
+        assertTrue("probes", first.isProbe() && second.isProbe());
+        assertEquals("no more probes than configured", null, breaker.tryAcquire());
+        breaker.release(second);
+        CircuitBreaker.Permit third = breaker.tryAcquire();
+        assertTrue("released probes are given again", third != null && third.isProbe());
+        breaker.onSuccess(first, 0);
+        assertEquals("half open until every probe succeeded", CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.onSuccess(third, 0);
+        assertEquals("closed once the probes succeeded", CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals("window cleared", 0.0, breaker.getFailureRate());
+    }
+
+    static void reopensOnProbeFailure() throws InterruptedException {
+        CircuitBreaker breaker = breaker();
+        trip(breaker);
+        waitUntilHalfOpen();
+        breaker.onFailure(breaker.tryAcquire(), 0);
+        assertEquals("open again after a failed probe", CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals("openings", 2, breaker.getOpenCount());
+        waitUntilHalfOpen();
+        long slow = TimeUnit.MILLISECONDS.toNanos(breaker.getSlowCallDuration());
+        breaker.onSuccess(breaker.tryAcquire(), slow);
+        assertEquals("open again after a slow probe", CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    /**
+     * Requests admitted while the circuit was closed, or by an earlier half open period, don't count as probes.
+     */
+    static void ignoresOutcomesOfEarlierStates() throws InterruptedException {
+        CircuitBreaker breaker = breaker();
+        CircuitBreaker.Permit admittedClosed = breaker.tryAcquire();
+        trip(breaker);
+        waitUntilHalfOpen();
+        CircuitBreaker.Permit staleProbe = breaker.tryAcquire();
+        breaker.onFailure(breaker.tryAcquire(), 0);
+        waitUntilHalfOpen();
+        CircuitBreaker.Permit probe = breaker.tryAcquire();
+        breaker.onFailure(admittedClosed, 0);
+        breaker.onFailure(staleProbe, 0);
+        assertEquals("earlier failures ignored", CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.release(admittedClosed);
+        breaker.release(staleProbe);
+        CircuitBreaker.Permit other = breaker.tryAcquire();
+        assertEquals("earlier releases don't free probes", null, breaker.tryAcquire());
+        breaker.onSuccess(probe, 0);
+        breaker.onSuccess(other, 0);
+        assertEquals("closed by its own probes", CircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.onFailure(admittedClosed, 0);
+        assertEquals("earlier failures not recorded once closed", 0.0, breaker.getFailureRate());
+    }
+}
@@ -0,0 +1,277 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.elasticgrid.rackspace.common;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.params.HttpProtocolParams;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares sending every request body with <tt>Expect: 100-continue</tt>, as the connections used to, against the
+ * {@link ExpectContinuePolicy} threshold. Bodies are the size of an action such as a reboot, and of a large upload.
+ * Requests go through a proxy delaying each direction by half the round trip time, to simulate a distant API
+ * endpoint: each handshake costs one more round trip.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExpectContinueBenchmark {
+    /**
+     * The body size from which requests expect a continue: 0 for every request, as before, or the default policy.
+     */
+    @Param({"0", "65536"})
+    public long threshold;
+
+    @Param({"200", "262144"})
+    public int bodySize;
+
+    /**
+     * The simulated round trip time, in milliseconds.
+     */
+    @Param({"20", "100"})
+    public long rtt;
+
+    private HttpServer server;
+    private DelayingProxy proxy;
+    private DefaultHttpClient client;
+    private String uri;
+    private byte[] body;
+
+    @Setup
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                InputStream in = exchange.getRequestBody();
+                byte[] buffer = new byte[8192];
+                while (in.read(buffer) >= 0) {
+                    // drained
+                }
+                exchange.sendResponseHeaders(202, -1);
+                exchange.close();
+            }
+        });
+        server.start();
+        proxy = new DelayingProxy(server.getAddress(), TimeUnit.MILLISECONDS.toNanos(rtt) / 2);
+
+        HttpParams params = new BasicHttpParams();
+        HttpProtocolParams.setVersion(params, HttpVersion.HTTP_1_1);
+        HttpProtocolParams.setUseExpectContinue(params, false);
+        ConnManagerParams.setMaxTotalConnections(params, 4);
+        ConnManagerParams.setMaxConnectionsPerRoute(params, new ConnPerRouteBean(4));
+        SchemeRegistry schemeRegistry = new SchemeRegistry();
+        schemeRegistry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+        ExpectContinuePolicy policy = new ExpectContinuePolicy();
+        policy.setThreshold(threshold);
+        client = RackspaceConnection.createHttpClient(params, schemeRegistry, policy);
+
+        uri = "http://127.0.0.1:" + proxy.getPort() + "/v1.0/123456/servers/1/action";
+        body = new byte[bodySize];
+        Arrays.fill(body, (byte) 'x');
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.getConnectionManager().shutdown();
+        proxy.close();
+        server.stop(0);
+    }
+
+    @Benchmark
+    public int post() throws IOException {
+        HttpPost request = new HttpPost(uri);
+        request.setEntity(new ByteArrayEntity(body));
+        HttpResponse response = client.execute(request);
+        HttpEntity entity = response.getEntity();
+        if (entity != null)
+            entity.consumeContent();
+        return response.getStatusLine().getStatusCode();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ExpectContinueBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+    /**
+     * Forwards connections to a server, delaying the bytes sent each way.
+     */
+    static class DelayingProxy {
+        private final ServerSocket listener;
+        private final InetSocketAddress target;
+        private final long delay;
+        private final List<Socket> sockets = new CopyOnWriteArrayList<Socket>();
+
+        /**
+         * @param target the server to forward connections to
+         * @param delay  the delay in each direction, in nanoseconds
+         */
+        DelayingProxy(InetSocketAddress target, long delay) throws IOException {
+            this.target = target;
+            this.delay = delay;
+            listener = new ServerSocket(0, 50, target.getAddress());
+            daemon(new Runnable() {
+                public void run() {
+                    accept();
+                }
+            }, "proxy-accept");
+        }
+
+        int getPort() {
+            return listener.getLocalPort();
+        }
+
+        void close() {
+            try {
+                listener.close();
+            } catch (IOException e) {
+                // closing anyway
+            }
+            for (Socket socket : sockets) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // closing anyway
+                }
+            }
+        }
+
+        private void accept() {
+            while (!listener.isClosed()) {
+                try {
+                    Socket client = listener.accept();
+                    Socket server = new Socket(target.getAddress(), target.getPort());
+                    client.setTcpNoDelay(true);
+                    server.setTcpNoDelay(true);
+                    sockets.add(client);
+                    sockets.add(server);
+                    pipe(client, server);
+                    pipe(server, client);
+                } catch (IOException e) {
+                    // listener closed
+                }
+            }
+        }
+
+        /**
+         * Copies what a socket receives to another one, each chunk once its delay is over.
+         */
+        private void pipe(final Socket from, final Socket to) {
+            final BlockingQueue<Chunk> chunks = new LinkedBlockingQueue<Chunk>();
+            daemon(new Runnable() {
+                public void run() {
+                    byte[] buffer = new byte[16384];
+                    try {
+                        InputStream in = from.getInputStream();
+                        int read;
+                        while ((read = in.read(buffer)) >= 0)
+                            chunks.add(new Chunk(System.nanoTime() + delay, Arrays.copyOf(buffer, read)));
+                    } catch (IOException e) {
+                        // socket closed
+                    }
+                    chunks.add(new Chunk(System.nanoTime() + delay, null));
+                }
+            }, "proxy-read");
+            daemon(new Runnable() {
+                public void run() {
+                    try {
+                        OutputStream out = to.getOutputStream();
+                        while (true) {
+                            Chunk chunk = chunks.take();
+                            long wait = chunk.due - System.nanoTime();
+                            if (wait > 0)
+                                TimeUnit.NANOSECONDS.sleep(wait);
+                            if (chunk.data == null) {
+                                to.shutdownOutput();
+                                return;
+                            }
+                            out.write(chunk.data);
+                            out.flush();
+                        }
+                    } catch (IOException e) {
+                        // socket closed
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }, "proxy-write");
+        }
+
+        private static void daemon(Runnable task, String name) {
+            Thread thread = new Thread(task, name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private static class Chunk {
+            final long due;
+            final byte[] data;
+
+            Chunk(long due, byte[] data) {
+                this.due = due;
+                this.data = data;
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.elasticgrid.rackspace.common;
+
+import java.util.concurrent.TimeUnit;
+
+import static net.elasticgrid.rackspace.common.Assert.assertEquals;
+import static net.elasticgrid.rackspace.common.Assert.assertTrue;
+
+/**
+ * Checks the bucketing of {@link LatencyHistogram} and the precision of its percentiles.
+ */
+public class LatencyHistogramTest {
+
+    public static void main(String[] args) {
+        buckets();
+        percentiles();
+        System.out.println("LatencyHistogramTest OK");
+    }
+
+    /**
+     * Every duration falls in the bucket whose bounds surround it, and buckets follow the durations in order.
+     */
+    static void buckets() {
+        for (long nanos = 0; nanos < 100000; nanos++)
+            assertInBucket(nanos);
+        for (int shift = 2; shift < 63; shift++) {
+            long power = 1L << shift;
+            assertInBucket(power - 1);
+            assertInBucket(power);
+            assertInBucket(power + 1);
+            assertInBucket(power + power / 2);
+        }
+        assertInBucket(Long.MAX_VALUE);
+        int previous = -1;
+        for (long nanos = 1; nanos > 0 && nanos < Long.MAX_VALUE / 2; nanos = nanos * 3 / 2 + 1) {
+            int bucket = LatencyHistogram.bucketOf(nanos);
+            assertTrue("buckets in order at " + nanos, bucket >= previous);
+            previous = bucket;
+        }
+        for (int bucket = 0; bucket < 247; bucket++)
+            assertTrue("bounds in order at bucket " + bucket,
+                    LatencyHistogram.lowerBound(bucket) < LatencyHistogram.lowerBound(bucket + 1));
+    }
+
+    private static void assertInBucket(long nanos) {
+        int bucket = LatencyHistogram.bucketOf(nanos);
+        assertTrue(nanos + " has a bucket", bucket >= 0 && bucket < 256);
+        assertTrue(nanos + " above the lower bound of its bucket", LatencyHistogram.lowerBound(bucket) <= nanos);
+        long upper = LatencyHistogram.lowerBound(bucket + 1);
+        assertTrue(nanos + " below the lower bound of the next bucket", nanos < upper || upper == Long.MAX_VALUE);
+    }
+
+    /**
+     * With 4 sub-buckets per power of two, a percentile is within an eighth of the actual value.
+     */
+    static void percentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals("empty histogram", 0, histogram.getPercentile(0.5));
+        for (int millis = 1; millis <= 1000; millis++)
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(millis));
+        assertEquals("count", 1000, histogram.getCount());
+        for (double quantile : new double[]{0.01, 0.5, 0.9, 0.95, 0.99, 1}) {
+            double actual = TimeUnit.MILLISECONDS.toNanos(Math.round(quantile * 1000));
+            double estimate = histogram.getPercentile(quantile);
+            assertTrue("percentile " + quantile + " is " + estimate + " instead of " + actual,
+                    Math.abs(estimate - actual) <= actual / 8);
+        }
+        assertEquals("percentiles capped by the maximum", TimeUnit.MILLISECONDS.toNanos(1000),
+                histogram.getPercentile(1));
+        histogram.record(-5);
+        assertEquals("negative durations count as 0", 1001, histogram.getCount());
+        histogram.reset();
+        assertEquals("reset", 0, histogram.getCount());
+    }
+}
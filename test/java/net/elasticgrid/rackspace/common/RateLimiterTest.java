@@ -0,0 +1,130 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package net.elasticgrid.rackspace.common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static net.elasticgrid.rackspace.common.Assert.assertEquals;
+import static net.elasticgrid.rackspace.common.Assert.assertFalse;
+import static net.elasticgrid.rackspace.common.Assert.assertTrue;
+
+/**
+ * Checks the pacing of {@link RateLimiter} and how it carries reservations and held requests over reloads.
+ */
+public class RateLimiterTest {
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+    public static void main(String[] args) {
+        reserve();
+        takeOver();
+        matching();
+        holding();
+        System.out.println("RateLimiterTest OK");
+    }
+
+    /**
+     * A bucket lets its remaining requests through, then spaces the following ones by its refill rate.
+     */
+    static void reserve() {
+        RateLimiter.Bucket bucket = new RateLimiter.Bucket("POST", "*", ".*", 60, 2, MINUTE);
+        long now = System.currentTimeMillis();
+        assertEquals("first remaining request", 0, bucket.reserve(now));
+        assertEquals("second remaining request", 0, bucket.reserve(now));
+        assertEquals("next request waits for a token", 1000, bucket.reserve(now));
+        assertEquals("and the one after for another", 2000, bucket.reserve(now));
+        assertEquals("headroom", -2.0, bucket.headroom(now));
+        assertEquals("refilled meanwhile", 1000, bucket.reserve(now + 2000));
+
+        RateLimiter.Bucket full = new RateLimiter.Bucket("GET", "*", ".*", 10, 50, MINUTE);
+        assertEquals("remaining capped by the capacity", 10.0, full.headroom(System.currentTimeMillis()));
+    }
+
+    /**
+     * A reloaded bucket takes the reservations still waiting from the one it replaces, as the API does not count
+     * them yet.
+     */
+    static void takeOver() {
+        RateLimiter.Bucket previous = new RateLimiter.Bucket("POST", "*", ".*", 60, 0, MINUTE);
+        long now = System.currentTimeMillis();
+        assertEquals("first waiting request", 1000, previous.reserve(now));
+        assertEquals("second waiting request", 2000, previous.reserve(now));
+        assertEquals("third waiting request", 3000, previous.reserve(now));
+
+        // refilled too slowly for the refill to show
+        long year = TimeUnit.DAYS.toMillis(365);
+        RateLimiter.Bucket reloaded = new RateLimiter.Bucket("POST", "*", ".*", 60, 5, year);
+        long later = now + 1500;
+        reloaded.takeOver(previous, later);
+        assertEquals("requests sent since are not taken over", 3, Math.round(reloaded.headroom(later)));
+        RateLimiter.Bucket next = new RateLimiter.Bucket("POST", "*", ".*", 60, 5, year);
+        next.takeOver(reloaded, later);
+        assertEquals("taken over reservations are carried on", 3, Math.round(next.headroom(later)));
+        RateLimiter.Bucket last = new RateLimiter.Bucket("POST", "*", ".*", 60, 5, year);
+        last.takeOver(next, now + 3500);
+        assertEquals("and expire when their requests are sent", 5, Math.round(last.headroom(now + 3500)));
+    }
+
+    static void matching() {
+        RateLimiter limiter = new RateLimiter();
+        limiter.update(Arrays.asList(new RateLimiter.Bucket("POST", "/servers", "^/servers", 1, 1, MINUTE),
+                new RateLimiter.Bucket("GET", "changes-since", "changes-since", 1, 1, MINUTE)));
+        assertEquals("first creation", 0, limiter.reserve("POST", "/servers"));
+        assertTrue("second creation waits", limiter.reserve("post", "/servers") > 0);
+        assertEquals("other method", 0, limiter.reserve("GET", "/servers"));
+        assertEquals("other path", 0, limiter.reserve("POST", "/images"));
+        assertEquals("first poll", 0, limiter.reserve("GET", "/servers/detail?changes-since=0"));
+        assertTrue("second poll waits", limiter.reserve("GET", "/servers/detail?changes-since=1") > 0);
+        assertEquals("headroom per bucket", Arrays.asList("POST /servers", "GET changes-since"),
+                new ArrayList<String>(limiter.getHeadroom().keySet()));
+    }
+
+    /**
+     * Requests are held until the buckets are first loaded, and again once the API rejected one of them, and are
+     * released whether the reload succeeds or not.
+     */
+    static void holding() {
+        RateLimiter limiter = new RateLimiter();
+        final List<String> released = new ArrayList<String>();
+        assertTrue("held until loaded", limiter.hold(record(released, "first")));
+        assertTrue("resync needed", limiter.startResync());
+        assertFalse("a single resync at a time", limiter.startResync());
+        limiter.update(new ArrayList<RateLimiter.Bucket>());
+        assertEquals("released once loaded", Arrays.asList("first"), released);
+        assertFalse("not held once loaded", limiter.hold(record(released, "second")));
+        assertFalse("up to date", limiter.startResync());
+
+        limiter.invalidate();
+        assertTrue("held after a rejection", limiter.hold(record(released, "third")));
+        assertTrue("resync after a rejection", limiter.startResync());
+        limiter.updateFailed();
+        assertEquals("released when the reload failed", Arrays.asList("first", "third"), released);
+        assertFalse("not held after the failed reload", limiter.hold(record(released, "fourth")));
+    }
+
+    private static Runnable record(final List<String> released, final String name) {
+        return new Runnable() {
+            public void run() {
+                released.add(name);
+            }
+        };
+    }
+}